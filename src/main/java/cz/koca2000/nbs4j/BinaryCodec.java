@@ -0,0 +1,254 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Little endian wire format shared by {@link SongPatch}, {@link SongSnapshot}, {@link SongPack} and {@link ChunkedSongWriter}.
+ * Numbers that are usually small are stored as varints, strings as UTF-8 prefixed by their length,
+ * and metadata, custom instruments and properties of layers are always encoded in the same way.
+ */
+final class BinaryCodec {
+
+    private BinaryCodec() {
+    }
+
+    static void writeMetadata(@NotNull Writer writer, @NotNull SongMetadata metadata) {
+        writer.writeString(metadata.getTitle());
+        writer.writeString(metadata.getAuthor());
+        writer.writeString(metadata.getOriginalAuthor());
+        writer.writeString(metadata.getDescription());
+        writer.writeBoolean(metadata.isAutoSave());
+        writer.writeByte(metadata.getAutoSaveDuration());
+        writer.writeByte(metadata.getTimeSignature());
+        writer.writeVarLong(metadata.getMinutesSpent() & 0xFFFFFFFFL);
+        writer.writeVarLong(metadata.getLeftClicks() & 0xFFFFFFFFL);
+        writer.writeVarLong(metadata.getRightClicks() & 0xFFFFFFFFL);
+        writer.writeVarLong(metadata.getNoteBlocksAdded() & 0xFFFFFFFFL);
+        writer.writeVarLong(metadata.getNoteBlocksRemoved() & 0xFFFFFFFFL);
+        writer.writeString(metadata.getOriginalMidiFileName());
+        writer.writeBoolean(metadata.isLoop());
+        writer.writeByte(metadata.getLoopMaxCount());
+        writer.writeVarLong(metadata.getLoopStartTick() & 0xFFFFL);
+    }
+
+    @NotNull
+    static SongMetadata readMetadata(@NotNull Reader reader) {
+        return new SongMetadata()
+                .setTitle(reader.readString())
+                .setAuthor(reader.readString())
+                .setOriginalAuthor(reader.readString())
+                .setDescription(reader.readString())
+                .setAutoSave(reader.readBoolean())
+                .setAutoSaveDuration(reader.readByte())
+                .setTimeSignature(reader.readByte())
+                .setMinutesSpent((int) reader.readVarLong())
+                .setLeftClicks((int) reader.readVarLong())
+                .setRightClicks((int) reader.readVarLong())
+                .setNoteBlocksAdded((int) reader.readVarLong())
+                .setNoteBlocksRemoved((int) reader.readVarLong())
+                .setOriginalMidiFileName(reader.readString())
+                .setLoop(reader.readBoolean())
+                .setLoopMaxCount(reader.readByte())
+                .setLoopStartTick((short) reader.readVarLong());
+    }
+
+    static void writeCustomInstrument(@NotNull Writer writer, @NotNull CustomInstrument customInstrument) {
+        writer.writeString(customInstrument.getName());
+        writer.writeString(customInstrument.getFileName());
+        writer.writeByte(customInstrument.getKey());
+        writer.writeBoolean(customInstrument.shouldPressKey());
+    }
+
+    @NotNull
+    static CustomInstrument readCustomInstrument(@NotNull Reader reader) {
+        return CustomInstrument.builder()
+                .setName(reader.readString())
+                .setFileName(reader.readString())
+                .setKey(reader.readByte())
+                .setShouldPressKey(reader.readBoolean())
+                .build();
+    }
+
+    static void writeLayerProperties(@NotNull Writer writer, @NotNull Layer layer) {
+        writer.writeString(layer.getName());
+        writer.writeBoolean(layer.isLocked());
+        writer.writeByte(layer.getVolume());
+        writer.writeByte(layer.getPanning());
+    }
+
+    @NotNull
+    static Layer.Builder readLayerProperties(@NotNull Reader reader) {
+        return Layer.builder()
+                .name(reader.readString())
+                .locked(reader.readBoolean())
+                .volume(reader.readByte())
+                .panning(reader.readByte());
+    }
+
+    /**
+     * Encoder backed by a growing byte array.
+     */
+    static final class Writer {
+        private byte[] data;
+        private int size = 0;
+
+        Writer(int initialCapacity) {
+            data = new byte[initialCapacity];
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            data[size++] = (byte) value;
+        }
+
+        void writeBoolean(boolean value) {
+            writeByte(value ? 1 : 0);
+        }
+
+        void writeShort(int value) {
+            ensureCapacity(2);
+            data[size++] = (byte) value;
+            data[size++] = (byte) (value >>> 8);
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            data[size++] = (byte) value;
+            data[size++] = (byte) (value >>> 8);
+            data[size++] = (byte) (value >>> 16);
+            data[size++] = (byte) (value >>> 24);
+        }
+
+        void writeFloat(float value) {
+            writeInt(Float.floatToIntBits(value));
+        }
+
+        /**
+         * Writes a non-negative number using 7 bits per byte, so small numbers and tick deltas take a single byte.
+         */
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        void writeBytes(byte @NotNull [] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, data, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeString(@NotNull String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            writeBytes(bytes);
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void ensureCapacity(int count) {
+            if (size + count > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + count));
+            }
+        }
+
+        byte @NotNull [] toByteArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    /**
+     * Decoder reading directly from a buffer. Invalid data throw {@link SongCorruptedException} or {@link java.nio.BufferUnderflowException}.
+     */
+    static final class Reader {
+        private final ByteBuffer buffer;
+
+        Reader(@NotNull ByteBuffer buffer) {
+            this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        int position() {
+            return buffer.position();
+        }
+
+        int remaining() {
+            return buffer.remaining();
+        }
+
+        void skip(int count) {
+            buffer.position(buffer.position() + count);
+        }
+
+        byte readByte() {
+            return buffer.get();
+        }
+
+        boolean readBoolean() {
+            return buffer.get() != 0;
+        }
+
+        byte getByte(int index) {
+            return buffer.get(index);
+        }
+
+        short readShort() {
+            return buffer.getShort();
+        }
+
+        int readInt() {
+            return buffer.getInt();
+        }
+
+        float readFloat() {
+            return buffer.getFloat();
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+                int b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new SongCorruptedException();
+        }
+
+        int readCount() {
+            long count = readVarLong();
+            if (count < 0 || count > Integer.MAX_VALUE) {
+                throw new SongCorruptedException();
+            }
+            return (int) count;
+        }
+
+        @NotNull
+        String readString() {
+            int length = readCount();
+            if (length > buffer.remaining()) {
+                throw new SongCorruptedException();
+            }
+            String text;
+            if (buffer.hasArray()) {
+                text = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            } else {
+                byte[] bytes = new byte[length];
+                buffer.duplicate().get(bytes);
+                text = new String(bytes, StandardCharsets.UTF_8);
+            }
+            skip(length);
+            return text;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes songs encoded by {@link ChunkedSongWriter}. The reader is created from the header chunk, which describes the whole song
+ * except its notes, and decodes time chunks in any order as they arrive. Notes of the decoded chunks are collected,
+ * so {@link #getSong()} returns the song with all notes received so far.
+ * <p>This class is not thread-safe.
+ */
+public final class ChunkedSongReader {
+    private final Song header;
+    private final int ticksPerChunk;
+    private final long[] chunkOffsets;
+    private final Layer[] headerLayers;
+    private final Layer[] layers;
+    private final BitSet decodedChunks = new BitSet();
+    private final Map<Long, Note> sharedNotes = new HashMap<>();
+    private Song song;
+
+    /**
+     * Creates the reader from the header chunk.
+     * @param headerChunk first chunk of the encoded song
+     * @throws SongCorruptedException if the data are not a valid header chunk
+     */
+    public ChunkedSongReader(byte @NotNull [] headerChunk) {
+        ByteBuffer buffer = ByteBuffer.wrap(headerChunk).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            int headerLength = readHeaderLength(buffer);
+            if (headerLength != headerChunk.length) {
+                throw new SongCorruptedException();
+            }
+            BinaryCodec.Reader section = new BinaryCodec.Reader(buffer.slice());
+
+            ticksPerChunk = section.readCount();
+            long songLength = section.readVarLong();
+            int chunksCount = section.readCount();
+            if (ticksPerChunk == 0 || chunksCount > section.remaining() || chunksCount != (songLength + ticksPerChunk - 1) / ticksPerChunk) {
+                throw new SongCorruptedException();
+            }
+            chunkOffsets = new long[chunksCount + 1];
+            chunkOffsets[0] = headerLength;
+            for (int i = 0; i < chunksCount; i++) {
+                chunkOffsets[i + 1] = chunkOffsets[i] + section.readCount();
+            }
+
+            Song.Builder builder = Song.builder().metadata(BinaryCodec.readMetadata(section));
+            SongSnapshot.readCustomInstruments(section, builder);
+            SongSnapshot.readTempoChanges(section, builder);
+            int layersCount = section.readCount();
+            if (layersCount > section.remaining()) {
+                throw new SongCorruptedException();
+            }
+            headerLayers = new Layer[layersCount];
+            for (int i = 0; i < layersCount; i++) {
+                headerLayers[i] = BinaryCodec.readLayerProperties(section).build();
+                builder.layer(headerLayers[i]);
+            }
+            layers = headerLayers.clone();
+            if (songLength > 0) {
+                builder.length(songLength);
+            }
+            header = builder.build();
+            song = header;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new SongCorruptedException(ex);
+        }
+    }
+
+    /**
+     * Reads the header chunk from the stream and creates the reader. The stream is positioned at the first time chunk afterwards.
+     * @param stream stream with the encoded song
+     * @return {@link ChunkedSongReader}
+     * @throws SongCorruptedException if the stream does not start with a valid header chunk
+     * @throws UncheckedIOException if the stream can not be read
+     */
+    @NotNull
+    public static ChunkedSongReader readHeader(@NotNull InputStream stream) {
+        byte[] prefix = new byte[ChunkedSongWriter.PREFIX_SIZE];
+        readFully(stream, prefix);
+        int length = readHeaderLength(ByteBuffer.wrap(prefix).order(ByteOrder.LITTLE_ENDIAN));
+
+        byte[] headerChunk = new byte[length];
+        System.arraycopy(prefix, 0, headerChunk, 0, prefix.length);
+        try {
+            new DataInputStream(stream).readFully(headerChunk, prefix.length, length - prefix.length);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return new ChunkedSongReader(headerChunk);
+    }
+
+    private static int readHeaderLength(@NotNull ByteBuffer buffer) {
+        if (buffer.remaining() < ChunkedSongWriter.PREFIX_SIZE || buffer.getInt() != ChunkedSongWriter.MAGIC
+                || buffer.getShort() != ChunkedSongWriter.FORMAT_VERSION) {
+            throw new SongCorruptedException();
+        }
+        buffer.getShort(); // flags
+        int length = buffer.getInt();
+        if (length < ChunkedSongWriter.PREFIX_SIZE) {
+            throw new SongCorruptedException();
+        }
+        return length;
+    }
+
+    private static void readFully(@NotNull InputStream stream, byte @NotNull [] data) {
+        try {
+            new DataInputStream(stream).readFully(data);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Returns the song without notes. It has the metadata, custom instruments, tempo changes, layers and length of the whole song.
+     * @return {@link Song}
+     */
+    @NotNull
+    public Song getHeader() {
+        return header;
+    }
+
+    /**
+     * Returns the song with the notes of all chunks decoded so far.
+     * @return {@link Song}
+     */
+    @NotNull
+    public Song getSong() {
+        if (song == null) {
+            song = Song.builder(header).replaceLayers(layers).build();
+        }
+        return song;
+    }
+
+    /**
+     * Returns whether all time chunks were decoded, so {@link #getSong()} returns the whole song.
+     * @return true if all chunks were decoded; otherwise, false
+     */
+    public boolean isComplete() {
+        return decodedChunks.cardinality() == getChunksCount();
+    }
+
+    /**
+     * Returns the number of ticks of every time chunk.
+     * @return number of ticks
+     */
+    public int getTicksPerChunk() {
+        return ticksPerChunk;
+    }
+
+    /**
+     * Returns the number of time chunks.
+     * @return number of chunks following the header chunk
+     */
+    public int getChunksCount() {
+        return chunkOffsets.length - 1;
+    }
+
+    /**
+     * Returns the index of the time chunk containing the notes of the given tick.
+     * @param tick tick of the song
+     * @return zero-based index of the chunk
+     * @throws IndexOutOfBoundsException if the tick is not within the song
+     */
+    public int getChunkIndex(long tick) {
+        if (tick < 0 || tick >= (long) getChunksCount() * ticksPerChunk) {
+            throw new IndexOutOfBoundsException("Tick " + tick + " is not within the song.");
+        }
+        return (int) (tick / ticksPerChunk);
+    }
+
+    /**
+     * Returns the position of the time chunk in the encoded song, so it can be fetched by a range request.
+     * @param index zero-based index of the chunk
+     * @return number of bytes preceding the chunk
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    public long getChunkOffset(int index) {
+        checkChunkIndex(index);
+        return chunkOffsets[index];
+    }
+
+    /**
+     * Returns the length of the time chunk.
+     * @param index zero-based index of the chunk
+     * @return length of the chunk in bytes
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    public int getChunkLength(int index) {
+        checkChunkIndex(index);
+        return (int) (chunkOffsets[index + 1] - chunkOffsets[index]);
+    }
+
+    /**
+     * Reads the time chunk with the given index from the stream and decodes it.
+     * The stream has to be positioned at the chunk, which is the case after the header or the previous chunk was read.
+     * @param stream stream with the encoded song
+     * @param index zero-based index of the chunk
+     * @return decoded {@link SongChunk}
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     * @throws SongCorruptedException if the data are not a valid chunk with the index
+     * @throws UncheckedIOException if the stream can not be read
+     */
+    @NotNull
+    public SongChunk readChunk(@NotNull InputStream stream, int index) {
+        byte[] chunk = new byte[getChunkLength(index)];
+        readFully(stream, chunk);
+        SongChunk decoded = decodeChunk(chunk);
+        if (decoded.getIndex() != index) {
+            throw new SongCorruptedException();
+        }
+        return decoded;
+    }
+
+    /**
+     * Decodes the time chunk and adds its notes to {@link #getSong()}.
+     * @param chunk encoded time chunk
+     * @return decoded {@link SongChunk}
+     * @throws SongCorruptedException if the data are not a valid chunk of this song
+     */
+    @NotNull
+    public SongChunk decodeChunk(byte @NotNull [] chunk) {
+        BinaryCodec.Reader section = new BinaryCodec.Reader(ByteBuffer.wrap(chunk));
+        try {
+            int index = section.readCount();
+            checkChunkIndex(index);
+            long firstTick = (long) index * ticksPerChunk;
+            long endTick = firstTick + ticksPerChunk;
+
+            int layersWithNotes = section.readCount();
+            Layer[] chunkLayers = new Layer[layers.length];
+            SongSnapshot.NoteColumns[] chunkNotes = new SongSnapshot.NoteColumns[layers.length];
+            for (int i = 0; i < layersWithNotes; i++) {
+                int layer = section.readCount();
+                if (layer >= layers.length || chunkLayers[layer] != null) {
+                    throw new SongCorruptedException();
+                }
+                SongSnapshot.NoteColumns notes = SongSnapshot.readNotes(section, firstTick, sharedNotes);
+                if (notes.size > 0 && (notes.ticks[notes.size - 1] >= endTick || notes.ticks[notes.size - 1] < firstTick)) {
+                    throw new SongCorruptedException();
+                }
+                chunkLayers[layer] = Layer.builder(headerLayers[layer]).notes(notes.ticks, notes.notes).build();
+                chunkNotes[layer] = notes;
+            }
+            if (section.remaining() != 0) {
+                throw new SongCorruptedException();
+            }
+
+            for (int i = 0; i < layers.length; i++) {
+                if (chunkNotes[i] != null) {
+                    layers[i] = Layer.builder(layers[i]).notes(chunkNotes[i].ticks, chunkNotes[i].notes).build();
+                }
+            }
+
+            decodedChunks.set(index);
+            song = null;
+            return new SongChunk(index, firstTick, endTick, Song.builder(header).replaceLayers(chunkLayers).build());
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new SongCorruptedException(ex);
+        }
+    }
+
+    private void checkChunkIndex(int index) {
+        if (index < 0 || index >= getChunksCount()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + getChunksCount());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes songs into chunks for progressive loading. The leading header chunk contains everything except notes:
+ * metadata, custom instruments, the tempo map, properties of layers and the lengths of all chunks. It is followed by
+ * time chunks with the notes of a fixed number of ticks each. Every time chunk can be decoded on its own by {@link ChunkedSongReader},
+ * so playback can start after the header and the first time chunk arrive, and a player can seek by fetching only the chunks it needs.
+ * <p>Notes are stored by columns in the same way as in {@link SongSnapshot}.
+ */
+public final class ChunkedSongWriter {
+    public static final int DEFAULT_TICKS_PER_CHUNK = 256;
+
+    static final int MAGIC = 0x4353424E; // NBSC in little endian
+    static final short FORMAT_VERSION = 1;
+    // Magic, version, flags and the length of the header chunk
+    static final int PREFIX_SIZE = 12;
+
+    private ChunkedSongWriter() {
+    }
+
+    /**
+     * Encodes the song into chunks.
+     * @param song {@link Song} to be encoded
+     * @param ticksPerChunk number of ticks of every time chunk
+     * @return header chunk followed by the time chunks in the order of their ticks
+     * @throws IllegalArgumentException if the number of ticks is not positive or the song would have more than {@link Integer#MAX_VALUE} chunks
+     */
+    @NotNull
+    public static List<byte[]> encode(@NotNull Song song, int ticksPerChunk) {
+        if (ticksPerChunk <= 0) {
+            throw new IllegalArgumentException("Number of ticks per chunk must be positive.");
+        }
+        long chunksCount = (song.getSongLength() + ticksPerChunk - 1) / ticksPerChunk;
+        if (chunksCount >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Song has too many chunks.");
+        }
+
+        SongSnapshot.NoteColumns[] layers = new SongSnapshot.NoteColumns[song.getLayersCount()];
+        int[] positions = new int[layers.length];
+        for (int i = 0; i < layers.length; i++) {
+            layers[i] = SongSnapshot.NoteColumns.of(song.getLayer(i));
+        }
+
+        List<byte[]> chunks = new ArrayList<>((int) chunksCount + 1);
+        chunks.add(null);
+        for (int chunk = 0; chunk < chunksCount; chunk++) {
+            long firstTick = (long) chunk * ticksPerChunk;
+            long endTick = firstTick + ticksPerChunk;
+
+            int layersWithNotes = 0;
+            int[] ends = new int[layers.length];
+            for (int i = 0; i < layers.length; i++) {
+                int end = positions[i];
+                while (end < layers[i].size && layers[i].ticks[end] < endTick) {
+                    end++;
+                }
+                ends[i] = end;
+                if (end > positions[i]) {
+                    layersWithNotes++;
+                }
+            }
+
+            BinaryCodec.Writer section = new BinaryCodec.Writer(16);
+            section.writeVarLong(chunk);
+            section.writeVarLong(layersWithNotes);
+            for (int i = 0; i < layers.length; i++) {
+                if (ends[i] > positions[i]) {
+                    section.writeVarLong(i);
+                    SongSnapshot.writeNotes(section, layers[i], positions[i], ends[i], firstTick);
+                    positions[i] = ends[i];
+                }
+            }
+            chunks.add(section.toByteArray());
+        }
+
+        chunks.set(0, encodeHeader(song, ticksPerChunk, chunks));
+        return chunks;
+    }
+
+    /**
+     * Writes the chunks of the song into the stream one after another. The stream is closed afterwards.
+     * @param song {@link Song} to be written
+     * @param ticksPerChunk number of ticks of every time chunk
+     * @param stream output stream the chunks will be written to
+     * @throws IllegalArgumentException if the number of ticks is not positive or the song would have more than {@link Integer#MAX_VALUE} chunks
+     * @throws UncheckedIOException if any IO operation fails
+     */
+    public static void write(@NotNull Song song, int ticksPerChunk, @NotNull OutputStream stream) {
+        List<byte[]> chunks = encode(song, ticksPerChunk);
+        try (OutputStream output = stream) {
+            for (byte[] chunk : chunks) {
+                output.write(chunk);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("There was an error during the saving operation", ex);
+        }
+    }
+
+    private static byte @NotNull [] encodeHeader(@NotNull Song song, int ticksPerChunk, @NotNull List<byte[]> chunks) {
+        BinaryCodec.Writer section = new BinaryCodec.Writer(256 + chunks.size() * 2);
+        section.writeVarLong(ticksPerChunk);
+        section.writeVarLong(song.getSongLength());
+        section.writeVarLong(chunks.size() - 1);
+        for (int i = 1; i < chunks.size(); i++) {
+            section.writeVarLong(chunks.get(i).length);
+        }
+        BinaryCodec.writeMetadata(section, song.getMetadata());
+        SongSnapshot.writeCustomInstruments(section, song);
+        SongSnapshot.writeTempoChanges(section, song);
+        section.writeVarLong(song.getLayersCount());
+        for (int i = 0; i < song.getLayersCount(); i++) {
+            BinaryCodec.writeLayerProperties(section, song.getLayer(i));
+        }
+
+        byte[] body = section.toByteArray();
+        ByteBuffer header = ByteBuffer.allocate(PREFIX_SIZE + body.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putShort(FORMAT_VERSION);
+        header.putShort((short) 0);
+        header.putInt(PREFIX_SIZE + body.length);
+        header.put(body);
+        return header.array();
+    }
+}
@@ -0,0 +1,20 @@
+package cz.koca2000.nbs4j;
+
+/**
+ * Strategy used by {@link Song#compactLayers(CompactionPolicy)} to pack notes into fewer layers.
+ * Volume and panning of merged layers are folded into their notes, so the song sounds the same.
+ */
+public enum CompactionPolicy {
+    /**
+     * Layers are moved as a whole. Layers whose ranges of ticks from the first to the last note do not overlap share a layer,
+     * so the notes of every original layer stay together. Layers that are not merged are kept unchanged.
+     */
+    WHOLE_LAYERS,
+
+    /**
+     * Every note is moved to the first layer that is free on its tick, so the number of layers equals
+     * the highest number of notes played on a single tick. Notes keep the relative order of their original layers within a tick,
+     * names of the layers are not kept.
+     */
+    INDIVIDUAL_NOTES
+}
@@ -0,0 +1,49 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Result of {@link Song#compactLayers(CompactionPolicy)}.
+ */
+public final class CompactionResult {
+    private final Song song;
+    private final int originalLayersCount;
+
+    CompactionResult(@NotNull Song song, int originalLayersCount) {
+        this.song = song;
+        this.originalLayersCount = originalLayersCount;
+    }
+
+    /**
+     * Returns the song with compacted layers.
+     * @return {@link Song}
+     */
+    @NotNull
+    public Song getSong() {
+        return song;
+    }
+
+    /**
+     * Returns the number of layers of the original song.
+     * @return number of layers
+     */
+    public int getOriginalLayersCount() {
+        return originalLayersCount;
+    }
+
+    /**
+     * Returns the number of layers of the compacted song.
+     * @return number of layers
+     */
+    public int getLayersCount() {
+        return song.getLayersCount();
+    }
+
+    /**
+     * Returns how many layers were removed by the compaction.
+     * @return number of layers
+     */
+    public int getSavedLayersCount() {
+        return originalLayersCount - song.getLayersCount();
+    }
+}
@@ -0,0 +1,106 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * 128-bit non-cryptographic hash of the content of a song. Songs with equal notes, layers, tempo changes and custom instruments
+ * have equal hashes regardless of how they were encoded, e.g. in different versions of the NBS format.
+ * The hash is suitable for deduplication and cache keys, not for security.
+ * @see Song#contentHash()
+ */
+public final class ContentHash {
+    private final long high;
+    private final long low;
+
+    ContentHash(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Computes the hash of the song encoded in NBS format without creating the {@link Song}.
+     * The result is equal to {@link Song#contentHash(boolean)} of the song loaded from the same data.
+     * @param stream stream with the song in NBS format
+     * @param includeMetadata whether the metadata and names of layers and custom instruments are included
+     * @return {@link ContentHash}
+     * @throws SongCorruptedException if an error occurred during the decoding
+     */
+    @NotNull
+    public static ContentHash fromStream(@NotNull InputStream stream, boolean includeMetadata) {
+        return NBSReader.readContentHash(stream, includeMetadata);
+    }
+
+    /**
+     * Computes the hash of the song encoded in NBS format without creating the {@link Song}.
+     * The result is equal to {@link Song#contentHash(boolean)} of the song loaded from the same data.
+     * @param data song in NBS format
+     * @param includeMetadata whether the metadata and names of layers and custom instruments are included
+     * @return {@link ContentHash}
+     * @throws SongCorruptedException if an error occurred during the decoding
+     */
+    @NotNull
+    public static ContentHash fromBytes(@NotNull byte[] data, boolean includeMetadata) {
+        return fromStream(new ByteArrayInputStream(data), includeMetadata);
+    }
+
+    /**
+     * Returns the upper 64 bits of the hash.
+     * @return upper bits
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * Returns the lower 64 bits of the hash.
+     * @return lower bits
+     */
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * Returns the hash as 32 hexadecimal digits.
+     * @return hexadecimal string
+     */
+    @NotNull
+    public String toHexString() {
+        return toHex(high) + toHex(low);
+    }
+
+    @NotNull
+    private static String toHex(long value) {
+        String hex = Long.toHexString(value);
+        StringBuilder builder = new StringBuilder(16);
+        for (int i = hex.length(); i < 16; i++) {
+            builder.append('0');
+        }
+        return builder.append(hex).toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ContentHash)) {
+            return false;
+        }
+        ContentHash other = (ContentHash) o;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (low ^ (low >>> 32));
+    }
+
+    @Override
+    @NotNull
+    public String toString() {
+        return toHexString();
+    }
+}
@@ -0,0 +1,228 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming MurmurHash3 (x64, 128-bit) over the canonical form of a song. The canonical form is fed the same way
+ * from a {@link Song} and from the records decoded by {@link NBSReader}, so both produce equal {@link ContentHash}es:
+ * <ol>
+ *     <li>metadata, if included</li>
+ *     <li>number of layers; for each layer its properties followed by its notes in the ascending order of ticks</li>
+ *     <li>initial tempo and the ticks on which the tempo actually changes, tempos rounded to hundredths</li>
+ *     <li>custom instruments except the tempo changer</li>
+ * </ol>
+ * Sections of variable length are terminated by -1, which is not a valid tick.
+ */
+final class ContentHasher {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final long END = -1;
+
+    private final boolean includeMetadata;
+
+    private long h1 = 0;
+    private long h2 = 0;
+    private long pending;
+    private boolean hasPending = false;
+    private long length = 0;
+
+    ContentHasher(boolean includeMetadata) {
+        this.includeMetadata = includeMetadata;
+    }
+
+    /**
+     * Hashes the song with the given metadata, or without metadata if they are null.
+     */
+    @NotNull
+    static ContentHash hash(@NotNull Song song, @Nullable SongMetadata metadata) {
+        ContentHasher hasher = new ContentHasher(metadata != null);
+        if (metadata != null) {
+            hasher.putMetadata(metadata);
+        }
+
+        long keptLayers = 0;
+        for (LayerInSong layer : song.getLayers()) {
+            if (isKept(layer.getName(), layer.getNotes().size())) {
+                keptLayers++;
+            }
+        }
+
+        hasher.putLong(keptLayers);
+        for (LayerInSong layer : song.getLayers()) {
+            if (!isKept(layer.getName(), layer.getNotes().size())) {
+                continue;
+            }
+            hasher.putLayer(layer.getVolume(), layer.getPanning(), layer.getName(), layer.isLocked());
+            SongUtils.forEachNote(layer, (tick, note) -> hasher.putNote(tick, note.getInstrument(), note.isCustomInstrument(),
+                    note.getKey(), note.getVolume(), note.getPanning(), note.getPitch()));
+            hasher.endLayer();
+        }
+
+        hasher.putTempo(song.getTempo(Song.INITIAL_TEMPO_TICK), song.getTempoChanges());
+        hasher.putCustomInstruments(song.getCustomInstruments());
+        return hasher.finish();
+    }
+
+    /**
+     * Returns whether the layer is hashed. Empty layers of the tempo changer are dropped by {@link NBSReader}, so they are not hashed.
+     */
+    static boolean isKept(@Nullable String layerName, int notesCount) {
+        return notesCount > 0 || !CustomInstrument.TEMPO_CHANGER_INSTRUMENT_NAME.equals(layerName);
+    }
+
+    void putMetadata(@NotNull SongMetadata metadata) {
+        if (!includeMetadata) {
+            return;
+        }
+        putString(metadata.getTitle());
+        putString(metadata.getAuthor());
+        putString(metadata.getOriginalAuthor());
+        putString(metadata.getDescription());
+        putString(metadata.getOriginalMidiFileName());
+        putLong(metadata.getTimeSignature());
+        putBoolean(metadata.isLoop());
+        putLong(metadata.getLoopMaxCount());
+        putLong(metadata.getLoopStartTick());
+    }
+
+    void putLayer(int volume, int panning, @Nullable String name, boolean isLocked) {
+        putLong(volume);
+        putLong(panning);
+        if (includeMetadata) {
+            putString(name);
+            putBoolean(isLocked);
+        }
+    }
+
+    void putNote(long tick, int instrument, boolean isCustomInstrument, int key, int volume, int panning, int pitch) {
+        putLong(tick);
+        putLong(((long) instrument << 1) | (isCustomInstrument ? 1 : 0));
+        putLong(((long) key << 48) | ((long) (volume & 0xFFFF) << 32) | (panning & 0xFFFFFFFFL));
+        putLong(pitch);
+    }
+
+    void endLayer() {
+        putLong(END);
+    }
+
+    void putTempo(float initialTempo, @NotNull Map<Long, Float> tempoChanges) {
+        long currentTempo = Math.round(initialTempo * 100d);
+        putLong(currentTempo);
+        for (Map.Entry<Long, Float> entry : tempoChanges.entrySet()) {
+            long tick = entry.getKey();
+            if (tick <= Song.INITIAL_TEMPO_TICK) {
+                continue;
+            }
+            long tempo = Math.round(entry.getValue() * 100d);
+            if (tempo != currentTempo) {
+                putLong(tick);
+                putLong(tempo);
+                currentTempo = tempo;
+            }
+        }
+        putLong(END);
+    }
+
+    void putCustomInstruments(@NotNull List<CustomInstrument> customInstruments) {
+        for (CustomInstrument customInstrument : customInstruments) {
+            if (CustomInstrument.TEMPO_CHANGER_INSTRUMENT_NAME.equals(customInstrument.getName())) {
+                continue;
+            }
+            putString(customInstrument.getFileName());
+            putLong(customInstrument.getKey());
+            putBoolean(customInstrument.shouldPressKey());
+            if (includeMetadata) {
+                putString(customInstrument.getName());
+            }
+        }
+        putLong(END);
+    }
+
+    private void putBoolean(boolean value) {
+        putLong(value ? 1 : 0);
+    }
+
+    private void putString(@Nullable String value) {
+        if (value == null) {
+            value = "";
+        }
+        putLong(value.length());
+        long packed = 0;
+        for (int i = 0; i < value.length(); i++) {
+            packed = (packed << 16) | value.charAt(i);
+            if ((i & 3) == 3) {
+                putLong(packed);
+                packed = 0;
+            }
+        }
+        if ((value.length() & 3) != 0) {
+            putLong(packed);
+        }
+    }
+
+    void putLong(long value) {
+        length += 8;
+        if (!hasPending) {
+            pending = value;
+            hasPending = true;
+            return;
+        }
+        hasPending = false;
+        mixBlock(pending, value);
+    }
+
+    private void mixBlock(long k1, long k2) {
+        h1 ^= mixK1(k1);
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        h2 ^= mixK2(k2);
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb93fe53e3b63L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    @NotNull
+    ContentHash finish() {
+        if (hasPending) {
+            h1 ^= mixK1(pending);
+            hasPending = false;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new ContentHash(h1, h2);
+    }
+}
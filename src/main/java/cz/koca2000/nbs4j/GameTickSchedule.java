@@ -0,0 +1,156 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed assignment of non-empty ticks of a {@link Song} to the ticks of a game loop running at fixed rate,
+ * e.g. 20 ticks per second of a Minecraft server. Every tick of the song is assigned to the game tick nearest
+ * to the time it should be played with all tempo changes applied, so ticks of songs whose tempo does not divide
+ * the game rate are spread evenly and the error never accumulates.
+ * <p>Ticks are stored in a single array, the ticks due in game tick {@code g} are at indices
+ * from {@link #getStartIndex(int) getStartIndex(g)} to {@link #getEndIndex(int) getEndIndex(g)} exclusive.
+ * <pre>{@code
+ * for (int i = schedule.getStartIndex(gameTick); i < schedule.getEndIndex(gameTick); i++) {
+ *     playTick(schedule.getTick(i));
+ * }
+ * }</pre>
+ * Instances are created by {@link Song#quantize(int)} and can be shared by any number of threads.
+ */
+public final class GameTickSchedule {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final int ticksPerSecond;
+    private final long[] ticks;
+    private final int[] offsets;
+
+    GameTickSchedule(@NotNull Song song, int ticksPerSecond) {
+        this.ticksPerSecond = ticksPerSecond;
+        TempoTimeline timeline = song.getTempoTimeline();
+
+        long[] songTicks = new long[16];
+        int[] gameTicks = new int[16];
+        int count = 0;
+        for (long tick = song.getNextNonEmptyTick(-1); tick != -1; tick = song.getNextNonEmptyTick(tick)) {
+            if (count == songTicks.length) {
+                songTicks = Arrays.copyOf(songTicks, count * 2);
+                gameTicks = Arrays.copyOf(gameTicks, count * 2);
+            }
+            songTicks[count] = tick;
+            gameTicks[count] = toGameTick(timeline.getNanosAtTick(tick));
+            count++;
+        }
+
+        int gameTickCount = toGameTick(timeline.getNanosAtTick(song.getSongLength()));
+        if (count > 0) {
+            gameTickCount = Math.max(gameTickCount, gameTicks[count - 1] + 1);
+        }
+
+        // Song ticks are already ordered, so are their game ticks; only the boundaries have to be found
+        ticks = Arrays.copyOf(songTicks, count);
+        offsets = new int[gameTickCount + 1];
+        int index = 0;
+        for (int gameTick = 0; gameTick < gameTickCount; gameTick++) {
+            offsets[gameTick] = index;
+            while (index < count && gameTicks[index] == gameTick) {
+                index++;
+            }
+        }
+        offsets[gameTickCount] = count;
+    }
+
+    private int toGameTick(long nanos) {
+        // Split into whole seconds to prevent the overflow of the multiplication
+        long seconds = nanos / NANOS_PER_SECOND;
+        long remainder = nanos % NANOS_PER_SECOND;
+        long gameTick = seconds * ticksPerSecond + (remainder * ticksPerSecond + NANOS_PER_SECOND / 2) / NANOS_PER_SECOND;
+        if (gameTick >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Song is too long to be quantized to " + ticksPerSecond + " ticks per second.");
+        }
+        return (int) gameTick;
+    }
+
+    long estimateRetainedSize() {
+        return MemoryLayout.object(2, 4) + MemoryLayout.array(ticks.length, 8) + MemoryLayout.array(offsets.length, 4);
+    }
+
+    /**
+     * Returns the rate of the game loop this schedule was created for.
+     * @return game ticks per second
+     */
+    public int getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    /**
+     * Returns the number of game ticks the whole song takes.
+     * @return number of game ticks
+     */
+    public int getGameTickCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the total number of scheduled song ticks.
+     * @return number of song ticks
+     */
+    public int size() {
+        return ticks.length;
+    }
+
+    /**
+     * Returns the index of the first song tick due in the given game tick.
+     * @param gameTick game tick
+     * @return index to be used with {@link #getTick(int)}
+     * @throws IndexOutOfBoundsException if the game tick is not in range [0; {@link #getGameTickCount()}]
+     */
+    public int getStartIndex(int gameTick) {
+        return offsets[gameTick];
+    }
+
+    /**
+     * Returns the index after the last song tick due in the given game tick.
+     * @param gameTick game tick
+     * @return index to be used with {@link #getTick(int)}
+     * @throws IndexOutOfBoundsException if the game tick is not in range [0; {@link #getGameTickCount()})
+     */
+    public int getEndIndex(int gameTick) {
+        return offsets[gameTick + 1];
+    }
+
+    /**
+     * Returns the song tick on the given index.
+     * @param index index of the song tick
+     * @return non-empty tick of the song
+     */
+    public long getTick(int index) {
+        return ticks[index];
+    }
+
+    /**
+     * Returns the game tick in which the given song tick or the first non-empty tick after it is played.
+     * @param tick tick of the song
+     * @return game tick or {@link #getGameTickCount()} if there is no such tick
+     */
+    public int getGameTick(long tick) {
+        int index = Arrays.binarySearch(ticks, tick);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        if (index >= ticks.length) {
+            return getGameTickCount();
+        }
+        int low = 0;
+        int high = getGameTickCount();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (offsets[middle + 1] <= index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -4,7 +4,6 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
@@ -69,6 +68,29 @@ public interface Layer {
     @NotNull
     Map<Long, Note> getNotes();
 
+    /**
+     * Returns the estimated number of bytes of heap retained by this layer including its notes.
+     * Notes shared with other layers are included.
+     *
+     * @return number of bytes
+     */
+    default long estimateRetainedSize() {
+        return MemoryLayout.layerObject(this) + MemoryLayout.layerNotes(this) + MemoryLayout.layerIndex(this);
+    }
+
+    /**
+     * Applies the transformer to all notes of this layer. Notes of large layers are transformed in parallel.
+     *
+     * @param layerIndex index of the layer passed to the transformer
+     * @param transformer {@link NoteTransformer} called for every note
+     * @return new {@link Layer} with the transformed notes or this layer if no note was changed
+     * @see Song#transform(NoteTransformer)
+     */
+    @NotNull
+    default Layer transform(int layerIndex, @NotNull NoteTransformer transformer) {
+        return NoteTransformation.transform(this, layerIndex, transformer);
+    }
+
     @NotNull
     static Builder builder() {
         return builder(false);
@@ -93,7 +115,7 @@ public interface Layer {
         private final boolean isStrict;
         private final InteractiveReplacer replacer = new InteractiveReplacer();
 
-        final HashMap<Long, Note> notes = new HashMap<>();
+        final TickMap.Editor<Note> notes;
         String name = "";
         int volume = 100;
         int panning = 0;
@@ -101,17 +123,28 @@ public interface Layer {
 
         private Builder(boolean isStrict) {
             this.isStrict = isStrict;
+            notes = TickMap.<Note>empty().edit();
         }
 
         private Builder(@NotNull Layer layer, boolean isStrict) {
-            this(isStrict);
+            this.isStrict = isStrict;
             name = layer.getName();
             volume = layer.getVolume();
             panning = layer.getPanning();
             isLocked = layer.isLocked();
 
-            for (Map.Entry<Long, Note> entry : layer.getNotes().entrySet()) {
-                note(entry.getKey(), entry.getValue());
+            if (layer instanceof LayerInSong) {
+                layer = ((LayerInSong) layer).getLayerData();
+            }
+
+            if (layer instanceof LayerImpl) {
+                // Notes are shared with the original layer until they are modified
+                notes = ((LayerImpl) layer).getNoteMap().edit();
+            } else {
+                notes = TickMap.<Note>empty().edit();
+                for (Map.Entry<Long, Note> entry : layer.getNotes().entrySet()) {
+                    note(entry.getKey(), entry.getValue());
+                }
             }
         }
 
@@ -207,37 +240,72 @@ public interface Layer {
          */
         @NotNull
         public Builder note(long tick, @Nullable Note note, boolean allowOverwrite) {
-            tick = normalizeRangeOrThrow(tick, 0L, Long.MAX_VALUE, "Tick");
-            if (!allowOverwrite && notes.containsKey(tick)) {
+            tick = normalizeTickOrThrow(tick);
+            if (!allowOverwrite && notes.get(tick) != null) {
                 if (isStrict) {
                     throw new IllegalStateException("Attempted to overwrite a note when overwrite is not allowed.");
                 }
                 return this;
             }
 
-            if (note == null) {
-                notes.remove(tick);
-            } else {
-                notes.put(tick, note);
+            notes.put(tick, note);
+
+            return this;
+        }
+
+        /**
+         * Sets the notes at the given ticks of this layer. Same as calling {@link #note(long, Note)} for every pair of tick and note.
+         *
+         * @param ticks Ticks of the notes
+         * @param notes {@link Note}s to be added to the layer. If a note is null, there will be no note at the corresponding tick.
+         * @throws IllegalArgumentException if the arrays have different length
+         *                                  or if the {@link Builder} is in strict mode and any {@code tick} value is out of range [0, {@link Long#MAX_VALUE}] inclusive.
+         * @return this instance of {@link Builder}
+         */
+        @NotNull
+        public Builder notes(long @NotNull [] ticks, @Nullable Note @NotNull [] notes) {
+            if (ticks.length != notes.length) {
+                throw new IllegalArgumentException("Number of ticks must be the same as number of notes.");
             }
 
+            for (int i = 0; i < ticks.length; i++) {
+                this.notes.put(normalizeTickOrThrow(ticks[i]), notes[i]);
+            }
             return this;
         }
 
-        private <T extends Comparable<T>> T normalizeRangeOrThrow(T value, T min, T max, String parameterDisplayName) {
-            if (isStrict && (value.compareTo(min) < 0 || value.compareTo(max) > 0)) {
-                throw new IllegalArgumentException(parameterDisplayName + " must be in range [" + min + "; " + max + "] inclusive.");
+        /**
+         * Sets the notes at the given ticks of this layer. Same as calling {@link #note(long, Note)} for every entry of the map.
+         *
+         * @param notes {@link Map} of {@link Note}s indexed by their tick. If a note is null, there will be no note at the given tick.
+         * @throws IllegalArgumentException if the {@link Builder} is in strict mode and any {@code tick} value is out of range [0, {@link Long#MAX_VALUE}] inclusive.
+         * @return this instance of {@link Builder}
+         */
+        @NotNull
+        public Builder notes(@NotNull Map<Long, ? extends Note> notes) {
+            for (Map.Entry<Long, ? extends Note> entry : notes.entrySet()) {
+                this.notes.put(normalizeTickOrThrow(entry.getKey()), entry.getValue());
             }
+            return this;
+        }
 
-            if (value.compareTo(min) < 0) {
-                return min;
+        private int normalizeRangeOrThrow(int value, int min, int max, String parameterDisplayName) {
+            if (isStrict && (value < min || value > max)) {
+                throw new IllegalArgumentException(parameterDisplayName + " must be in range [" + min + "; " + max + "] inclusive.");
             }
 
-            if (value.compareTo(max) > 0) {
-                return max;
+            return Math.min(Math.max(value, min), max);
+        }
+
+        private long normalizeTickOrThrow(long tick) {
+            if (tick < 0) {
+                if (isStrict) {
+                    throw new IllegalArgumentException("Tick must be in range [0; " + Long.MAX_VALUE + "] inclusive.");
+                }
+                return 0;
             }
 
-            return value;
+            return tick;
         }
 
         /**
@@ -273,18 +341,14 @@ public interface Layer {
              */
             @NotNull
             public Builder note(long tick, @NotNull NoteReplacer noteReplacer) {
-                tick = normalizeRangeOrThrow(tick, 0L, Long.MAX_VALUE, "Tick");
+                tick = normalizeTickOrThrow(tick);
 
                 Note originalNote = notes.get(tick);
                 Note.Builder noteBuilder = originalNote == null ? Note.builder(isStrict) : Note.builder(originalNote, isStrict);
 
                 Note modifiedNote = noteReplacer.replace(noteBuilder, originalNote);
 
-                if (modifiedNote == null) {
-                    notes.remove(tick);
-                } else {
-                    notes.put(tick, modifiedNote);
-                }
+                notes.put(tick, modifiedNote);
 
                 return Builder.this;
             }
@@ -0,0 +1,177 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Packs notes of a {@link Song} into fewer layers according to a {@link CompactionPolicy}.
+ */
+final class LayerCompaction {
+
+    private LayerCompaction() {
+    }
+
+    @NotNull
+    static CompactionResult compact(@NotNull Song song, @NotNull CompactionPolicy policy) {
+        List<Layer> layers;
+        switch (policy) {
+            case WHOLE_LAYERS:
+                layers = compactWholeLayers(song);
+                break;
+            case INDIVIDUAL_NOTES:
+                layers = compactIndividualNotes(song);
+                break;
+            default:
+                throw new IncompatibleClassChangeError("Unknown CompactionPolicy");
+        }
+
+        if (layers == null) {
+            return new CompactionResult(song, song.getLayersCount());
+        }
+        Song compactedSong = Song.builder(song)
+                .setLayers(layers)
+                .length(song.getSongLength())
+                .build();
+        return new CompactionResult(compactedSong, song.getLayersCount());
+    }
+
+    /**
+     * Assigns layers to groups by the greedy coloring of the interval graph of their tick ranges.
+     * Layers sorted by their first tick take the group whose last tick ends first, which gives the minimal number of groups.
+     * @return compacted layers or null if no layer can be removed
+     */
+    private static List<Layer> compactWholeLayers(@NotNull Song song) {
+        int layersCount = song.getLayersCount();
+        long[] firstTicks = new long[layersCount];
+        long[] lastTicks = new long[layersCount];
+        List<Integer> order = new ArrayList<>(layersCount);
+        for (int i = 0; i < layersCount; i++) {
+            Layer layer = song.getLayer(i).getLayerData();
+            if (layer.isEmpty()) {
+                continue;
+            }
+            long[] range = {Long.MAX_VALUE, -1};
+            if (layer instanceof LayerImpl) {
+                TickMap<Note> notes = ((LayerImpl) layer).getNoteMap();
+                range[0] = notes.firstKey();
+                range[1] = notes.lastKey();
+            } else {
+                SongUtils.forEachNote(layer, (tick, note) -> {
+                    range[0] = Math.min(range[0], tick);
+                    range[1] = Math.max(range[1], tick);
+                });
+            }
+            firstTicks[i] = range[0];
+            lastTicks[i] = range[1];
+            order.add(i);
+        }
+        order.sort((a, b) -> Long.compare(firstTicks[a], firstTicks[b]));
+
+        // {last tick of the group, group}
+        PriorityQueue<long[]> groupEnds = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        int[] groups = new int[layersCount];
+        Arrays.fill(groups, -1);
+        int groupsCount = 0;
+        for (int layer : order) {
+            long[] groupEnd = groupEnds.peek();
+            if (groupEnd != null && groupEnd[0] < firstTicks[layer]) {
+                groupEnds.poll();
+                groupEnd[0] = lastTicks[layer];
+            } else {
+                groupEnd = new long[]{lastTicks[layer], groupsCount++};
+            }
+            groupEnds.add(groupEnd);
+            groups[layer] = (int) groupEnd[1];
+        }
+
+        if (groupsCount == layersCount) {
+            return null;
+        }
+
+        // Groups are ordered by their first original layer
+        List<List<Layer>> members = new ArrayList<>(groupsCount);
+        int[] groupPositions = new int[groupsCount];
+        Arrays.fill(groupPositions, -1);
+        for (int i = 0; i < layersCount; i++) {
+            int group = groups[i];
+            if (group == -1) {
+                continue;
+            }
+            if (groupPositions[group] == -1) {
+                groupPositions[group] = members.size();
+                members.add(new ArrayList<>());
+            }
+            members.get(groupPositions[group]).add(song.getLayer(i).getLayerData());
+        }
+
+        List<Layer> layers = new ArrayList<>(groupsCount);
+        for (List<Layer> group : members) {
+            layers.add(group.size() == 1 ? group.get(0) : mergeLayers(group));
+        }
+        return layers;
+    }
+
+    @NotNull
+    private static Layer mergeLayers(@NotNull List<Layer> group) {
+        Layer firstLayer = group.get(0);
+        boolean isFolded = false;
+        for (Layer layer : group) {
+            if (layer.getVolume() != firstLayer.getVolume() || layer.getPanning() != firstLayer.getPanning()) {
+                isFolded = true;
+                break;
+            }
+        }
+
+        Layer.Builder mergedLayer = Layer.builder()
+                .name(firstLayer.getName())
+                .locked(firstLayer.isLocked());
+        if (!isFolded) {
+            mergedLayer.volume(firstLayer.getVolume())
+                    .panning(firstLayer.getPanning());
+        }
+        for (Layer layer : group) {
+            boolean foldLayer = isFolded;
+            SongUtils.forEachNote(layer, (tick, note) -> mergedLayer.note(tick, foldLayer ? SongUtils.applyLayerProperties(layer, note) : note));
+        }
+        return mergedLayer.build();
+    }
+
+    /**
+     * Moves every note to the first free layer on its tick using the events of the {@link PlaybackPlan}, which are ordered by ticks and layers.
+     * @return compacted layers or null if no layer can be removed
+     */
+    private static List<Layer> compactIndividualNotes(@NotNull Song song) {
+        PlaybackPlan plan = song.compile();
+        List<Layer.Builder> builders = new ArrayList<>();
+        long previousTick = -1;
+        int slot = 0;
+        for (int event = 0; event < plan.size(); event++) {
+            long tick = plan.getTick(event);
+            if (tick != previousTick) {
+                previousTick = tick;
+                slot = 0;
+            }
+            if (slot == builders.size()) {
+                builders.add(Layer.builder());
+            }
+
+            Layer layer = song.getLayer(plan.getLayer(event)).getLayerData();
+            Note note = layer.getNote(tick);
+            builders.get(slot++).note(tick, SongUtils.applyLayerProperties(layer, note));
+        }
+
+        if (builders.size() == song.getLayersCount()) {
+            return null;
+        }
+
+        List<Layer> layers = new ArrayList<>(builders.size());
+        for (Layer.Builder builder : builders) {
+            layers.add(builder.build());
+        }
+        return layers;
+    }
+}
@@ -3,29 +3,30 @@ package cz.koca2000.nbs4j;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 
 final class LayerImpl implements Layer {
 
-    private final Map<Long, Note> notes;
+    private final TickMap<Note> notes;
 
     private final String name;
     private final int volume;
     private final int panning;
     private final boolean isLocked;
 
+    private volatile LayerStatistics statistics;
+
     /**
-     * Makes a copy of the layer and its notes. Copy is not frozen.
-     * @param builder layer to be copied
+     * Creates the layer from the state of the builder. Notes that were not modified in the builder
+     * are shared with the layer the builder was initialized with.
+     * @param builder builder of the layer
      */
     LayerImpl(@NotNull Builder builder){
         name = builder.name;
         volume = builder.volume;
         panning = builder.panning;
         isLocked = builder.isLocked;
-        this.notes = Collections.unmodifiableMap(new HashMap<>(builder.notes));
+        this.notes = builder.notes.build();
     }
 
     @Override
@@ -63,6 +64,25 @@ final class LayerImpl implements Layer {
     @Override
     @NotNull
     public Map<Long, Note> getNotes(){
+        return notes.asMap();
+    }
+
+    @NotNull
+    TickMap<Note> getNoteMap() {
         return notes;
     }
+
+    /**
+     * Returns statistics of notes of this layer. Statistics are computed on the first call.
+     * @return {@link LayerStatistics}
+     */
+    @NotNull
+    LayerStatistics getStatistics() {
+        LayerStatistics result = statistics;
+        if (result == null) {
+            result = LayerStatistics.of(notes);
+            statistics = result;
+        }
+        return result;
+    }
 }
@@ -4,9 +4,11 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 public final class LayerInSong implements Layer {
 
@@ -20,13 +22,7 @@ public final class LayerInSong implements Layer {
             layer = ((LayerInSong) layer).getLayerData();
         }
         this.layer = layer;
-
-        Map<Long, NoteInSong> notesInLayer = new HashMap<>();
-        for (Map.Entry<Long, Note> noteEntry : layer.getNotes().entrySet()){
-            notesInLayer.put(noteEntry.getKey(), new NoteInSong(this, noteEntry.getValue()));
-        }
-
-        notes = Collections.unmodifiableMap(notesInLayer);
+        notes = new NotesInSongView();
     }
 
     @Override
@@ -55,10 +51,18 @@ public final class LayerInSong implements Layer {
         return layer.isEmpty();
     }
 
+    /**
+     * Returns note on specific tick on this layer with reference to this layer.
+     * The {@link NoteInSong} is created on every call, instances for the same note are equal.
+     *
+     * @param tick tick of the note
+     * @return {@link NoteInSong} if there is a note on the give tick; otherwise, null
+     */
     @Override
     @Nullable
     public NoteInSong getNote(long tick) {
-        return notes.get(tick);
+        Note note = layer.getNote(tick);
+        return note != null ? new NoteInSong(this, note) : null;
     }
 
     @Override
@@ -70,6 +74,8 @@ public final class LayerInSong implements Layer {
 
     /**
      * Returns unmodifiable {@link Map} of notes with reference to this layer indexed by their tick.
+     * The {@link NoteInSong} instances are created when they are accessed, so the notes are not duplicated for every song
+     * that shares this layer.
      *
      * @return unmodifiable {@link Map}
      */
@@ -97,4 +103,56 @@ public final class LayerInSong implements Layer {
     public Layer getLayerData() {
         return layer;
     }
+
+    private final class NotesInSongView extends AbstractMap<Long, NoteInSong> {
+
+        @Override
+        public int size() {
+            return layer.getNotes().size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return layer.isEmpty();
+        }
+
+        @Override
+        public NoteInSong get(Object key) {
+            return key instanceof Long ? getNote((Long) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return layer.getNotes().containsKey(key);
+        }
+
+        @Override
+        @NotNull
+        public Set<Entry<Long, NoteInSong>> entrySet() {
+            return new AbstractSet<Entry<Long, NoteInSong>>() {
+                @Override
+                @NotNull
+                public Iterator<Entry<Long, NoteInSong>> iterator() {
+                    Iterator<Entry<Long, Note>> iterator = layer.getNotes().entrySet().iterator();
+                    return new Iterator<Entry<Long, NoteInSong>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Entry<Long, NoteInSong> next() {
+                            Entry<Long, Note> entry = iterator.next();
+                            return new SimpleImmutableEntry<>(entry.getKey(), new NoteInSong(LayerInSong.this, entry.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return NotesInSongView.this.size();
+                }
+            };
+        }
+    }
 }
@@ -0,0 +1,93 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+
+/**
+ * Summary of notes of a single layer that is used to compute statistics of the whole song without rescanning the notes.
+ */
+final class LayerStatistics {
+
+    static final LayerStatistics EMPTY = new LayerStatistics(-1, 0, false);
+
+    private final long lastTick;
+    private final int nonCustomInstrumentsCount;
+    private final boolean hasStereoNotes;
+
+    private LayerStatistics(long lastTick, int nonCustomInstrumentsCount, boolean hasStereoNotes) {
+        this.lastTick = lastTick;
+        this.nonCustomInstrumentsCount = nonCustomInstrumentsCount;
+        this.hasStereoNotes = hasStereoNotes;
+    }
+
+    @NotNull
+    static LayerStatistics of(@NotNull Layer layer) {
+        if (layer instanceof LayerInSong) {
+            layer = ((LayerInSong) layer).getLayerData();
+        }
+        if (layer instanceof LayerImpl) {
+            return ((LayerImpl) layer).getStatistics();
+        }
+
+        Collector collector = new Collector();
+        for (Map.Entry<Long, Note> entry : layer.getNotes().entrySet()) {
+            collector.accept(entry.getKey(), entry.getValue());
+        }
+        return collector.build();
+    }
+
+    @NotNull
+    static LayerStatistics of(@NotNull TickMap<Note> notes) {
+        if (notes.isEmpty()) {
+            return EMPTY;
+        }
+        Collector collector = new Collector();
+        notes.forEach(collector);
+        return collector.build();
+    }
+
+    /**
+     * Returns the last tick containing a note.
+     * @return tick or -1 if there is no note
+     */
+    long getLastTick() {
+        return lastTick;
+    }
+
+    /**
+     * Returns the number of non-custom instruments that have to be available to play all notes.
+     * @return highest non-custom instrument index increased by one
+     */
+    int getNonCustomInstrumentsCount() {
+        return nonCustomInstrumentsCount;
+    }
+
+    boolean hasStereoNotes() {
+        return hasStereoNotes;
+    }
+
+    private static final class Collector implements TickMap.TickConsumer<Note> {
+        private long lastTick = -1;
+        private int nonCustomInstrumentsCount = 0;
+        private boolean hasStereoNotes = false;
+
+        @Override
+        public void accept(long tick, Note note) {
+            if (lastTick < tick) {
+                lastTick = tick;
+            }
+
+            if (!note.isCustomInstrument() && nonCustomInstrumentsCount <= note.getInstrument()) {
+                nonCustomInstrumentsCount = note.getInstrument() + 1;
+            }
+
+            hasStereoNotes |= note.getPanning() != Note.NEUTRAL_PANNING;
+        }
+
+        @NotNull
+        private LayerStatistics build() {
+            return new LayerStatistics(lastTick, nonCustomInstrumentsCount, hasStereoNotes);
+        }
+    }
+}
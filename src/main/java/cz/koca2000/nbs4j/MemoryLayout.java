@@ -0,0 +1,127 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+
+/**
+ * Conservative constants of the object layout of 64-bit HotSpot used to estimate retained sizes.
+ * Compressed references are assumed when the maximum heap is below 32 GiB, as the JVM enables them by default then.
+ */
+final class MemoryLayout {
+    static final boolean COMPRESSED_REFERENCES = Runtime.getRuntime().maxMemory() < 32L * 1024 * 1024 * 1024;
+    static final int OBJECT_HEADER = COMPRESSED_REFERENCES ? 12 : 16;
+    static final int ARRAY_HEADER = COMPRESSED_REFERENCES ? 16 : 24;
+    static final int REFERENCE = COMPRESSED_REFERENCES ? 4 : 8;
+
+    private static final int ALIGNMENT = 8;
+
+    private MemoryLayout() {
+    }
+
+    static long align(long size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * Returns the size of an object with the given fields.
+     * @param references number of reference fields
+     * @param primitiveBytes number of bytes of primitive fields
+     * @return number of bytes
+     */
+    static long object(int references, int primitiveBytes) {
+        return align(OBJECT_HEADER + (long) references * REFERENCE + primitiveBytes);
+    }
+
+    static long array(int length, int elementBytes) {
+        return align(ARRAY_HEADER + (long) length * elementBytes);
+    }
+
+    static long referenceArray(int length) {
+        return array(length, REFERENCE);
+    }
+
+    /**
+     * Returns the size of the string. Two bytes per character are assumed, as strings are not compressed on Java 8.
+     * @param string string
+     * @return number of bytes
+     */
+    static long string(@Nullable String string) {
+        if (string == null) {
+            return 0;
+        }
+        return object(1, 8) + array(string.length(), 2);
+    }
+
+    static long treeMapEntry() {
+        return object(5, 1);
+    }
+
+    /**
+     * Returns the size of an {@link java.util.ArrayList} with exactly fitting backing array.
+     * @param size number of elements
+     * @return number of bytes
+     */
+    static long arrayList(int size) {
+        return object(1, 8) + referenceArray(size);
+    }
+
+    static long note(@NotNull Note note) {
+        if (note instanceof NoteInSong) {
+            return object(2, 0) + note(((NoteInSong) note).getNoteData());
+        }
+        // NoteImpl: five ints and a byte
+        return object(0, 21);
+    }
+
+    /**
+     * Estimates the bytes retained by the layer object itself and its name.
+     */
+    static long layerObject(@NotNull Layer layer) {
+        long size = 0;
+        if (layer instanceof LayerInSong) {
+            // Wrapper and its lazy view of notes
+            size += object(3, 0) + object(2, 0);
+            layer = ((LayerInSong) layer).getLayerData();
+        }
+        return size + object(3, 9) + string(layer.getName());
+    }
+
+    /**
+     * Estimates the bytes retained by the notes of the layer.
+     */
+    static long layerNotes(@NotNull Layer layer) {
+        layer = unwrap(layer);
+        long[] size = new long[1];
+        if (layer instanceof LayerImpl) {
+            ((LayerImpl) layer).getNoteMap().forEach((tick, note) -> size[0] += note(note));
+        } else {
+            for (Note note : layer.getNotes().values()) {
+                size[0] += note(note);
+            }
+        }
+        return size[0];
+    }
+
+    /**
+     * Estimates the bytes retained by the structure indexing the notes of the layer by ticks.
+     */
+    static long layerIndex(@NotNull Layer layer) {
+        layer = unwrap(layer);
+        if (layer instanceof LayerImpl) {
+            return ((LayerImpl) layer).getNoteMap().estimateNodesSize();
+        }
+        // Unknown implementations are assumed to be a TreeMap with boxed keys
+        return treeMap(layer.getNotes(), object(0, 8));
+    }
+
+    static long treeMap(@NotNull Map<?, ?> map, long entryPayload) {
+        return object(3, 8) + map.size() * (treeMapEntry() + entryPayload);
+    }
+
+    @NotNull
+    private static Layer unwrap(@NotNull Layer layer) {
+        return layer instanceof LayerInSong ? ((LayerInSong) layer).getLayerData() : layer;
+    }
+}
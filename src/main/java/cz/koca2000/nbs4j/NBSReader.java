@@ -7,8 +7,10 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 class NBSReader {
 
@@ -22,16 +24,36 @@ class NBSReader {
         try {
             DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(stream));
 
-            HeaderData header = readHeader(song, dataInputStream);
+            HeaderData header = readHeader(dataInputStream);
+            song.length(header.length);
 
             List<Layer.Builder> layerBuilders = initializeLayerBuilders(dataInputStream);
             int layersCount = layerBuilders.size();
 
-            readMetadata(song, header, dataInputStream);
+            song.metadata(readMetadata(header, dataInputStream));
+            song.initialTempo(header.initialTempo);
 
-            readNotes(header, layerBuilders, dataInputStream);
+            readNotes(header, (tick, layer, instrument, isCustomInstrument, key, volume, panning, pitch) -> {
+                if (layer >= layerBuilders.size()) {
+                    layerBuilders.add(Layer.builder());
+                }
 
-            readLayers(header, layerBuilders, layersCount, dataInputStream);
+                layerBuilders.get(layer)
+                        .note(tick, Note.builder()
+                                .instrument(instrument, isCustomInstrument)
+                                .key(key)
+                                .volume(volume)
+                                .panning(panning)
+                                .pitch(pitch)
+                                .build()
+                        );
+            }, dataInputStream);
+
+            readLayers(header, layersCount, (index, name, isLocked, volume, panning) -> layerBuilders.get(index)
+                    .name(name)
+                    .locked(isLocked)
+                    .volume(volume)
+                    .panning(panning), dataInputStream);
 
             List<CustomInstrument> customInstruments = readCustomInstruments(dataInputStream);
 
@@ -51,6 +73,48 @@ class NBSReader {
         return song.build();
     }
 
+    /**
+     * Computes the {@link ContentHash} of the song without creating it. Notes are decoded into primitive arrays
+     * and the same normalization as by {@link #readSong(InputStream)} is applied to them.
+     */
+    @NotNull
+    public static ContentHash readContentHash(@NotNull InputStream stream, boolean includeMetadata) {
+        try {
+            DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(stream));
+
+            HeaderData header = readHeader(dataInputStream);
+            int layersCount = readShort(dataInputStream);
+            SongMetadata metadata = readMetadata(header, dataInputStream);
+
+            NoteRecords notes = new NoteRecords(layersCount);
+            readNotes(header, notes, dataInputStream);
+
+            LayerRecords layers = new LayerRecords(notes.layersCount);
+            readLayers(header, layersCount, layers, dataInputStream);
+
+            List<CustomInstrument> customInstruments = readCustomInstruments(dataInputStream);
+
+            ContentHasher hasher = new ContentHasher(includeMetadata);
+            hasher.putMetadata(metadata);
+            notes.putTo(hasher, layers, header.initialTempo, SongUtils.findTempoChangerInstrumentIndex(customInstruments));
+            hasher.putCustomInstruments(customInstruments);
+            return hasher.finish();
+        } catch (Exception e) {
+            throw new SongCorruptedException(e);
+        }
+    }
+
+    /**
+     * Returns the version of the format of the given song data without decoding it.
+     * @return version number or 0 if the data use the format without version
+     */
+    public static int readVersion(@NotNull byte[] data) {
+        if (data.length < 3 || data[0] != 0 || data[1] != 0) {
+            return 0;
+        }
+        return data[2];
+    }
+
     private static short readShort(@NotNull DataInputStream dataInputStream) throws IOException {
         int byte1 = dataInputStream.readUnsignedByte();
         int byte2 = dataInputStream.readUnsignedByte();
@@ -80,7 +144,7 @@ class NBSReader {
     }
 
     @NotNull
-    private static HeaderData readHeader(@NotNull Song.Builder song, @NotNull DataInputStream stream) throws IOException {
+    private static HeaderData readHeader(@NotNull DataInputStream stream) throws IOException {
         HeaderData data = new HeaderData();
 
         short length = readShort(stream);
@@ -89,10 +153,10 @@ class NBSReader {
             data.firstCustomInstrumentIndex = stream.readByte();
 
             if (data.version >= 3) // Until nbs 3 there wasn't length specified in the file
-                song.length(readShort(stream));
+                data.length = readShort(stream);
         }
         else
-            song.length(length);
+            data.length = length;
 
         return data;
     }
@@ -107,14 +171,15 @@ class NBSReader {
         return layers;
     }
 
-    private static void readMetadata(@NotNull Song.Builder song, @NotNull HeaderData header, @NotNull DataInputStream stream) throws IOException {
+    @NotNull
+    private static SongMetadata readMetadata(@NotNull HeaderData header, @NotNull DataInputStream stream) throws IOException {
         SongMetadata metadata = new SongMetadata();
 
         metadata.setTitle(readString(stream))
                 .setAuthor(readString(stream))
                 .setOriginalAuthor(readString(stream))
                 .setDescription(readString(stream));
-        song.initialTempo(readShort(stream) / 100f);
+        header.initialTempo = readShort(stream) / 100f;
         metadata.setAutoSave(stream.readBoolean())
                 .setAutoSaveDuration(stream.readByte())
                 .setTimeSignature(stream.readByte())
@@ -129,10 +194,10 @@ class NBSReader {
                     .setLoopMaxCount(stream.readByte())
                     .setLoopStartTick(readShort(stream));
         }
-        song.metadata(metadata);
+        return metadata;
     }
 
-    private static void readNotes(@NotNull HeaderData header, @NotNull List<Layer.Builder> layers, @NotNull DataInputStream stream) throws IOException {
+    private static void readNotes(@NotNull HeaderData header, @NotNull NoteConsumer consumer, @NotNull DataInputStream stream) throws IOException {
         short tick = -1;
         while (true) {
             short jumpTicks = readShort(stream); // jumps till next tick
@@ -150,12 +215,12 @@ class NBSReader {
                 }
                 layer += jumpLayers;
 
-                readNote(header, tick, layer, layers, stream);
+                readNote(header, tick, layer, consumer, stream);
             }
         }
     }
 
-    private static void readNote(@NotNull HeaderData header, short tick, short layer, @NotNull List<Layer.Builder> layers, @NotNull DataInputStream stream) throws IOException {
+    private static void readNote(@NotNull HeaderData header, short tick, short layer, @NotNull NoteConsumer consumer, @NotNull DataInputStream stream) throws IOException {
         byte instrument = stream.readByte();
 
         int instrumentId;
@@ -182,33 +247,23 @@ class NBSReader {
             pitch = 0;
         }
 
-        if (layer >= layers.size()) {
-            layers.add(Layer.builder());
-        }
-
-        layers.get(layer)
-                .note(tick, Note.builder()
-                        .instrument(instrumentId, isCustomInstrument)
-                        .key(key)
-                        .volume(volume)
-                        .panning(panning)
-                        .pitch(pitch)
-                        .build()
-                );
+        consumer.accept(tick, layer, instrumentId, isCustomInstrument, key, volume, panning, pitch);
     }
 
-    private static void readLayers(@NotNull HeaderData header, @NotNull List<Layer.Builder> layers, int layersCount, @NotNull DataInputStream stream) throws IOException {
+    private static void readLayers(@NotNull HeaderData header, int layersCount, @NotNull LayerConsumer consumer, @NotNull DataInputStream stream) throws IOException {
         for (int i = 0; i < layersCount; i++) {
-            Layer.Builder layer = layers.get(i);
-            layer.name(readString(stream));
+            String name = readString(stream);
+            boolean isLocked = false;
             if (header.version >= 4) {
-                layer.locked(stream.readByte() == 1);
+                isLocked = stream.readByte() == 1;
             }
 
-            layer.volume(stream.readByte());
+            byte volume = stream.readByte();
+            int panning = 0;
             if (header.version >= 2) {
-                layer.panning(100 - stream.readUnsignedByte()); // 0 is 2 blocks right in nbs format, we want -100 to be left and 100 to be right
+                panning = 100 - stream.readUnsignedByte(); // 0 is 2 blocks right in nbs format, we want -100 to be left and 100 to be right
             }
+            consumer.accept(i, name, isLocked, volume, panning);
         }
     }
 
@@ -271,17 +326,185 @@ class NBSReader {
     }
 
     private static void addLayersToSong(@NotNull Song.Builder song, @NotNull List<Layer> layers) {
+        List<Layer> songLayers = new ArrayList<>(layers.size());
         for (Layer layer : layers) {
-            if (CustomInstrument.TEMPO_CHANGER_INSTRUMENT_NAME.equals(layer.getName()) && layer.getNotes().isEmpty()) {
+            if (!ContentHasher.isKept(layer.getName(), layer.getNotes().size())) {
                 continue;
             }
-            song.layer(layer);
+            songLayers.add(layer);
         }
+        song.layers(songLayers);
     }
 
     private static class HeaderData{
         private int version = 0;
         private int firstCustomInstrumentIndex = 10; //Backward compatibility - most of the songs with old structure are from 1.12
+        private long length = 0;
+        private float initialTempo = Song.DEFAULT_TEMPO;
+    }
+
+    private interface NoteConsumer {
+        void accept(short tick, short layer, int instrument, boolean isCustomInstrument, byte key, byte volume, int panning, short pitch);
+    }
+
+    private interface LayerConsumer {
+        void accept(int index, @NotNull String name, boolean isLocked, byte volume, int panning);
+    }
+
+    /**
+     * Properties of the layers decoded for {@link #readContentHash(InputStream, boolean)}.
+     * Layers not described in the file keep the defaults of {@link Layer.Builder}.
+     */
+    private static final class LayerRecords implements LayerConsumer {
+        private final String[] names;
+        private final boolean[] locked;
+        private final int[] volumes;
+        private final int[] pannings;
+
+        private LayerRecords(int count) {
+            names = new String[count];
+            locked = new boolean[count];
+            volumes = new int[count];
+            pannings = new int[count];
+            Arrays.fill(names, "");
+            Arrays.fill(volumes, Layer.MAXIMUM_VOLUME);
+        }
+
+        @Override
+        public void accept(int index, @NotNull String name, boolean isLocked, byte volume, int panning) {
+            names[index] = name;
+            locked[index] = isLocked;
+            volumes[index] = clamp(volume, Layer.MINIMUM_VOLUME, Layer.MAXIMUM_VOLUME);
+            pannings[index] = clamp(panning, -Layer.MAXIMUM_PANNING, Layer.MAXIMUM_PANNING);
+        }
+    }
+
+    /**
+     * Notes decoded for {@link #readContentHash(InputStream, boolean)} stored in the order of the file,
+     * i.e. by ticks and then by layers, with the values normalized as by non-strict {@link Note.Builder}.
+     */
+    private static final class NoteRecords implements NoteConsumer {
+        private int layersCount;
+        private int size = 0;
+        private long[] ticks = new long[256];
+        private int[] layers = new int[256];
+        private int[] instruments = new int[256];
+        private boolean[] customInstruments = new boolean[256];
+        private int[] keys = new int[256];
+        private int[] volumes = new int[256];
+        private int[] pannings = new int[256];
+        private int[] pitches = new int[256];
+
+        private NoteRecords(int layersCount) {
+            this.layersCount = layersCount;
+        }
+
+        @Override
+        public void accept(short tick, short layer, int instrument, boolean isCustomInstrument, byte key, byte volume, int panning, short pitch) {
+            // Mirrors the list of layer builders used when the song is read
+            if (layer >= layersCount) {
+                layersCount++;
+            }
+            if (layer < 0 || layer >= layersCount) {
+                throw new IndexOutOfBoundsException("Index: " + layer + ", Size: " + layersCount);
+            }
+
+            if (size == ticks.length) {
+                int capacity = size * 2;
+                ticks = Arrays.copyOf(ticks, capacity);
+                layers = Arrays.copyOf(layers, capacity);
+                instruments = Arrays.copyOf(instruments, capacity);
+                customInstruments = Arrays.copyOf(customInstruments, capacity);
+                keys = Arrays.copyOf(keys, capacity);
+                volumes = Arrays.copyOf(volumes, capacity);
+                pannings = Arrays.copyOf(pannings, capacity);
+                pitches = Arrays.copyOf(pitches, capacity);
+            }
+            ticks[size] = Math.max(tick, 0);
+            layers[size] = layer;
+            instruments[size] = Math.max(instrument, 0);
+            customInstruments[size] = isCustomInstrument;
+            keys[size] = clamp(key, Note.MINIMUM_KEY, Note.MAXIMUM_KEY);
+            volumes[size] = clamp(volume, Note.MINIMUM_VOLUME, Note.MAXIMUM_VOLUME);
+            pannings[size] = clamp(panning, -Note.MAXIMUM_PANNING, Note.MAXIMUM_PANNING);
+            pitches[size] = pitch;
+            size++;
+        }
+
+        /**
+         * Feeds the layers, notes and tempo to the hasher. Notes of the tempo changer become tempo changes
+         * and layers of the tempo changer left empty are dropped, the same way as when the song is read.
+         */
+        private void putTo(@NotNull ContentHasher hasher, @NotNull LayerRecords layerRecords, float initialTempo, int tempoChangerIndex) {
+            // Stable counting sort by layers keeps the notes of each layer ordered by ticks
+            int[] layerStarts = new int[layersCount + 1];
+            for (int i = 0; i < size; i++) {
+                layerStarts[layers[i] + 1]++;
+            }
+            for (int layer = 0; layer < layersCount; layer++) {
+                layerStarts[layer + 1] += layerStarts[layer];
+            }
+            int[] order = new int[size];
+            int[] next = Arrays.copyOf(layerStarts, layersCount);
+            for (int i = 0; i < size; i++) {
+                order[next[layers[i]]++] = i;
+            }
+
+            TreeMap<Long, Float> tempoChanges = new TreeMap<>();
+            tempoChanges.put(Song.INITIAL_TEMPO_TICK, initialTempo <= 0 ? Song.DEFAULT_TEMPO : initialTempo);
+            boolean[] removed = new boolean[size];
+            int[] remainingNotes = new int[layersCount];
+            int keptLayers = 0;
+            for (int layer = 0; layer < layersCount; layer++) {
+                for (int i = layerStarts[layer]; i < layerStarts[layer + 1]; i++) {
+                    int note = order[i];
+                    // Only the last note on the same tick of a layer is kept
+                    if (i + 1 < layerStarts[layer + 1] && ticks[order[i + 1]] == ticks[note]) {
+                        removed[note] = true;
+                        continue;
+                    }
+                    if (customInstruments[note] && instruments[note] == tempoChangerIndex) {
+                        removed[note] = true;
+                        float tempo = Math.abs(pitches[note]) / 15f;
+                        if (tempo <= 0) {
+                            tempoChanges.remove(ticks[note]);
+                        } else {
+                            tempoChanges.put(ticks[note], tempo);
+                        }
+                        continue;
+                    }
+                    remainingNotes[layer]++;
+                }
+                if (isKept(layerRecords, layer, remainingNotes[layer])) {
+                    keptLayers++;
+                }
+            }
+
+            hasher.putLong(keptLayers);
+            for (int layer = 0; layer < layersCount; layer++) {
+                if (!isKept(layerRecords, layer, remainingNotes[layer])) {
+                    continue;
+                }
+                hasher.putLayer(layerRecords.volumes[layer], layerRecords.pannings[layer], layerRecords.names[layer], layerRecords.locked[layer]);
+                for (int i = layerStarts[layer]; i < layerStarts[layer + 1]; i++) {
+                    int note = order[i];
+                    if (!removed[note]) {
+                        hasher.putNote(ticks[note], instruments[note], customInstruments[note], keys[note], volumes[note], pannings[note], pitches[note]);
+                    }
+                }
+                hasher.endLayer();
+            }
+
+            hasher.putTempo(tempoChanges.get(Song.INITIAL_TEMPO_TICK), tempoChanges);
+        }
+
+        private static boolean isKept(@NotNull LayerRecords layerRecords, int layer, int noteCount) {
+            return ContentHasher.isKept(layerRecords.names[layer], noteCount);
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.min(Math.max(value, min), max);
     }
 
 }
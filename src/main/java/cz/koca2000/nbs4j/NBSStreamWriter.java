@@ -0,0 +1,164 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+/**
+ * Writes a song in the NBS format note by note, so songs can be produced without building all their notes in memory.
+ * Metadata, tempo, length, layers and custom instruments are taken from a header {@link Song} whose notes are ignored.
+ * Notes have to be written in the ascending order of ticks and layers within a tick.
+ * <p>This class is not thread-safe.
+ */
+public final class NBSStreamWriter implements Closeable {
+    // Number of instruments of Minecraft 1.14+, notes with any of them can be written without knowing the notes in advance
+    private static final int VANILLA_INSTRUMENTS_COUNT = 16;
+
+    private final DataOutputStream stream;
+    private final Song header;
+    private final int nbsVersion;
+    private final int instrumentsCount;
+    private final Iterator<Long> tempoChangeTicks;
+
+    private long nextTempoChangeTick;
+    private long currentTick = -1;
+    private long lastTick = -1;
+    private int lastLayer = -1;
+    private boolean isClosed = false;
+
+    /**
+     * Writes the header of the song and prepares the writer for notes.
+     * @param stream stream the song is written to; it is closed by {@link #close()}
+     * @param nbsVersion version of the NBS format
+     * @param header song providing everything except notes
+     * @throws UncheckedIOException if the header could not be written
+     */
+    public NBSStreamWriter(@NotNull OutputStream stream, @NotNull NBSVersion nbsVersion, @NotNull Song header) {
+        this.stream = new DataOutputStream(new BufferedOutputStream(stream));
+        this.header = header;
+        this.nbsVersion = nbsVersion.getVersionNumber();
+        instrumentsCount = NBSWriter.roundInstrumentCountToMinecraftVanillaCount(
+                Math.max(header.getNonCustomInstrumentsCount(), VANILLA_INSTRUMENTS_COUNT));
+
+        tempoChangeTicks = header.getTempoChanges().keySet().iterator();
+        nextTempoChangeTick = nextTempoChangeTick();
+
+        try {
+            NBSWriter.writeHeader(this.stream, header, this.nbsVersion, instrumentsCount);
+            NBSWriter.writeShort(this.stream, (short) (header.getLayersCount() + (NBSWriter.isTempoChangerNeeded(header) ? 1 : 0)));
+            NBSWriter.writeMetadata(this.stream, header, this.nbsVersion);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Writes the note.
+     * @param tick tick of the note
+     * @param layer index of the layer of the header song the note belongs to
+     * @param note {@link Note}
+     * @throws IndexOutOfBoundsException if the header song does not have the layer
+     * @throws IllegalArgumentException if the note is not after the previously written note
+     *                                  or if it uses a non-custom instrument that is not supported
+     * @throws IllegalStateException if the writer is closed
+     * @throws UncheckedIOException if the note could not be written
+     */
+    public void note(long tick, int layer, @NotNull Note note) {
+        if (isClosed) {
+            throw new IllegalStateException("Writer is closed.");
+        }
+        if (layer < 0 || layer >= header.getLayersCount()) {
+            throw new IndexOutOfBoundsException("Header song does not have layer " + layer + ".");
+        }
+        if (tick < 0 || tick < currentTick || (tick == currentTick && layer <= lastLayer)) {
+            throw new IllegalArgumentException("Notes have to be written in the ascending order of ticks and layers.");
+        }
+        if (!note.isCustomInstrument() && note.getInstrument() >= instrumentsCount) {
+            throw new IllegalArgumentException("Instrument " + note.getInstrument() + " is not supported.");
+        }
+
+        try {
+            if (tick != currentTick) {
+                endTick();
+                writeTempoChangesBefore(tick);
+                startTick(tick);
+            }
+            NBSWriter.writeShort(stream, (short) (layer - lastLayer));
+            NBSWriter.writeNote(stream, note, nbsVersion, instrumentsCount);
+            lastLayer = layer;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Writes the remaining tempo changes, layers and custom instruments and closes the stream.
+     * @throws UncheckedIOException if the song could not be written
+     */
+    @Override
+    public void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+
+        try {
+            endTick();
+            writeTempoChangesBefore(Long.MAX_VALUE);
+            NBSWriter.writeShort(stream, (short) 0); // end of ticks
+
+            boolean isTempoChangerNeeded = NBSWriter.isTempoChangerNeeded(header);
+            NBSWriter.writeLayers(stream, header, nbsVersion, isTempoChangerNeeded);
+            NBSWriter.writeCustomInstruments(stream, header, isTempoChangerNeeded);
+            stream.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void startTick(long tick) throws IOException {
+        NBSWriter.writeShort(stream, (short) (tick - lastTick)); // jump ticks
+        currentTick = tick;
+        lastLayer = -1;
+    }
+
+    private void endTick() throws IOException {
+        if (currentTick == -1) {
+            return;
+        }
+        if (nextTempoChangeTick == currentTick) {
+            // Tempo changes are stored as notes of an additional layer after all layers of the song
+            if (nbsVersion >= NBSVersion.V4.getVersionNumber()) {
+                NBSWriter.writeShort(stream, (short) (header.getLayersCount() - lastLayer));
+                NBSWriter.writeNote(stream, NBSWriter.getTempoChangerNote(header, currentTick), nbsVersion, instrumentsCount);
+            }
+            nextTempoChangeTick = nextTempoChangeTick();
+        }
+        NBSWriter.writeShort(stream, (short) 0); // end of layers for this tick
+        lastTick = currentTick;
+        currentTick = -1;
+    }
+
+    private void writeTempoChangesBefore(long tick) throws IOException {
+        while (nextTempoChangeTick != -1 && nextTempoChangeTick < tick) {
+            startTick(nextTempoChangeTick);
+            endTick();
+        }
+    }
+
+    private long nextTempoChangeTick() {
+        while (tempoChangeTicks.hasNext()) {
+            long tick = tempoChangeTicks.next();
+            if (tick > Song.INITIAL_TEMPO_TICK) {
+                return tick;
+            }
+        }
+        return -1;
+    }
+}
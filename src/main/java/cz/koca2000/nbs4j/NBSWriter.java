@@ -33,7 +33,7 @@ class NBSWriter {
         outputStream.close();
     }
 
-    private static void writeShort(@NotNull DataOutputStream stream, short num) throws IOException {
+    static void writeShort(@NotNull DataOutputStream stream, short num) throws IOException {
         byte[] bytes = new byte[2];
         bytes[0] = (byte)(num & 0xff);
         bytes[1] = (byte)((num >> 8) & 0xff);
@@ -58,7 +58,7 @@ class NBSWriter {
         }
     }
 
-    private static void writeHeader(@NotNull DataOutputStream stream, @NotNull Song song, int nbsVersion, int firstCustomInstrumentIndex) throws IOException {
+    static void writeHeader(@NotNull DataOutputStream stream, @NotNull Song song, int nbsVersion, int firstCustomInstrumentIndex) throws IOException {
         writeShort(stream, (short) 0);
 
         stream.writeByte(nbsVersion);
@@ -67,7 +67,7 @@ class NBSWriter {
             writeShort(stream, (short)song.getSongLength());
     }
 
-    private static void writeMetadata(@NotNull DataOutputStream stream, @NotNull Song song, int nbsVersion) throws IOException {
+    static void writeMetadata(@NotNull DataOutputStream stream, @NotNull Song song, int nbsVersion) throws IOException {
         SongMetadata metadata = song.getMetadata();
         writeString(stream, metadata.getTitle());
         writeString(stream, metadata.getAuthor());
@@ -128,7 +128,7 @@ class NBSWriter {
     }
 
     @Nullable
-    private static Note getTempoChangerNote(@NotNull Song song, long tick) {
+    static Note getTempoChangerNote(@NotNull Song song, long tick) {
         Float tempoChange = song.getTempoChanges().get(tick);
         if (tempoChange == null) {
             return null;
@@ -144,7 +144,7 @@ class NBSWriter {
                 .build();
     }
 
-    private static void writeNote(@NotNull DataOutputStream stream, @NotNull Note note, int nbsVersion, int instrumentsCount) throws IOException {
+    static void writeNote(@NotNull DataOutputStream stream, @NotNull Note note, int nbsVersion, int instrumentsCount) throws IOException {
         if (note.isCustomInstrument())
             stream.writeByte(instrumentsCount + note.getInstrument());
         else
@@ -159,7 +159,7 @@ class NBSWriter {
         }
     }
 
-    private static void writeLayers(@NotNull DataOutputStream stream, @NotNull Song song, int nbsVersion, boolean addTempoChangerLayer) throws IOException {
+    static void writeLayers(@NotNull DataOutputStream stream, @NotNull Song song, int nbsVersion, boolean addTempoChangerLayer) throws IOException {
         for (int i = 0; i < song.getLayersCount(); i++) {
             Layer layer = song.getLayer(i);
 
@@ -188,7 +188,7 @@ class NBSWriter {
             stream.writeByte(100 - layer.getPanning()); // 0 is right in nbs format
     }
 
-    private static void writeCustomInstruments(@NotNull DataOutputStream stream, @NotNull Song song, boolean isTempoChangerNeeded) throws IOException {
+    static void writeCustomInstruments(@NotNull DataOutputStream stream, @NotNull Song song, boolean isTempoChangerNeeded) throws IOException {
         boolean addTempoChanger = isTempoChangerNeeded && SongUtils.findTempoChangerInstrumentIndex(song.getCustomInstruments()) == -1;
 
         stream.writeByte(song.getCustomInstrumentsCount() + (addTempoChanger ? 1 : 0)); //custom instruments count
@@ -219,7 +219,7 @@ class NBSWriter {
      * This may be necessary because of compatibility with other parsers.
      * @return Increased number of instruments or original number in case it is bigger than know Minecraft instrument counts.
      */
-    private static int roundInstrumentCountToMinecraftVanillaCount(int count){
+    static int roundInstrumentCountToMinecraftVanillaCount(int count){
         //Minecraft 1.2+
         if (count <= 5)
             return 5;
@@ -232,7 +232,7 @@ class NBSWriter {
         return Math.max(16, count);
     }
 
-    private static boolean isTempoChangerNeeded(@NotNull Song song) {
+    static boolean isTempoChangerNeeded(@NotNull Song song) {
         return song.getTempoChanges().size() > 1 || (song.getTempoChanges().size() == 1 && !song.getTempoChanges().containsKey(Song.INITIAL_TEMPO_TICK));
     }
 }
@@ -54,6 +54,26 @@ public interface Note {
      */
     byte getVolume();
 
+    /**
+     * Returns the multiplier of the pitch of the sound of this note, as used by Minecraft. Non-custom instruments play key 45 (F#4) without any change.
+     *
+     * @return 1 for key 45; 0.5 one octave lower; 2 one octave higher
+     * @see NotePitchTable
+     */
+    default double getPlaybackPitch() {
+        return NotePitchTable.getPitchMultiplier(getKey(), getPitch());
+    }
+
+    /**
+     * Returns the frequency of the key of this note including its fine pitch.
+     *
+     * @return frequency in hertz
+     * @see NotePitchTable
+     */
+    default double getFrequency() {
+        return NotePitchTable.getFrequency(getKey(), getPitch());
+    }
+
     static Builder builder() {
         return builder(false);
     }
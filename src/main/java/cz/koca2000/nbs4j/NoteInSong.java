@@ -1,5 +1,7 @@
 package cz.koca2000.nbs4j;
 
+import java.util.Objects;
+
 public final class NoteInSong implements Note {
 
     private final LayerInSong layer;
@@ -43,6 +45,23 @@ public final class NoteInSong implements Note {
         return note.getVolume();
     }
 
+    /**
+     * Returns the multiplier of the pitch of the sound of this note. If the note uses a custom instrument of the song,
+     * the key of the custom instrument is played without any change.
+     * @return 1 for the base key of the instrument; 0.5 one octave lower; 2 one octave higher
+     */
+    @Override
+    public double getPlaybackPitch() {
+        CustomInstrument customInstrument = null;
+        if (note.isCustomInstrument()) {
+            Song song = layer.getSong();
+            if (note.getInstrument() < song.getCustomInstrumentsCount()) {
+                customInstrument = song.getCustomInstrument(note.getInstrument());
+            }
+        }
+        return NotePitchTable.getPitchMultiplier(note, customInstrument);
+    }
+
     /**
      * Returns the {@link LayerImpl} to which the note belongs
      * @return {@link LayerImpl}
@@ -51,6 +70,22 @@ public final class NoteInSong implements Note {
         return layer;
     }
 
+    /**
+     * Returns the volume of this note with the volume of its layer applied.
+     * @return value in range [0; 100]
+     */
+    public int getEffectiveVolume() {
+        return SongUtils.getEffectiveVolume(layer, note);
+    }
+
+    /**
+     * Returns the stereo offset of this note offset by the stereo offset of its layer.
+     * @return value in range [-100; 100]; -100 two blocks left; 0 center; 100 two blocks right
+     */
+    public int getEffectivePanning() {
+        return SongUtils.getEffectivePanning(layer, note);
+    }
+
     /**
      * Returns the inner {@link Note} instance.
      * @return {@link Note}
@@ -58,4 +93,21 @@ public final class NoteInSong implements Note {
     public Note getNoteData() {
         return note;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NoteInSong)) {
+            return false;
+        }
+        NoteInSong other = (NoteInSong) o;
+        return layer == other.layer && note == other.note;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(System.identityHashCode(layer), System.identityHashCode(note));
+    }
 }
@@ -0,0 +1,32 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Receives notes played by {@link SongPlayer}.
+ */
+@FunctionalInterface
+public interface NoteListener {
+
+    /**
+     * Called when a tick containing notes is played.
+     * @param tick played tick
+     * @param notes all notes of the tick ordered by their layer; the list is valid only during this call
+     */
+    void onTick(long tick, @NotNull List<NoteInSong> notes);
+
+    /**
+     * Called when the playback jumps back to the start of the loop.
+     * @param loopCount number of loops done including this one
+     */
+    default void onLoop(int loopCount) {
+    }
+
+    /**
+     * Called when the playback reaches the end of the song and does not loop anymore.
+     */
+    default void onSongEnd() {
+    }
+}
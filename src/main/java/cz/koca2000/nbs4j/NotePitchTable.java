@@ -0,0 +1,82 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Precomputed conversion of keys and fine pitches of notes to pitch multipliers and frequencies.
+ * Values are computed for a single octave with cent resolution, other octaves are derived by an exact
+ * power of two scaling, so the conversion needs no transcendental call for any key and fine pitch.
+ */
+public final class NotePitchTable {
+    /**
+     * Key played without any change of the pitch by non-custom instruments (F#4).
+     */
+    public static final int DEFAULT_BASE_KEY = 45;
+    /**
+     * Frequency of the key 0 (A0) in hertz.
+     */
+    public static final double KEY_0_FREQUENCY = 27.5;
+
+    private static final int CENTS_PER_KEY = 100;
+    private static final int CENTS_PER_OCTAVE = 12 * CENTS_PER_KEY;
+
+    private static final double[] OCTAVE_MULTIPLIERS = new double[CENTS_PER_OCTAVE];
+
+    static {
+        for (int i = 0; i < CENTS_PER_OCTAVE; i++) {
+            OCTAVE_MULTIPLIERS[i] = Math.pow(2, i / (double) CENTS_PER_OCTAVE);
+        }
+    }
+
+    private NotePitchTable() {
+    }
+
+    /**
+     * Returns the multiplier of the pitch of the sound of a non-custom instrument, as used by Minecraft.
+     * @param key key of the note; 0 is A0 and 87 is C8
+     * @param pitch fine pitch of the note; +-100 is semitone difference
+     * @return 1 for key {@link #DEFAULT_BASE_KEY}; 0.5 one octave lower; 2 one octave higher
+     */
+    public static double getPitchMultiplier(int key, int pitch) {
+        return getPitchMultiplier(key, pitch, DEFAULT_BASE_KEY);
+    }
+
+    /**
+     * Returns the multiplier of the pitch of the sound of an instrument that plays the base key without any change.
+     * @param key key of the note; 0 is A0 and 87 is C8
+     * @param pitch fine pitch of the note; +-100 is semitone difference
+     * @param baseKey key at which the sound of the instrument is not changed
+     * @return 1 for the base key; 0.5 one octave lower; 2 one octave higher
+     */
+    public static double getPitchMultiplier(int key, int pitch, int baseKey) {
+        return fromCents((long) (key - baseKey) * CENTS_PER_KEY + pitch);
+    }
+
+    /**
+     * Returns the multiplier of the pitch of the sound of the note's instrument.
+     * @param note note
+     * @param customInstrument custom instrument of the note or null if the note uses non-custom instrument
+     * @return 1 for the base key of the instrument; 0.5 one octave lower; 2 one octave higher
+     */
+    public static double getPitchMultiplier(@NotNull Note note, @Nullable CustomInstrument customInstrument) {
+        int baseKey = customInstrument != null ? customInstrument.getKey() : DEFAULT_BASE_KEY;
+        return getPitchMultiplier(note.getKey(), note.getPitch(), baseKey);
+    }
+
+    /**
+     * Returns the frequency of the given key in equal temperament tuned to A4 = 440 Hz.
+     * @param key key of the note; 0 is A0 and 87 is C8
+     * @param pitch fine pitch of the note; +-100 is semitone difference
+     * @return frequency in hertz
+     */
+    public static double getFrequency(int key, int pitch) {
+        return KEY_0_FREQUENCY * fromCents((long) key * CENTS_PER_KEY + pitch);
+    }
+
+    private static double fromCents(long cents) {
+        long octave = Math.floorDiv(cents, CENTS_PER_OCTAVE);
+        int remainder = (int) Math.floorMod(cents, (long) CENTS_PER_OCTAVE);
+        return Math.scalb(OCTAVE_MULTIPLIERS[remainder], (int) Math.max(Math.min(octave, Integer.MAX_VALUE), Integer.MIN_VALUE));
+    }
+}
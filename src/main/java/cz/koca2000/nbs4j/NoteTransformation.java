@@ -0,0 +1,161 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies a {@link NoteTransformer} to layers using fork/join. Layers are transformed in parallel
+ * and notes of large layers are further split into chunks. Layers the transformer does not change are not copied.
+ */
+final class NoteTransformation {
+    // Number of notes below which a chunk of a layer is transformed by a single task
+    private static final int CHUNK_SIZE = 1024;
+
+    private NoteTransformation() {
+    }
+
+    @NotNull
+    static Song transform(@NotNull Song song, @NotNull NoteTransformer transformer) {
+        List<LayerInSong> layers = song.getLayers();
+        Layer[] transformedLayers = new Layer[layers.size()];
+        ForkJoinPool.commonPool().invoke(new LayersTask(layers, transformer, transformedLayers, 0, layers.size()));
+
+        boolean isChanged = false;
+        for (int i = 0; i < transformedLayers.length; i++) {
+            if (transformedLayers[i] == layers.get(i)) {
+                transformedLayers[i] = null;
+            } else {
+                isChanged = true;
+            }
+        }
+        if (!isChanged) {
+            return song;
+        }
+        return Song.builder(song).replaceLayers(transformedLayers).build();
+    }
+
+    @NotNull
+    static Song transform(@NotNull Song song, int layerIndex, @NotNull NoteTransformer transformer) {
+        Layer layer = song.getLayer(layerIndex).getLayerData();
+        Layer transformedLayer = transform(layer, layerIndex, transformer);
+        if (transformedLayer == layer) {
+            return song;
+        }
+        Layer[] transformedLayers = new Layer[song.getLayersCount()];
+        transformedLayers[layerIndex] = transformedLayer;
+        return Song.builder(song).replaceLayers(transformedLayers).build();
+    }
+
+    /**
+     * Returns the transformed layer or the given layer itself if no note was changed.
+     */
+    @NotNull
+    static Layer transform(@NotNull Layer layer, int layerIndex, @NotNull NoteTransformer transformer) {
+        Layer layerData = layer instanceof LayerInSong ? ((LayerInSong) layer).getLayerData() : layer;
+
+        int size = layerData instanceof LayerImpl ? ((LayerImpl) layerData).getNoteMap().size() : layerData.getNotes().size();
+        long[] ticks = new long[size];
+        Note[] notes = new Note[size];
+        int[] count = new int[1];
+        SongUtils.forEachNote(layerData, (tick, note) -> {
+            ticks[count[0]] = tick;
+            notes[count[0]] = note;
+            count[0]++;
+        });
+
+        Note[] transformedNotes = new Note[size];
+        NotesTask task = new NotesTask(ticks, notes, transformedNotes, layerIndex, transformer, 0, size);
+        if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            ForkJoinPool.commonPool().invoke(task);
+        }
+
+        int changedCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (transformedNotes[i] != notes[i]) {
+                ticks[changedCount] = ticks[i];
+                transformedNotes[changedCount] = transformedNotes[i];
+                changedCount++;
+            }
+        }
+        if (changedCount == 0) {
+            return layer;
+        }
+        return Layer.builder(layerData)
+                .notes(Arrays.copyOf(ticks, changedCount), Arrays.copyOf(transformedNotes, changedCount))
+                .build();
+    }
+
+    @SuppressWarnings("serial")
+    private static final class LayersTask extends RecursiveAction {
+        private final List<LayerInSong> layers;
+        private final NoteTransformer transformer;
+        private final Layer[] transformedLayers;
+        private final int from;
+        private final int to;
+
+        private LayersTask(@NotNull List<LayerInSong> layers, @NotNull NoteTransformer transformer,
+                           @Nullable Layer @NotNull [] transformedLayers, int from, int to) {
+            this.layers = layers;
+            this.transformer = transformer;
+            this.transformedLayers = transformedLayers;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                transformedLayers[from] = transform(layers.get(from), from, transformer);
+                return;
+            }
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LayersTask(layers, transformer, transformedLayers, from, middle),
+                        new LayersTask(layers, transformer, transformedLayers, middle, to));
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class NotesTask extends RecursiveAction {
+        private final long[] ticks;
+        private final Note[] notes;
+        private final Note[] transformedNotes;
+        private final int layerIndex;
+        private final NoteTransformer transformer;
+        private final int from;
+        private final int to;
+
+        private NotesTask(long @NotNull [] ticks, @NotNull Note @NotNull [] notes, @Nullable Note @NotNull [] transformedNotes,
+                          int layerIndex, @NotNull NoteTransformer transformer, int from, int to) {
+            this.ticks = ticks;
+            this.notes = notes;
+            this.transformedNotes = transformedNotes;
+            this.layerIndex = layerIndex;
+            this.transformer = transformer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    transformedNotes[i] = transformer.transform(ticks[i], layerIndex, notes[i]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new NotesTask(ticks, notes, transformedNotes, layerIndex, transformer, from, middle),
+                    new NotesTask(ticks, notes, transformedNotes, layerIndex, transformer, middle, to));
+        }
+    }
+}
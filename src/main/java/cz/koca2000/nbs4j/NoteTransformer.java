@@ -0,0 +1,23 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Function applied to notes by {@link Song#transform(NoteTransformer)} and {@link Layer#transform(int, NoteTransformer)}.
+ * The transformer may be called from several threads at once, so it should not depend on shared mutable state
+ * nor on the order in which the notes are visited.
+ */
+@FunctionalInterface
+public interface NoteTransformer {
+
+    /**
+     * Returns the note that should replace the given note.
+     * @param tick tick of the note
+     * @param layer index of the layer of the note
+     * @param note transformed note
+     * @return the same instance to keep the note unchanged, a new {@link Note} to replace it or null to remove it
+     */
+    @Nullable
+    Note transform(long tick, int layer, @NotNull Note note);
+}
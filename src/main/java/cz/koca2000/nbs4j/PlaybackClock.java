@@ -0,0 +1,20 @@
+package cz.koca2000.nbs4j;
+
+/**
+ * Source of monotonic time used to schedule the playback.
+ * Custom implementations allow deterministic playback, e.g. in tests.
+ */
+@FunctionalInterface
+public interface PlaybackClock {
+
+    /**
+     * Clock backed by {@link System#nanoTime()}.
+     */
+    PlaybackClock SYSTEM = System::nanoTime;
+
+    /**
+     * Returns the current time of the clock.
+     * @return time in nanoseconds; only differences between two values are meaningful
+     */
+    long nanoTime();
+}
@@ -0,0 +1,216 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Position of a playback in a {@link Song}. Computes deadlines of ticks from the tempo timeline relative to a single
+ * anchor, so the timing does not drift no matter how late the individual ticks are played.
+ * Handles looping as specified by {@link SongMetadata}.
+ * <p>This class is not thread-safe.
+ */
+final class PlaybackCursor {
+
+    private final Song song;
+    private final TempoTimeline timeline;
+    private final NoteListener listener;
+
+    private final List<NoteInSong> notes = new ArrayList<>();
+    private final List<NoteInSong> notesView = Collections.unmodifiableList(notes);
+
+    // Time of the clock at which the song time anchor is played
+    private long clockAnchor;
+    private long songTimeAnchor;
+
+    private long nextTick;
+    private long lastPlayedTick = -1;
+    private int loopCount = 0;
+    private boolean finished = false;
+    private boolean interrupted = false;
+
+    private long lastLateness = 0;
+    private long maxLateness = 0;
+
+    PlaybackCursor(@NotNull Song song, @NotNull NoteListener listener) {
+        this.song = song;
+        this.timeline = song.getTempoTimeline();
+        this.listener = listener;
+        nextTick = findFirstTick(0);
+    }
+
+    @NotNull
+    Song getSong() {
+        return song;
+    }
+
+    /**
+     * Moves the cursor to the given tick and plays it at the given time.
+     * @param tick non-negative tick
+     * @param now current time of the clock
+     */
+    void seek(long tick, long now) {
+        songTimeAnchor = timeline.getNanosAtTick(tick);
+        clockAnchor = now;
+        nextTick = findFirstTick(tick);
+        lastPlayedTick = tick - 1;
+        finished = false;
+    }
+
+    /**
+     * Moves the cursor to the beginning of the song and resets the loop counter.
+     * @param now current time of the clock
+     */
+    void reset(long now) {
+        seek(0, now);
+        lastPlayedTick = -1;
+        loopCount = 0;
+        lastLateness = 0;
+        maxLateness = 0;
+    }
+
+    /**
+     * Continues the playback from the given position in the song at the given time.
+     * @param songTime position in the song in nanoseconds
+     * @param now current time of the clock
+     */
+    void rebase(long songTime, long now) {
+        songTimeAnchor = songTime;
+        clockAnchor = now;
+    }
+
+    /**
+     * Returns position in the song at the given time.
+     * @param now current time of the clock
+     * @return position in nanoseconds since the start of the song
+     */
+    long getSongTime(long now) {
+        return songTimeAnchor + (now - clockAnchor);
+    }
+
+    long getLastPlayedTick() {
+        return lastPlayedTick;
+    }
+
+    int getLoopCount() {
+        return loopCount;
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Returns how late was the last played tick.
+     * @return nanoseconds between the deadline and the time the tick was played
+     */
+    long getLastLateness() {
+        return lastLateness;
+    }
+
+    /**
+     * Returns the maximum lateness of all played ticks since the last {@link #reset(long)}.
+     * @return nanoseconds
+     */
+    long getMaxLateness() {
+        return maxLateness;
+    }
+
+    /**
+     * Returns the time at which the cursor needs to be advanced again.
+     * @return time of the clock
+     */
+    long getNextDeadline() {
+        long tick = nextTick != -1 ? nextTick : song.getSongLength();
+        return getDeadline(tick);
+    }
+
+    private long getDeadline(long tick) {
+        return clockAnchor + (timeline.getNanosAtTick(tick) - songTimeAnchor);
+    }
+
+    /**
+     * Makes the running {@link #advance(long)} return after the currently played tick,
+     * e.g. when the playback is paused by the listener.
+     */
+    void interrupt() {
+        interrupted = true;
+    }
+
+    /**
+     * Plays all ticks whose deadline is not after the given time.
+     * @param now current time of the clock
+     * @return true if the song continues; false if the end of the song was reached
+     */
+    boolean advance(long now) {
+        interrupted = false;
+        while (!finished && !interrupted) {
+            if (nextTick == -1) {
+                long endDeadline = getDeadline(song.getSongLength());
+                if (endDeadline - now > 0) {
+                    return true;
+                }
+                if (!loop(endDeadline)) {
+                    finished = true;
+                    listener.onSongEnd();
+                }
+                continue;
+            }
+
+            long deadline = getDeadline(nextTick);
+            if (deadline - now > 0) {
+                return true;
+            }
+
+            lastLateness = now - deadline;
+            if (lastLateness > maxLateness) {
+                maxLateness = lastLateness;
+            }
+            playTick(nextTick);
+            lastPlayedTick = nextTick;
+            nextTick = song.getNextNonEmptyTick(nextTick);
+        }
+        return !finished;
+    }
+
+    private boolean loop(long endDeadline) {
+        SongMetadata metadata = song.getMetadata();
+        if (!metadata.isLoop()) {
+            return false;
+        }
+        if (metadata.getLoopMaxCount() != 0 && loopCount >= metadata.getLoopMaxCount()) {
+            return false;
+        }
+
+        long loopStartTick = metadata.getLoopStartTick();
+        if (loopStartTick >= song.getSongLength()) {
+            return false;
+        }
+
+        loopCount++;
+        songTimeAnchor = timeline.getNanosAtTick(loopStartTick);
+        clockAnchor = endDeadline;
+        nextTick = findFirstTick(loopStartTick);
+        listener.onLoop(loopCount);
+        return true;
+    }
+
+    private void playTick(long tick) {
+        notes.clear();
+        for (LayerInSong layer : song.getLayers()) {
+            NoteInSong note = layer.getNote(tick);
+            if (note != null) {
+                notes.add(note);
+            }
+        }
+        if (!notes.isEmpty()) {
+            listener.onTick(tick, notesView);
+        }
+    }
+
+    private long findFirstTick(long fromTick) {
+        return song.getNextNonEmptyTick(fromTick - 1);
+    }
+}
@@ -0,0 +1,334 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable flat representation of all notes of a {@link Song} ordered by the time they are played.
+ * Tempo changes and the volume and panning of layers are already applied, so the playback only walks the arrays.
+ * Events of the same tick are ordered by their layer. Instances are created by {@link Song#compile()}
+ * and can be shared by any number of threads.
+ */
+public final class PlaybackPlan {
+
+    private final int size;
+    private final long[] ticks;
+    private final long[] timestamps;
+    private final int[] layers;
+    private final int[] instruments;
+    private final boolean[] customInstruments;
+    private final byte[] keys;
+    private final int[] pitches;
+    private final double[] playbackPitches;
+    private final byte[] volumes;
+    private final byte[] pannings;
+    private final long durationNanos;
+
+    PlaybackPlan(@NotNull Song song) {
+        TempoTimeline timeline = song.getTempoTimeline();
+        List<LayerInSong> songLayers = song.getLayers();
+
+        long[] distinctTicks = collectNonEmptyTicks(song);
+        int[] offsets = new int[distinctTicks.length + 1];
+        int total = 0;
+        for (LayerInSong layer : songLayers) {
+            total += layer.getNotes().size();
+            SongUtils.forEachNote(layer, (tick, note) -> offsets[Arrays.binarySearch(distinctTicks, tick) + 1]++);
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+
+        size = total;
+        ticks = new long[size];
+        timestamps = new long[size];
+        layers = new int[size];
+        instruments = new int[size];
+        customInstruments = new boolean[size];
+        keys = new byte[size];
+        pitches = new int[size];
+        playbackPitches = new double[size];
+        volumes = new byte[size];
+        pannings = new byte[size];
+
+        int[] customBaseKeys = new int[song.getCustomInstrumentsCount()];
+        for (int i = 0; i < customBaseKeys.length; i++) {
+            customBaseKeys[i] = song.getCustomInstrument(i).getKey();
+        }
+
+        long[] tickTimestamps = new long[distinctTicks.length];
+        for (int i = 0; i < distinctTicks.length; i++) {
+            tickTimestamps[i] = timeline.getNanosAtTick(distinctTicks[i]);
+        }
+
+        // Counting sort by tick; layers are visited in order, so events of a tick stay ordered by layer
+        for (int layerIndex = 0; layerIndex < songLayers.size(); layerIndex++) {
+            Layer layer = songLayers.get(layerIndex);
+            int currentLayer = layerIndex;
+            SongUtils.forEachNote(layer, (tick, note) -> {
+                int tickIndex = Arrays.binarySearch(distinctTicks, tick);
+                int event = offsets[tickIndex]++;
+                ticks[event] = tick;
+                timestamps[event] = tickTimestamps[tickIndex];
+                layers[event] = currentLayer;
+                instruments[event] = note.getInstrument();
+                customInstruments[event] = note.isCustomInstrument();
+                keys[event] = (byte) note.getKey();
+                pitches[event] = note.getPitch();
+                int baseKey = note.isCustomInstrument() && note.getInstrument() < customBaseKeys.length
+                        ? customBaseKeys[note.getInstrument()] : NotePitchTable.DEFAULT_BASE_KEY;
+                playbackPitches[event] = NotePitchTable.getPitchMultiplier(note.getKey(), note.getPitch(), baseKey);
+                volumes[event] = (byte) SongUtils.getEffectiveVolume(layer, note);
+                pannings[event] = (byte) SongUtils.getEffectivePanning(layer, note);
+            });
+        }
+
+        durationNanos = timeline.getNanosAtTick(song.getSongLength());
+    }
+
+    @NotNull
+    private static long[] collectNonEmptyTicks(@NotNull Song song) {
+        long[] result = new long[16];
+        int count = 0;
+        for (long tick = song.getNextNonEmptyTick(-1); tick != -1; tick = song.getNextNonEmptyTick(tick)) {
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count * 2);
+            }
+            result[count++] = tick;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns the number of events (notes) of the plan.
+     * @return number of events
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the length of the song.
+     * @return length in nanoseconds
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Returns the tick of the event.
+     * @param event index of the event
+     * @return tick
+     */
+    public long getTick(int event) {
+        return ticks[event];
+    }
+
+    /**
+     * Returns the time at which the event is played.
+     * @param event index of the event
+     * @return nanoseconds since the start of the song
+     */
+    public long getTimeNanos(int event) {
+        return timestamps[event];
+    }
+
+    /**
+     * Returns the index of the layer the note of the event belongs to.
+     * @param event index of the event
+     * @return index of the layer
+     */
+    public int getLayer(int event) {
+        return layers[event];
+    }
+
+    /**
+     * Returns the instrument of the event. To recognize whether it is custom instrument use {@link #isCustomInstrument(int)}.
+     * @param event index of the event
+     * @return index of the instrument
+     */
+    public int getInstrument(int event) {
+        return instruments[event];
+    }
+
+    /**
+     * Returns whether the event uses custom instrument.
+     * @param event index of the event
+     * @return true if the instrument is a custom instrument; otherwise, false
+     */
+    public boolean isCustomInstrument(int event) {
+        return customInstruments[event];
+    }
+
+    /**
+     * Returns the key of the event.
+     * @param event index of the event
+     * @return value in range [0; 87]; 0 is A0 and 87 is C8.
+     */
+    public int getKey(int event) {
+        return keys[event];
+    }
+
+    /**
+     * Returns the fine pitch of the event.
+     * @param event index of the event
+     * @return 0 is no fine pitch; +-100 is semitone difference
+     */
+    public int getPitch(int event) {
+        return pitches[event];
+    }
+
+    /**
+     * Returns the multiplier of the pitch of the sound of the event with the key of its custom instrument applied.
+     * @param event index of the event
+     * @return 1 for the base key of the instrument; 0.5 one octave lower; 2 one octave higher
+     * @see NotePitchTable
+     */
+    public double getPlaybackPitch(int event) {
+        return playbackPitches[event];
+    }
+
+    /**
+     * Returns the volume of the event with the volume of the layer applied.
+     * @param event index of the event
+     * @return value in range [0; 100]
+     */
+    public int getVolume(int event) {
+        return volumes[event];
+    }
+
+    /**
+     * Returns the stereo offset of the event with the stereo offset of the layer applied.
+     * @param event index of the event
+     * @return value in range [-100; 100]; -100 two blocks left; 0 center; 100 two blocks right
+     */
+    public int getPanning(int event) {
+        return pannings[event];
+    }
+
+    /**
+     * Returns the index of the first event played at or after the given time.
+     * @param timeNanos nanoseconds since the start of the song
+     * @return index of the event or {@link #size()} if there is no such event
+     */
+    public int findEventAtTime(long timeNanos) {
+        return lowerBound(timestamps, timeNanos);
+    }
+
+    /**
+     * Returns the index of the first event on the given tick or after it.
+     * @param tick tick
+     * @return index of the event or {@link #size()} if there is no such event
+     */
+    public int findEventAtTick(long tick) {
+        return lowerBound(ticks, tick);
+    }
+
+    private int lowerBound(long[] array, long value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (array[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    long estimateRetainedSize() {
+        // Per event: tick, timestamp, playback pitch, layer, instrument, pitch, flag, key, volume and panning
+        return MemoryLayout.object(10, 12) + 10L * MemoryLayout.ARRAY_HEADER + size * (8L * 3 + 4 * 3 + 1 * 4);
+    }
+
+    /**
+     * Creates a new cursor positioned at the first event.
+     * @return {@link Cursor}
+     */
+    @NotNull
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Position of a single playback in the {@link PlaybackPlan}. Moving the cursor does not allocate.
+     * <pre>{@code
+     * int from = cursor.getPosition();
+     * int to = cursor.advanceTo(songTime);
+     * for (int event = from; event < to; event++) {
+     *     play(plan.getInstrument(event), plan.getKey(event), plan.getVolume(event));
+     * }
+     * }</pre>
+     * <p>This class is not thread-safe; every playback should use its own cursor.
+     */
+    public final class Cursor {
+        private int position = 0;
+
+        private Cursor() {
+        }
+
+        /**
+         * Returns the plan this cursor walks through.
+         * @return {@link PlaybackPlan}
+         */
+        @NotNull
+        public PlaybackPlan getPlan() {
+            return PlaybackPlan.this;
+        }
+
+        /**
+         * Returns the index of the next event to be played.
+         * @return index of the event or {@link PlaybackPlan#size()} if all events were played
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        /**
+         * Returns whether there are events left to be played.
+         * @return true if there are events left; otherwise, false
+         */
+        public boolean hasNext() {
+            return position < size;
+        }
+
+        /**
+         * Moves the cursor past all events played at or before the given time.
+         * @param timeNanos nanoseconds since the start of the song
+         * @return index of the first event that was not passed; events from the previous position up to this index are due
+         */
+        public int advanceTo(long timeNanos) {
+            while (position < size && timestamps[position] <= timeNanos) {
+                position++;
+            }
+            return position;
+        }
+
+        /**
+         * Moves the cursor to the first event played at or after the given time.
+         * @param timeNanos nanoseconds since the start of the song
+         */
+        public void seekTime(long timeNanos) {
+            position = findEventAtTime(timeNanos);
+        }
+
+        /**
+         * Moves the cursor to the first event on the given tick or after it.
+         * @param tick tick
+         */
+        public void seekTick(long tick) {
+            position = findEventAtTick(tick);
+        }
+
+        /**
+         * Moves the cursor to the first event.
+         */
+        public void reset() {
+            position = 0;
+        }
+    }
+}
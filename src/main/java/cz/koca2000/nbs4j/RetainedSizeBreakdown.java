@@ -0,0 +1,118 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Estimated number of bytes of heap retained by a {@link Song} split by the parts of the song.
+ * The estimate is conservative; objects shared with other songs (e.g. notes kept by previous versions of the song) are included.
+ */
+public final class RetainedSizeBreakdown {
+    private final long song;
+    private final long layers;
+    private final long notes;
+    private final long tickIndex;
+    private final long tempoChanges;
+    private final long customInstruments;
+    private final long metadata;
+    private final long derivedData;
+
+    RetainedSizeBreakdown(long song, long layers, long notes, long tickIndex, long tempoChanges,
+                          long customInstruments, long metadata, long derivedData) {
+        this.song = song;
+        this.layers = layers;
+        this.notes = notes;
+        this.tickIndex = tickIndex;
+        this.tempoChanges = tempoChanges;
+        this.customInstruments = customInstruments;
+        this.metadata = metadata;
+        this.derivedData = derivedData;
+    }
+
+    /**
+     * Returns the size of the song object itself.
+     * @return number of bytes
+     */
+    public long getSong() {
+        return song;
+    }
+
+    /**
+     * Returns the size of the layers including their names, without their notes.
+     * @return number of bytes
+     */
+    public long getLayers() {
+        return layers;
+    }
+
+    /**
+     * Returns the size of the note objects.
+     * @return number of bytes
+     */
+    public long getNotes() {
+        return notes;
+    }
+
+    /**
+     * Returns the size of the structures indexing notes and non-empty ticks by ticks.
+     * @return number of bytes
+     */
+    public long getTickIndex() {
+        return tickIndex;
+    }
+
+    /**
+     * Returns the size of the tempo changes.
+     * @return number of bytes
+     */
+    public long getTempoChanges() {
+        return tempoChanges;
+    }
+
+    /**
+     * Returns the size of the custom instruments including their names.
+     * @return number of bytes
+     */
+    public long getCustomInstruments() {
+        return customInstruments;
+    }
+
+    /**
+     * Returns the size of the metadata.
+     * @return number of bytes
+     */
+    public long getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Returns the size of data computed from the song on demand, e.g. {@link PlaybackPlan}.
+     * @return number of bytes
+     */
+    public long getDerivedData() {
+        return derivedData;
+    }
+
+    /**
+     * Returns the size of the whole song.
+     * @return number of bytes
+     */
+    public long getTotal() {
+        return song + layers + notes + tickIndex + tempoChanges + customInstruments + metadata + derivedData;
+    }
+
+    @Override
+    @NotNull
+    public String toString() {
+        return "RetainedSizeBreakdown{" +
+                "total=" + getTotal() +
+                ", song=" + song +
+                ", layers=" + layers +
+                ", notes=" + notes +
+                ", tickIndex=" + tickIndex +
+                ", tempoChanges=" + tempoChanges +
+                ", customInstruments=" + customInstruments +
+                ", metadata=" + metadata +
+                ", derivedData=" + derivedData +
+                '}';
+    }
+}
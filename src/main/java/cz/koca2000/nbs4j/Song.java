@@ -5,8 +5,12 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
 
 import java.io.*;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -25,12 +29,21 @@ public final class Song {
     private final int nonCustomInstrumentsCount;
     private final List<CustomInstrument> customInstruments;
 
-    private final TreeSet<Long> nonEmptyTicks;
+    // <Tick, Number of layers and tempo changes on the tick>
+    private final TickMap<Integer> nonEmptyTicks;
 
     // <Tick, Tempo>
     private final TreeMap<Long, Float> tempoChanges;
     private final long lastTick;
 
+    private TempoTimeline tempoTimeline;
+    private PlaybackPlan playbackPlan;
+    private GameTickSchedule gameTickSchedule;
+    private ContentHash contentHash;
+    private MetadataHash contentHashWithMetadata;
+    // Encoded songs indexed by the version number of the format
+    private final AtomicReferenceArray<SoftReference<Encoding>> encodings = new AtomicReferenceArray<>(NBSVersion.LATEST.getVersionNumber() + 1);
+
     private Song(@NotNull Builder builder){
         metadata = builder.metadata;
 
@@ -38,11 +51,11 @@ public final class Song {
         songLength = builder.songLength;
         nonCustomInstrumentsCount = builder.nonCustomInstrumentsCount;
         customInstruments = Collections.unmodifiableList(new ArrayList<>(builder.customInstruments));
-        nonEmptyTicks = new TreeSet<>(builder.nonEmptyTicks);
+        nonEmptyTicks = builder.nonEmptyTicks.build();
         tempoChanges = new TreeMap<>(builder.tempoChanges);
         lastTick = builder.lastTick;
 
-        List<LayerInSong> layersInSong = new ArrayList<>();
+        List<LayerInSong> layersInSong = new ArrayList<>(builder.layers.size());
         for (Layer layer : builder.layers) {
             layersInSong.add(new LayerInSong(this, layer));
         }
@@ -148,11 +161,7 @@ public final class Song {
      * @return tick number if there is any note or tempo change left; otherwise, -1
      */
     public long getNextNonEmptyTick(long fromTick){
-        Long tick = nonEmptyTicks.higher(fromTick);
-        if (tick == null)
-            return -1;
-
-        return tick;
+        return nonEmptyTicks.higherKey(fromTick);
     }
 
     /**
@@ -171,6 +180,253 @@ public final class Song {
         return floorEntry != null ? floorEntry.getValue() : DEFAULT_TEMPO;
     }
 
+    /**
+     * Returns the mapping between ticks and time of this song. The mapping is created on the first call.
+     * @return {@link TempoTimeline}
+     */
+    @NotNull
+    TempoTimeline getTempoTimeline() {
+        TempoTimeline timeline = tempoTimeline;
+        if (timeline == null) {
+            timeline = new TempoTimeline(this);
+            tempoTimeline = timeline;
+        }
+        return timeline;
+    }
+
+    /**
+     * Returns the notes of this song as a flat {@link PlaybackPlan} with tempo changes and layer properties applied.
+     * The plan is created on the first call and shared by all subsequent calls.
+     * @return {@link PlaybackPlan}
+     */
+    @NotNull
+    public PlaybackPlan compile() {
+        PlaybackPlan plan = playbackPlan;
+        if (plan == null) {
+            plan = new PlaybackPlan(this);
+            playbackPlan = plan;
+        }
+        return plan;
+    }
+
+    /**
+     * Returns the non-empty ticks of this song assigned to the ticks of a game loop running at the given rate.
+     * The schedule for the last used rate is kept and shared by subsequent calls with the same rate.
+     * @param ticksPerSecond rate of the game loop; 20 for Minecraft servers
+     * @return {@link GameTickSchedule}
+     * @throws IllegalArgumentException if the rate is not positive
+     */
+    @NotNull
+    public GameTickSchedule quantize(int ticksPerSecond) {
+        if (ticksPerSecond <= 0) {
+            throw new IllegalArgumentException("Ticks per second must be positive.");
+        }
+        GameTickSchedule schedule = gameTickSchedule;
+        if (schedule == null || schedule.getTicksPerSecond() != ticksPerSecond) {
+            schedule = new GameTickSchedule(this, ticksPerSecond);
+            gameTickSchedule = schedule;
+        }
+        return schedule;
+    }
+
+    /**
+     * Returns the hash of the notes, layers, tempo changes and custom instruments of this song. Metadata and names are not included.
+     * The hash is computed on the first call.
+     * @return {@link ContentHash}
+     * @see #contentHash(boolean)
+     */
+    @NotNull
+    public ContentHash contentHash() {
+        return contentHash(false);
+    }
+
+    /**
+     * Returns the hash of the notes, layers, tempo changes and custom instruments of this song.
+     * Songs that differ only in the way they were encoded have equal hashes, e.g. the same song saved in different versions of the NBS format.
+     * Tempos are compared with the precision of the NBS format and the layer and custom instrument of the tempo changer are ignored.
+     * The hash is computed on the first call and can be computed directly from NBS data using {@link ContentHash#fromStream(InputStream, boolean)}.
+     * The hash including metadata is computed again if the {@link SongMetadata} were changed since the previous call.
+     * @param includeMetadata whether the metadata and names of layers and custom instruments are included;
+     *                        statistics of the editor and the auto-save settings are never included
+     * @return {@link ContentHash}
+     */
+    @NotNull
+    public ContentHash contentHash(boolean includeMetadata) {
+        if (includeMetadata) {
+            MetadataHash hash = contentHashWithMetadata;
+            if (hash == null || !hash.metadata.hasSameContent(metadata)) {
+                SongMetadata snapshot = new SongMetadata(metadata);
+                hash = new MetadataHash(ContentHasher.hash(this, snapshot), snapshot);
+                contentHashWithMetadata = hash;
+            }
+            return hash.hash;
+        }
+
+        ContentHash hash = contentHash;
+        if (hash == null) {
+            hash = ContentHasher.hash(this, null);
+            contentHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Applies the transformer to all notes of this song. Layers are transformed in parallel using the common {@link java.util.concurrent.ForkJoinPool}
+     * and layers in which the transformer changes no note are shared with this song.
+     * <pre>{@code
+     * Song transposed = song.transform((tick, layer, note) -> Note.builder(note).key(note.getKey() + 12).build());
+     * }</pre>
+     * @param transformer {@link NoteTransformer} called for every note
+     * @return new {@link Song} with the transformed notes or this song if no note was changed
+     */
+    @NotNull
+    public Song transform(@NotNull NoteTransformer transformer) {
+        return NoteTransformation.transform(this, transformer);
+    }
+
+    /**
+     * Applies the transformer to all notes of the layer with the given index.
+     * @param layerIndex index of the layer
+     * @param transformer {@link NoteTransformer} called for every note of the layer
+     * @return new {@link Song} with the transformed notes or this song if no note was changed
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     * @see #transform(NoteTransformer)
+     */
+    @NotNull
+    public Song transformLayer(int layerIndex, @NotNull NoteTransformer transformer) {
+        return NoteTransformation.transform(this, layerIndex, transformer);
+    }
+
+    /**
+     * Packs the notes of this song into fewer layers. Layers that are merged have their volume and panning folded into their notes
+     * and empty layers are removed. Tempo changes, custom instruments and metadata are kept.
+     * @param policy {@link CompactionPolicy} deciding how the notes are moved
+     * @return {@link CompactionResult} with the compacted song, which is this song if no layer could be removed
+     */
+    @NotNull
+    public CompactionResult compactLayers(@NotNull CompactionPolicy policy) {
+        return LayerCompaction.compact(this, policy);
+    }
+
+    /**
+     * Returns a new song with the notes of this song in the given range of ticks moved to start at tick 0.
+     * The new song starts with the tempo used on {@code fromTick} and contains the later tempo changes of the range.
+     * Layers, custom instruments and metadata are kept. Notes of every layer are found in time proportional
+     * to the logarithm of the number of notes plus the number of notes in the range.
+     * @param fromTick first tick of the range
+     * @param toTickExclusive tick after the last tick of the range
+     * @return new {@link Song}
+     * @throws IllegalArgumentException if {@code fromTick} is negative or greater than {@code toTickExclusive}
+     */
+    @NotNull
+    public Song slice(long fromTick, long toTickExclusive) {
+        return SongSlicing.slice(this, fromTick, toTickExclusive);
+    }
+
+    /**
+     * Returns a new song with the notes of this song played in the given time range moved to start at tick 0.
+     * The range contains the ticks starting at or after {@code fromSeconds} and before {@code toSeconds} with all tempo changes applied.
+     * @param fromSeconds start of the range in seconds
+     * @param toSeconds end of the range in seconds, exclusive
+     * @return new {@link Song}
+     * @throws IllegalArgumentException if {@code fromSeconds} is negative or greater than {@code toSeconds}
+     * @see #slice(long, long)
+     */
+    @NotNull
+    public Song sliceByTime(double fromSeconds, double toSeconds) {
+        return SongSlicing.sliceByTime(this, fromSeconds, toSeconds);
+    }
+
+    /**
+     * Returns a new song with constant tempo and without tempo changes. Every note is moved to the tick of the new tempo
+     * nearest to the time it is played in this song with all tempo changes applied, so the timing error never exceeds half a tick.
+     * If several notes of a layer fall on the same tick, the later ones are moved to layers added right after it.
+     * The song can then be played by a loop running at a fixed rate.
+     * @param targetTempo tempo of the new song in ticks per second
+     * @return {@link TempoNormalizationResult} with the new song and the maximum timing error
+     * @throws IllegalArgumentException if the tempo is not positive
+     */
+    @NotNull
+    public TempoNormalizationResult normalizeTempo(float targetTempo) {
+        return TempoNormalization.normalize(this, targetTempo);
+    }
+
+    /**
+     * Returns the estimated number of bytes of heap retained by this song.
+     * @return number of bytes
+     * @see #getRetainedSizeBreakdown()
+     */
+    public long estimateRetainedSize() {
+        return getRetainedSizeBreakdown().getTotal();
+    }
+
+    /**
+     * Returns the estimated number of bytes of heap retained by this song split by the parts of the song.
+     * Notes shared with other songs, e.g. previous versions of this song, are included.
+     * @return {@link RetainedSizeBreakdown}
+     */
+    @NotNull
+    public RetainedSizeBreakdown getRetainedSizeBreakdown() {
+        long songSize = MemoryLayout.object(14, 29) + MemoryLayout.object(1, 0) + MemoryLayout.referenceArray(encodings.length());
+
+        long layersSize = MemoryLayout.object(1, 0) + MemoryLayout.arrayList(layers.size());
+        long notesSize = 0;
+        long tickIndexSize = nonEmptyTicks.estimateNodesSize();
+        for (LayerInSong layer : layers) {
+            layersSize += MemoryLayout.layerObject(layer);
+            notesSize += MemoryLayout.layerNotes(layer);
+            tickIndexSize += MemoryLayout.layerIndex(layer);
+        }
+        long[] boxedCounts = new long[1];
+        nonEmptyTicks.forEach((tick, count) -> {
+            // Integers up to 127 are cached by the JVM
+            if (count > 127) {
+                boxedCounts[0]++;
+            }
+        });
+        tickIndexSize += boxedCounts[0] * MemoryLayout.object(0, 4);
+
+        long tempoChangesSize = MemoryLayout.treeMap(tempoChanges, MemoryLayout.object(0, 8) + MemoryLayout.object(0, 4));
+
+        long customInstrumentsSize = MemoryLayout.object(1, 0) + MemoryLayout.arrayList(customInstruments.size());
+        for (CustomInstrument customInstrument : customInstruments) {
+            customInstrumentsSize += MemoryLayout.object(2, 5)
+                    + MemoryLayout.string(customInstrument.getName())
+                    + MemoryLayout.string(customInstrument.getFileName());
+        }
+
+        long derivedSize = 0;
+        TempoTimeline timeline = tempoTimeline;
+        if (timeline != null) {
+            derivedSize += timeline.estimateRetainedSize();
+        }
+        PlaybackPlan plan = playbackPlan;
+        if (plan != null) {
+            derivedSize += plan.estimateRetainedSize();
+        }
+        GameTickSchedule schedule = gameTickSchedule;
+        if (schedule != null) {
+            derivedSize += schedule.estimateRetainedSize();
+        }
+        if (contentHash != null) {
+            derivedSize += MemoryLayout.object(0, 16);
+        }
+        MetadataHash metadataHash = contentHashWithMetadata;
+        if (metadataHash != null) {
+            derivedSize += MemoryLayout.object(2, 0) + MemoryLayout.object(0, 16) + metadataHash.metadata.estimateRetainedSize();
+        }
+        for (int i = 0; i < encodings.length(); i++) {
+            Encoding encoding = dereference(encodings.get(i));
+            if (encoding != null) {
+                derivedSize += MemoryLayout.object(4, 0) + MemoryLayout.object(2, 0)
+                        + MemoryLayout.array(encoding.data.length, 1) + encoding.metadata.estimateRetainedSize();
+            }
+        }
+
+        return new RetainedSizeBreakdown(songSize, layersSize, notesSize, tickIndexSize, tempoChangesSize,
+                customInstrumentsSize, metadata.estimateRetainedSize(), derivedSize);
+    }
+
     /**
      * Returns number of non-custom instruments that the song may use
      * (e.g. if single instrument with index 5 is used, this value returns 6).
@@ -223,15 +479,25 @@ public final class Song {
         return Collections.unmodifiableMap(tempoChanges);
     }
 
+    @NotNull
+    Map<Long, Float> getTempoChangesInRange(long fromTick, long toTickExclusive) {
+        if (fromTick >= toTickExclusive) {
+            return Collections.emptyMap();
+        }
+        return tempoChanges.subMap(fromTick, true, toTickExclusive, false);
+    }
+
     /**
-     * Saves this song to the given stream using the given nbs version.
+     * Saves this song to the given stream using the given nbs version. The stream is closed afterwards.
+     * The encoded song is shared with {@link #encodedBuffer(NBSVersion)}.
      * @param nbsVersion version of nbs data format
      * @param stream output stream the song will be written to
      * @throws UncheckedIOException if any IO operation fails
      */
     public void save(@NotNull NBSVersion nbsVersion, @NotNull OutputStream stream){
         try {
-            NBSWriter.writeSong(this, nbsVersion.getVersionNumber(), stream);
+            stream.write(getEncoded(nbsVersion));
+            stream.close();
         }
         catch (IOException ex) {
             throw new UncheckedIOException("There was an error during the saving operation", ex);
@@ -240,19 +506,105 @@ public final class Song {
 
     /**
      * Saves this song to the given file using the given nbs version.
+     * The encoded song is shared with {@link #encodedBuffer(NBSVersion)}.
      * @param nbsVersion version of nbs data format
      * @param file file the song will be written to
      * @throws UncheckedIOException if the file can not be written or any IO operation fails
      */
     public void save(@NotNull NBSVersion nbsVersion, @NotNull File file) {
         try {
-            NBSWriter.writeSong(this, nbsVersion.getVersionNumber(), Files.newOutputStream(file.toPath()));
+            Files.write(file.toPath(), getEncoded(nbsVersion));
         }
         catch (IOException ex) {
             throw new UncheckedIOException("There was an error during the saving operation", ex);
         }
     }
 
+    /**
+     * Returns this song encoded in the given nbs version as a read-only buffer.
+     * The song is encoded on the first call for each version and the encoded data are kept while there is enough memory,
+     * so the song can be sent to any number of clients for the cost of a single encoding.
+     * Songs loaded by {@link #fromFile(File)} reuse the content of the file for the version of the file.
+     * <p>The song is encoded again if its {@link SongMetadata} were changed since the previous encoding.
+     * @param nbsVersion version of nbs data format
+     * @return read-only {@link ByteBuffer} positioned at the start of the data
+     * @throws UncheckedIOException if the song can not be encoded
+     */
+    @NotNull
+    public ByteBuffer encodedBuffer(@NotNull NBSVersion nbsVersion) {
+        return ByteBuffer.wrap(getEncoded(nbsVersion)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns this song encoded in the given nbs version. Returns a copy of the data shared with {@link #encodedBuffer(NBSVersion)}.
+     * @param nbsVersion version of nbs data format
+     * @return encoded song
+     * @throws UncheckedIOException if the song can not be encoded
+     */
+    @NotNull
+    public byte[] toBytes(@NotNull NBSVersion nbsVersion) {
+        return getEncoded(nbsVersion).clone();
+    }
+
+    @NotNull
+    private byte[] getEncoded(@NotNull NBSVersion nbsVersion) {
+        int version = nbsVersion.getVersionNumber();
+        Encoding encoding = dereference(encodings.get(version));
+        if (encoding != null && encoding.metadata.hasSameContent(metadata)) {
+            return encoding.data;
+        }
+
+        // Concurrent requests wait for a single encoding
+        synchronized (encodings) {
+            encoding = dereference(encodings.get(version));
+            if (encoding == null || !encoding.metadata.hasSameContent(metadata)) {
+                // Metadata are copied before the encoding, so later changes of the metadata are detected
+                SongMetadata encodedMetadata = new SongMetadata(metadata);
+                ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                try {
+                    NBSWriter.writeSong(this, version, stream);
+                }
+                catch (IOException ex) {
+                    throw new UncheckedIOException("There was an error during the saving operation", ex);
+                }
+                encoding = new Encoding(stream.toByteArray(), encodedMetadata);
+                encodings.set(version, new SoftReference<>(encoding));
+            }
+            return encoding.data;
+        }
+    }
+
+    @Nullable
+    private static Encoding dereference(@Nullable SoftReference<Encoding> reference) {
+        return reference != null ? reference.get() : null;
+    }
+
+    /**
+     * Creates a song playing the given songs one after another. Each song starts at the tick after the end of the previous one
+     * and keeps its own tempo. Layers with the same index are merged; if their volume or panning differ, these are applied to their notes.
+     * Custom instruments with the same sound file, key and pressing of the key are merged and the notes are remapped accordingly.
+     * Metadata are copied from the first song.
+     * @param songs songs to be joined
+     * @return new {@link Song}
+     */
+    @NotNull
+    public static Song concat(@NotNull List<Song> songs) {
+        return SongJoining.concat(songs);
+    }
+
+    /**
+     * Creates a song playing all given songs at once. Layers of the songs are placed after each other and custom instruments are merged
+     * as by {@link #concat(List)}. The song uses the tempo of the first song; notes of songs with a different tempo
+     * are moved to the tick nearest to the time they are played in their song. Notes of a layer moved to the same tick are placed
+     * into additional layers with the same properties. Metadata are copied from the first song.
+     * @param songs songs to be mixed
+     * @return new {@link Song}
+     */
+    @NotNull
+    public static Song mix(@NotNull Song... songs) {
+        return SongJoining.mix(songs);
+    }
+
     /**
      * Loads song from given file
      * @param file file to be loaded
@@ -262,8 +614,14 @@ public final class Song {
      */
     @NotNull
     public static Song fromFile(@NotNull File file) throws IOException {
-        Song song = NBSReader.readSong(Files.newInputStream(file.toPath()));
+        byte[] data = Files.readAllBytes(file.toPath());
+        Song song = NBSReader.readSong(new ByteArrayInputStream(data));
         song.getMetadata().setSourceFile(file);
+
+        int version = NBSReader.readVersion(data);
+        if (version > 0 && version < song.encodings.length()) {
+            song.encodings.set(version, new SoftReference<>(new Encoding(data, new SongMetadata(song.getMetadata()))));
+        }
         return song;
     }
 
@@ -308,6 +666,29 @@ public final class Song {
         return new Builder(song, songMetadata, isStrict);
     }
 
+    /**
+     * Encoded song with a copy of the metadata it was encoded with.
+     */
+    private static final class Encoding {
+        private final byte[] data;
+        private final SongMetadata metadata;
+
+        private Encoding(byte @NotNull [] data, @NotNull SongMetadata metadata) {
+            this.data = data;
+            this.metadata = metadata;
+        }
+    }
+
+    private static final class MetadataHash {
+        private final ContentHash hash;
+        private final SongMetadata metadata;
+
+        private MetadataHash(@NotNull ContentHash hash, @NotNull SongMetadata metadata) {
+            this.hash = hash;
+            this.metadata = metadata;
+        }
+    }
+
     public static final class Builder {
         private final boolean isStrict;
         private final InteractiveReplacer replacer = new InteractiveReplacer();
@@ -321,7 +702,8 @@ public final class Song {
         private int nonCustomInstrumentsCount = 0;
         private final List<CustomInstrument> customInstruments = new ArrayList<>();
 
-        private final TreeSet<Long> nonEmptyTicks = new TreeSet<>();
+        // <Tick, Number of layers and tempo changes on the tick>
+        private final TickMap.Editor<Integer> nonEmptyTicks;
 
         // <Tick, Tempo>
         private final TreeMap<Long, Float> tempoChanges = new TreeMap<>();
@@ -329,6 +711,7 @@ public final class Song {
 
         private Builder(boolean isStrict) {
             this.isStrict = isStrict;
+            nonEmptyTicks = TickMap.<Integer>empty().edit();
         }
 
         /**
@@ -342,28 +725,26 @@ public final class Song {
         }
 
         private Builder(@NotNull Song originalSong, @NotNull SongMetadata songMetadata, boolean isStrict) {
-            this(isStrict);
+            this.isStrict = isStrict;
             if (originalSong.metadata == songMetadata) {
                 throw new IllegalArgumentException("Supplied SongMetadata are the same instance of SongMetadata as in the original song.");
             }
             metadata = songMetadata;
 
+            // Statistics and notes are shared with the original song, so the copy does not need to rescan the notes
             isStereo = originalSong.isStereo;
             lastTick = originalSong.lastTick;
             songLength = originalSong.songLength;
             nonCustomInstrumentsCount = originalSong.nonCustomInstrumentsCount;
+            nonEmptyTicks = originalSong.nonEmptyTicks.edit();
 
-            for (CustomInstrument instrument : originalSong.customInstruments){
-                customInstrument(instrument);
-            }
+            customInstruments.addAll(originalSong.customInstruments);
 
             for (LayerInSong layer : originalSong.getLayers()){
-                layer(layer.getLayerData());
+                layers.add(layer.getLayerData());
             }
 
-            for (Map.Entry<Long, Float> entry : originalSong.tempoChanges.entrySet()){
-                tempoChange(entry.getKey(), entry.getValue());
-            }
+            tempoChanges.putAll(originalSong.tempoChanges);
         }
 
         @NotNull
@@ -435,7 +816,7 @@ public final class Song {
                             .setFileName("block.note_block.harp")
                             .build()),
                     c -> {},
-                    () -> {});
+                    (o, n) -> {});
             return this;
         }
 
@@ -454,7 +835,34 @@ public final class Song {
                 return this;
             }
             layers.add(layer);
-            updateSongStatisticData(layer);
+            addLayerStatisticData(layer);
+            return this;
+        }
+
+        /**
+         * Adds the given layers to the song. Statistics of the song are updated in a single pass over the added layers.
+         * @param layers {@link Layer}s to be added to the end of the list
+         * @throws IllegalArgumentException if the {@link Builder} is in strict mode and any of the layers is null
+         * @return this instance of {@link Builder}
+         */
+        @NotNull
+        public Builder layers(@NotNull Collection<? extends Layer> layers) {
+            if (isStrict) {
+                for (Layer layer : layers) {
+                    if (layer == null) {
+                        throw new IllegalArgumentException("Can not add null as a layer");
+                    }
+                }
+            }
+
+            for (Layer layer : layers) {
+                if (layer != null) {
+                    this.layers.add(layer);
+                    addNonEmptyTicks(layer);
+                    mergeLayerStatisticData(layer);
+                }
+            }
+            updateTempoChangeSongLength();
             return this;
         }
 
@@ -487,12 +895,12 @@ public final class Song {
         public Builder layer(int index, @Nullable Layer layer, ItemChangeMode changeMode) {
             genericItemChange(index, layer, changeMode, layers,
                     () -> layer(Layer.builder().name("Empty layer").build()),
-                    this::updateSongStatisticData,
-                    this::recalculateSongStatisticData);
+                    this::addLayerStatisticData,
+                    this::replaceLayerStatisticData);
             return this;
         }
 
-        private <T> void genericItemChange(int index, T item, ItemChangeMode changeMode, List<T> list, Runnable dummyItemCreator, Consumer<T> onAdd, Runnable onChange) {
+        private <T> void genericItemChange(int index, T item, ItemChangeMode changeMode, List<T> list, Runnable dummyItemCreator, Consumer<T> onAdd, BiConsumer<T, T> onChange) {
             if (index < 0) {
                 if (isStrict) {
                     throw new IndexOutOfBoundsException("Index can not be lower than 0");
@@ -517,8 +925,12 @@ public final class Song {
 
             switch (changeMode) {
                 case SET:
-                    list.set(index, item);
-                    onChange.run();
+                    if (index == list.size()) {
+                        list.add(item);
+                        onAdd.accept(item);
+                    } else {
+                        onChange.accept(list.set(index, item), item);
+                    }
                     break;
                 case INSERT:
                     list.add(index, item);
@@ -529,7 +941,7 @@ public final class Song {
             }
         }
 
-        private <T> void genericItemRemove(int index, ItemChangeMode changeMode, List<T> list, Runnable onChange) {
+        private <T> void genericItemRemove(int index, ItemChangeMode changeMode, List<T> list, BiConsumer<T, T> onChange) {
             if (index > list.size()) {
                 if (isStrict) {
                     throw new IndexOutOfBoundsException("Index is out of bounds and null can not be added");
@@ -541,8 +953,69 @@ public final class Song {
                 throw new IllegalArgumentException("Null can only be used with ItemChangeMode.SET");
             }
 
-            list.remove(index);
-            onChange.run();
+            onChange.accept(list.remove(index), null);
+        }
+
+        private void addLayerStatisticData(@NotNull Layer layer) {
+            addNonEmptyTicks(layer);
+            updateSongStatisticData(layer);
+        }
+
+        /**
+         * Replaces all layers by the given layers. Statistics of the song are updated once for all the layers.
+         */
+        @NotNull
+        Builder setLayers(@NotNull List<? extends Layer> newLayers) {
+            for (Layer layer : layers) {
+                removeNonEmptyTicks(unwrapLayer(layer));
+            }
+            layers.clear();
+            for (Layer layer : newLayers) {
+                layers.add(layer);
+                addNonEmptyTicks(layer);
+            }
+            recalculateSongStatisticData();
+            return this;
+        }
+
+        /**
+         * Replaces the layers at the indices of the non-null elements of the array. Statistics of the song are updated once for all the layers.
+         */
+        @NotNull
+        Builder replaceLayers(@Nullable Layer @NotNull [] replacements) {
+            for (int i = 0; i < replacements.length; i++) {
+                if (replacements[i] != null) {
+                    replaceNonEmptyTicks(layers.set(i, replacements[i]), replacements[i]);
+                }
+            }
+            recalculateSongStatisticData();
+            return this;
+        }
+
+        private void replaceLayerStatisticData(@NotNull Layer oldLayer, @Nullable Layer newLayer) {
+            replaceNonEmptyTicks(oldLayer, newLayer);
+            recalculateSongStatisticData();
+        }
+
+        private void replaceNonEmptyTicks(@NotNull Layer oldLayer, @Nullable Layer newLayer) {
+            Layer oldLayerData = unwrapLayer(oldLayer);
+            Layer newLayerData = newLayer != null ? unwrapLayer(newLayer) : null;
+
+            if (oldLayerData instanceof LayerImpl && newLayerData instanceof LayerImpl) {
+                // Only the ticks that differ between the versions of the layer are visited
+                TickMap.diff(((LayerImpl) oldLayerData).getNoteMap(), ((LayerImpl) newLayerData).getNoteMap(), (tick, oldNote, newNote) -> {
+                    if (oldNote == null) {
+                        incrementNonEmptyTick(tick);
+                    } else if (newNote == null) {
+                        decrementNonEmptyTick(tick);
+                    }
+                });
+            } else {
+                removeNonEmptyTicks(oldLayerData);
+                if (newLayerData != null) {
+                    addNonEmptyTicks(newLayerData);
+                }
+            }
         }
 
         private void recalculateSongStatisticData() {
@@ -550,39 +1023,78 @@ public final class Song {
             songLength = 0;
             isStereo = false;
             nonCustomInstrumentsCount = 0;
-            nonEmptyTicks.clear();
 
             for (Layer layer : layers) {
-                updateSongStatisticData(layer);
+                mergeLayerStatisticData(layer);
             }
 
-            nonEmptyTicks.addAll(tempoChanges.keySet());
+            updateTempoChangeSongLength();
         }
 
         private void updateSongStatisticData(@NotNull Layer layer) {
-            for (Map.Entry<Long, Note> noteEntry : layer.getNotes().entrySet()) {
-                long tick = noteEntry.getKey();
-                Note note = noteEntry.getValue();
+            mergeLayerStatisticData(layer);
+            updateTempoChangeSongLength();
+        }
 
-                if (lastTick < tick) {
-                    lastTick = tick;
-                }
+        /**
+         * Merges the statistics of the layer into the statistics of the song without considering tempo changes.
+         */
+        private void mergeLayerStatisticData(@NotNull Layer layer) {
+            LayerStatistics statistics = LayerStatistics.of(layer);
 
-                if (songLength <= tick) {
-                    songLength = tick + 1;
-                }
+            if (lastTick < statistics.getLastTick()) {
+                lastTick = statistics.getLastTick();
+            }
 
-                if (!note.isCustomInstrument() && nonCustomInstrumentsCount <= note.getInstrument()) {
-                    nonCustomInstrumentsCount = note.getInstrument() + 1;
-                }
+            if (songLength <= statistics.getLastTick()) {
+                songLength = statistics.getLastTick() + 1;
+            }
 
-                isStereo |= note.getPanning() != Note.NEUTRAL_PANNING;
-                nonEmptyTicks.add(tick);
+            if (nonCustomInstrumentsCount < statistics.getNonCustomInstrumentsCount()) {
+                nonCustomInstrumentsCount = statistics.getNonCustomInstrumentsCount();
             }
 
+            isStereo |= statistics.hasStereoNotes();
             isStereo |= layer.getPanning() != Layer.NEUTRAL_PANNING;
+        }
 
-            updateTempoChangeSongLength();
+        @NotNull
+        private static Layer unwrapLayer(@NotNull Layer layer) {
+            return layer instanceof LayerInSong ? ((LayerInSong) layer).getLayerData() : layer;
+        }
+
+        private void addNonEmptyTicks(@NotNull Layer layer) {
+            layer = unwrapLayer(layer);
+            if (layer instanceof LayerImpl) {
+                ((LayerImpl) layer).getNoteMap().forEach((tick, note) -> incrementNonEmptyTick(tick));
+                return;
+            }
+            for (Long tick : layer.getNotes().keySet()) {
+                incrementNonEmptyTick(tick);
+            }
+        }
+
+        private void removeNonEmptyTicks(@NotNull Layer layer) {
+            if (layer instanceof LayerImpl) {
+                ((LayerImpl) layer).getNoteMap().forEach((tick, note) -> decrementNonEmptyTick(tick));
+                return;
+            }
+            for (Long tick : layer.getNotes().keySet()) {
+                decrementNonEmptyTick(tick);
+            }
+        }
+
+        private void incrementNonEmptyTick(long tick) {
+            Integer count = nonEmptyTicks.get(tick);
+            nonEmptyTicks.put(tick, count == null ? 1 : count + 1);
+        }
+
+        private void decrementNonEmptyTick(long tick) {
+            Integer count = nonEmptyTicks.get(tick);
+            if (count == null) {
+                return;
+            }
+            nonEmptyTicks.put(tick, count > 1 ? count - 1 : null);
         }
 
         private void updateTempoChangeSongLength() {
@@ -640,13 +1152,16 @@ public final class Song {
             }
 
             if (tempo <= 0) {
-                tempoChanges.remove(firstTick);
+                if (tempoChanges.remove(firstTick) != null) {
+                    decrementNonEmptyTick(firstTick);
+                }
                 recalculateSongStatisticData();
                 return this;
             }
 
-            nonEmptyTicks.add(firstTick);
-            tempoChanges.put(firstTick, tempo);
+            if (tempoChanges.put(firstTick, tempo) == null) {
+                incrementNonEmptyTick(firstTick);
+            }
 
             updateTempoChangeSongLength();
 
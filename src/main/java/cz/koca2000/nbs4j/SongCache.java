@@ -0,0 +1,351 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.ToLongFunction;
+
+/**
+ * Cache of songs loaded from files. Entries are keyed by the path of the file together with its last modification time and size,
+ * so a changed file is loaded again. The cache is bounded by the estimated number of bytes retained by the cached songs
+ * and evicts the least recently used songs. When several threads request the same file at once, it is loaded only once.
+ * <p>Songs are weighed once when they are loaded. Data derived from a song later, e.g. by {@link Song#compile()} or {@link Song#save(NBSVersion, java.io.OutputStream)},
+ * are therefore outside of the budget and the default weigher does not count them.
+ * <p>This class is thread-safe.
+ */
+public final class SongCache {
+    /**
+     * Weigher using {@link Song#getRetainedSizeBreakdown()} without {@link RetainedSizeBreakdown#getDerivedData()},
+     * which can grow after the song is cached or be cleared by the garbage collector.
+     */
+    public static final ToLongFunction<Song> DEFAULT_WEIGHER = song -> {
+        RetainedSizeBreakdown breakdown = song.getRetainedSizeBreakdown();
+        return breakdown.getTotal() - breakdown.getDerivedData();
+    };
+
+    private final long byteBudget;
+    private final ToLongFunction<Song> weigher;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Path, Key> currentKeys = new HashMap<>();
+
+    private long byteSize = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+    private long loadFailureCount = 0;
+
+    /**
+     * Creates a cache using {@link #DEFAULT_WEIGHER}.
+     * @param byteBudget maximum estimated number of bytes retained by the cached songs
+     * @throws IllegalArgumentException if the budget is not positive
+     */
+    public SongCache(long byteBudget) {
+        this(byteBudget, DEFAULT_WEIGHER);
+    }
+
+    /**
+     * Creates a cache.
+     * @param byteBudget maximum estimated number of bytes retained by the cached songs
+     * @param weigher function estimating the number of bytes retained by a song
+     * @throws IllegalArgumentException if the budget is not positive
+     */
+    public SongCache(long byteBudget, @NotNull ToLongFunction<Song> weigher) {
+        if (byteBudget <= 0) {
+            throw new IllegalArgumentException("Byte budget must be positive.");
+        }
+        this.byteBudget = byteBudget;
+        this.weigher = Objects.requireNonNull(weigher);
+    }
+
+    /**
+     * Returns the song loaded from the file. The song is loaded only if the cache does not contain it
+     * or the file was modified since it was loaded.
+     * @param path path to the file
+     * @return {@link Song}
+     * @throws IOException if file does not exist or can not be opened
+     * @throws SongCorruptedException if an error occurred during the loading
+     */
+    @NotNull
+    public Song get(@NotNull Path path) throws IOException {
+        path = path.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Key key = new Key(path, attributes.lastModifiedTime().toMillis(), attributes.size());
+
+        Entry entry;
+        boolean isLoading = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null) {
+                hitCount++;
+            } else {
+                missCount++;
+                isLoading = true;
+                entry = new Entry();
+                entries.put(key, entry);
+                Key previousKey = currentKeys.put(path, key);
+                if (previousKey != null && !previousKey.equals(key)) {
+                    removeEntry(previousKey);
+                }
+            }
+        }
+
+        if (isLoading) {
+            return load(key, entry);
+        }
+        return await(entry);
+    }
+
+    @NotNull
+    private Song load(@NotNull Key key, @NotNull Entry entry) throws IOException {
+        Song song;
+        try {
+            song = Song.fromFile(key.path.toFile());
+        } catch (IOException | RuntimeException | Error ex) {
+            synchronized (entries) {
+                loadFailureCount++;
+                if (entries.get(key) == entry) {
+                    removeEntry(key);
+                }
+            }
+            entry.song.completeExceptionally(ex);
+            throw ex;
+        }
+
+        long weight = Math.max(weigher.applyAsLong(song), 0);
+        synchronized (entries) {
+            if (entries.get(key) == entry) {
+                if (weight > byteBudget) {
+                    // The song would not fit even into the empty cache, so other songs are kept
+                    removeEntry(key);
+                    evictionCount++;
+                } else {
+                    entry.weight = weight;
+                    byteSize += weight;
+                    evict();
+                }
+            }
+        }
+        entry.song.complete(song);
+        return song;
+    }
+
+    @NotNull
+    private static Song await(@NotNull Entry entry) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return entry.song.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof IOException) {
+                        throw new IOException(cause.getMessage(), cause);
+                    }
+                    if (cause instanceof SongCorruptedException) {
+                        throw new SongCorruptedException(cause);
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw (Error) cause;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (byteSize > byteBudget && iterator.hasNext()) {
+            Map.Entry<Key, Entry> mapEntry = iterator.next();
+            Entry entry = mapEntry.getValue();
+            if (!entry.song.isDone() && entry.weight == 0) {
+                // Songs that are still being loaded are not accounted yet
+                continue;
+            }
+            iterator.remove();
+            currentKeys.remove(mapEntry.getKey().path, mapEntry.getKey());
+            byteSize -= entry.weight;
+            evictionCount++;
+        }
+    }
+
+    private void removeEntry(@NotNull Key key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            byteSize -= entry.weight;
+        }
+        currentKeys.remove(key.path, key);
+    }
+
+    /**
+     * Removes the song loaded from the file.
+     * @param path path to the file
+     */
+    public void invalidate(@NotNull Path path) {
+        path = path.toAbsolutePath().normalize();
+        synchronized (entries) {
+            Key key = currentKeys.get(path);
+            if (key != null) {
+                removeEntry(key);
+            }
+        }
+    }
+
+    /**
+     * Removes all songs.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            currentKeys.clear();
+            byteSize = 0;
+        }
+    }
+
+    /**
+     * Returns the number of cached songs including the songs being loaded.
+     * @return number of songs
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Returns the estimated number of bytes retained by the cached songs.
+     * @return number of bytes
+     */
+    public long getByteSize() {
+        synchronized (entries) {
+            return byteSize;
+        }
+    }
+
+    /**
+     * Returns the maximum estimated number of bytes retained by the cached songs.
+     * @return number of bytes
+     */
+    public long getByteBudget() {
+        return byteBudget;
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this cache.
+     * @return {@link Statistics}
+     */
+    @NotNull
+    public Statistics getStatistics() {
+        synchronized (entries) {
+            return new Statistics(hitCount, missCount, evictionCount, loadFailureCount);
+        }
+    }
+
+    /**
+     * Immutable snapshot of the statistics of a {@link SongCache}.
+     */
+    public static final class Statistics {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long loadFailureCount;
+
+        private Statistics(long hitCount, long missCount, long evictionCount, long loadFailureCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.loadFailureCount = loadFailureCount;
+        }
+
+        /**
+         * Returns how many times a requested song was found in the cache, including songs that were being loaded by another thread.
+         * @return number of hits
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * Returns how many times a requested song had to be loaded.
+         * @return number of misses
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * Returns how many songs were removed to stay within the byte budget.
+         * @return number of evictions
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * Returns how many loads failed.
+         * @return number of failed loads
+         */
+        public long getLoadFailureCount() {
+            return loadFailureCount;
+        }
+
+        /**
+         * Returns the ratio of hits to all requests.
+         * @return value in range [0; 1]; 0 if there were no requests
+         */
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 0 : hitCount / (double) requests;
+        }
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<Song> song = new CompletableFuture<>();
+        private long weight = 0;
+    }
+
+    private static final class Key {
+        private final Path path;
+        private final long lastModified;
+        private final long size;
+
+        private Key(@NotNull Path path, long lastModified, long size) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return lastModified == other.lastModified && size == other.size && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, lastModified, size);
+        }
+    }
+}
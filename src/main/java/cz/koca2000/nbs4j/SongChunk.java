@@ -0,0 +1,54 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Time chunk of a song decoded by {@link ChunkedSongReader}.
+ */
+public final class SongChunk {
+    private final int index;
+    private final long firstTick;
+    private final long endTick;
+    private final Song song;
+
+    SongChunk(int index, long firstTick, long endTick, @NotNull Song song) {
+        this.index = index;
+        this.firstTick = firstTick;
+        this.endTick = endTick;
+        this.song = song;
+    }
+
+    /**
+     * Returns the index of the chunk.
+     * @return zero-based index of the chunk
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the first tick covered by the chunk.
+     * @return first tick of the chunk
+     */
+    public long getFirstTick() {
+        return firstTick;
+    }
+
+    /**
+     * Returns the tick after the last tick covered by the chunk.
+     * @return exclusive end of the chunk
+     */
+    public long getEndTick() {
+        return endTick;
+    }
+
+    /**
+     * Returns the song with the layers, custom instruments, tempo and metadata of the whole song, but only with the notes of this chunk.
+     * Ticks of the notes are not shifted, so they can be scheduled by the tempo of the whole song.
+     * @return {@link Song}
+     */
+    @NotNull
+    public Song getSong() {
+        return song;
+    }
+}
@@ -0,0 +1,147 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Computes {@link SongPatch}es between versions of a {@link Song}.
+ * Songs created by {@link Song#builder(Song)} share unmodified layers and parts of modified layers with the original song,
+ * so the shared parts are skipped and computing the difference costs time proportional to the size of the change.
+ */
+public final class SongDiff {
+
+    private SongDiff() {
+    }
+
+    /**
+     * Computes the changes that turn the original song into the modified song.
+     * @param original original version of the song
+     * @param modified modified version of the song
+     * @return {@link SongPatch} that creates the modified song when applied to the original song
+     */
+    @NotNull
+    public static SongPatch compute(@NotNull Song original, @NotNull Song modified) {
+        List<SongPatch.LayerChange> layerChanges = new ArrayList<>();
+        for (int i = 0; i < modified.getLayersCount(); i++) {
+            Layer newLayer = modified.getLayer(i).getLayerData();
+            if (i >= original.getLayersCount()) {
+                layerChanges.add(diffLayer(i, Layer.builder().build(), newLayer, true));
+                continue;
+            }
+
+            Layer oldLayer = original.getLayer(i).getLayerData();
+            if (oldLayer == newLayer) {
+                continue;
+            }
+            SongPatch.LayerChange change = diffLayer(i, oldLayer, newLayer, !haveSameProperties(oldLayer, newLayer));
+            if (change != null) {
+                layerChanges.add(change);
+            }
+        }
+
+        List<SongPatch.CustomInstrumentChange> customInstrumentChanges = new ArrayList<>();
+        for (int i = 0; i < modified.getCustomInstrumentsCount(); i++) {
+            CustomInstrument customInstrument = modified.getCustomInstrument(i);
+            if (i >= original.getCustomInstrumentsCount() || !isSameCustomInstrument(original.getCustomInstrument(i), customInstrument)) {
+                customInstrumentChanges.add(new SongPatch.CustomInstrumentChange(i, customInstrument));
+            }
+        }
+
+        // Removed tempo changes are stored with non-positive tempo
+        Map<Long, Float> oldTempoChanges = original.getTempoChanges();
+        Map<Long, Float> newTempoChanges = modified.getTempoChanges();
+        TreeSet<Long> tempoChangeTicks = new TreeSet<>(oldTempoChanges.keySet());
+        tempoChangeTicks.addAll(newTempoChanges.keySet());
+        long[] ticks = new long[tempoChangeTicks.size()];
+        float[] tempos = new float[ticks.length];
+        int tempoChangesCount = 0;
+        for (long tick : tempoChangeTicks) {
+            Float oldTempo = oldTempoChanges.get(tick);
+            Float newTempo = newTempoChanges.get(tick);
+            if (!Objects.equals(oldTempo, newTempo)) {
+                ticks[tempoChangesCount] = tick;
+                tempos[tempoChangesCount] = newTempo != null ? newTempo : 0;
+                tempoChangesCount++;
+            }
+        }
+
+        SongMetadata metadata = original.getMetadata().hasSameContent(modified.getMetadata()) ? null : new SongMetadata(modified.getMetadata());
+
+        return new SongPatch(original.getLayersCount(), original.getCustomInstrumentsCount(), original.getSongLength(),
+                modified.getLayersCount(), modified.getCustomInstrumentsCount(), layerChanges, customInstrumentChanges,
+                Arrays.copyOf(ticks, tempoChangesCount), Arrays.copyOf(tempos, tempoChangesCount), metadata, modified.getSongLength());
+    }
+
+    /**
+     * Returns changes of notes of the layer and its properties if requested or null if there are no changes.
+     */
+    private static SongPatch.LayerChange diffLayer(int index, @NotNull Layer oldLayer, @NotNull Layer newLayer, boolean includeProperties) {
+        List<Long> ticks = new ArrayList<>();
+        List<Note> notes = new ArrayList<>();
+        if (oldLayer instanceof LayerImpl && newLayer instanceof LayerImpl) {
+            // Shared parts of the note maps are skipped and ticks are reported in ascending order
+            TickMap.diff(((LayerImpl) oldLayer).getNoteMap(), ((LayerImpl) newLayer).getNoteMap(), (tick, oldNote, newNote) -> {
+                if (oldNote == null || newNote == null || !isSameNote(oldNote, newNote)) {
+                    ticks.add(tick);
+                    notes.add(newNote);
+                }
+            });
+        } else {
+            TreeMap<Long, Note> changes = new TreeMap<>();
+            for (Long tick : oldLayer.getNotes().keySet()) {
+                changes.put(tick, null);
+            }
+            for (Map.Entry<Long, Note> entry : newLayer.getNotes().entrySet()) {
+                Note oldNote = oldLayer.getNotes().get(entry.getKey());
+                if (oldNote != null && isSameNote(oldNote, entry.getValue())) {
+                    changes.remove(entry.getKey());
+                } else {
+                    changes.put(entry.getKey(), entry.getValue());
+                }
+            }
+            ticks.addAll(changes.keySet());
+            notes.addAll(changes.values());
+        }
+
+        if (ticks.isEmpty() && !includeProperties) {
+            return null;
+        }
+        long[] tickArray = new long[ticks.size()];
+        for (int i = 0; i < tickArray.length; i++) {
+            tickArray[i] = ticks.get(i);
+        }
+        Layer properties = null;
+        if (includeProperties) {
+            properties = Layer.builder()
+                    .name(newLayer.getName())
+                    .locked(newLayer.isLocked())
+                    .volume(newLayer.getVolume())
+                    .panning(newLayer.getPanning())
+                    .build();
+        }
+        return new SongPatch.LayerChange(index, properties, tickArray, notes.toArray(new Note[0]));
+    }
+
+    private static boolean haveSameProperties(@NotNull Layer a, @NotNull Layer b) {
+        return a.getName().equals(b.getName()) && a.isLocked() == b.isLocked()
+                && a.getVolume() == b.getVolume() && a.getPanning() == b.getPanning();
+    }
+
+    private static boolean isSameNote(@NotNull Note a, @NotNull Note b) {
+        return a.getInstrument() == b.getInstrument() && a.isCustomInstrument() == b.isCustomInstrument()
+                && a.getKey() == b.getKey() && a.getVolume() == b.getVolume()
+                && a.getPanning() == b.getPanning() && a.getPitch() == b.getPitch();
+    }
+
+    private static boolean isSameCustomInstrument(@NotNull CustomInstrument a, @NotNull CustomInstrument b) {
+        return a == b || (a.getName().equals(b.getName()) && a.getFileName().equals(b.getFileName())
+                && a.getKey() == b.getKey() && a.shouldPressKey() == b.shouldPressKey());
+    }
+}
@@ -0,0 +1,161 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/**
+ * Undo and redo history of {@link Song} versions.
+ * Songs created by {@link Song#builder(Song)} share all layers and notes that were not modified,
+ * so every recorded version costs roughly the memory of the change that created it.
+ * <p>This class is not thread-safe.
+ */
+public final class SongHistory {
+    public static final int DEFAULT_CAPACITY = 200;
+
+    private final int capacity;
+    private final Deque<Song> undoVersions = new ArrayDeque<>();
+    private final Deque<Song> redoVersions = new ArrayDeque<>();
+    private Song current;
+
+    /**
+     * Creates history with {@link #DEFAULT_CAPACITY} undo steps.
+     * @param song initial version of the song
+     */
+    public SongHistory(@NotNull Song song) {
+        this(song, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates history with the given number of undo steps.
+     * @param song initial version of the song
+     * @param capacity maximum number of versions that can be undone
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    public SongHistory(@NotNull Song song, int capacity) {
+        Objects.requireNonNull(song);
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity of the history can not be negative.");
+        }
+        this.capacity = capacity;
+        current = song;
+    }
+
+    /**
+     * Returns the current version of the song.
+     * @return {@link Song}
+     */
+    @NotNull
+    public Song getCurrent() {
+        return current;
+    }
+
+    /**
+     * Makes the given song the current version. The previous version can be restored by {@link #undo()}.
+     * All versions that could be restored by {@link #redo()} are discarded.
+     * If the history is full, the oldest version is discarded.
+     * @param song new version of the song
+     * @return the given song
+     */
+    @NotNull
+    public Song record(@NotNull Song song) {
+        Objects.requireNonNull(song);
+        if (song == current) {
+            return song;
+        }
+
+        if (capacity > 0) {
+            if (undoVersions.size() == capacity) {
+                undoVersions.removeLast();
+            }
+            undoVersions.push(current);
+        }
+        redoVersions.clear();
+        current = song;
+        return song;
+    }
+
+    /**
+     * Creates a new version of the song from a builder initialized with the current version and records it.
+     * @param edit function that modifies the given builder and returns the builder to be built
+     * @return the new current version of the song
+     * @see #record(Song)
+     */
+    @NotNull
+    public Song edit(@NotNull UnaryOperator<Song.Builder> edit) {
+        return record(edit.apply(Song.builder(current)).build());
+    }
+
+    /**
+     * Returns whether there is a version that can be restored by {@link #undo()}.
+     * @return true if undo is possible; otherwise, false
+     */
+    public boolean canUndo() {
+        return !undoVersions.isEmpty();
+    }
+
+    /**
+     * Returns whether there is a version that can be restored by {@link #redo()}.
+     * @return true if redo is possible; otherwise, false
+     */
+    public boolean canRedo() {
+        return !redoVersions.isEmpty();
+    }
+
+    /**
+     * Returns number of versions that can be restored by {@link #undo()}.
+     * @return number of undo steps
+     */
+    public int getUndoCount() {
+        return undoVersions.size();
+    }
+
+    /**
+     * Returns number of versions that can be restored by {@link #redo()}.
+     * @return number of redo steps
+     */
+    public int getRedoCount() {
+        return redoVersions.size();
+    }
+
+    /**
+     * Restores the previous version of the song.
+     * @return the restored version
+     * @throws IllegalStateException if there is no version to be restored
+     */
+    @NotNull
+    public Song undo() {
+        if (undoVersions.isEmpty()) {
+            throw new IllegalStateException("There is no version to undo.");
+        }
+        redoVersions.push(current);
+        current = undoVersions.pop();
+        return current;
+    }
+
+    /**
+     * Restores the version that was undone by {@link #undo()}.
+     * @return the restored version
+     * @throws IllegalStateException if there is no version to be restored
+     */
+    @NotNull
+    public Song redo() {
+        if (redoVersions.isEmpty()) {
+            throw new IllegalStateException("There is no version to redo.");
+        }
+        undoVersions.push(current);
+        current = redoVersions.pop();
+        return current;
+    }
+
+    /**
+     * Discards all versions except of the current one.
+     */
+    public void clear() {
+        undoVersions.clear();
+        redoVersions.clear();
+    }
+}
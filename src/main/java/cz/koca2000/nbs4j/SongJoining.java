@@ -0,0 +1,260 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Joins several songs into one, either one after another or played at once.
+ * Notes are collected into arrays presized from the known note counts and every resulting layer is built once,
+ * so statistics of the resulting song are computed in a single pass.
+ */
+final class SongJoining {
+
+    private SongJoining() {
+    }
+
+    @NotNull
+    static Song concat(@NotNull List<Song> songs) {
+        if (songs.isEmpty()) {
+            return Song.builder().build();
+        }
+
+        Song firstSong = songs.get(0);
+        Song.Builder result = Song.builder().metadata(new SongMetadata(firstSong.getMetadata()));
+        int[][] instrumentMappings = mergeCustomInstruments(songs, result);
+
+        int layersCount = 0;
+        for (Song song : songs) {
+            layersCount = Math.max(layersCount, song.getLayersCount());
+        }
+
+        long offset = 0;
+        long[] offsets = new long[songs.size()];
+        float currentTempo = firstSong.getTempo(Song.INITIAL_TEMPO_TICK);
+        result.initialTempo(currentTempo);
+        for (int i = 0; i < songs.size(); i++) {
+            Song song = songs.get(i);
+            offsets[i] = offset;
+            if (song.getSongLength() == 0) {
+                continue;
+            }
+            // Following songs restore their own initial tempo at their start
+            float initialTempo = song.getTempo(Song.INITIAL_TEMPO_TICK);
+            if (initialTempo != currentTempo) {
+                result.tempoChange(offset, initialTempo);
+            }
+            for (Map.Entry<Long, Float> tempoChange : song.getTempoChanges().entrySet()) {
+                if (tempoChange.getKey() > Song.INITIAL_TEMPO_TICK) {
+                    result.tempoChange(offset + tempoChange.getKey(), tempoChange.getValue());
+                }
+            }
+            currentTempo = song.getTempo(Long.MAX_VALUE);
+            offset += song.getSongLength();
+        }
+
+        List<Layer> layers = new ArrayList<>(layersCount);
+        for (int layerIndex = 0; layerIndex < layersCount; layerIndex++) {
+            Layer firstLayer = null;
+            boolean isFolded = false;
+            int notesCount = 0;
+            for (Song song : songs) {
+                if (layerIndex >= song.getLayersCount()) {
+                    continue;
+                }
+                Layer layer = song.getLayer(layerIndex);
+                notesCount += layer.getNotes().size();
+                if (firstLayer == null) {
+                    firstLayer = layer;
+                } else if (layer.getVolume() != firstLayer.getVolume() || layer.getPanning() != firstLayer.getPanning()) {
+                    isFolded = true;
+                }
+            }
+            Objects.requireNonNull(firstLayer);
+
+            NoteArrays notes = new NoteArrays(notesCount);
+            for (int i = 0; i < songs.size(); i++) {
+                Song song = songs.get(i);
+                if (layerIndex < song.getLayersCount()) {
+                    Layer layer = song.getLayer(layerIndex).getLayerData();
+                    long songOffset = offsets[i];
+                    int[] instrumentMapping = instrumentMappings[i];
+                    boolean foldLayer = isFolded;
+                    SongUtils.forEachNote(layer, (tick, note) -> {
+                        Note remappedNote = remapCustomInstrument(note, instrumentMapping);
+                        notes.add(songOffset + tick, foldLayer ? SongUtils.applyLayerProperties(layer, remappedNote) : remappedNote);
+                    });
+                }
+            }
+
+            Layer.Builder layer = Layer.builder()
+                    .name(firstLayer.getName())
+                    .locked(firstLayer.isLocked());
+            if (!isFolded) {
+                layer.volume(firstLayer.getVolume())
+                        .panning(firstLayer.getPanning());
+            }
+            layers.add(layer.notes(notes.getTicks(), notes.getNotes()).build());
+        }
+
+        return result.layers(layers)
+                .length(offset)
+                .build();
+    }
+
+    @NotNull
+    static Song mix(@NotNull Song... songs) {
+        if (songs.length == 0) {
+            return Song.builder().build();
+        }
+
+        Song firstSong = songs[0];
+        TempoTimeline timeline = firstSong.getTempoTimeline();
+        Song.Builder result = Song.builder().metadata(new SongMetadata(firstSong.getMetadata()));
+        int[][] instrumentMappings = mergeCustomInstruments(Arrays.asList(songs), result);
+        for (Map.Entry<Long, Float> tempoChange : firstSong.getTempoChanges().entrySet()) {
+            result.tempoChange(tempoChange.getKey(), tempoChange.getValue());
+        }
+
+        int layersCount = 0;
+        for (Song song : songs) {
+            layersCount += song.getLayersCount();
+        }
+
+        List<Layer> layers = new ArrayList<>(layersCount);
+        long length = 0;
+        for (int i = 0; i < songs.length; i++) {
+            Song song = songs[i];
+            // Songs with a different tempo are moved to the ticks of the first song nearest to the time of their notes
+            boolean isRetimed = !song.getTempoChanges().equals(firstSong.getTempoChanges());
+            TempoTimeline songTimeline = song.getTempoTimeline();
+            int[] instrumentMapping = instrumentMappings[i];
+
+            for (LayerInSong layerInSong : song.getLayers()) {
+                Layer layer = layerInSong.getLayerData();
+                // Retimed notes that fall on an occupied tick are moved to additional layers with the same properties.
+                // Retiming keeps the order of ticks, so a tick is occupied only if it was the last tick used in the layer.
+                List<NoteArrays> targets = new ArrayList<>(1);
+                SongUtils.forEachNote(layer, (tick, note) -> {
+                    long newTick = isRetimed ? getNearestTick(timeline, songTimeline.getNanosAtTick(tick)) : tick;
+                    int target = 0;
+                    while (target < targets.size() && targets.get(target).getLastTick() >= newTick) {
+                        target++;
+                    }
+                    if (target == targets.size()) {
+                        // Additional layers usually receive only a few notes
+                        targets.add(new NoteArrays(targets.isEmpty() ? layerInSong.getNotes().size() : 8));
+                    }
+                    targets.get(target).add(newTick, remapCustomInstrument(note, instrumentMapping));
+                });
+                if (targets.isEmpty()) {
+                    targets.add(new NoteArrays(0));
+                }
+
+                for (NoteArrays notes : targets) {
+                    layers.add(Layer.builder()
+                            .name(layer.getName())
+                            .locked(layer.isLocked())
+                            .volume(layer.getVolume())
+                            .panning(layer.getPanning())
+                            .notes(notes.getTicks(), notes.getNotes())
+                            .build());
+                    length = Math.max(length, notes.getLastTick() + 1);
+                }
+            }
+
+            long songLength = isRetimed
+                    ? getNearestTick(timeline, songTimeline.getNanosAtTick(song.getSongLength()))
+                    : song.getSongLength();
+            length = Math.max(length, songLength);
+        }
+
+        result.layers(layers);
+        if (length > 0) {
+            result.length(length);
+        }
+        return result.build();
+    }
+
+    /**
+     * Adds the distinct custom instruments of all songs to the builder. Instruments with the same sound file, key and pressing of the key are merged.
+     * @return mappings from the indices of custom instruments of every song to the indices in the builder
+     */
+    private static int[][] mergeCustomInstruments(@NotNull List<Song> songs, @NotNull Song.Builder result) {
+        Map<List<Object>, Integer> indices = new HashMap<>();
+        int[][] mappings = new int[songs.size()][];
+        for (int i = 0; i < songs.size(); i++) {
+            List<CustomInstrument> customInstruments = songs.get(i).getCustomInstruments();
+            int[] mapping = new int[customInstruments.size()];
+            for (int j = 0; j < mapping.length; j++) {
+                CustomInstrument customInstrument = customInstruments.get(j);
+                List<Object> key = Arrays.asList(customInstrument.getFileName(), customInstrument.getKey(), customInstrument.shouldPressKey());
+                Integer index = indices.get(key);
+                if (index == null) {
+                    index = indices.size();
+                    indices.put(key, index);
+                    result.customInstrument(customInstrument);
+                }
+                mapping[j] = index;
+            }
+            mappings[i] = mapping;
+        }
+        return mappings;
+    }
+
+    @NotNull
+    private static Note remapCustomInstrument(@NotNull Note note, int @NotNull [] mapping) {
+        if (!note.isCustomInstrument() || note.getInstrument() >= mapping.length || mapping[note.getInstrument()] == note.getInstrument()) {
+            return note;
+        }
+        return Note.builder(note)
+                .instrument(mapping[note.getInstrument()], true)
+                .build();
+    }
+
+    private static long getNearestTick(@NotNull TempoTimeline timeline, long nanos) {
+        long tick = timeline.getTickAtNanos(nanos);
+        long error = nanos - timeline.getNanosAtTick(tick);
+        long nextError = timeline.getNanosAtTick(tick + 1) - nanos;
+        return nextError < error ? tick + 1 : tick;
+    }
+
+    private static final class NoteArrays {
+        private long[] ticks;
+        private Note[] notes;
+        private int size = 0;
+
+        private NoteArrays(int capacity) {
+            ticks = new long[capacity];
+            notes = new Note[capacity];
+        }
+
+        private void add(long tick, @NotNull Note note) {
+            if (size == ticks.length) {
+                ticks = Arrays.copyOf(ticks, Math.max(size * 2, 8));
+                notes = Arrays.copyOf(notes, ticks.length);
+            }
+            ticks[size] = tick;
+            notes[size] = note;
+            size++;
+        }
+
+        private long getLastTick() {
+            return size == 0 ? -1 : ticks[size - 1];
+        }
+
+        private long @NotNull [] getTicks() {
+            return size == ticks.length ? ticks : Arrays.copyOf(ticks, size);
+        }
+
+        @NotNull
+        private Note @NotNull [] getNotes() {
+            return size == notes.length ? notes : Arrays.copyOf(notes, size);
+        }
+    }
+}
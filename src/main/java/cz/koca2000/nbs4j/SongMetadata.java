@@ -414,4 +414,35 @@ public class SongMetadata {
     public File getSourceFile() {
         return sourceFile;
     }
+
+    /**
+     * Returns whether the metadata have the same values as the given metadata. The source file is not compared.
+     */
+    boolean hasSameContent(@NotNull SongMetadata other) {
+        return title.equals(other.title) && author.equals(other.author)
+                && originalAuthor.equals(other.originalAuthor) && description.equals(other.description)
+                && autoSave == other.autoSave && autoSaveDuration == other.autoSaveDuration
+                && timeSignature == other.timeSignature && minutesSpent == other.minutesSpent
+                && leftClicks == other.leftClicks && rightClicks == other.rightClicks
+                && noteBlocksAdded == other.noteBlocksAdded && noteBlocksRemoved == other.noteBlocksRemoved
+                && originalMidiFileName.equals(other.originalMidiFileName)
+                && loop == other.loop && loopMaxCount == other.loopMaxCount && loopStartTick == other.loopStartTick;
+    }
+
+    /**
+     * Returns the estimated number of bytes of heap retained by these metadata.
+     * @return number of bytes
+     */
+    public long estimateRetainedSize() {
+        long size = MemoryLayout.object(6, 24)
+                + MemoryLayout.string(title)
+                + MemoryLayout.string(author)
+                + MemoryLayout.string(originalAuthor)
+                + MemoryLayout.string(description)
+                + MemoryLayout.string(originalMidiFileName);
+        if (sourceFile != null) {
+            size += MemoryLayout.object(1, 4) + MemoryLayout.string(sourceFile.getPath());
+        }
+        return size;
+    }
 }
@@ -0,0 +1,243 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Archive of many songs in a single file created by {@link SongPackWriter}. Songs are stored as {@link SongSnapshot}s
+ * and indexed by their ids. The index is sorted and has entries of a fixed size, so a song is found by a binary search
+ * and decoded directly from a single memory mapped region without opening any other file.
+ * <p>The index contains a {@link SongPackEntry} summary of every song, so the songs can be listed without loading them.
+ * Instances are immutable and thread-safe.
+ */
+public final class SongPack {
+    static final int MAGIC = 0x4B53424E; // NBSK in little endian
+    static final short FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 28;
+    static final int INDEX_ENTRY_SIZE = 40;
+
+    private final ByteBuffer buffer;
+    private final int entriesCount;
+    private final int indexOffset;
+    private final int stringsOffset;
+    private final List<SongPackEntry> entries;
+
+    private SongPack(@NotNull ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getShort(4) != FORMAT_VERSION) {
+            throw new SongCorruptedException();
+        }
+        entriesCount = buffer.getInt(8);
+        long index = buffer.getLong(12);
+        long strings = buffer.getLong(20);
+        if (entriesCount < 0 || index < HEADER_SIZE || strings > buffer.limit()
+                || index + (long) entriesCount * INDEX_ENTRY_SIZE > strings) {
+            throw new SongCorruptedException();
+        }
+        indexOffset = (int) index;
+        stringsOffset = (int) strings;
+        entries = new EntryList(0, entriesCount);
+    }
+
+    /**
+     * Opens the song pack. The file is memory mapped and only the header is read, songs are decoded when they are requested.
+     * @param file song pack file
+     * @return {@link SongPack}
+     * @throws IOException if the file does not exist or can not be opened
+     * @throws SongCorruptedException if the file is not a valid song pack
+     */
+    @NotNull
+    public static SongPack open(@NotNull File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new SongPack(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Returns the number of songs in the pack.
+     * @return number of songs
+     */
+    public int size() {
+        return entriesCount;
+    }
+
+    /**
+     * Returns the summaries of all songs in the pack ordered by their ids. Summaries are decoded when they are accessed.
+     * @return unmodifiable {@link List} of {@link SongPackEntry}
+     */
+    @NotNull
+    public List<SongPackEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the summaries of songs whose ids start with the given prefix ordered by their ids.
+     * The range is found by a binary search and summaries are decoded when they are accessed.
+     * @param prefix prefix of the ids
+     * @return unmodifiable {@link List} of {@link SongPackEntry}
+     */
+    @NotNull
+    public List<SongPackEntry> getEntriesWithPrefix(@NotNull String prefix) {
+        byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        return new EntryList(lowerBound(key, false), lowerBound(key, true));
+    }
+
+    /**
+     * Returns the summary of the song with the given id.
+     * @param id id of the song
+     * @return {@link SongPackEntry} or null if there is no song with the id
+     */
+    @Nullable
+    public SongPackEntry getEntry(@NotNull String id) {
+        int index = find(id);
+        return index != -1 ? readEntry(index) : null;
+    }
+
+    /**
+     * Returns whether the pack contains song with the given id.
+     * @param id id of the song
+     * @return true if the song is in the pack; otherwise, false
+     */
+    public boolean contains(@NotNull String id) {
+        return find(id) != -1;
+    }
+
+    /**
+     * Loads the song with the given id. Uncompressed songs are decoded directly from the mapped file.
+     * @param id id of the song
+     * @return {@link Song} or null if there is no song with the id
+     * @throws SongCorruptedException if the song can not be decoded
+     */
+    @Nullable
+    public Song getSong(@NotNull String id) {
+        int index = find(id);
+        if (index == -1) {
+            return null;
+        }
+
+        int entry = indexOffset + index * INDEX_ENTRY_SIZE;
+        long offset = buffer.getLong(entry);
+        int length = buffer.getInt(entry + 8);
+        if (offset < HEADER_SIZE || length < 0 || offset + length > indexOffset) {
+            throw new SongCorruptedException();
+        }
+        ByteBuffer song = buffer.duplicate();
+        song.position((int) offset);
+        song.limit((int) offset + length);
+        return SongSnapshot.read(song);
+    }
+
+    private int find(@NotNull String id) {
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        int index = lowerBound(key, false);
+        if (index < entriesCount && compareId(index, key, false) == 0) {
+            return index;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first entry whose id is not smaller than the key.
+     * @param prefixOnly whether ids are compared only up to the length of the key, which gives the entry after the ids with the key as a prefix
+     */
+    private int lowerBound(byte @NotNull [] key, boolean prefixOnly) {
+        int low = 0;
+        int high = entriesCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareId(middle, key, prefixOnly);
+            if (comparison < 0 || (prefixOnly && comparison == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares the id of the entry with the key by unsigned bytes of their UTF-8 encoding, which is the order of the index.
+     */
+    private int compareId(int index, byte @NotNull [] key, boolean prefixOnly) {
+        int entry = indexOffset + index * INDEX_ENTRY_SIZE;
+        int idOffset = stringsOffset + buffer.getInt(entry + 32);
+        int idLength = buffer.getInt(entry + 36);
+        if (idLength < 0 || idOffset < stringsOffset || (long) idOffset + idLength > buffer.limit()) {
+            throw new SongCorruptedException();
+        }
+
+        int length = Math.min(idLength, key.length);
+        for (int i = 0; i < length; i++) {
+            int comparison = Integer.compare(buffer.get(idOffset + i) & 0xFF, key[i] & 0xFF);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        if (prefixOnly && idLength >= key.length) {
+            return 0;
+        }
+        return Integer.compare(idLength, key.length);
+    }
+
+    @NotNull
+    private SongPackEntry readEntry(int index) {
+        int entry = indexOffset + index * INDEX_ENTRY_SIZE;
+        int layersCount = buffer.getInt(entry + 12);
+        long songLength = buffer.getLong(entry + 16);
+        double lengthInSeconds = buffer.getDouble(entry + 24);
+        int idOffset = stringsOffset + buffer.getInt(entry + 32);
+        int idLength = buffer.getInt(entry + 36);
+        if (idLength < 0 || idOffset < stringsOffset || (long) idOffset + idLength > buffer.limit()) {
+            throw new SongCorruptedException();
+        }
+
+        ByteBuffer strings = buffer.duplicate();
+        try {
+            strings.position(idOffset);
+            byte[] id = new byte[idLength];
+            strings.get(id);
+            BinaryCodec.Reader reader = new BinaryCodec.Reader(strings.slice());
+            return new SongPackEntry(new String(id, StandardCharsets.UTF_8), reader.readString(), reader.readString(),
+                    reader.readString(), songLength, lengthInSeconds, layersCount);
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw new SongCorruptedException(ex);
+        }
+    }
+
+    /**
+     * Range of the index that decodes the entries when they are accessed.
+     */
+    private final class EntryList extends AbstractList<SongPackEntry> {
+        private final int fromIndex;
+        private final int toIndex;
+
+        private EntryList(int fromIndex, int toIndex) {
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+        }
+
+        @Override
+        public SongPackEntry get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            return readEntry(fromIndex + index);
+        }
+
+        @Override
+        public int size() {
+            return toIndex - fromIndex;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Summary of a song stored in a {@link SongPack}, available without loading the song.
+ */
+public final class SongPackEntry {
+    private final String id;
+    private final String title;
+    private final String author;
+    private final String originalAuthor;
+    private final long songLength;
+    private final double lengthInSeconds;
+    private final int layersCount;
+
+    SongPackEntry(@NotNull String id, @NotNull String title, @NotNull String author, @NotNull String originalAuthor,
+                  long songLength, double lengthInSeconds, int layersCount) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.originalAuthor = originalAuthor;
+        this.songLength = songLength;
+        this.lengthInSeconds = lengthInSeconds;
+        this.layersCount = layersCount;
+    }
+
+    /**
+     * Returns the identifier of the song within the pack.
+     * @return id of the song
+     */
+    @NotNull
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns the title of the song.
+     * @return {@link SongMetadata#getTitle()} of the song
+     */
+    @NotNull
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Returns the author of the song.
+     * @return {@link SongMetadata#getAuthor()} of the song
+     */
+    @NotNull
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * Returns the original author of the song.
+     * @return {@link SongMetadata#getOriginalAuthor()} of the song
+     */
+    @NotNull
+    public String getOriginalAuthor() {
+        return originalAuthor;
+    }
+
+    /**
+     * Returns the length of the song.
+     * @return {@link Song#getSongLength()} of the song
+     */
+    public long getSongLength() {
+        return songLength;
+    }
+
+    /**
+     * Returns the duration of the song.
+     * @return {@link Song#getSongLengthInSeconds()} of the song
+     */
+    public double getSongLengthInSeconds() {
+        return lengthInSeconds;
+    }
+
+    /**
+     * Returns the number of layers of the song.
+     * @return {@link Song#getLayersCount()} of the song
+     */
+    public int getLayersCount() {
+        return layersCount;
+    }
+}
@@ -0,0 +1,200 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes songs into a {@link SongPack}. Songs are written to the file as they are added and the index is written by {@link #close()},
+ * so only the summaries of the songs are held in memory.
+ * <p>This class is not thread-safe.
+ */
+public final class SongPackWriter implements Closeable {
+    private static final String NBS_EXTENSION = ".nbs";
+
+    private final FileChannel channel;
+    private final boolean compressed;
+    private final List<PendingEntry> entries = new ArrayList<>();
+    private final Set<String> ids = new HashSet<>();
+    private long position = SongPack.HEADER_SIZE;
+    private boolean isClosed = false;
+
+    /**
+     * Creates the pack file. Existing file is overwritten.
+     * @param file file the pack is written to
+     * @param compressed whether the songs are stored as compressed snapshots
+     * @throws IOException if the file can not be created
+     */
+    public SongPackWriter(@NotNull File file, boolean compressed) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.compressed = compressed;
+    }
+
+    /**
+     * Adds the song to the pack.
+     * @param id unique id of the song within the pack
+     * @param song {@link Song} to be added
+     * @return this instance of {@link SongPackWriter}
+     * @throws IllegalStateException if the writer is closed
+     * @throws IllegalArgumentException if the pack already contains song with the id or the pack would be larger than 2 GB
+     * @throws UncheckedIOException if the song could not be written
+     */
+    @NotNull
+    public SongPackWriter add(@NotNull String id, @NotNull Song song) {
+        if (isClosed) {
+            throw new IllegalStateException("Writer is closed.");
+        }
+        if (ids.contains(id)) {
+            throw new IllegalArgumentException("Song pack already contains song with id " + id + ".");
+        }
+
+        byte[] snapshot = SongSnapshot.toBytes(song, compressed);
+        if (position + snapshot.length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Song pack can not be larger than 2 GB.");
+        }
+        write(ByteBuffer.wrap(snapshot), position);
+
+        SongMetadata metadata = song.getMetadata();
+        entries.add(new PendingEntry(id.getBytes(StandardCharsets.UTF_8), metadata.getTitle(), metadata.getAuthor(), metadata.getOriginalAuthor(),
+                position, snapshot.length, song.getLayersCount(), song.getSongLength(), song.getSongLengthInSeconds()));
+        ids.add(id);
+        position += snapshot.length;
+        return this;
+    }
+
+    /**
+     * Loads the NBS file and adds the song to the pack. The id of the song is the name of the file without the .nbs extension.
+     * @param nbsFile NBS file
+     * @return this instance of {@link SongPackWriter}
+     * @throws IOException if the file does not exist or can not be opened
+     * @throws SongCorruptedException if the file is not a valid NBS file
+     * @throws IllegalStateException if the writer is closed
+     * @throws IllegalArgumentException if the pack already contains song with the id or the pack would be larger than 2 GB
+     * @throws UncheckedIOException if the song could not be written
+     */
+    @NotNull
+    public SongPackWriter add(@NotNull File nbsFile) throws IOException {
+        String id = nbsFile.getName();
+        if (id.endsWith(NBS_EXTENSION)) {
+            id = id.substring(0, id.length() - NBS_EXTENSION.length());
+        }
+        return add(id, Song.fromFile(nbsFile));
+    }
+
+    /**
+     * Writes the index of the songs and closes the file. Does nothing if the writer is already closed.
+     * @throws UncheckedIOException if the index could not be written
+     */
+    @Override
+    public void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+
+        try {
+            entries.sort((first, second) -> compareIds(first.id, second.id));
+
+            BinaryCodec.Writer strings = new BinaryCodec.Writer(entries.size() * 32 + 16);
+            ByteBuffer index = ByteBuffer.allocate(entries.size() * SongPack.INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (PendingEntry entry : entries) {
+                index.putLong(entry.offset);
+                index.putInt(entry.length);
+                index.putInt(entry.layersCount);
+                index.putLong(entry.songLength);
+                index.putDouble(entry.lengthInSeconds);
+                index.putInt(strings.size());
+                index.putInt(entry.id.length);
+
+                // Id is not prefixed by its length, so it can be compared in place by the binary search
+                strings.writeBytes(entry.id);
+                strings.writeString(entry.title);
+                strings.writeString(entry.author);
+                strings.writeString(entry.originalAuthor);
+            }
+            index.flip();
+            byte[] stringsBytes = strings.toByteArray();
+            long stringsOffset = position + index.limit();
+            if (stringsOffset + stringsBytes.length > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Song pack can not be larger than 2 GB.");
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(SongPack.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(SongPack.MAGIC);
+            header.putShort(SongPack.FORMAT_VERSION);
+            header.putShort((short) 0);
+            header.putInt(entries.size());
+            header.putLong(position);
+            header.putLong(stringsOffset);
+            header.flip();
+
+            write(index, position);
+            write(ByteBuffer.wrap(stringsBytes), stringsOffset);
+            write(header, 0);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    private void write(@NotNull ByteBuffer data, long offset) {
+        try {
+            while (data.hasRemaining()) {
+                offset += channel.write(data, offset);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static int compareIds(byte @NotNull [] first, byte @NotNull [] second) {
+        int length = Math.min(first.length, second.length);
+        for (int i = 0; i < length; i++) {
+            int comparison = Integer.compare(first[i] & 0xFF, second[i] & 0xFF);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(first.length, second.length);
+    }
+
+    private static final class PendingEntry {
+        private final byte[] id;
+        private final String title;
+        private final String author;
+        private final String originalAuthor;
+        private final long offset;
+        private final int length;
+        private final int layersCount;
+        private final long songLength;
+        private final double lengthInSeconds;
+
+        private PendingEntry(byte @NotNull [] id, @NotNull String title, @NotNull String author, @NotNull String originalAuthor,
+                             long offset, int length, int layersCount, long songLength, double lengthInSeconds) {
+            this.id = id;
+            this.title = title;
+            this.author = author;
+            this.originalAuthor = originalAuthor;
+            this.offset = offset;
+            this.length = length;
+            this.layersCount = layersCount;
+            this.songLength = songLength;
+            this.lengthInSeconds = lengthInSeconds;
+        }
+    }
+}
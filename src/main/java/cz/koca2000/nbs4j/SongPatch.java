@@ -0,0 +1,325 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Changes that turn one version of a {@link Song} into another. Created by {@link SongDiff#compute(Song, Song)}.
+ * The patch contains only the notes, layers, custom instruments and tempo changes that differ between the versions,
+ * so it is much smaller than the song when the versions are similar.
+ */
+public final class SongPatch {
+    private static final int MAGIC = 0x5053424E; // NBSP in little endian
+    private static final byte FORMAT_VERSION = 1;
+
+    private final int originalLayersCount;
+    private final int originalCustomInstrumentsCount;
+    private final long originalSongLength;
+    private final int layersCount;
+    private final int customInstrumentsCount;
+    private final List<LayerChange> layerChanges;
+    private final List<CustomInstrumentChange> customInstrumentChanges;
+    private final long[] tempoChangeTicks;
+    private final float[] tempoChangeTempos;
+    private final SongMetadata metadata;
+    private final long songLength;
+
+    SongPatch(int originalLayersCount, int originalCustomInstrumentsCount, long originalSongLength, int layersCount, int customInstrumentsCount,
+              @NotNull List<LayerChange> layerChanges, @NotNull List<CustomInstrumentChange> customInstrumentChanges,
+              long @NotNull [] tempoChangeTicks, float @NotNull [] tempoChangeTempos, @Nullable SongMetadata metadata, long songLength) {
+        this.originalLayersCount = originalLayersCount;
+        this.originalCustomInstrumentsCount = originalCustomInstrumentsCount;
+        this.originalSongLength = originalSongLength;
+        this.layersCount = layersCount;
+        this.customInstrumentsCount = customInstrumentsCount;
+        this.layerChanges = Collections.unmodifiableList(layerChanges);
+        this.customInstrumentChanges = Collections.unmodifiableList(customInstrumentChanges);
+        this.tempoChangeTicks = tempoChangeTicks;
+        this.tempoChangeTempos = tempoChangeTempos;
+        this.metadata = metadata;
+        this.songLength = songLength;
+    }
+
+    /**
+     * Applies the changes to the song the patch was computed from.
+     * @param song original version of the song
+     * @return modified version of the song or the given song if the patch is empty
+     * @throws IllegalArgumentException if the song does not have the same number of layers and custom instruments as the original version
+     */
+    @NotNull
+    public Song apply(@NotNull Song song) {
+        if (song.getLayersCount() != originalLayersCount || song.getCustomInstrumentsCount() != originalCustomInstrumentsCount) {
+            throw new IllegalArgumentException("Patch was not computed from the given song.");
+        }
+        if (isEmpty()) {
+            return song;
+        }
+
+        Song.Builder builder;
+        if (metadata != null) {
+            // Source file is not part of the patch, so it is kept from the given song
+            builder = Song.builder(song, new SongMetadata(metadata).setSourceFile(song.getMetadata().getSourceFile()));
+        } else {
+            builder = Song.builder(song);
+        }
+
+        for (int i = originalLayersCount - 1; i >= layersCount; i--) {
+            builder.layer(i, null);
+        }
+        Layer[] replacedLayers = new Layer[Math.min(originalLayersCount, layersCount)];
+        List<Layer> addedLayers = new ArrayList<>();
+        for (LayerChange change : layerChanges) {
+            if (change.index < replacedLayers.length) {
+                replacedLayers[change.index] = change.applyTo(song.getLayer(change.index).getLayerData());
+            } else {
+                addedLayers.add(change.applyTo(null));
+            }
+        }
+        builder.replaceLayers(replacedLayers)
+                .layers(addedLayers);
+
+        for (int i = originalCustomInstrumentsCount - 1; i >= customInstrumentsCount; i--) {
+            builder.customInstrument(i, null);
+        }
+        for (CustomInstrumentChange change : customInstrumentChanges) {
+            builder.customInstrument(change.index, change.customInstrument);
+        }
+
+        for (int i = 0; i < tempoChangeTicks.length; i++) {
+            builder.tempoChange(tempoChangeTicks[i], tempoChangeTempos[i]);
+        }
+        return builder.length(songLength).build();
+    }
+
+    /**
+     * Returns whether the patch contains no changes of notes, layers, custom instruments, tempo, metadata or length of the song.
+     * @return true if the patch is empty; otherwise, false
+     */
+    public boolean isEmpty() {
+        return layersCount == originalLayersCount && songLength == originalSongLength && customInstrumentsCount == originalCustomInstrumentsCount
+                && layerChanges.isEmpty() && customInstrumentChanges.isEmpty() && tempoChangeTicks.length == 0 && metadata == null;
+    }
+
+    /**
+     * Returns the number of notes that are added, removed or modified by the patch.
+     * @return number of changed notes
+     */
+    public int getNoteChangesCount() {
+        int count = 0;
+        for (LayerChange change : layerChanges) {
+            count += change.ticks.length;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of layers that are added or whose notes or properties are changed by the patch.
+     * @return number of changed layers
+     */
+    public int getLayerChangesCount() {
+        return layerChanges.size();
+    }
+
+    /**
+     * Encodes the patch into a compact binary form that can be decoded by {@link #fromBytes(byte[])}.
+     * @return encoded patch
+     */
+    public byte @NotNull [] toBytes() {
+        BinaryCodec.Writer writer = new BinaryCodec.Writer(64);
+        writer.writeInt(MAGIC);
+        writer.writeByte(FORMAT_VERSION);
+        writer.writeVarLong(originalLayersCount);
+        writer.writeVarLong(originalCustomInstrumentsCount);
+        writer.writeVarLong(originalSongLength);
+        writer.writeVarLong(layersCount);
+        writer.writeVarLong(customInstrumentsCount);
+        writer.writeVarLong(songLength);
+
+        writer.writeVarLong(layerChanges.size());
+        for (LayerChange change : layerChanges) {
+            change.write(writer);
+        }
+
+        writer.writeVarLong(customInstrumentChanges.size());
+        for (CustomInstrumentChange change : customInstrumentChanges) {
+            writer.writeVarLong(change.index);
+            BinaryCodec.writeCustomInstrument(writer, change.customInstrument);
+        }
+
+        writer.writeVarLong(tempoChangeTicks.length);
+        for (int i = 0; i < tempoChangeTicks.length; i++) {
+            // Initial tempo is stored on tick -1
+            writer.writeVarLong(tempoChangeTicks[i] + 1);
+            writer.writeFloat(tempoChangeTempos[i]);
+        }
+
+        writer.writeBoolean(metadata != null);
+        if (metadata != null) {
+            BinaryCodec.writeMetadata(writer, metadata);
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decodes the patch encoded by {@link #toBytes()}.
+     * @param data encoded patch
+     * @return {@link SongPatch}
+     * @throws IllegalArgumentException if the data are not a valid encoded patch
+     */
+    @NotNull
+    public static SongPatch fromBytes(byte @NotNull [] data) {
+        BinaryCodec.Reader reader = new BinaryCodec.Reader(ByteBuffer.wrap(data));
+        try {
+            if (reader.readInt() != MAGIC || reader.readByte() != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Data are not an encoded song patch.");
+            }
+            int originalLayersCount = reader.readCount();
+            int originalCustomInstrumentsCount = reader.readCount();
+            long originalSongLength = reader.readVarLong();
+            int layersCount = reader.readCount();
+            int customInstrumentsCount = reader.readCount();
+            long songLength = reader.readVarLong();
+
+            int layerChangesCount = reader.readCount();
+            List<LayerChange> layerChanges = new ArrayList<>(Math.min(layerChangesCount, layersCount));
+            for (int i = 0; i < layerChangesCount; i++) {
+                LayerChange change = LayerChange.read(reader);
+                if (change.index >= layersCount || (change.index >= originalLayersCount && change.properties == null)) {
+                    throw new IllegalArgumentException("Data contain invalid change of a layer.");
+                }
+                layerChanges.add(change);
+            }
+
+            int customInstrumentChangesCount = reader.readCount();
+            List<CustomInstrumentChange> customInstrumentChanges = new ArrayList<>(Math.min(customInstrumentChangesCount, customInstrumentsCount));
+            for (int i = 0; i < customInstrumentChangesCount; i++) {
+                int index = reader.readCount();
+                if (index >= customInstrumentsCount) {
+                    throw new IllegalArgumentException("Data contain invalid change of a custom instrument.");
+                }
+                customInstrumentChanges.add(new CustomInstrumentChange(index, BinaryCodec.readCustomInstrument(reader)));
+            }
+
+            int tempoChangesCount = reader.readCount();
+            long[] tempoChangeTicks = new long[Math.min(tempoChangesCount, data.length)];
+            float[] tempoChangeTempos = new float[tempoChangeTicks.length];
+            for (int i = 0; i < tempoChangesCount; i++) {
+                tempoChangeTicks[i] = reader.readVarLong() - 1;
+                tempoChangeTempos[i] = reader.readFloat();
+            }
+
+            SongMetadata metadata = reader.readBoolean() ? BinaryCodec.readMetadata(reader) : null;
+            return new SongPatch(originalLayersCount, originalCustomInstrumentsCount, originalSongLength, layersCount, customInstrumentsCount,
+                    layerChanges, customInstrumentChanges, tempoChangeTicks, tempoChangeTempos, metadata, songLength);
+        } catch (SongCorruptedException | BufferUnderflowException | IndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("Data are not a valid encoded song patch.", ex);
+        }
+    }
+
+    /**
+     * Changed notes and properties of a single layer. Null notes are removed.
+     */
+    static final class LayerChange {
+        private final int index;
+        private final Layer properties;
+        private final long[] ticks;
+        private final Note[] notes;
+
+        LayerChange(int index, @Nullable Layer properties, long @NotNull [] ticks, @Nullable Note @NotNull [] notes) {
+            this.index = index;
+            this.properties = properties;
+            this.ticks = ticks;
+            this.notes = notes;
+        }
+
+        @NotNull
+        private Layer applyTo(@Nullable Layer layer) {
+            Layer.Builder builder = layer != null ? Layer.builder(layer) : Layer.builder();
+            if (properties != null) {
+                builder.name(properties.getName())
+                        .locked(properties.isLocked())
+                        .volume(properties.getVolume())
+                        .panning(properties.getPanning());
+            }
+            return builder.notes(ticks, notes).build();
+        }
+
+        private void write(@NotNull BinaryCodec.Writer writer) {
+            writer.writeVarLong(index);
+            writer.writeBoolean(properties != null);
+            if (properties != null) {
+                BinaryCodec.writeLayerProperties(writer, properties);
+            }
+
+            writer.writeVarLong(ticks.length);
+            long previousTick = 0;
+            for (int i = 0; i < ticks.length; i++) {
+                // Ticks are ascending, so only the distance from the previous tick is stored
+                writer.writeVarLong(ticks[i] - previousTick);
+                previousTick = ticks[i];
+
+                Note note = notes[i];
+                writer.writeBoolean(note != null);
+                if (note != null) {
+                    writer.writeVarLong(note.getInstrument());
+                    writer.writeBoolean(note.isCustomInstrument());
+                    writer.writeByte(note.getKey());
+                    writer.writeByte(note.getVolume());
+                    writer.writeByte(note.getPanning());
+                    writer.writeShort(note.getPitch());
+                }
+            }
+        }
+
+        @NotNull
+        private static LayerChange read(@NotNull BinaryCodec.Reader reader) {
+            int index = reader.readCount();
+            Layer properties = null;
+            if (reader.readBoolean()) {
+                properties = BinaryCodec.readLayerProperties(reader).build();
+            }
+
+            int count = reader.readCount();
+            List<Long> ticks = new ArrayList<>();
+            List<Note> notes = new ArrayList<>();
+            long tick = 0;
+            for (int i = 0; i < count; i++) {
+                tick += reader.readVarLong();
+                ticks.add(tick);
+                if (reader.readBoolean()) {
+                    notes.add(Note.builder()
+                            .instrument(reader.readCount(), reader.readBoolean())
+                            .key(reader.readByte())
+                            .volume(reader.readByte())
+                            .panning(reader.readByte())
+                            .pitch(reader.readShort())
+                            .build());
+                } else {
+                    notes.add(null);
+                }
+            }
+
+            long[] tickArray = new long[ticks.size()];
+            for (int i = 0; i < tickArray.length; i++) {
+                tickArray[i] = ticks.get(i);
+            }
+            return new LayerChange(index, properties, tickArray, notes.toArray(new Note[0]));
+        }
+    }
+
+    static final class CustomInstrumentChange {
+        private final int index;
+        private final CustomInstrument customInstrument;
+
+        CustomInstrumentChange(int index, @NotNull CustomInstrument customInstrument) {
+            this.index = index;
+            this.customInstrument = customInstrument;
+        }
+    }
+}
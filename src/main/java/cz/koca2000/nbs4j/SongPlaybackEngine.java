@@ -0,0 +1,440 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays any number of songs at once using a small fixed set of timer threads.
+ * Every thread owns a hashed timing wheel in which each playback {@link Session} is stored in the bucket
+ * of its next deadline, so scheduling and cancelling a session costs O(1) regardless of the number of sessions.
+ * <p>Listeners are called from the timer threads while the wheel of the session is locked, so they should return quickly.
+ * <p>An engine created without threads has to be driven by calling {@link #update()}.
+ */
+public final class SongPlaybackEngine implements AutoCloseable {
+    public static final long DEFAULT_RESOLUTION_NANOS = 1_000_000;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final PlaybackClock clock;
+    private final long resolution;
+    private final Wheel[] wheels;
+    private final Thread[] threads;
+    private final AtomicInteger nextWheel = new AtomicInteger();
+    private final AtomicInteger activeSessions = new AtomicInteger();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates an engine with a single timer thread, {@link #DEFAULT_RESOLUTION_NANOS} and {@link #DEFAULT_WHEEL_SIZE}.
+     */
+    public SongPlaybackEngine() {
+        this(PlaybackClock.SYSTEM, 1, DEFAULT_RESOLUTION_NANOS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Creates an engine.
+     * @param clock clock used for scheduling
+     * @param threadCount number of timer threads; if 0, the engine has to be driven by {@link #update()}
+     * @param resolutionNanos duration of a single bucket of the timing wheel in nanoseconds
+     * @param wheelSize number of buckets of each timing wheel; rounded up to a power of two
+     * @throws IllegalArgumentException if any of the arguments is out of range
+     */
+    public SongPlaybackEngine(@NotNull PlaybackClock clock, int threadCount, long resolutionNanos, int wheelSize) {
+        Objects.requireNonNull(clock);
+        if (threadCount < 0) {
+            throw new IllegalArgumentException("Number of threads can not be negative.");
+        }
+        if (resolutionNanos <= 0) {
+            throw new IllegalArgumentException("Resolution must be positive.");
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException("Wheel size must be in range [1; " + (1 << 30) + "].");
+        }
+
+        this.clock = clock;
+        this.resolution = resolutionNanos;
+
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+
+        long startTime = clock.nanoTime();
+        wheels = new Wheel[Math.max(threadCount, 1)];
+        for (int i = 0; i < wheels.length; i++) {
+            wheels[i] = new Wheel(size, startTime);
+        }
+
+        threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            Wheel wheel = wheels[i];
+            threads[i] = new Thread(() -> runWheel(wheel), "NBS4j SongPlaybackEngine-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Starts the playback of the song.
+     * @param song song to be played
+     * @param listener listener receiving the played notes
+     * @return {@link Session} controlling the playback
+     * @throws IllegalStateException if the engine is closed
+     */
+    @NotNull
+    public Session play(@NotNull Song song, @NotNull NoteListener listener) {
+        Objects.requireNonNull(song);
+        Objects.requireNonNull(listener);
+        if (closed) {
+            throw new IllegalStateException("Engine is closed.");
+        }
+
+        Wheel wheel = wheels[Math.floorMod(nextWheel.getAndIncrement(), wheels.length)];
+        Session session = new Session(wheel, new PlaybackCursor(song, listener));
+        synchronized (wheel) {
+            // The engine could be closed after the first check, its wheels are cleared while locked
+            if (closed) {
+                throw new IllegalStateException("Engine is closed.");
+            }
+            session.cursor.reset(clock.nanoTime());
+            session.state = SongPlayer.State.PLAYING;
+            activeSessions.incrementAndGet();
+            wheel.schedule(session);
+        }
+        return session;
+    }
+
+    /**
+     * Returns the number of sessions that are playing or paused.
+     * @return number of sessions
+     */
+    public int getActiveSessionCount() {
+        return activeSessions.get();
+    }
+
+    /**
+     * Plays all ticks that should have been played until now. Has to be called periodically if the engine has no threads.
+     */
+    public void update() {
+        long now = clock.nanoTime();
+        for (Wheel wheel : wheels) {
+            wheel.advanceTo(now);
+        }
+    }
+
+    /**
+     * Stops all timer threads and all sessions.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread thread : threads) {
+            LockSupport.unpark(thread);
+        }
+        for (Wheel wheel : wheels) {
+            synchronized (wheel) {
+                wheel.clear();
+            }
+        }
+    }
+
+    private void runWheel(@NotNull Wheel wheel) {
+        while (!closed) {
+            long delay = wheel.getNextBucketTime() - clock.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(this, delay);
+                continue;
+            }
+            wheel.advanceTo(clock.nanoTime());
+        }
+    }
+
+    /**
+     * Playback of a single song in the {@link SongPlaybackEngine}. All methods are thread-safe.
+     */
+    public final class Session {
+        private final Wheel wheel;
+        private final PlaybackCursor cursor;
+
+        private SongPlayer.State state = SongPlayer.State.STOPPED;
+        private long pausedSongTime = 0;
+
+        // Position in the timing wheel
+        private long remainingRounds;
+        private int bucket = -1;
+        private Session previous;
+        private Session next;
+
+        private Session(@NotNull Wheel wheel, @NotNull PlaybackCursor cursor) {
+            this.wheel = wheel;
+            this.cursor = cursor;
+        }
+
+        /**
+         * Returns the played song.
+         * @return {@link Song}
+         */
+        @NotNull
+        public Song getSong() {
+            return cursor.getSong();
+        }
+
+        /**
+         * Returns the state of the session.
+         * @return {@link SongPlayer.State}
+         */
+        @NotNull
+        public SongPlayer.State getState() {
+            synchronized (wheel) {
+                return state;
+            }
+        }
+
+        /**
+         * Returns the last tick that was played.
+         * @return tick or -1 if nothing was played yet
+         */
+        public long getTick() {
+            synchronized (wheel) {
+                return cursor.getLastPlayedTick();
+            }
+        }
+
+        /**
+         * Returns how many times the playback jumped to the start of the loop.
+         * @return number of loops
+         */
+        public int getLoopCount() {
+            synchronized (wheel) {
+                return cursor.getLoopCount();
+            }
+        }
+
+        /**
+         * Returns how late was the last played tick compared to its deadline.
+         * @return lateness in nanoseconds
+         */
+        public long getLastLatenessNanos() {
+            synchronized (wheel) {
+                return cursor.getLastLateness();
+            }
+        }
+
+        /**
+         * Returns the maximum lateness of all ticks played by this session.
+         * @return lateness in nanoseconds
+         */
+        public long getMaxLatenessNanos() {
+            synchronized (wheel) {
+                return cursor.getMaxLateness();
+            }
+        }
+
+        /**
+         * Pauses the playback. Does nothing if the session is not playing.
+         */
+        public void pause() {
+            synchronized (wheel) {
+                if (state != SongPlayer.State.PLAYING) {
+                    return;
+                }
+                wheel.unschedule(this);
+                cursor.interrupt();
+                pausedSongTime = cursor.getSongTime(clock.nanoTime());
+                state = SongPlayer.State.PAUSED;
+                wheel.pausedSessions.add(this);
+            }
+        }
+
+        /**
+         * Resumes the paused playback. Does nothing if the session is not paused.
+         */
+        public void resume() {
+            synchronized (wheel) {
+                if (state != SongPlayer.State.PAUSED || closed) {
+                    return;
+                }
+                cursor.rebase(pausedSongTime, clock.nanoTime());
+                state = SongPlayer.State.PLAYING;
+                wheel.pausedSessions.remove(this);
+                wheel.schedule(this);
+            }
+        }
+
+        /**
+         * Moves the playback to the given tick. Does nothing if the session was stopped or the song ended.
+         * @param tick tick from which the playback continues
+         */
+        public void seek(long tick) {
+            if (tick < 0) {
+                tick = 0;
+            }
+            synchronized (wheel) {
+                if (state != SongPlayer.State.PLAYING && state != SongPlayer.State.PAUSED) {
+                    return;
+                }
+                long now = clock.nanoTime();
+                cursor.seek(tick, now);
+                if (state == SongPlayer.State.PAUSED) {
+                    pausedSongTime = cursor.getSongTime(now);
+                    return;
+                }
+                wheel.unschedule(this);
+                wheel.schedule(this);
+            }
+        }
+
+        /**
+         * Stops the playback. Stopped session can not be started again.
+         */
+        public void stop() {
+            synchronized (wheel) {
+                if (state != SongPlayer.State.PLAYING && state != SongPlayer.State.PAUSED) {
+                    return;
+                }
+                wheel.unschedule(this);
+                wheel.pausedSessions.remove(this);
+                cursor.interrupt();
+                state = SongPlayer.State.STOPPED;
+                activeSessions.decrementAndGet();
+            }
+        }
+
+        private void fire(long now) {
+            if (cursor.advance(now)) {
+                if (state == SongPlayer.State.PLAYING && bucket == -1) {
+                    wheel.schedule(this);
+                }
+                return;
+            }
+            if (state == SongPlayer.State.PLAYING) {
+                state = SongPlayer.State.FINISHED;
+                activeSessions.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Hashed timing wheel. Each bucket is an intrusive doubly linked list of sessions.
+     */
+    private final class Wheel {
+        private final Session[] buckets;
+        private final List<Session> dueSessions = new ArrayList<>();
+        // Paused sessions are not in any bucket, but they have to be stopped when the engine is closed
+        private final Set<Session> pausedSessions = new HashSet<>();
+        private final int mask;
+        private final long startTime;
+
+        // Number of buckets that were already processed
+        private long processedTicks = 0;
+
+        private Wheel(int size, long startTime) {
+            buckets = new Session[size];
+            mask = size - 1;
+            this.startTime = startTime;
+        }
+
+        private synchronized long getNextBucketTime() {
+            return startTime + (processedTicks + 1) * resolution;
+        }
+
+        private void schedule(@NotNull Session session) {
+            long deadline = session.cursor.getNextDeadline();
+            long deadlineTick = ceilDiv(deadline - startTime, resolution);
+            if (deadlineTick <= processedTicks) {
+                deadlineTick = processedTicks + 1;
+            }
+
+            int index = (int) (deadlineTick & mask);
+            session.remainingRounds = (deadlineTick - processedTicks - 1) / buckets.length;
+            session.bucket = index;
+            session.previous = null;
+            session.next = buckets[index];
+            if (session.next != null) {
+                session.next.previous = session;
+            }
+            buckets[index] = session;
+        }
+
+        private void unschedule(@NotNull Session session) {
+            if (session.bucket == -1) {
+                return;
+            }
+            if (session.previous != null) {
+                session.previous.next = session.next;
+            } else {
+                buckets[session.bucket] = session.next;
+            }
+            if (session.next != null) {
+                session.next.previous = session.previous;
+            }
+            session.bucket = -1;
+            session.previous = null;
+            session.next = null;
+        }
+
+        private synchronized void advanceTo(long now) {
+            while (startTime + (processedTicks + 1) * resolution - now <= 0) {
+                processedTicks++;
+                processBucket((int) (processedTicks & mask), now);
+            }
+        }
+
+        private void processBucket(int index, long now) {
+            // Due sessions are collected first because listeners may reschedule or stop other sessions of the bucket
+            Session session = buckets[index];
+            while (session != null) {
+                Session next = session.next;
+                if (session.remainingRounds > 0) {
+                    session.remainingRounds--;
+                } else {
+                    unschedule(session);
+                    dueSessions.add(session);
+                }
+                session = next;
+            }
+
+            for (int i = 0; i < dueSessions.size(); i++) {
+                Session dueSession = dueSessions.get(i);
+                if (dueSession.state == SongPlayer.State.PLAYING && dueSession.bucket == -1) {
+                    dueSession.fire(now);
+                }
+            }
+            dueSessions.clear();
+        }
+
+        private void clear() {
+            for (int i = 0; i < buckets.length; i++) {
+                Session session = buckets[i];
+                while (session != null) {
+                    Session next = session.next;
+                    session.bucket = -1;
+                    session.previous = null;
+                    session.next = null;
+                    if (session.state == SongPlayer.State.PLAYING) {
+                        session.state = SongPlayer.State.STOPPED;
+                        activeSessions.decrementAndGet();
+                    }
+                    session = next;
+                }
+                buckets[i] = null;
+            }
+            for (Session session : pausedSessions) {
+                session.state = SongPlayer.State.STOPPED;
+                activeSessions.decrementAndGet();
+            }
+            pausedSessions.clear();
+        }
+
+        private long ceilDiv(long value, long divisor) {
+            long quotient = value / divisor;
+            return quotient * divisor < value ? quotient + 1 : quotient;
+        }
+    }
+}
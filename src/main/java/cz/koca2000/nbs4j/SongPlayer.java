@@ -0,0 +1,266 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+
+/**
+ * Plays a {@link Song} in real time and passes the notes of every played tick to a {@link NoteListener}.
+ * Ticks are scheduled against deadlines computed from the tempo changes of the song, so the playback does not drift.
+ * Looping is done as specified by {@link SongMetadata#isLoop()}, {@link SongMetadata#getLoopStartTick()}
+ * and {@link SongMetadata#getLoopMaxCount()}.
+ * <p>The player is either driven by its own thread started by {@link #start()}
+ * or by calling {@link #update()} from the application's loop after {@link #play()}.
+ * All methods are thread-safe. Listener is called while the player is locked.
+ */
+public final class SongPlayer {
+
+    private final Object lock = new Object();
+    private final PlaybackClock clock;
+    private final PlaybackCursor cursor;
+
+    private State state = State.STOPPED;
+    private long pausedSongTime = 0;
+    private Thread thread;
+
+    /**
+     * Creates a player using {@link PlaybackClock#SYSTEM}.
+     * @param song song to be played
+     * @param listener listener receiving the played notes
+     */
+    public SongPlayer(@NotNull Song song, @NotNull NoteListener listener) {
+        this(song, listener, PlaybackClock.SYSTEM);
+    }
+
+    /**
+     * Creates a player using the given clock.
+     * @param song song to be played
+     * @param listener listener receiving the played notes
+     * @param clock clock used for scheduling
+     */
+    public SongPlayer(@NotNull Song song, @NotNull NoteListener listener, @NotNull PlaybackClock clock) {
+        Objects.requireNonNull(song);
+        Objects.requireNonNull(listener);
+        Objects.requireNonNull(clock);
+        this.clock = clock;
+        cursor = new PlaybackCursor(song, listener);
+    }
+
+    /**
+     * Returns the played song.
+     * @return {@link Song}
+     */
+    @NotNull
+    public Song getSong() {
+        return cursor.getSong();
+    }
+
+    /**
+     * Returns the state of the player.
+     * @return {@link State}
+     */
+    @NotNull
+    public State getState() {
+        synchronized (lock) {
+            return state;
+        }
+    }
+
+    /**
+     * Returns the last tick that was played.
+     * @return tick or -1 if nothing was played yet
+     */
+    public long getTick() {
+        synchronized (lock) {
+            return cursor.getLastPlayedTick();
+        }
+    }
+
+    /**
+     * Returns the current position in the song.
+     * @return time in seconds since the start of the song
+     */
+    public double getTimeInSeconds() {
+        synchronized (lock) {
+            long songTime = state == State.PLAYING ? cursor.getSongTime(clock.nanoTime()) : pausedSongTime;
+            return songTime / TempoTimeline.NANOS_PER_SECOND;
+        }
+    }
+
+    /**
+     * Returns how many times the playback jumped to the start of the loop.
+     * @return number of loops
+     */
+    public int getLoopCount() {
+        synchronized (lock) {
+            return cursor.getLoopCount();
+        }
+    }
+
+    /**
+     * Starts the playback from the beginning or resumes the paused playback.
+     * The player has to be driven by {@link #update()}.
+     */
+    public void play() {
+        synchronized (lock) {
+            long now = clock.nanoTime();
+            switch (state) {
+                case PLAYING:
+                    return;
+                case PAUSED:
+                    cursor.rebase(pausedSongTime, now);
+                    break;
+                default:
+                    cursor.reset(now);
+                    break;
+            }
+            state = State.PLAYING;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Same as {@link #play()} but the player is driven by its own daemon thread until it is stopped or the song ends.
+     */
+    public void start() {
+        synchronized (lock) {
+            play();
+            if (thread == null) {
+                thread = new Thread(this::run, "NBS4j SongPlayer");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Pauses the playback. Does nothing if the player is not playing.
+     */
+    public void pause() {
+        synchronized (lock) {
+            if (state != State.PLAYING) {
+                return;
+            }
+            cursor.interrupt();
+            pausedSongTime = cursor.getSongTime(clock.nanoTime());
+            state = State.PAUSED;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Resumes the paused playback. Does nothing if the player is not paused.
+     */
+    public void resume() {
+        synchronized (lock) {
+            if (state == State.PAUSED) {
+                play();
+            }
+        }
+    }
+
+    /**
+     * Moves the playback to the given tick. If the player is stopped or the song ended, the player becomes paused at the given tick.
+     * @param tick tick from which the playback continues
+     */
+    public void seek(long tick) {
+        if (tick < 0) {
+            tick = 0;
+        }
+        synchronized (lock) {
+            long now = clock.nanoTime();
+            cursor.seek(tick, now);
+            if (state != State.PLAYING) {
+                pausedSongTime = cursor.getSongTime(now);
+                state = State.PAUSED;
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops the playback. Next call of {@link #play()} starts from the beginning of the song.
+     */
+    public void stop() {
+        synchronized (lock) {
+            cursor.interrupt();
+            state = State.STOPPED;
+            pausedSongTime = 0;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Plays all ticks that should have been played until now.
+     * @return true if the player is still playing; otherwise, false
+     */
+    public boolean update() {
+        synchronized (lock) {
+            if (state != State.PLAYING) {
+                return false;
+            }
+            long now = clock.nanoTime();
+            if (!cursor.advance(now)) {
+                pausedSongTime = cursor.getSongTime(now);
+                state = State.FINISHED;
+                return false;
+            }
+            return state == State.PLAYING;
+        }
+    }
+
+    /**
+     * Returns the time of the clock at which {@link #update()} should be called again.
+     * @return time in nanoseconds of the player's {@link PlaybackClock}
+     */
+    public long getNextDeadline() {
+        synchronized (lock) {
+            return cursor.getNextDeadline();
+        }
+    }
+
+    private void run() {
+        synchronized (lock) {
+            try {
+                while (state == State.PLAYING || state == State.PAUSED) {
+                    if (state == State.PAUSED) {
+                        lock.wait();
+                        continue;
+                    }
+
+                    if (!update()) {
+                        continue;
+                    }
+
+                    long delay = cursor.getNextDeadline() - clock.nanoTime();
+                    if (delay > 0) {
+                        lock.wait(delay / 1_000_000, (int) (delay % 1_000_000));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                thread = null;
+            }
+        }
+    }
+
+    public enum State {
+        /**
+         * The player was not started yet or was stopped.
+         */
+        STOPPED,
+        /**
+         * The song is being played.
+         */
+        PLAYING,
+        /**
+         * The playback is paused and can be resumed.
+         */
+        PAUSED,
+        /**
+         * The playback reached the end of the song.
+         */
+        FINISHED
+    }
+}
@@ -0,0 +1,105 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts a range of ticks of a {@link Song} as a new song.
+ */
+final class SongSlicing {
+
+    private SongSlicing() {
+    }
+
+    @NotNull
+    static Song slice(@NotNull Song song, long fromTick, long toTickExclusive) {
+        if (fromTick < 0) {
+            throw new IllegalArgumentException("Tick must be in range [0; " + Long.MAX_VALUE + "] inclusive.");
+        }
+        if (toTickExclusive < fromTick) {
+            throw new IllegalArgumentException("End of the range can not be lower than its start.");
+        }
+
+        SongMetadata metadata = new SongMetadata(song.getMetadata())
+                .setLoopStartTick((short) Math.max(song.getMetadata().getLoopStartTick() - fromTick, 0))
+                .setSourceFile(null);
+        Song.Builder slice = Song.builder()
+                .metadata(metadata)
+                .initialTempo(song.getTempo(fromTick));
+
+        for (Map.Entry<Long, Float> tempoChange : song.getTempoChangesInRange(fromTick + 1, toTickExclusive).entrySet()) {
+            slice.tempoChange(tempoChange.getKey() - fromTick, tempoChange.getValue());
+        }
+
+        for (CustomInstrument customInstrument : song.getCustomInstruments()) {
+            slice.customInstrument(customInstrument);
+        }
+
+        List<Layer> layers = new ArrayList<>(song.getLayersCount());
+        for (LayerInSong layer : song.getLayers()) {
+            layers.add(sliceLayer(layer.getLayerData(), fromTick, toTickExclusive));
+        }
+        slice.layers(layers);
+
+        long length = Math.min(toTickExclusive, song.getSongLength()) - fromTick;
+        if (length > 0) {
+            slice.length(length);
+        }
+        return slice.build();
+    }
+
+    @NotNull
+    private static Layer sliceLayer(@NotNull Layer layer, long fromTick, long toTickExclusive) {
+        long[][] ticks = {new long[16]};
+        Note[][] notes = {new Note[16]};
+        int[] count = new int[1];
+        TickMap.TickConsumer<Note> collector = (tick, note) -> {
+            if (tick < fromTick || tick >= toTickExclusive) {
+                return;
+            }
+            if (count[0] == ticks[0].length) {
+                ticks[0] = Arrays.copyOf(ticks[0], count[0] * 2);
+                notes[0] = Arrays.copyOf(notes[0], count[0] * 2);
+            }
+            ticks[0][count[0]] = tick - fromTick;
+            notes[0][count[0]] = note;
+            count[0]++;
+        };
+
+        if (layer instanceof LayerImpl) {
+            ((LayerImpl) layer).getNoteMap().forEachInRange(fromTick, toTickExclusive, collector);
+        } else {
+            SongUtils.forEachNote(layer, collector);
+        }
+
+        return Layer.builder()
+                .name(layer.getName())
+                .locked(layer.isLocked())
+                .volume(layer.getVolume())
+                .panning(layer.getPanning())
+                .notes(Arrays.copyOf(ticks[0], count[0]), Arrays.copyOf(notes[0], count[0]))
+                .build();
+    }
+
+    @NotNull
+    static Song sliceByTime(@NotNull Song song, double fromSeconds, double toSeconds) {
+        if (!(fromSeconds >= 0)) {
+            throw new IllegalArgumentException("Time must be non-negative.");
+        }
+        if (!(toSeconds >= fromSeconds)) {
+            throw new IllegalArgumentException("End of the range can not be lower than its start.");
+        }
+        TempoTimeline timeline = song.getTempoTimeline();
+        return slice(song, getFirstTickAtOrAfter(timeline, fromSeconds), getFirstTickAtOrAfter(timeline, toSeconds));
+    }
+
+    private static long getFirstTickAtOrAfter(@NotNull TempoTimeline timeline, double seconds) {
+        long nanos = (long) Math.min(seconds * TempoTimeline.NANOS_PER_SECOND, Long.MAX_VALUE);
+        long tick = timeline.getTickAtNanos(nanos);
+        return timeline.getNanosAtTick(tick) < nanos ? tick + 1 : tick;
+    }
+}
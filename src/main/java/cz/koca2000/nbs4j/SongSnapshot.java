@@ -0,0 +1,478 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Native binary format of {@link Song} designed for fast loading. Unlike NBS files, snapshots store the song exactly
+ * as it is represented in memory, so loading requires no reordering of notes and no rewriting of tempo changers,
+ * and every value including the fine tempo and out of range pitches survives the round trip.
+ * <p>A snapshot starts with a fixed header followed by a table of offsets of its sections: metadata, custom instruments,
+ * tempo changes and a note block for each layer. Note blocks are stored by columns, ticks as varint deltas
+ * and instruments packed with the custom instrument flag, so similar values are stored next to each other.
+ * Uncompressed snapshots are decoded directly from the buffer, so they can be read from a memory mapped file without copying.
+ * Compressed snapshots deflate every section separately.
+ * <p>Snapshots are meant to be a cache of songs; NBS remains the format for interchange with other applications.
+ */
+public final class SongSnapshot {
+    private static final int MAGIC = 0x5353424E; // NBSS in little endian
+    private static final short FORMAT_VERSION = 1;
+    private static final short COMPRESSED_FLAG = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int OFFSET_TABLE_ENTRY_SIZE = 16;
+    // Deflate can not expand a byte of the compressed data into more than 1032 bytes
+    private static final int MAX_COMPRESSION_RATIO = 1032;
+
+    private static final int METADATA_SECTION = 0;
+    private static final int CUSTOM_INSTRUMENTS_SECTION = 1;
+    private static final int TEMPO_SECTION = 2;
+    private static final int FIRST_LAYER_SECTION = 3;
+
+    private SongSnapshot() {
+    }
+
+    /**
+     * Encodes the song into a snapshot.
+     * @param song {@link Song} to be encoded
+     * @param compressed whether the sections of the snapshot are compressed
+     * @return encoded snapshot
+     */
+    public static byte @NotNull [] toBytes(@NotNull Song song, boolean compressed) {
+        List<byte[]> rawSections = new ArrayList<>(FIRST_LAYER_SECTION + song.getLayersCount());
+        rawSections.add(encodeMetadata(song.getMetadata()));
+        rawSections.add(encodeCustomInstruments(song));
+        rawSections.add(encodeTempoChanges(song));
+        for (int i = 0; i < song.getLayersCount(); i++) {
+            rawSections.add(encodeLayer(song.getLayer(i)));
+        }
+
+        byte[][] sections = new byte[rawSections.size()][];
+        Deflater deflater = compressed ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            for (int i = 0; i < sections.length; i++) {
+                sections[i] = deflater != null ? deflate(deflater, rawSections.get(i)) : rawSections.get(i);
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+
+        long size = HEADER_SIZE + (long) sections.length * OFFSET_TABLE_ENTRY_SIZE;
+        for (byte[] section : sections) {
+            size += section.length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Song is too large to be encoded into a snapshot.");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putShort(FORMAT_VERSION);
+        buffer.putShort(compressed ? COMPRESSED_FLAG : 0);
+        buffer.putInt(sections.length);
+        buffer.putLong(song.getSongLength());
+
+        long offset = HEADER_SIZE + (long) sections.length * OFFSET_TABLE_ENTRY_SIZE;
+        for (int i = 0; i < sections.length; i++) {
+            buffer.putLong(offset);
+            buffer.putInt(sections[i].length);
+            buffer.putInt(rawSections.get(i).length);
+            offset += sections[i].length;
+        }
+        for (byte[] section : sections) {
+            buffer.put(section);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Writes the song as a snapshot into the stream. The stream is closed afterwards.
+     * @param song {@link Song} to be written
+     * @param stream output stream the snapshot will be written to
+     * @param compressed whether the sections of the snapshot are compressed
+     * @throws UncheckedIOException if any IO operation fails
+     */
+    public static void write(@NotNull Song song, @NotNull OutputStream stream, boolean compressed) {
+        try (OutputStream output = stream) {
+            output.write(toBytes(song, compressed));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("There was an error during the saving operation", ex);
+        }
+    }
+
+    /**
+     * Writes the song as a snapshot into the file.
+     * @param song {@link Song} to be written
+     * @param file file the snapshot will be written to
+     * @param compressed whether the sections of the snapshot are compressed
+     * @throws UncheckedIOException if the file can not be written
+     */
+    public static void write(@NotNull Song song, @NotNull File file, boolean compressed) {
+        try {
+            Files.write(file.toPath(), toBytes(song, compressed));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("There was an error during the saving operation", ex);
+        }
+    }
+
+    /**
+     * Loads the song from the snapshot file. The file is memory mapped, so uncompressed snapshots are decoded without being copied.
+     * @param file snapshot file
+     * @return loaded {@link Song}
+     * @throws IOException if the file does not exist or can not be opened
+     * @throws SongCorruptedException if the file is not a valid snapshot
+     */
+    @NotNull
+    public static Song read(@NotNull File file) throws IOException {
+        Song song;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            song = read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        song.getMetadata().setSourceFile(file);
+        return song;
+    }
+
+    /**
+     * Decodes the song from the snapshot.
+     * @param data encoded snapshot
+     * @return decoded {@link Song}
+     * @throws SongCorruptedException if the data are not a valid snapshot
+     */
+    @NotNull
+    public static Song read(byte @NotNull [] data) {
+        return read(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Decodes the song from the snapshot between the position and the limit of the buffer.
+     * The buffer may be a {@link java.nio.MappedByteBuffer}; its position is not changed.
+     * @param buffer buffer containing the snapshot
+     * @return decoded {@link Song}
+     * @throws SongCorruptedException if the data are not a valid snapshot
+     */
+    @NotNull
+    public static Song read(@NotNull ByteBuffer buffer) {
+        ByteBuffer snapshot = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (snapshot.remaining() < HEADER_SIZE || snapshot.getInt() != MAGIC || snapshot.getShort() != FORMAT_VERSION) {
+                throw new SongCorruptedException();
+            }
+            boolean compressed = (snapshot.getShort() & COMPRESSED_FLAG) != 0;
+            int sectionsCount = snapshot.getInt();
+            long songLength = snapshot.getLong();
+            if (sectionsCount < FIRST_LAYER_SECTION
+                    || sectionsCount > (snapshot.remaining() / OFFSET_TABLE_ENTRY_SIZE)) {
+                throw new SongCorruptedException();
+            }
+
+            Inflater inflater = compressed ? new Inflater() : null;
+            try {
+                BinaryCodec.Reader[] sections = new BinaryCodec.Reader[sectionsCount];
+                for (int i = 0; i < sectionsCount; i++) {
+                    sections[i] = openSection(snapshot, i, inflater);
+                }
+
+                Song.Builder builder = Song.builder().metadata(BinaryCodec.readMetadata(sections[METADATA_SECTION]));
+                readCustomInstruments(sections[CUSTOM_INSTRUMENTS_SECTION], builder);
+                readTempoChanges(sections[TEMPO_SECTION], builder);
+
+                Map<Long, Note> notes = new HashMap<>();
+                List<Layer> layers = new ArrayList<>(sectionsCount - FIRST_LAYER_SECTION);
+                for (int i = FIRST_LAYER_SECTION; i < sectionsCount; i++) {
+                    layers.add(decodeLayer(sections[i], notes));
+                }
+                builder.layers(layers);
+                if (songLength > 0) {
+                    builder.length(songLength);
+                }
+                return builder.build();
+            } finally {
+                if (inflater != null) {
+                    inflater.end();
+                }
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | DataFormatException ex) {
+            throw new SongCorruptedException(ex);
+        }
+    }
+
+    @NotNull
+    private static BinaryCodec.Reader openSection(@NotNull ByteBuffer snapshot, int index, Inflater inflater) throws DataFormatException {
+        int entry = HEADER_SIZE + index * OFFSET_TABLE_ENTRY_SIZE;
+        long offset = snapshot.getLong(entry);
+        int storedLength = snapshot.getInt(entry + 8);
+        int rawLength = snapshot.getInt(entry + 12);
+        if (offset < 0 || storedLength < 0 || rawLength < 0 || offset + storedLength > snapshot.limit()) {
+            throw new SongCorruptedException();
+        }
+
+        ByteBuffer section = snapshot.duplicate();
+        section.position((int) offset);
+        section.limit((int) offset + storedLength);
+        section = section.slice();
+        if (inflater == null) {
+            return new BinaryCodec.Reader(section);
+        }
+
+        if (rawLength > (long) storedLength * MAX_COMPRESSION_RATIO) {
+            throw new SongCorruptedException();
+        }
+
+        byte[] input;
+        int inputOffset = 0;
+        if (section.hasArray()) {
+            input = section.array();
+            inputOffset = section.arrayOffset();
+        } else {
+            // Inflater of Java 8 accepts only arrays
+            input = new byte[storedLength];
+            section.get(input);
+        }
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(input, inputOffset, storedLength);
+        if (inflater.inflate(raw) != rawLength || !inflater.finished()) {
+            throw new SongCorruptedException();
+        }
+        return new BinaryCodec.Reader(ByteBuffer.wrap(raw));
+    }
+
+    private static byte @NotNull [] deflate(@NotNull Deflater deflater, byte @NotNull [] data) {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] output = new byte[Math.max(64, data.length / 2)];
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            size += deflater.deflate(output, size, output.length - size);
+        }
+        return Arrays.copyOf(output, size);
+    }
+
+    private static byte @NotNull [] encodeMetadata(@NotNull SongMetadata metadata) {
+        BinaryCodec.Writer section = new BinaryCodec.Writer(256);
+        BinaryCodec.writeMetadata(section, metadata);
+        return section.toByteArray();
+    }
+
+    private static byte @NotNull [] encodeCustomInstruments(@NotNull Song song) {
+        BinaryCodec.Writer section = new BinaryCodec.Writer(64);
+        writeCustomInstruments(section, song);
+        return section.toByteArray();
+    }
+
+    private static byte @NotNull [] encodeTempoChanges(@NotNull Song song) {
+        BinaryCodec.Writer section = new BinaryCodec.Writer(16 + song.getTempoChanges().size() * 8);
+        writeTempoChanges(section, song);
+        return section.toByteArray();
+    }
+
+    private static byte @NotNull [] encodeLayer(@NotNull Layer layer) {
+        NoteColumns columns = NoteColumns.of(layer);
+        BinaryCodec.Writer section = new BinaryCodec.Writer(32 + columns.size * 6);
+        BinaryCodec.writeLayerProperties(section, layer);
+        writeNotes(section, columns, 0, columns.size, 0);
+        return section.toByteArray();
+    }
+
+    @NotNull
+    private static Layer decodeLayer(@NotNull BinaryCodec.Reader section, @NotNull Map<Long, Note> sharedNotes) {
+        Layer.Builder builder = BinaryCodec.readLayerProperties(section);
+        NoteColumns columns = readNotes(section, 0, sharedNotes);
+        return builder.notes(columns.ticks, columns.notes).build();
+    }
+
+    static void writeCustomInstruments(@NotNull BinaryCodec.Writer section, @NotNull Song song) {
+        section.writeVarLong(song.getCustomInstrumentsCount());
+        for (int i = 0; i < song.getCustomInstrumentsCount(); i++) {
+            BinaryCodec.writeCustomInstrument(section, song.getCustomInstrument(i));
+        }
+    }
+
+    static void readCustomInstruments(@NotNull BinaryCodec.Reader section, @NotNull Song.Builder builder) {
+        int count = section.readCount();
+        for (int i = 0; i < count; i++) {
+            builder.customInstrument(BinaryCodec.readCustomInstrument(section));
+        }
+    }
+
+    static void writeTempoChanges(@NotNull BinaryCodec.Writer section, @NotNull Song song) {
+        Map<Long, Float> tempoChanges = song.getTempoChanges();
+        section.writeVarLong(tempoChanges.size());
+        long previousTick = Song.INITIAL_TEMPO_TICK;
+        for (Map.Entry<Long, Float> tempoChange : tempoChanges.entrySet()) {
+            // Initial tempo is stored as a change on the tick -1, so deltas are never negative
+            section.writeVarLong(tempoChange.getKey() - previousTick);
+            section.writeFloat(tempoChange.getValue());
+            previousTick = tempoChange.getKey();
+        }
+    }
+
+    static void readTempoChanges(@NotNull BinaryCodec.Reader section, @NotNull Song.Builder builder) {
+        int count = section.readCount();
+        long tick = Song.INITIAL_TEMPO_TICK;
+        for (int i = 0; i < count; i++) {
+            tick += section.readVarLong();
+            builder.tempoChange(tick, section.readFloat());
+        }
+    }
+
+    /**
+     * Writes the notes in the range of the columns stored by columns: tick deltas, instruments, keys, volumes, pannings and pitches.
+     * @param baseTick tick the delta of the first note is computed from
+     */
+    static void writeNotes(@NotNull BinaryCodec.Writer section, @NotNull NoteColumns columns, int fromIndex, int toIndex, long baseTick) {
+        long[] ticks = columns.ticks;
+        Note[] notes = columns.notes;
+        section.writeVarLong(toIndex - fromIndex);
+
+        long previousTick = baseTick;
+        for (int i = fromIndex; i < toIndex; i++) {
+            section.writeVarLong(ticks[i] - previousTick);
+            previousTick = ticks[i];
+        }
+        for (int i = fromIndex; i < toIndex; i++) {
+            Note note = notes[i];
+            section.writeVarLong(((long) note.getInstrument() << 1) | (note.isCustomInstrument() ? 1 : 0));
+        }
+        for (int i = fromIndex; i < toIndex; i++) {
+            section.writeByte(notes[i].getKey());
+        }
+        for (int i = fromIndex; i < toIndex; i++) {
+            section.writeByte(notes[i].getVolume());
+        }
+        for (int i = fromIndex; i < toIndex; i++) {
+            section.writeByte(notes[i].getPanning());
+        }
+        for (int i = fromIndex; i < toIndex; i++) {
+            int pitch = notes[i].getPitch();
+            section.writeVarLong(((pitch << 1) ^ (pitch >> 31)) & 0xFFFFFFFFL);
+        }
+    }
+
+    /**
+     * Reads the notes written by {@link #writeNotes(BinaryCodec.Writer, NoteColumns, int, int, long)}.
+     * Notes with the same values are shared, so large songs with repetitive notes allocate few of them.
+     * @param baseTick tick the delta of the first note is computed from
+     * @param sharedNotes notes decoded so far indexed by {@link #packNote(long, int, int, int, int)}
+     */
+    @NotNull
+    static NoteColumns readNotes(@NotNull BinaryCodec.Reader section, long baseTick, @NotNull Map<Long, Note> sharedNotes) {
+        int notesCount = section.readCount();
+        if (notesCount > section.remaining()) {
+            throw new SongCorruptedException();
+        }
+        long[] ticks = new long[notesCount];
+        long tick = baseTick;
+        for (int i = 0; i < notesCount; i++) {
+            tick += section.readVarLong();
+            ticks[i] = tick;
+        }
+        long[] instruments = new long[notesCount];
+        for (int i = 0; i < notesCount; i++) {
+            instruments[i] = section.readVarLong();
+        }
+
+        // Fixed size columns are read in place while the pitches are decoded
+        int keys = section.position();
+        int volumes = keys + notesCount;
+        int pannings = volumes + notesCount;
+        section.skip(notesCount * 3);
+
+        Note[] notes = new Note[notesCount];
+        for (int i = 0; i < notesCount; i++) {
+            int encodedPitch = (int) section.readVarLong();
+            int pitch = (encodedPitch >>> 1) ^ -(encodedPitch & 1);
+            int key = section.getByte(keys + i);
+            int volume = section.getByte(volumes + i);
+            int panning = section.getByte(pannings + i);
+
+            long packed = packNote(instruments[i], key, volume, panning, pitch);
+            Note note = packed != -1 ? sharedNotes.get(packed) : null;
+            if (note == null) {
+                note = Note.builder()
+                        .instrument((int) (instruments[i] >>> 1), (instruments[i] & 1) != 0)
+                        .key(key)
+                        .volume(volume)
+                        .panning(panning)
+                        .pitch(pitch)
+                        .build();
+                if (packed != -1) {
+                    sharedNotes.put(packed, note);
+                }
+            }
+            notes[i] = note;
+        }
+        return new NoteColumns(ticks, notes, notesCount);
+    }
+
+    /**
+     * Packs all values of a note into a single number.
+     * @return packed note or -1 if the instrument or pitch is too large to be packed
+     */
+    private static long packNote(long instrument, int key, int volume, int panning, int pitch) {
+        if (instrument >= (1L << 24) || pitch < Short.MIN_VALUE || pitch > Short.MAX_VALUE) {
+            return -1;
+        }
+        return (instrument << 40) | ((long) (key & 0xFF) << 32) | ((long) (volume & 0xFF) << 24)
+                | ((long) (panning & 0xFF) << 16) | (pitch & 0xFFFF);
+    }
+
+    /**
+     * Ticks and notes of a layer in the order of the ticks.
+     */
+    static final class NoteColumns implements TickMap.TickConsumer<Note> {
+        long[] ticks;
+        Note[] notes;
+        int size;
+
+        private NoteColumns(long @NotNull [] ticks, @NotNull Note @NotNull [] notes, int size) {
+            this.ticks = ticks;
+            this.notes = notes;
+            this.size = size;
+        }
+
+        /**
+         * Collects the notes of the layer.
+         */
+        @NotNull
+        static NoteColumns of(@NotNull Layer layer) {
+            NoteColumns columns = new NoteColumns(new long[64], new Note[64], 0);
+            SongUtils.forEachNote(layer, columns);
+            return columns;
+        }
+
+        @Override
+        public void accept(long tick, @NotNull Note note) {
+            if (size == ticks.length) {
+                ticks = Arrays.copyOf(ticks, size * 2);
+                notes = Arrays.copyOf(notes, size * 2);
+            }
+            ticks[size] = tick;
+            notes[size] = note;
+            size++;
+        }
+    }
+}
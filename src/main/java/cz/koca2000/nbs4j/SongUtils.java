@@ -3,6 +3,7 @@ package cz.koca2000.nbs4j;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
+import java.util.Map;
 
 class SongUtils {
 
@@ -17,4 +18,58 @@ class SongUtils {
         }
         return -1;
     }
+
+    /**
+     * Returns the volume of the note with the volume of the layer applied.
+     * @return value in range [0; 100]
+     */
+    public static int getEffectiveVolume(@NotNull Layer layer, @NotNull Note note) {
+        return note.getVolume() * layer.getVolume() / Layer.MAXIMUM_VOLUME;
+    }
+
+    /**
+     * Returns the panning of the note offset by the panning of the layer.
+     * @return value in range [-100; 100]
+     */
+    public static int getEffectivePanning(@NotNull Layer layer, @NotNull Note note) {
+        int panning = note.getPanning() + layer.getPanning();
+        return Math.max(-Note.MAXIMUM_PANNING, Math.min(Note.MAXIMUM_PANNING, panning));
+    }
+
+    /**
+     * Returns whether the layer changes neither the volume nor the panning of its notes.
+     */
+    public static boolean hasNeutralProperties(@NotNull Layer layer) {
+        return layer.getVolume() == Layer.MAXIMUM_VOLUME && layer.getPanning() == Layer.NEUTRAL_PANNING;
+    }
+
+    /**
+     * Returns the note with the volume and panning of the layer applied, so it sounds the same in a layer with neutral properties.
+     */
+    @NotNull
+    public static Note applyLayerProperties(@NotNull Layer layer, @NotNull Note note) {
+        if (hasNeutralProperties(layer)) {
+            return note;
+        }
+        return Note.builder(note)
+                .volume(getEffectiveVolume(layer, note))
+                .panning(getEffectivePanning(layer, note))
+                .build();
+    }
+
+    /**
+     * Calls the consumer for every note of the layer. Notes of layers created by {@link Layer.Builder} are visited in the ascending order of ticks.
+     */
+    public static void forEachNote(@NotNull Layer layer, @NotNull TickMap.TickConsumer<Note> consumer) {
+        if (layer instanceof LayerInSong) {
+            layer = ((LayerInSong) layer).getLayerData();
+        }
+        if (layer instanceof LayerImpl) {
+            ((LayerImpl) layer).getNoteMap().forEach(consumer);
+            return;
+        }
+        for (Map.Entry<Long, Note> entry : layer.getNotes().entrySet()) {
+            consumer.accept(entry.getKey(), entry.getValue());
+        }
+    }
 }
@@ -0,0 +1,88 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves notes of a {@link Song} onto the grid of a constant tempo.
+ */
+final class TempoNormalization {
+
+    private TempoNormalization() {
+    }
+
+    @NotNull
+    static TempoNormalizationResult normalize(@NotNull Song song, float targetTempo) {
+        if (!(targetTempo > 0) || Float.isInfinite(targetTempo)) {
+            throw new IllegalArgumentException("Tempo must be positive.");
+        }
+
+        TempoTimeline timeline = song.getTempoTimeline();
+        double ticksPerNano = targetTempo / TempoTimeline.NANOS_PER_SECOND;
+        double nanosPerTick = TempoTimeline.NANOS_PER_SECOND / targetTempo;
+        double[] maxError = new double[1];
+
+        List<Layer> layers = new ArrayList<>(song.getLayersCount());
+        int addedLayersCount = 0;
+        for (LayerInSong layerInSong : song.getLayers()) {
+            Layer layer = layerInSong.getLayerData();
+            // Notes that fall on an occupied tick are moved to additional layers with the same properties.
+            // Notes are visited in the ascending order of ticks, so a tick is occupied only if it was the last tick used in the layer.
+            List<Layer.Builder> builders = new ArrayList<>(1);
+            List<long[]> lastTicks = new ArrayList<>(1);
+            SongUtils.forEachNote(layer, (tick, note) -> {
+                long nanos = timeline.getNanosAtTick(tick);
+                long newTick = Math.round(nanos * ticksPerNano);
+                maxError[0] = Math.max(maxError[0], Math.abs(newTick * nanosPerTick - nanos));
+
+                int target = 0;
+                while (target < builders.size() && lastTicks.get(target)[0] >= newTick) {
+                    target++;
+                }
+                if (target == builders.size()) {
+                    builders.add(Layer.builder()
+                            .name(layer.getName())
+                            .locked(layer.isLocked())
+                            .volume(layer.getVolume())
+                            .panning(layer.getPanning()));
+                    lastTicks.add(new long[1]);
+                }
+                builders.get(target).note(newTick, note);
+                lastTicks.get(target)[0] = newTick;
+            });
+            if (builders.isEmpty()) {
+                layers.add(layer);
+                continue;
+            }
+            for (Layer.Builder builder : builders) {
+                layers.add(builder.build());
+            }
+            addedLayersCount += builders.size() - 1;
+        }
+
+        long length = Math.round(timeline.getNanosAtTick(song.getSongLength()) * ticksPerNano);
+        SongMetadata metadata = new SongMetadata(song.getMetadata())
+                .setLoopStartTick((short) Math.min(Math.round(timeline.getNanosAtTick(song.getMetadata().getLoopStartTick()) * ticksPerNano), Short.MAX_VALUE));
+        Song.Builder result = Song.builder();
+        for (CustomInstrument customInstrument : song.getCustomInstruments()) {
+            result.customInstrument(customInstrument);
+        }
+        result.metadata(metadata)
+                .initialTempo(targetTempo)
+                .layers(layers);
+        if (length > 0 && length > getLastTick(layers)) {
+            result.length(length);
+        }
+        return new TempoNormalizationResult(result.build(), (long) Math.ceil(maxError[0]), addedLayersCount);
+    }
+
+    private static long getLastTick(@NotNull List<Layer> layers) {
+        long lastTick = -1;
+        for (Layer layer : layers) {
+            lastTick = Math.max(lastTick, LayerStatistics.of(layer).getLastTick());
+        }
+        return lastTick;
+    }
+}
@@ -0,0 +1,51 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Result of {@link Song#normalizeTempo(float)}.
+ */
+public final class TempoNormalizationResult {
+    private final Song song;
+    private final long maxErrorNanos;
+    private final int addedLayersCount;
+
+    TempoNormalizationResult(@NotNull Song song, long maxErrorNanos, int addedLayersCount) {
+        this.song = song;
+        this.maxErrorNanos = maxErrorNanos;
+        this.addedLayersCount = addedLayersCount;
+    }
+
+    /**
+     * Returns the song with constant tempo.
+     * @return {@link Song}
+     */
+    @NotNull
+    public Song getSong() {
+        return song;
+    }
+
+    /**
+     * Returns the largest difference between the time a note is played in the original song and in the normalized song.
+     * @return error in nanoseconds
+     */
+    public long getMaxErrorNanos() {
+        return maxErrorNanos;
+    }
+
+    /**
+     * Returns the largest difference between the time a note is played in the original song and in the normalized song.
+     * @return error in ticks of the normalized song; never greater than 0.5
+     */
+    public double getMaxErrorTicks() {
+        return maxErrorNanos * (double) song.getTempo(0) / TempoTimeline.NANOS_PER_SECOND;
+    }
+
+    /**
+     * Returns how many layers were added for notes of a layer that fell on the same tick of the normalized song.
+     * @return number of added layers
+     */
+    public int getAddedLayersCount() {
+        return addedLayersCount;
+    }
+}
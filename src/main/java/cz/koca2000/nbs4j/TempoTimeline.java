@@ -0,0 +1,101 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Precomputed mapping between ticks and time of a {@link Song} with all tempo changes applied.
+ * Tempo set on a tick is used from that tick on, the initial tempo is used from tick 0.
+ */
+final class TempoTimeline {
+    static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    // First tick of each segment with constant tempo, the first segment starts at tick 0
+    private final long[] ticks;
+    private final float[] tempos;
+    private final double[] nanosPerTick;
+    private final double[] startNanos;
+
+    TempoTimeline(@NotNull Song song) {
+        Map<Long, Float> tempoChanges = song.getTempoChanges();
+
+        long[] segmentTicks = new long[tempoChanges.size() + 1];
+        float[] segmentTempos = new float[tempoChanges.size() + 1];
+        int count = 1;
+        segmentTicks[0] = 0;
+        segmentTempos[0] = song.getTempo(0);
+        for (Map.Entry<Long, Float> entry : tempoChanges.entrySet()) {
+            long tick = entry.getKey();
+            if (tick <= 0) {
+                continue;
+            }
+            segmentTicks[count] = tick;
+            segmentTempos[count] = entry.getValue();
+            count++;
+        }
+
+        ticks = Arrays.copyOf(segmentTicks, count);
+        tempos = Arrays.copyOf(segmentTempos, count);
+        nanosPerTick = new double[count];
+        startNanos = new double[count];
+        for (int i = 0; i < count; i++) {
+            nanosPerTick[i] = NANOS_PER_SECOND / tempos[i];
+            if (i > 0) {
+                startNanos[i] = startNanos[i - 1] + (ticks[i] - ticks[i - 1]) * nanosPerTick[i - 1];
+            }
+        }
+    }
+
+    /**
+     * Returns the time at which the given tick starts.
+     * @param tick non-negative tick
+     * @return time in nanoseconds since the start of the song
+     */
+    long getNanosAtTick(long tick) {
+        if (tick <= 0) {
+            return 0;
+        }
+        int segment = findSegmentByTick(tick);
+        return Math.round(startNanos[segment] + (tick - ticks[segment]) * nanosPerTick[segment]);
+    }
+
+    /**
+     * Returns the tick that is being played at the given time.
+     * @param nanos time in nanoseconds since the start of the song
+     * @return tick
+     */
+    long getTickAtNanos(long nanos) {
+        if (nanos <= 0) {
+            return 0;
+        }
+        int segment = Arrays.binarySearch(startNanos, nanos);
+        if (segment < 0) {
+            segment = -segment - 2;
+        }
+        return ticks[segment] + (long) Math.floor((nanos - startNanos[segment]) / nanosPerTick[segment]);
+    }
+
+    /**
+     * Returns the tempo used on the given tick.
+     * @param tick tick
+     * @return tempo in ticks per second
+     */
+    float getTempo(long tick) {
+        return tempos[findSegmentByTick(tick)];
+    }
+
+    long estimateRetainedSize() {
+        return MemoryLayout.object(4, 0) + MemoryLayout.array(ticks.length, 8) + MemoryLayout.array(tempos.length, 4)
+                + MemoryLayout.array(nanosPerTick.length, 8) + MemoryLayout.array(startNanos.length, 8);
+    }
+
+    private int findSegmentByTick(long tick) {
+        if (tick <= 0) {
+            return 0;
+        }
+        int segment = Arrays.binarySearch(ticks, tick);
+        return segment >= 0 ? segment : -segment - 2;
+    }
+}
@@ -0,0 +1,700 @@
+package cz.koca2000.nbs4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Persistent map from non-negative ticks to values ordered by the tick.
+ * Ticks are stored in a bitmap-compressed radix trie with 32-way branching, so successive versions of the map
+ * share all nodes that were not touched by a change. Modifications are done through an {@link Editor}
+ * which mutates nodes in place as long as they were created by the same editor.
+ * @param <V> type of the values
+ */
+final class TickMap<V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int MAX_SHIFT = 60;
+    private static final Object[] EMPTY_ARRAY = new Object[0];
+
+    private static final TickMap<?> EMPTY = new TickMap<>(null, 0, 0);
+
+    private final Node root;
+    private final int shift;
+    private final int size;
+
+    private Map<Long, V> mapView;
+
+    private TickMap(@Nullable Node root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    static <V> TickMap<V> empty() {
+        return (TickMap<V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the value at the given tick.
+     * @param tick tick of the value
+     * @return value or null if there is no value at the given tick
+     */
+    @Nullable
+    V get(long tick) {
+        return get(root, shift, tick);
+    }
+
+    boolean containsKey(long tick) {
+        return get(tick) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private static <V> V get(@Nullable Node root, int shift, long tick) {
+        if (tick < 0 || root == null || !fitsInto(tick, shift)) {
+            return null;
+        }
+
+        Node node = root;
+        for (int s = shift; ; s -= BITS) {
+            int bit = 1 << ((int) (tick >>> s) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object child = node.array[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (s == 0) {
+                return (V) child;
+            }
+            node = (Node) child;
+        }
+    }
+
+    /**
+     * Returns the lowest tick that is greater or equal to the given tick.
+     * @param tick lower bound
+     * @return tick or -1 if there is no such tick
+     */
+    long ceilingKey(long tick) {
+        if (root == null) {
+            return -1;
+        }
+        if (tick < 0) {
+            tick = 0;
+        }
+        if (!fitsInto(tick, shift)) {
+            return -1;
+        }
+        return ceiling(root, shift, 0, tick);
+    }
+
+    /**
+     * Returns the lowest tick that is strictly greater than the given tick.
+     * @param tick lower bound
+     * @return tick or -1 if there is no such tick
+     */
+    long higherKey(long tick) {
+        if (tick == Long.MAX_VALUE) {
+            return -1;
+        }
+        return ceilingKey(tick + 1);
+    }
+
+    /**
+     * Returns the lowest tick of the map.
+     * @return tick or -1 if the map is empty
+     */
+    long firstKey() {
+        return root == null ? -1 : first(root, shift, 0);
+    }
+
+    /**
+     * Returns the highest tick of the map.
+     * @return tick or -1 if the map is empty
+     */
+    long lastKey() {
+        return root == null ? -1 : last(root, shift, 0);
+    }
+
+    /**
+     * Calls the consumer for every entry of the map in the ascending order of ticks.
+     * @param consumer consumer of the entries
+     */
+    void forEach(@NotNull TickConsumer<? super V> consumer) {
+        if (root != null) {
+            forEach(root, shift, 0, consumer);
+        }
+    }
+
+    /**
+     * Calls the consumer for every entry with a tick in the given range in the ascending order of ticks.
+     * Only the nodes overlapping the range are visited, so the cost is proportional to the height of the trie and the number of entries in the range.
+     * @param fromTick lowest tick of the range
+     * @param toTickExclusive tick after the highest tick of the range
+     * @param consumer consumer of the entries
+     */
+    void forEachInRange(long fromTick, long toTickExclusive, @NotNull TickConsumer<? super V> consumer) {
+        if (root != null && fromTick < toTickExclusive) {
+            forEachInRange(root, shift, 0, Math.max(fromTick, 0), toTickExclusive, consumer);
+        }
+    }
+
+    /**
+     * Estimates the number of bytes retained by the nodes of this map, values are not included.
+     * @return number of bytes
+     */
+    long estimateNodesSize() {
+        return MemoryLayout.object(4, 8) + (root == null ? 0 : estimateNodesSize(root, shift));
+    }
+
+    private static long estimateNodesSize(@NotNull Node node, int shift) {
+        long size = MemoryLayout.object(2, 4) + MemoryLayout.referenceArray(node.array.length);
+        if (shift > 0) {
+            for (Object child : node.array) {
+                size += estimateNodesSize((Node) child, shift - BITS);
+            }
+        }
+        return size;
+    }
+
+    @NotNull
+    Editor<V> edit() {
+        return new Editor<>(this);
+    }
+
+    /**
+     * Returns unmodifiable {@link Map} view of this map. The view iterates in the ascending order of ticks.
+     * @return unmodifiable {@link Map}
+     */
+    @NotNull
+    Map<Long, V> asMap() {
+        Map<Long, V> view = mapView;
+        if (view == null) {
+            view = new MapView();
+            mapView = view;
+        }
+        return view;
+    }
+
+    /**
+     * Reports every tick whose value differs between the two maps. Subtrees shared by both maps are skipped,
+     * so comparing two versions of the same map costs time proportional to the size of the change.
+     * @param oldMap original map
+     * @param newMap modified map
+     * @param consumer receives the tick, the value in the original map and the value in the modified map (either may be null)
+     */
+    static <V> void diff(@NotNull TickMap<V> oldMap, @NotNull TickMap<V> newMap, @NotNull DiffConsumer<? super V> consumer) {
+        if (oldMap.root == newMap.root) {
+            return;
+        }
+        int shift = Math.max(oldMap.shift, newMap.shift);
+        diff(liftTo(oldMap.root, oldMap.shift, shift), liftTo(newMap.root, newMap.shift, shift), shift, 0, consumer);
+    }
+
+    private static boolean fitsInto(long tick, int shift) {
+        return (tick >>> shift) >>> BITS == 0;
+    }
+
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    private static long ceiling(@NotNull Node node, int shift, long prefix, long tick) {
+        int bitmap = node.bitmap;
+        int slot = (int) (tick >>> shift) & MASK;
+        int bit = 1 << slot;
+        if ((bitmap & bit) != 0) {
+            if (shift == 0) {
+                return prefix | slot;
+            }
+            long found = ceiling((Node) node.array[index(bitmap, bit)], shift - BITS, prefix | ((long) slot << shift), tick);
+            if (found != -1) {
+                return found;
+            }
+        }
+
+        int higherSlots = slot == MASK ? 0 : bitmap & (-1 << (slot + 1));
+        if (higherSlots == 0) {
+            return -1;
+        }
+        int nextSlot = Integer.numberOfTrailingZeros(higherSlots);
+        if (shift == 0) {
+            return prefix | nextSlot;
+        }
+        return first((Node) node.array[index(bitmap, 1 << nextSlot)], shift - BITS, prefix | ((long) nextSlot << shift));
+    }
+
+    private static long first(@NotNull Node node, int shift, long prefix) {
+        while (true) {
+            int slot = Integer.numberOfTrailingZeros(node.bitmap);
+            prefix |= (long) slot << shift;
+            if (shift == 0) {
+                return prefix;
+            }
+            node = (Node) node.array[0];
+            shift -= BITS;
+        }
+    }
+
+    private static long last(@NotNull Node node, int shift, long prefix) {
+        while (true) {
+            int slot = 31 - Integer.numberOfLeadingZeros(node.bitmap);
+            prefix |= (long) slot << shift;
+            if (shift == 0) {
+                return prefix;
+            }
+            node = (Node) node.array[node.array.length - 1];
+            shift -= BITS;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void forEach(@NotNull Node node, int shift, long prefix, @NotNull TickConsumer<? super V> consumer) {
+        int bitmap = node.bitmap;
+        Object[] array = node.array;
+        for (int i = 0; bitmap != 0; i++) {
+            int slot = Integer.numberOfTrailingZeros(bitmap);
+            bitmap &= bitmap - 1;
+            long key = prefix | ((long) slot << shift);
+            if (shift == 0) {
+                consumer.accept(key, (V) array[i]);
+            } else {
+                forEach((Node) array[i], shift - BITS, key, consumer);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void forEachInRange(@NotNull Node node, int shift, long prefix, long fromTick, long toTickExclusive,
+                                           @NotNull TickConsumer<? super V> consumer) {
+        int bitmap = node.bitmap;
+        Object[] array = node.array;
+        for (int i = 0; bitmap != 0; i++) {
+            int slot = Integer.numberOfTrailingZeros(bitmap);
+            bitmap &= bitmap - 1;
+            long key = prefix | ((long) slot << shift);
+            long lastKey = key | ((1L << shift) - 1);
+            if (lastKey < fromTick) {
+                continue;
+            }
+            if (key >= toTickExclusive) {
+                return;
+            }
+            if (shift == 0) {
+                consumer.accept(key, (V) array[i]);
+            } else if (key >= fromTick && lastKey < toTickExclusive) {
+                forEach((Node) array[i], shift - BITS, key, consumer);
+            } else {
+                forEachInRange((Node) array[i], shift - BITS, key, fromTick, toTickExclusive, consumer);
+            }
+        }
+    }
+
+    @Nullable
+    private static Node liftTo(@Nullable Node node, int shift, int targetShift) {
+        if (node == null) {
+            return null;
+        }
+        for (; shift < targetShift; shift += BITS) {
+            node = new Node(null, 1, new Object[]{node});
+        }
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void diff(@Nullable Node oldNode, @Nullable Node newNode, int shift, long prefix, @NotNull DiffConsumer<? super V> consumer) {
+        if (oldNode == newNode) {
+            return;
+        }
+        if (oldNode == null) {
+            forEach(newNode, shift, prefix, (TickConsumer<V>) (tick, value) -> consumer.accept(tick, null, value));
+            return;
+        }
+        if (newNode == null) {
+            forEach(oldNode, shift, prefix, (TickConsumer<V>) (tick, value) -> consumer.accept(tick, value, null));
+            return;
+        }
+
+        int slots = oldNode.bitmap | newNode.bitmap;
+        while (slots != 0) {
+            int slot = Integer.numberOfTrailingZeros(slots);
+            int bit = 1 << slot;
+            slots &= slots - 1;
+
+            Object oldChild = (oldNode.bitmap & bit) != 0 ? oldNode.array[index(oldNode.bitmap, bit)] : null;
+            Object newChild = (newNode.bitmap & bit) != 0 ? newNode.array[index(newNode.bitmap, bit)] : null;
+            long key = prefix | ((long) slot << shift);
+            if (shift == 0) {
+                if (!Objects.equals(oldChild, newChild)) {
+                    consumer.accept(key, (V) oldChild, (V) newChild);
+                }
+            } else {
+                diff((Node) oldChild, (Node) newChild, shift - BITS, key, consumer);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface TickConsumer<V> {
+        void accept(long tick, V value);
+    }
+
+    @FunctionalInterface
+    interface DiffConsumer<V> {
+        void accept(long tick, @Nullable V oldValue, @Nullable V newValue);
+    }
+
+    private static final class Node {
+        /**
+         * Token of the {@link Editor} that may modify this node in place. Null for nodes that are never modified.
+         */
+        private Object edit;
+        private int bitmap;
+        private Object[] array;
+
+        private Node(@Nullable Object edit, int bitmap, @NotNull Object[] array) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+    }
+
+    /**
+     * Mutable view of a {@link TickMap}. Changes never affect the map the editor was created from.
+     * @param <V> type of the values
+     */
+    static final class Editor<V> {
+        private Object edit = new Object();
+        private Node root;
+        private int shift;
+        private int size;
+
+        private TickMap<V> lastBuilt;
+
+        // Value replaced or removed by the last modification
+        private Object previous;
+
+        private Editor(@NotNull TickMap<V> map) {
+            root = map.root;
+            shift = map.shift;
+            size = map.size;
+            lastBuilt = map;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Nullable
+        V get(long tick) {
+            return TickMap.get(root, shift, tick);
+        }
+
+        long lastKey() {
+            return root == null ? -1 : last(root, shift, 0);
+        }
+
+        /**
+         * Sets the value at the given tick.
+         * @param tick non-negative tick
+         * @param value value to be set or null to remove the existing value
+         * @return previous value at the tick or null if there was none
+         */
+        @SuppressWarnings("unchecked")
+        @Nullable
+        V put(long tick, @Nullable V value) {
+            if (tick < 0) {
+                throw new IllegalArgumentException("Tick can not be negative.");
+            }
+            if (value == null) {
+                return remove(tick);
+            }
+
+            if (root == null) {
+                root = new Node(edit, 0, EMPTY_ARRAY);
+                shift = 0;
+                while (!fitsInto(tick, shift)) {
+                    shift += BITS;
+                }
+            }
+            while (!fitsInto(tick, shift)) {
+                root = new Node(edit, 1, new Object[]{root});
+                shift += BITS;
+            }
+
+            previous = null;
+            root = put(root, shift, tick, value);
+            if (previous == null) {
+                size++;
+            }
+            return (V) previous;
+        }
+
+        /**
+         * Removes the value at the given tick.
+         * @param tick tick of the value
+         * @return removed value or null if there was none
+         */
+        @SuppressWarnings("unchecked")
+        @Nullable
+        V remove(long tick) {
+            if (tick < 0 || root == null || !fitsInto(tick, shift)) {
+                return null;
+            }
+
+            previous = null;
+            root = remove(root, shift, tick);
+            if (previous != null) {
+                size--;
+            }
+            if (root == null) {
+                shift = 0;
+            }
+            return (V) previous;
+        }
+
+        void clear() {
+            root = null;
+            shift = 0;
+            size = 0;
+        }
+
+        void forEach(@NotNull TickConsumer<? super V> consumer) {
+            if (root != null) {
+                TickMap.forEach(root, shift, 0, consumer);
+            }
+        }
+
+        /**
+         * Returns the current state of the editor as an immutable map. Nodes reachable from the returned map
+         * are never modified again by this editor.
+         * @return {@link TickMap}
+         */
+        @NotNull
+        TickMap<V> build() {
+            if (lastBuilt.root != root || lastBuilt.shift != shift || lastBuilt.size != size) {
+                lastBuilt = root == null ? empty() : new TickMap<>(root, shift, size);
+                edit = new Object();
+            }
+            return lastBuilt;
+        }
+
+        @NotNull
+        private Node editable(@NotNull Node node) {
+            if (node.edit == edit) {
+                return node;
+            }
+            return new Node(edit, node.bitmap, node.array.clone());
+        }
+
+        @NotNull
+        private Node put(@NotNull Node node, int shift, long tick, @NotNull Object value) {
+            int bit = 1 << ((int) (tick >>> shift) & MASK);
+            int index = index(node.bitmap, bit);
+            boolean exists = (node.bitmap & bit) != 0;
+
+            Object child;
+            if (shift == 0) {
+                if (exists) {
+                    previous = node.array[index];
+                    if (previous == value) {
+                        return node;
+                    }
+                }
+                child = value;
+            } else {
+                Node oldChild = exists ? (Node) node.array[index] : new Node(edit, 0, EMPTY_ARRAY);
+                child = put(oldChild, shift - BITS, tick, value);
+                if (exists && child == oldChild) {
+                    return node;
+                }
+            }
+
+            Node editable = editable(node);
+            if (exists) {
+                editable.array[index] = child;
+            } else {
+                Object[] array = new Object[editable.array.length + 1];
+                System.arraycopy(editable.array, 0, array, 0, index);
+                array[index] = child;
+                System.arraycopy(editable.array, index, array, index + 1, editable.array.length - index);
+                editable.array = array;
+                editable.bitmap |= bit;
+            }
+            return editable;
+        }
+
+        @Nullable
+        private Node remove(@NotNull Node node, int shift, long tick) {
+            int bit = 1 << ((int) (tick >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return node;
+            }
+            int index = index(node.bitmap, bit);
+
+            Node child = null;
+            if (shift == 0) {
+                previous = node.array[index];
+            } else {
+                Node oldChild = (Node) node.array[index];
+                child = remove(oldChild, shift - BITS, tick);
+                if (child == oldChild) {
+                    return node;
+                }
+            }
+
+            if (child != null) {
+                Node editable = editable(node);
+                editable.array[index] = child;
+                return editable;
+            }
+
+            if (node.bitmap == bit) {
+                return null;
+            }
+
+            Node editable = editable(node);
+            Object[] array = new Object[editable.array.length - 1];
+            System.arraycopy(editable.array, 0, array, 0, index);
+            System.arraycopy(editable.array, index + 1, array, index, array.length - index);
+            editable.array = array;
+            editable.bitmap &= ~bit;
+            return editable;
+        }
+    }
+
+    private final class MapView extends AbstractMap<Long, V> {
+
+        private Set<Entry<Long, V>> entrySet;
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public V get(Object key) {
+            return key instanceof Long ? TickMap.this.get((Long) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        @NotNull
+        public Set<Entry<Long, V>> entrySet() {
+            Set<Entry<Long, V>> set = entrySet;
+            if (set == null) {
+                set = new AbstractSet<Entry<Long, V>>() {
+                    @Override
+                    @NotNull
+                    public Iterator<Entry<Long, V>> iterator() {
+                        return new EntryIterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+                };
+                entrySet = set;
+            }
+            return set;
+        }
+    }
+
+    /**
+     * Iterates over the entries in the ascending order of ticks using an explicit stack of visited nodes.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<Long, V>> {
+        private final Node[] nodes = new Node[MAX_SHIFT / BITS + 1];
+        private final int[] remainingSlots = new int[MAX_SHIFT / BITS + 1];
+        private final long[] prefixes = new long[MAX_SHIFT / BITS + 1];
+        private int depth = -1;
+        private long nextTick = -1;
+        private Object nextValue;
+
+        private EntryIterator() {
+            if (root != null) {
+                push(root, 0);
+                advance();
+            }
+        }
+
+        private void push(@NotNull Node node, long prefix) {
+            depth++;
+            nodes[depth] = node;
+            remainingSlots[depth] = node.bitmap;
+            prefixes[depth] = prefix;
+        }
+
+        private void advance() {
+            nextValue = null;
+            while (depth >= 0) {
+                int slots = remainingSlots[depth];
+                if (slots == 0) {
+                    depth--;
+                    continue;
+                }
+                Node node = nodes[depth];
+                int slot = Integer.numberOfTrailingZeros(slots);
+                remainingSlots[depth] = slots & (slots - 1);
+
+                int nodeShift = shift - depth * BITS;
+                long key = prefixes[depth] | ((long) slot << nodeShift);
+                Object child = node.array[index(node.bitmap, 1 << slot)];
+                if (nodeShift == 0) {
+                    nextTick = key;
+                    nextValue = child;
+                    return;
+                }
+                push((Node) child, key);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextValue != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Map.Entry<Long, V> next() {
+            if (nextValue == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<Long, V> entry = new AbstractMap.SimpleImmutableEntry<>(nextTick, (V) nextValue);
+            advance();
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package cz.koca2000.nbs4j.audio;
+
+import cz.koca2000.nbs4j.CustomInstrument;
+import cz.koca2000.nbs4j.NotePitchTable;
+import cz.koca2000.nbs4j.PlaybackPlan;
+import cz.koca2000.nbs4j.Song;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Samples of all events of a {@link PlaybackPlan} resolved ahead of the playback, together with the step
+ * at which each sample is played to reach the pitch of the note at the output sample rate.
+ */
+final class EventSamples {
+    private final float[][] data;
+    private final double[] steps;
+
+    EventSamples(@NotNull Song song, @NotNull PlaybackPlan plan, @NotNull SampleBank sampleBank,
+                 @Nullable InstrumentSampleCache sampleCache, int sampleRate) {
+        int customCount = song.getCustomInstrumentsCount();
+        Sample[] customSamples = new Sample[customCount];
+        int[] customKeys = new int[customCount];
+        for (int i = 0; i < customCount; i++) {
+            CustomInstrument customInstrument = song.getCustomInstrument(i);
+            customSamples[i] = sampleBank.getSample(customInstrument);
+            customKeys[i] = customInstrument.getKey();
+        }
+
+        data = new float[plan.size()][];
+        steps = new double[plan.size()];
+        for (int event = 0; event < plan.size(); event++) {
+            int instrument = plan.getInstrument(event);
+            Sample sample;
+            int baseKey;
+            if (plan.isCustomInstrument(event)) {
+                sample = instrument < customCount ? customSamples[instrument] : null;
+                baseKey = instrument < customCount ? customKeys[instrument] : NotePitchTable.DEFAULT_BASE_KEY;
+            } else {
+                sample = sampleBank.getSample(instrument);
+                baseKey = NotePitchTable.DEFAULT_BASE_KEY;
+            }
+            if (sample == null || sample.getLength() == 0 || plan.getVolume(event) == 0) {
+                continue;
+            }
+
+            if (sampleCache != null) {
+                data[event] = sampleCache.getPitchedSample(sample, plan.getKey(event) - baseKey, plan.getPitch(event), sampleRate);
+                steps[event] = 1;
+            } else {
+                data[event] = sample.getData();
+                steps[event] = plan.getPlaybackPitch(event) * sample.getSampleRate() / sampleRate;
+            }
+        }
+    }
+
+    /**
+     * Returns the data of the sample of the event.
+     * @param event index of the event
+     * @return data or null if the event is silent
+     */
+    @Nullable
+    float[] getData(int event) {
+        return data[event];
+    }
+
+    /**
+     * Returns how many frames of the sample are played per one output frame.
+     * @param event index of the event
+     * @return step
+     */
+    double getStep(int event) {
+        return steps[event];
+    }
+}
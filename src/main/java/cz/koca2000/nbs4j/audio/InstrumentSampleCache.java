@@ -0,0 +1,256 @@
+package cz.koca2000.nbs4j.audio;
+
+import cz.koca2000.nbs4j.CustomInstrument;
+import cz.koca2000.nbs4j.Instrument;
+import cz.koca2000.nbs4j.NotePitchTable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of instrument samples already resampled to the pitch of a note and to the output sample rate, so they are played without
+ * any further resampling. Variants are keyed by the sample of the instrument, the distance of the note from the base key of the instrument
+ * rounded to pitch buckets, and the output sample rate; notes at the same distance from the base key share the variant.
+ * The cache is bounded by a byte budget and evicts the least recently used variants.
+ * <p>This class is thread-safe and a single instance can be shared by any number of renderers and synthesizers.
+ */
+public final class InstrumentSampleCache {
+    public static final long DEFAULT_BYTE_BUDGET = 64L * 1024 * 1024;
+    public static final int DEFAULT_CENTS_PER_BUCKET = 1;
+
+    private final long byteBudget;
+    private final int centsPerBucket;
+    private final LinkedHashMap<VariantKey, float[]> variants = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long byteSize = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * Creates a cache with {@link #DEFAULT_BYTE_BUDGET} and {@link #DEFAULT_CENTS_PER_BUCKET}.
+     */
+    public InstrumentSampleCache() {
+        this(DEFAULT_BYTE_BUDGET, DEFAULT_CENTS_PER_BUCKET);
+    }
+
+    /**
+     * Creates a cache.
+     * @param byteBudget maximum number of bytes of all cached variants
+     * @param centsPerBucket size of a pitch bucket in cents; pitches within a bucket share the same variant
+     * @throws IllegalArgumentException if any of the arguments is not positive
+     */
+    public InstrumentSampleCache(long byteBudget, int centsPerBucket) {
+        if (byteBudget <= 0) {
+            throw new IllegalArgumentException("Byte budget must be positive.");
+        }
+        if (centsPerBucket <= 0) {
+            throw new IllegalArgumentException("Size of a pitch bucket must be positive.");
+        }
+        this.byteBudget = byteBudget;
+        this.centsPerBucket = centsPerBucket;
+    }
+
+    /**
+     * Returns the sample of the non-custom instrument pitched to the note.
+     * @param sampleBank bank with the sample of the instrument
+     * @param instrument index of the instrument
+     * @param key key of the note
+     * @param pitch fine pitch of the note
+     * @param sampleRate output sample rate
+     * @return resampled data or null if the bank has no sample for the instrument
+     */
+    @Nullable
+    public float[] getPitchedSample(@NotNull SampleBank sampleBank, int instrument, int key, int pitch, int sampleRate) {
+        Sample sample = sampleBank.getSample(instrument);
+        return sample != null ? getPitchedSample(sample, key - NotePitchTable.DEFAULT_BASE_KEY, pitch, sampleRate) : null;
+    }
+
+    /**
+     * Returns the sample of the non-custom instrument pitched to the note.
+     * @param sampleBank bank with the sample of the instrument
+     * @param instrument {@link Instrument}
+     * @param key key of the note
+     * @param pitch fine pitch of the note
+     * @param sampleRate output sample rate
+     * @return resampled data or null if the bank has no sample for the instrument
+     */
+    @Nullable
+    public float[] getPitchedSample(@NotNull SampleBank sampleBank, @NotNull Instrument instrument, int key, int pitch, int sampleRate) {
+        return getPitchedSample(sampleBank, instrument.getId(), key, pitch, sampleRate);
+    }
+
+    /**
+     * Returns the sample of the custom instrument pitched to the note.
+     * @param sampleBank bank with the sample of the instrument
+     * @param customInstrument custom instrument
+     * @param key key of the note
+     * @param pitch fine pitch of the note
+     * @param sampleRate output sample rate
+     * @return resampled data or null if the bank has no sample for the instrument
+     */
+    @Nullable
+    public float[] getPitchedSample(@NotNull SampleBank sampleBank, @NotNull CustomInstrument customInstrument, int key, int pitch, int sampleRate) {
+        Sample sample = sampleBank.getSample(customInstrument);
+        return sample != null ? getPitchedSample(sample, key - customInstrument.getKey(), pitch, sampleRate) : null;
+    }
+
+    /**
+     * Returns the sample pitched by the given number of keys and cents.
+     * @param sample sample recorded at the base key of the instrument
+     * @param keyOffset distance of the note from the base key
+     * @param pitch fine pitch of the note
+     * @param sampleRate output sample rate
+     * @return resampled data; the returned array must not be modified
+     */
+    @NotNull
+    float[] getPitchedSample(@NotNull Sample sample, int keyOffset, int pitch, int sampleRate) {
+        int cents = keyOffset * 100 + pitch;
+        int bucket = Math.round(cents / (float) centsPerBucket) * centsPerBucket;
+        VariantKey variantKey = new VariantKey(sample, bucket, sampleRate);
+
+        synchronized (variants) {
+            float[] cached = variants.get(variantKey);
+            if (cached != null) {
+                hitCount++;
+                return cached;
+            }
+            missCount++;
+        }
+
+        // Resampling is done outside of the lock; concurrent misses of the same variant compute equal data
+        double step = NotePitchTable.getPitchMultiplier(0, bucket, 0) * sample.getSampleRate() / sampleRate;
+        float[] data = resample(sample.getData(), step);
+        long size = getByteSize(data);
+        if (size > byteBudget) {
+            // The variant would not fit even into the empty cache, so other variants are kept
+            return data;
+        }
+
+        synchronized (variants) {
+            float[] previous = variants.put(variantKey, data);
+            if (previous != null) {
+                byteSize -= getByteSize(previous);
+            }
+            byteSize += size;
+            evict();
+        }
+        return data;
+    }
+
+    @NotNull
+    private static float[] resample(@NotNull float[] data, double step) {
+        float[] result = new float[VoiceMixer.getFrameCount(data.length, step)];
+        int last = data.length - 1;
+        double position = 0;
+        for (int i = 0; i < result.length; i++) {
+            int index = (int) position;
+            float current = data[index];
+            float next = index < last ? data[index + 1] : 0f;
+            result[i] = current + (next - current) * (float) (position - index);
+            position += step;
+        }
+        return result;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<VariantKey, float[]>> iterator = variants.entrySet().iterator();
+        while (byteSize > byteBudget && iterator.hasNext()) {
+            byteSize -= getByteSize(iterator.next().getValue());
+            iterator.remove();
+        }
+    }
+
+    private static long getByteSize(@NotNull float[] data) {
+        return (long) data.length * Float.BYTES;
+    }
+
+    /**
+     * Returns the number of bytes of all cached variants.
+     * @return number of bytes
+     */
+    public long getByteSize() {
+        synchronized (variants) {
+            return byteSize;
+        }
+    }
+
+    /**
+     * Returns the maximum number of bytes of all cached variants.
+     * @return number of bytes
+     */
+    public long getByteBudget() {
+        return byteBudget;
+    }
+
+    /**
+     * Returns the number of cached variants.
+     * @return number of variants
+     */
+    public int size() {
+        synchronized (variants) {
+            return variants.size();
+        }
+    }
+
+    /**
+     * Returns how many times a requested variant was found in the cache.
+     * @return number of hits
+     */
+    public long getHitCount() {
+        synchronized (variants) {
+            return hitCount;
+        }
+    }
+
+    /**
+     * Returns how many times a requested variant had to be computed.
+     * @return number of misses
+     */
+    public long getMissCount() {
+        synchronized (variants) {
+            return missCount;
+        }
+    }
+
+    /**
+     * Removes all cached variants.
+     */
+    public void clear() {
+        synchronized (variants) {
+            variants.clear();
+            byteSize = 0;
+        }
+    }
+
+    private static final class VariantKey {
+        private final Sample sample;
+        private final int cents;
+        private final int sampleRate;
+
+        private VariantKey(@NotNull Sample sample, int cents, int sampleRate) {
+            this.sample = sample;
+            this.cents = cents;
+            this.sampleRate = sampleRate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof VariantKey)) {
+                return false;
+            }
+            VariantKey other = (VariantKey) o;
+            return sample == other.sample && cents == other.cents && sampleRate == other.sampleRate;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(sample) * 31 + cents) * 31 + sampleRate;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package cz.koca2000.nbs4j.audio;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Fixed size ring buffer of 16-bit samples. It is safe to use with one thread writing and another thread reading.
+ * Writes never block; samples that do not fit are not written, so producers should write at most {@link #getFreeSpace()} samples.
+ */
+public final class PcmRingBuffer implements PcmSink {
+
+    private final short[] buffer;
+
+    // Total number of written and read samples; indices are derived modulo the capacity
+    private volatile long written = 0;
+    private volatile long read = 0;
+
+    /**
+     * Creates a ring buffer.
+     * @param capacity maximum number of samples the buffer holds
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public PcmRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        buffer = new short[capacity];
+    }
+
+    /**
+     * Returns the maximum number of samples the buffer holds.
+     * @return capacity
+     */
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Returns the number of samples that can be read.
+     * @return number of samples
+     */
+    public int getAvailable() {
+        return (int) (written - read);
+    }
+
+    /**
+     * Returns the number of samples that can be written.
+     * @return number of samples
+     */
+    public int getFreeSpace() {
+        return buffer.length - getAvailable();
+    }
+
+    @Override
+    public void write(@NotNull short[] samples, int offset, int length) {
+        offer(samples, offset, length);
+    }
+
+    /**
+     * Writes as many samples as fit into the buffer.
+     * @param samples samples to be written
+     * @param offset index of the first sample to be written
+     * @param length number of samples to be written
+     * @return number of written samples
+     */
+    public int offer(@NotNull short[] samples, int offset, int length) {
+        long currentWritten = written;
+        int count = Math.min(length, buffer.length - (int) (currentWritten - read));
+        copy(samples, offset, buffer, (int) (currentWritten % buffer.length), count, true);
+        written = currentWritten + count;
+        return count;
+    }
+
+    /**
+     * Reads the available samples.
+     * @param samples array to which the samples are read
+     * @param offset index of the array at which the first sample is stored
+     * @param length maximum number of samples to be read
+     * @return number of read samples
+     */
+    public int read(@NotNull short[] samples, int offset, int length) {
+        long currentRead = read;
+        int count = Math.min(length, (int) (written - currentRead));
+        copy(buffer, (int) (currentRead % buffer.length), samples, offset, count, false);
+        read = currentRead + count;
+        return count;
+    }
+
+    private void copy(@NotNull short[] from, int fromIndex, @NotNull short[] to, int toIndex, int count, boolean toRing) {
+        int ringIndex = toRing ? toIndex : fromIndex;
+        int first = Math.min(count, buffer.length - ringIndex);
+        System.arraycopy(from, fromIndex, to, toIndex, first);
+        if (first < count) {
+            if (toRing) {
+                System.arraycopy(from, fromIndex + first, to, 0, count - first);
+            } else {
+                System.arraycopy(from, 0, to, toIndex + first, count - first);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package cz.koca2000.nbs4j.audio;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.sound.sampled.SourceDataLine;
+import java.util.Objects;
+
+/**
+ * Destination of interleaved 16-bit PCM produced by {@link SongSynth}.
+ */
+@FunctionalInterface
+public interface PcmSink {
+
+    /**
+     * Writes the samples. The method may block until the samples are consumed, the buffer is reused after it returns.
+     * @param buffer interleaved 16-bit samples
+     * @param offset index of the first sample to be written
+     * @param length number of samples to be written
+     */
+    void write(@NotNull short[] buffer, int offset, int length);
+
+    /**
+     * Creates a sink writing to the line. The line has to be opened with 16-bit signed little-endian format.
+     * @param line opened line
+     * @return {@link PcmSink}
+     */
+    @NotNull
+    static PcmSink of(@NotNull SourceDataLine line) {
+        Objects.requireNonNull(line);
+        byte[] bytes = new byte[8192];
+        return (buffer, offset, length) -> {
+            while (length > 0) {
+                int count = Math.min(length, bytes.length / 2);
+                for (int i = 0; i < count; i++) {
+                    short value = buffer[offset + i];
+                    bytes[i * 2] = (byte) value;
+                    bytes[i * 2 + 1] = (byte) (value >> 8);
+                }
+                line.write(bytes, 0, count * 2);
+                offset += count;
+                length -= count;
+            }
+        };
+    }
+}
@@ -0,0 +1,140 @@
+package cz.koca2000.nbs4j.audio;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Immutable mono sound of an instrument stored as floating point samples in range [-1; 1].
+ */
+public final class Sample {
+
+    private final float[] data;
+    private final int sampleRate;
+
+    private Sample(@NotNull float[] data, int sampleRate) {
+        this.data = data;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Creates a sample from the given data. The array is copied.
+     * @param data mono samples in range [-1; 1]
+     * @param sampleRate sample rate in hertz
+     * @return {@link Sample}
+     * @throws IllegalArgumentException if the sample rate is not positive
+     */
+    @NotNull
+    public static Sample of(@NotNull float[] data, int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate must be positive.");
+        }
+        return new Sample(Arrays.copyOf(data, data.length), sampleRate);
+    }
+
+    /**
+     * Loads a sample from an audio file in a format supported by {@link AudioSystem}, e.g. WAV. Stereo sounds are mixed down to mono.
+     * @param file audio file
+     * @return {@link Sample}
+     * @throws IOException if the file does not exist, can not be read or its format is not supported
+     */
+    @NotNull
+    public static Sample fromFile(@NotNull File file) throws IOException {
+        try (AudioInputStream stream = AudioSystem.getAudioInputStream(file)) {
+            return fromAudioStream(stream);
+        } catch (UnsupportedAudioFileException ex) {
+            throw new IOException("Unsupported audio format of " + file, ex);
+        }
+    }
+
+    /**
+     * Loads a sample from a stream in a format supported by {@link AudioSystem}, e.g. WAV. Stereo sounds are mixed down to mono.
+     * @param stream stream with the audio file
+     * @return {@link Sample}
+     * @throws IOException if the stream can not be read or its format is not supported
+     */
+    @NotNull
+    public static Sample fromStream(@NotNull InputStream stream) throws IOException {
+        Objects.requireNonNull(stream);
+        if (!stream.markSupported()) {
+            stream = new BufferedInputStream(stream);
+        }
+        try (AudioInputStream audioStream = AudioSystem.getAudioInputStream(stream)) {
+            return fromAudioStream(audioStream);
+        } catch (UnsupportedAudioFileException ex) {
+            throw new IOException("Unsupported audio format", ex);
+        }
+    }
+
+    @NotNull
+    private static Sample fromAudioStream(@NotNull AudioInputStream stream) throws IOException {
+        AudioFormat source = stream.getFormat();
+        int channels = source.getChannels();
+        AudioFormat target = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, source.getSampleRate(), 16,
+                channels, channels * 2, source.getSampleRate(), false);
+        try (AudioInputStream converted = AudioSystem.getAudioInputStream(target, stream)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = converted.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+
+            byte[] pcm = bytes.toByteArray();
+            int frames = pcm.length / (channels * 2);
+            float[] data = new float[frames];
+            for (int frame = 0; frame < frames; frame++) {
+                int sum = 0;
+                for (int channel = 0; channel < channels; channel++) {
+                    int offset = (frame * channels + channel) * 2;
+                    sum += (short) ((pcm[offset] & 0xFF) | (pcm[offset + 1] << 8));
+                }
+                data[frame] = sum / (channels * 32768f);
+            }
+            return new Sample(data, Math.round(source.getSampleRate()));
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Unsupported audio format " + source, ex);
+        }
+    }
+
+    /**
+     * Returns the sample rate of this sample.
+     * @return sample rate in hertz
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns the number of frames of this sample.
+     * @return number of frames
+     */
+    public int getLength() {
+        return data.length;
+    }
+
+    /**
+     * Returns the value of the given frame.
+     * @param frame index of the frame
+     * @return value in range [-1; 1]
+     * @throws IndexOutOfBoundsException if the frame is out of range
+     */
+    public float get(int frame) {
+        return data[frame];
+    }
+
+    @NotNull
+    float[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,187 @@
+package cz.koca2000.nbs4j.audio;
+
+import cz.koca2000.nbs4j.CustomInstrument;
+import cz.koca2000.nbs4j.Instrument;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Set of {@link Sample}s used to play non-custom instruments and custom instruments.
+ * Samples of custom instruments are looked up by {@link CustomInstrument#getFileName()}, either among the explicitly added samples
+ * or as files in the directory of custom sounds. Files are loaded on the first use and kept for the lifetime of the bank.
+ * <p>This class is thread-safe.
+ */
+public final class SampleBank {
+
+    private static final Sample MISSING = Sample.of(new float[0], 1);
+
+    private final boolean isStrict;
+    private final Sample[] instruments;
+    private final Map<String, Sample> customSamples;
+    private final File customSoundsDirectory;
+    private final ConcurrentHashMap<String, Sample> loadedSamples = new ConcurrentHashMap<>();
+
+    private SampleBank(@NotNull Builder builder) {
+        isStrict = builder.isStrict;
+        instruments = Arrays.copyOf(builder.instruments, builder.instruments.length);
+        customSamples = new HashMap<>(builder.customSamples);
+        customSoundsDirectory = builder.customSoundsDirectory;
+    }
+
+    /**
+     * Returns the sample of the non-custom instrument.
+     * @param instrument index of the instrument
+     * @return {@link Sample} or null if the bank has no sample for the instrument
+     */
+    @Nullable
+    public Sample getSample(int instrument) {
+        if (instrument < 0 || instrument >= instruments.length) {
+            return null;
+        }
+        return instruments[instrument];
+    }
+
+    /**
+     * Returns the sample of the custom instrument.
+     * @param customInstrument custom instrument
+     * @return {@link Sample} or null if the bank has no sample for the instrument
+     * @throws UncheckedIOException if the bank is in strict mode and the file of the instrument can not be loaded
+     * @throws IllegalArgumentException if the bank is in strict mode and the file of the instrument is not within the directory of custom sounds
+     */
+    @Nullable
+    public Sample getSample(@NotNull CustomInstrument customInstrument) {
+        String fileName = customInstrument.getFileName();
+        Sample sample = customSamples.get(fileName);
+        if (sample != null || customSoundsDirectory == null || fileName.isEmpty()) {
+            return sample;
+        }
+
+        sample = loadedSamples.computeIfAbsent(fileName, this::loadSample);
+        return sample != MISSING ? sample : null;
+    }
+
+    @NotNull
+    private Sample loadSample(@NotNull String fileName) {
+        // File names come from songs, so they must not point outside of the directory
+        Path directory = customSoundsDirectory.toPath().toAbsolutePath().normalize();
+        Path path;
+        try {
+            path = directory.resolve(fileName).normalize();
+        } catch (InvalidPathException ex) {
+            path = null;
+        }
+        if (path == null || !path.startsWith(directory) || path.equals(directory)) {
+            if (isStrict) {
+                throw new IllegalArgumentException("File of custom instrument " + fileName + " is not within " + directory);
+            }
+            return MISSING;
+        }
+
+        File file = path.toFile();
+        try {
+            return Sample.fromFile(file);
+        } catch (IOException ex) {
+            if (isStrict) {
+                throw new UncheckedIOException("Sample of custom instrument can not be loaded from " + file, ex);
+            }
+            return MISSING;
+        }
+    }
+
+    @NotNull
+    public static Builder builder() {
+        return builder(false);
+    }
+
+    @NotNull
+    public static Builder builder(boolean isStrict) {
+        return new Builder(isStrict);
+    }
+
+    public static final class Builder {
+        private final boolean isStrict;
+
+        private Sample[] instruments = new Sample[Instrument.values().length];
+        private final Map<String, Sample> customSamples = new HashMap<>();
+        private File customSoundsDirectory = null;
+
+        private Builder(boolean isStrict) {
+            this.isStrict = isStrict;
+        }
+
+        /**
+         * Sets the sample of the non-custom instrument. The sample should be recorded at key 45 (F#4).
+         * @param instrument {@link Instrument}
+         * @param sample {@link Sample}
+         * @return this instance of {@link Builder}
+         */
+        @NotNull
+        public Builder sample(@NotNull Instrument instrument, @Nullable Sample sample) {
+            return sample(instrument.getId(), sample);
+        }
+
+        /**
+         * Sets the sample of the non-custom instrument. The sample should be recorded at key 45 (F#4).
+         * @param instrument index of the instrument
+         * @param sample {@link Sample}
+         * @return this instance of {@link Builder}
+         * @throws IllegalArgumentException if the index of the instrument is negative
+         */
+        @NotNull
+        public Builder sample(int instrument, @Nullable Sample sample) {
+            if (instrument < 0) {
+                throw new IllegalArgumentException("Instrument index can not be negative");
+            }
+            if (instrument >= instruments.length) {
+                instruments = Arrays.copyOf(instruments, instrument + 1);
+            }
+            instruments[instrument] = sample;
+            return this;
+        }
+
+        /**
+         * Sets the sample of custom instruments with the given file name. The sample should be recorded at the key of the custom instrument.
+         * @param fileName file name as returned by {@link CustomInstrument#getFileName()}
+         * @param sample {@link Sample}
+         * @return this instance of {@link Builder}
+         */
+        @NotNull
+        public Builder customSample(@NotNull String fileName, @Nullable Sample sample) {
+            Objects.requireNonNull(fileName);
+            if (sample == null) {
+                customSamples.remove(fileName);
+            } else {
+                customSamples.put(fileName, sample);
+            }
+            return this;
+        }
+
+        /**
+         * Sets the directory from which the samples of custom instruments that were not added explicitly are loaded.
+         * If the {@link Builder} is not in strict mode, custom instruments whose files can not be loaded are silent.
+         * @param directory directory with custom sounds or null to not load any files
+         * @return this instance of {@link Builder}
+         */
+        @NotNull
+        public Builder customSoundsDirectory(@Nullable File directory) {
+            customSoundsDirectory = directory;
+            return this;
+        }
+
+        @NotNull
+        public SampleBank build() {
+            return new SampleBank(this);
+        }
+    }
+}
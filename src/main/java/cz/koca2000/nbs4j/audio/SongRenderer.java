@@ -0,0 +1,339 @@
+package cz.koca2000.nbs4j.audio;
+
+import cz.koca2000.nbs4j.PlaybackPlan;
+import cz.koca2000.nbs4j.Song;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Renders songs offline to 16-bit stereo PCM. The volume and panning of notes and layers are applied
+ * and time of notes follows the tempo changes of the song. The output is split to blocks of fixed length
+ * which are mixed in parallel, so the result does not depend on the number of threads.
+ * <p>Instances are immutable and can render any number of songs at once.
+ */
+public final class SongRenderer {
+    public static final int DEFAULT_SAMPLE_RATE = 44100;
+    public static final int DEFAULT_BLOCK_FRAMES = 16384;
+    public static final int CHANNELS = 2;
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final SampleBank sampleBank;
+    private final InstrumentSampleCache sampleCache;
+    private final int sampleRate;
+    private final int threadCount;
+    private final int blockFrames;
+    private final float volume;
+
+    private SongRenderer(@NotNull Builder builder) {
+        sampleBank = builder.sampleBank;
+        sampleCache = builder.sampleCache;
+        sampleRate = builder.sampleRate;
+        threadCount = builder.threadCount;
+        blockFrames = builder.blockFrames;
+        volume = builder.volume;
+    }
+
+    /**
+     * Returns the sample rate of the rendered audio.
+     * @return sample rate in hertz
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Renders the song.
+     * @param song song to be rendered
+     * @return interleaved 16-bit stereo samples; left channel first
+     * @throws IllegalArgumentException if the song is too long to fit into a single array
+     */
+    @NotNull
+    public short[] render(@NotNull Song song) {
+        Voices voices = new Voices(song.compile(), song);
+        long frames = voices.getTotalFrames();
+        if (frames * CHANNELS > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Song is too long to be rendered into a single array.");
+        }
+
+        short[] output = new short[(int) frames * CHANNELS];
+        int blockCount = (int) ((frames + blockFrames - 1) / blockFrames);
+        AtomicInteger nextBlock = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Runnable worker = () -> {
+            try {
+                float[] mix = new float[blockFrames * CHANNELS];
+                int block;
+                while (failure.get() == null && (block = nextBlock.getAndIncrement()) < blockCount) {
+                    int startFrame = block * blockFrames;
+                    int length = (int) Math.min(blockFrames, frames - startFrame);
+                    voices.mixBlock(startFrame, length, mix);
+                    VoiceMixer.toPcm(mix, 0, output, startFrame * CHANNELS, length * CHANNELS);
+                }
+            } catch (Throwable ex) {
+                failure.compareAndSet(null, ex);
+            }
+        };
+
+        int workers = Math.min(threadCount, blockCount);
+        Thread[] threads = new Thread[Math.max(workers - 1, 0)];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(worker, "NBS4j SongRenderer-" + i);
+            threads[i].start();
+        }
+        worker.run();
+        for (Thread thread : threads) {
+            joinUninterruptibly(thread);
+        }
+
+        Throwable ex = failure.get();
+        if (ex instanceof RuntimeException) {
+            throw (RuntimeException) ex;
+        }
+        if (ex instanceof Error) {
+            throw (Error) ex;
+        }
+        return output;
+    }
+
+    /**
+     * Renders the song as WAV.
+     * @param song song to be rendered
+     * @param stream stream to which the WAV is written
+     * @throws UncheckedIOException if any IO operation fails
+     */
+    public void renderWav(@NotNull Song song, @NotNull OutputStream stream) {
+        short[] pcm = render(song);
+        try {
+            WavWriter.write(stream, pcm, sampleRate, CHANNELS);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("There was an error during the saving operation", ex);
+        }
+    }
+
+    /**
+     * Renders the song as WAV file.
+     * @param song song to be rendered
+     * @param file file to which the WAV is written
+     * @throws UncheckedIOException if the file can not be written or any IO operation fails
+     */
+    public void renderWav(@NotNull Song song, @NotNull File file) {
+        short[] pcm = render(song);
+        try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(file))) {
+            WavWriter.write(stream, pcm, sampleRate, CHANNELS);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("There was an error during the saving operation", ex);
+        }
+    }
+
+    private static void joinUninterruptibly(@NotNull Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @NotNull
+    public static Builder builder(@NotNull SampleBank sampleBank) {
+        return new Builder(sampleBank);
+    }
+
+    /**
+     * Precomputed voices of all events of a song, sorted by their first frame.
+     */
+    private final class Voices {
+        private final int size;
+        private final float[][] samples;
+        private final long[] startFrames;
+        private final int[] frameCounts;
+        private final double[] steps;
+        private final float[] leftGains;
+        private final float[] rightGains;
+        private final long totalFrames;
+        private final int maxFrameCount;
+
+        private Voices(@NotNull PlaybackPlan plan, @NotNull Song song) {
+            EventSamples eventSamples = new EventSamples(song, plan, sampleBank, sampleCache, sampleRate);
+
+            size = plan.size();
+            samples = new float[size][];
+            startFrames = new long[size];
+            frameCounts = new int[size];
+            steps = new double[size];
+            leftGains = new float[size];
+            rightGains = new float[size];
+
+            long lastFrame = Math.round(plan.getDurationNanos() * sampleRate / NANOS_PER_SECOND);
+            int maxFrames = 0;
+            for (int event = 0; event < size; event++) {
+                float[] data = eventSamples.getData(event);
+                startFrames[event] = Math.round(plan.getTimeNanos(event) * sampleRate / NANOS_PER_SECOND);
+                if (data == null) {
+                    continue;
+                }
+
+                samples[event] = data;
+                steps[event] = eventSamples.getStep(event);
+                frameCounts[event] = VoiceMixer.getFrameCount(data.length, steps[event]);
+                leftGains[event] = VoiceMixer.getLeftGain(plan.getVolume(event), plan.getPanning(event), volume);
+                rightGains[event] = VoiceMixer.getRightGain(plan.getVolume(event), plan.getPanning(event), volume);
+
+                maxFrames = Math.max(maxFrames, frameCounts[event]);
+                lastFrame = Math.max(lastFrame, startFrames[event] + frameCounts[event]);
+            }
+            totalFrames = lastFrame;
+            maxFrameCount = maxFrames;
+        }
+
+        private long getTotalFrames() {
+            return totalFrames;
+        }
+
+        private void mixBlock(long blockStart, int length, @NotNull float[] mix) {
+            Arrays.fill(mix, 0, length * CHANNELS, 0f);
+            long blockEnd = blockStart + length;
+
+            // No voice that started before this event can reach the block
+            int event = lowerBound(blockStart - maxFrameCount);
+            for (; event < size && startFrames[event] < blockEnd; event++) {
+                float[] data = samples[event];
+                if (data == null) {
+                    continue;
+                }
+                long voiceStart = startFrames[event];
+                long voiceEnd = voiceStart + frameCounts[event];
+                if (voiceEnd <= blockStart) {
+                    continue;
+                }
+
+                long from = Math.max(voiceStart, blockStart);
+                int frames = (int) (Math.min(voiceEnd, blockEnd) - from);
+                double position = (from - voiceStart) * steps[event];
+                VoiceMixer.mix(data, position, steps[event], leftGains[event], rightGains[event],
+                        mix, (int) (from - blockStart), frames);
+            }
+        }
+
+        private int lowerBound(long frame) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (startFrames[middle] < frame) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    public static final class Builder {
+        private final SampleBank sampleBank;
+        private InstrumentSampleCache sampleCache = null;
+        private int sampleRate = DEFAULT_SAMPLE_RATE;
+        private int threadCount = Runtime.getRuntime().availableProcessors();
+        private int blockFrames = DEFAULT_BLOCK_FRAMES;
+        private float volume = 1f;
+
+        private Builder(@NotNull SampleBank sampleBank) {
+            this.sampleBank = Objects.requireNonNull(sampleBank);
+        }
+
+        /**
+         * Sets the sample rate of the rendered audio.
+         * @param sampleRate sample rate in hertz
+         * @return this instance of {@link Builder}
+         * @throws IllegalArgumentException if the sample rate is not positive
+         */
+        @NotNull
+        public Builder sampleRate(int sampleRate) {
+            if (sampleRate <= 0) {
+                throw new IllegalArgumentException("Sample rate must be positive.");
+            }
+            this.sampleRate = sampleRate;
+            return this;
+        }
+
+        /**
+         * Sets the cache of pitched samples. If set, samples of notes are taken from the cache instead of being resampled during mixing.
+         * @param sampleCache {@link InstrumentSampleCache} or null to resample during mixing
+         * @return this instance of {@link Builder}
+         */
+        @NotNull
+        public Builder sampleCache(@Nullable InstrumentSampleCache sampleCache) {
+            this.sampleCache = sampleCache;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads used to render a single song. The calling thread is one of them.
+         * @param threadCount number of threads
+         * @return this instance of {@link Builder}
+         * @throws IllegalArgumentException if the number of threads is not positive
+         */
+        @NotNull
+        public Builder threadCount(int threadCount) {
+            if (threadCount <= 0) {
+                throw new IllegalArgumentException("Number of threads must be positive.");
+            }
+            this.threadCount = threadCount;
+            return this;
+        }
+
+        /**
+         * Sets the number of frames of a block that is mixed by a single thread at once.
+         * @param blockFrames number of frames
+         * @return this instance of {@link Builder}
+         * @throws IllegalArgumentException if the number of frames is not positive
+         */
+        @NotNull
+        public Builder blockFrames(int blockFrames) {
+            if (blockFrames <= 0) {
+                throw new IllegalArgumentException("Block length must be positive.");
+            }
+            this.blockFrames = blockFrames;
+            return this;
+        }
+
+        /**
+         * Sets the volume of the whole song. Mixed values exceeding the range of 16-bit samples are clipped.
+         * @param volume 1 is the original volume
+         * @return this instance of {@link Builder}
+         * @throws IllegalArgumentException if the volume is negative
+         */
+        @NotNull
+        public Builder volume(float volume) {
+            if (volume < 0) {
+                throw new IllegalArgumentException("Volume can not be negative.");
+            }
+            this.volume = volume;
+            return this;
+        }
+
+        @NotNull
+        public SongRenderer build() {
+            return new SongRenderer(this);
+        }
+    }
+}
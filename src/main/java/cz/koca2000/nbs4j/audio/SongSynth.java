@@ -0,0 +1,350 @@
+package cz.koca2000.nbs4j.audio;
+
+import cz.koca2000.nbs4j.PlaybackPlan;
+import cz.koca2000.nbs4j.Song;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Produces 16-bit stereo PCM of a song incrementally for live playback.
+ * Notes are played by a fixed pool of voices; when more notes sound at once than there are voices,
+ * the voice that started first is stolen. Once a song is loaded, producing the audio does not allocate,
+ * and a new song can be loaded into the same synthesizer.
+ * <p>This class is not thread-safe; it should be used by a single audio thread.
+ */
+public final class SongSynth {
+    public static final int DEFAULT_POLYPHONY = 256;
+    public static final int CHANNELS = 2;
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+    private static final int CHUNK_FRAMES = 1024;
+
+    private final SampleBank sampleBank;
+    private final InstrumentSampleCache sampleCache;
+    private final int sampleRate;
+    private final float volume;
+
+    private final float[] mix = new float[CHUNK_FRAMES * CHANNELS];
+    private final short[] pcm = new short[CHUNK_FRAMES * CHANNELS];
+
+    // Voice pool
+    private final float[][] voiceData;
+    private final double[] voicePositions;
+    private final double[] voiceSteps;
+    private final float[] voiceLeftGains;
+    private final float[] voiceRightGains;
+    private final long[] voiceStarts;
+    private int activeVoices = 0;
+    private long nextVoiceStart = 0;
+
+    private PlaybackPlan plan;
+    private EventSamples eventSamples;
+    private int nextEvent = 0;
+    private long frame = 0;
+
+    private SongSynth(@NotNull Builder builder) {
+        sampleBank = builder.sampleBank;
+        sampleCache = builder.sampleCache;
+        sampleRate = builder.sampleRate;
+        volume = builder.volume;
+
+        voiceData = new float[builder.polyphony][];
+        voicePositions = new double[builder.polyphony];
+        voiceSteps = new double[builder.polyphony];
+        voiceLeftGains = new float[builder.polyphony];
+        voiceRightGains = new float[builder.polyphony];
+        voiceStarts = new long[builder.polyphony];
+    }
+
+    /**
+     * Loads the song and moves to its start. Notes of the previously loaded song are stopped.
+     * @param song song to be played
+     */
+    public void load(@NotNull Song song) {
+        PlaybackPlan newPlan = song.compile();
+        // Samples are resolved for each event now, so no lookup is done during the playback
+        eventSamples = new EventSamples(song, newPlan, sampleBank, sampleCache, sampleRate);
+
+        plan = newPlan;
+        seekFrame(0);
+    }
+
+    /**
+     * Returns the loaded song's plan.
+     * @return {@link PlaybackPlan} or null if no song was loaded
+     */
+    @Nullable
+    public PlaybackPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * Returns the sample rate of the produced audio.
+     * @return sample rate in hertz
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns the number of frames produced since the start of the song.
+     * @return number of frames
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns the number of voices that are currently playing.
+     * @return number of voices
+     */
+    public int getActiveVoiceCount() {
+        return activeVoices;
+    }
+
+    /**
+     * Returns whether all notes of the song were played and all voices finished.
+     * @return true if the song has ended or no song was loaded; otherwise, false
+     */
+    public boolean isFinished() {
+        return plan == null || (nextEvent >= plan.size() && activeVoices == 0
+                && frame >= toFrame(plan.getDurationNanos()));
+    }
+
+    /**
+     * Moves the playback to the given tick. All playing voices are stopped.
+     * @param tick tick from which the playback continues
+     * @throws IllegalStateException if no song was loaded
+     */
+    public void seek(long tick) {
+        PlaybackPlan currentPlan = requirePlan();
+        int event = currentPlan.findEventAtTick(Math.max(tick, 0));
+        long nanos = event < currentPlan.size() ? currentPlan.getTimeNanos(event) : currentPlan.getDurationNanos();
+        seekFrame(toFrame(nanos));
+    }
+
+    /**
+     * Produces the audio into the buffer. After the end of the song, silence is produced.
+     * @param buffer buffer to which interleaved 16-bit stereo samples are written
+     * @param offset index of the first sample to be written
+     * @param frames number of frames to be produced
+     * @throws IllegalStateException if no song was loaded
+     */
+    public void render(@NotNull short[] buffer, int offset, int frames) {
+        requirePlan();
+        if (offset < 0 || frames < 0 || offset + (long) frames * CHANNELS > buffer.length) {
+            throw new IndexOutOfBoundsException("Range is out of bounds of the buffer.");
+        }
+        while (frames > 0) {
+            int count = Math.min(frames, CHUNK_FRAMES);
+            renderChunk(count);
+            VoiceMixer.toPcm(mix, 0, buffer, offset, count * CHANNELS);
+            offset += count * CHANNELS;
+            frames -= count;
+        }
+    }
+
+    /**
+     * Produces the given number of frames and writes them to the sink.
+     * @param sink {@link PcmSink}
+     * @param frames number of frames to be produced
+     * @throws IllegalStateException if no song was loaded
+     */
+    public void render(@NotNull PcmSink sink, int frames) {
+        requirePlan();
+        while (frames > 0) {
+            int count = Math.min(frames, CHUNK_FRAMES);
+            renderChunk(count);
+            VoiceMixer.toPcm(mix, 0, pcm, 0, count * CHANNELS);
+            sink.write(pcm, 0, count * CHANNELS);
+            frames -= count;
+        }
+    }
+
+    /**
+     * Produces as many whole frames as fit into the free space of the ring buffer.
+     * @param ringBuffer {@link PcmRingBuffer}
+     * @return number of produced frames
+     * @throws IllegalStateException if no song was loaded
+     */
+    public int fill(@NotNull PcmRingBuffer ringBuffer) {
+        int frames = ringBuffer.getFreeSpace() / CHANNELS;
+        render(ringBuffer, frames);
+        return frames;
+    }
+
+    private void renderChunk(int frames) {
+        Arrays.fill(mix, 0, frames * CHANNELS, 0f);
+        int position = 0;
+        while (position < frames) {
+            // Mix until the next note starts, then start all notes of that frame
+            int end = frames;
+            while (nextEvent < plan.size()) {
+                long eventFrame = toFrame(plan.getTimeNanos(nextEvent));
+                if (eventFrame > frame + position) {
+                    end = (int) Math.min(frames, eventFrame - frame);
+                    break;
+                }
+                startVoice(nextEvent++);
+            }
+            mixVoices(position, end - position);
+            position = end;
+        }
+        frame += frames;
+    }
+
+    private void mixVoices(int outFrame, int frames) {
+        for (int voice = 0; voice < activeVoices; ) {
+            float[] data = voiceData[voice];
+            voicePositions[voice] = VoiceMixer.mix(data, voicePositions[voice], voiceSteps[voice],
+                    voiceLeftGains[voice], voiceRightGains[voice], mix, outFrame, frames);
+            if ((int) voicePositions[voice] >= data.length) {
+                releaseVoice(voice);
+            } else {
+                voice++;
+            }
+        }
+    }
+
+    private void startVoice(int event) {
+        float[] data = eventSamples.getData(event);
+        if (data == null) {
+            return;
+        }
+
+        int voice;
+        if (activeVoices < voiceData.length) {
+            voice = activeVoices++;
+        } else {
+            voice = 0;
+            for (int i = 1; i < activeVoices; i++) {
+                if (voiceStarts[i] < voiceStarts[voice]) {
+                    voice = i;
+                }
+            }
+        }
+
+        voiceData[voice] = data;
+        voicePositions[voice] = 0;
+        voiceSteps[voice] = eventSamples.getStep(event);
+        voiceLeftGains[voice] = VoiceMixer.getLeftGain(plan.getVolume(event), plan.getPanning(event), volume);
+        voiceRightGains[voice] = VoiceMixer.getRightGain(plan.getVolume(event), plan.getPanning(event), volume);
+        voiceStarts[voice] = nextVoiceStart++;
+    }
+
+    private void releaseVoice(int voice) {
+        // Active voices are kept at the start of the arrays
+        int last = --activeVoices;
+        voiceData[voice] = voiceData[last];
+        voicePositions[voice] = voicePositions[last];
+        voiceSteps[voice] = voiceSteps[last];
+        voiceLeftGains[voice] = voiceLeftGains[last];
+        voiceRightGains[voice] = voiceRightGains[last];
+        voiceStarts[voice] = voiceStarts[last];
+        voiceData[last] = null;
+    }
+
+    private void seekFrame(long newFrame) {
+        while (activeVoices > 0) {
+            releaseVoice(activeVoices - 1);
+        }
+        frame = newFrame;
+        nextEvent = plan.findEventAtTime(Math.max(0, (long) Math.ceil(newFrame * NANOS_PER_SECOND / sampleRate)));
+        while (nextEvent > 0 && toFrame(plan.getTimeNanos(nextEvent - 1)) >= newFrame) {
+            nextEvent--;
+        }
+    }
+
+    private long toFrame(long nanos) {
+        return Math.round(nanos * sampleRate / NANOS_PER_SECOND);
+    }
+
+    @NotNull
+    private PlaybackPlan requirePlan() {
+        if (plan == null) {
+            throw new IllegalStateException("No song was loaded.");
+        }
+        return plan;
+    }
+
+    @NotNull
+    public static Builder builder(@NotNull SampleBank sampleBank) {
+        return new Builder(sampleBank);
+    }
+
+    public static final class Builder {
+        private final SampleBank sampleBank;
+        private InstrumentSampleCache sampleCache = null;
+        private int sampleRate = SongRenderer.DEFAULT_SAMPLE_RATE;
+        private int polyphony = DEFAULT_POLYPHONY;
+        private float volume = 1f;
+
+        private Builder(@NotNull SampleBank sampleBank) {
+            this.sampleBank = Objects.requireNonNull(sampleBank);
+        }
+
+        /**
+         * Sets the sample rate of the produced audio.
+         * @param sampleRate sample rate in hertz
+         * @return this instance of {@link Builder}
+         * @throws IllegalArgumentException if the sample rate is not positive
+         */
+        @NotNull
+        public Builder sampleRate(int sampleRate) {
+            if (sampleRate <= 0) {
+                throw new IllegalArgumentException("Sample rate must be positive.");
+            }
+            this.sampleRate = sampleRate;
+            return this;
+        }
+
+        /**
+         * Sets the cache of pitched samples. If set, samples of notes are taken from the cache instead of being resampled during mixing.
+         * @param sampleCache {@link InstrumentSampleCache} or null to resample during mixing
+         * @return this instance of {@link Builder}
+         */
+        @NotNull
+        public Builder sampleCache(@Nullable InstrumentSampleCache sampleCache) {
+            this.sampleCache = sampleCache;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of notes sounding at once.
+         * @param polyphony number of voices
+         * @return this instance of {@link Builder}
+         * @throws IllegalArgumentException if the number of voices is not positive
+         */
+        @NotNull
+        public Builder polyphony(int polyphony) {
+            if (polyphony <= 0) {
+                throw new IllegalArgumentException("Polyphony must be positive.");
+            }
+            this.polyphony = polyphony;
+            return this;
+        }
+
+        /**
+         * Sets the volume of the whole song. Mixed values exceeding the range of 16-bit samples are clipped.
+         * @param volume 1 is the original volume
+         * @return this instance of {@link Builder}
+         * @throws IllegalArgumentException if the volume is negative
+         */
+        @NotNull
+        public Builder volume(float volume) {
+            if (volume < 0) {
+                throw new IllegalArgumentException("Volume can not be negative.");
+            }
+            this.volume = volume;
+            return this;
+        }
+
+        @NotNull
+        public SongSynth build() {
+            return new SongSynth(this);
+        }
+    }
+}
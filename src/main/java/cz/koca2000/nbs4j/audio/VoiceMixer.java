@@ -0,0 +1,77 @@
+package cz.koca2000.nbs4j.audio;
+
+import cz.koca2000.nbs4j.Note;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Mixing primitives used to play samples of notes. None of the methods allocate.
+ */
+final class VoiceMixer {
+
+    private VoiceMixer() {
+    }
+
+    /**
+     * Adds the resampled sample to the interleaved stereo buffer using linear interpolation.
+     * @param data mono sample
+     * @param position position in the sample at which the mixing starts
+     * @param step how many frames of the sample are played per one output frame
+     * @param leftGain gain of the left channel
+     * @param rightGain gain of the right channel
+     * @param out interleaved stereo buffer
+     * @param outFrame first frame of the buffer to which the sample is added
+     * @param frames maximum number of frames to be added
+     * @return position in the sample after the last added frame
+     */
+    static double mix(@NotNull float[] data, double position, double step, float leftGain, float rightGain,
+                      @NotNull float[] out, int outFrame, int frames) {
+        int last = data.length - 1;
+        int end = outFrame + frames;
+        for (int frame = outFrame; frame < end; frame++) {
+            int index = (int) position;
+            if (index > last) {
+                break;
+            }
+            float current = data[index];
+            float next = index < last ? data[index + 1] : 0f;
+            float value = current + (next - current) * (float) (position - index);
+            out[frame * 2] += value * leftGain;
+            out[frame * 2 + 1] += value * rightGain;
+            position += step;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the number of output frames the resampled sample takes.
+     * @param length number of frames of the sample
+     * @param step how many frames of the sample are played per one output frame
+     * @return number of output frames
+     */
+    static int getFrameCount(int length, double step) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) Math.ceil(length / step));
+    }
+
+    static float getLeftGain(int volume, int panning, float masterVolume) {
+        return volume / (float) Note.MAXIMUM_VOLUME * masterVolume * Math.min(1f, 1f - panning / (float) Note.MAXIMUM_PANNING);
+    }
+
+    static float getRightGain(int volume, int panning, float masterVolume) {
+        return volume / (float) Note.MAXIMUM_VOLUME * masterVolume * Math.min(1f, 1f + panning / (float) Note.MAXIMUM_PANNING);
+    }
+
+    /**
+     * Converts the mixed values to 16-bit samples, values out of range [-1; 1] are clipped.
+     */
+    static void toPcm(@NotNull float[] mix, int mixOffset, @NotNull short[] out, int outOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            float value = mix[mixOffset + i];
+            if (value > 1f) {
+                value = 1f;
+            } else if (value < -1f) {
+                value = -1f;
+            }
+            out[outOffset + i] = (short) Math.round(value * Short.MAX_VALUE);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package cz.koca2000.nbs4j.audio;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes 16-bit PCM as a RIFF WAVE file.
+ */
+final class WavWriter {
+    private static final int HEADER_SIZE = 44;
+    private static final int BUFFER_SIZE = 8192;
+
+    private WavWriter() {
+    }
+
+    static void write(@NotNull OutputStream stream, @NotNull short[] pcm, int sampleRate, int channels) throws IOException {
+        long dataSize = (long) pcm.length * 2;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[]{ 'R', 'I', 'F', 'F' });
+        header.putInt((int) (dataSize + HEADER_SIZE - 8));
+        header.put(new byte[]{ 'W', 'A', 'V', 'E', 'f', 'm', 't', ' ' });
+        header.putInt(16);
+        header.putShort((short) 1);
+        header.putShort((short) channels);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * channels * 2);
+        header.putShort((short) (channels * 2));
+        header.putShort((short) 16);
+        header.put(new byte[]{ 'd', 'a', 't', 'a' });
+        header.putInt((int) dataSize);
+        stream.write(header.array());
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int position = 0;
+        for (short value : pcm) {
+            buffer[position++] = (byte) value;
+            buffer[position++] = (byte) (value >> 8);
+            if (position == buffer.length) {
+                stream.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+        stream.write(buffer, 0, position);
+        stream.flush();
+    }
+}
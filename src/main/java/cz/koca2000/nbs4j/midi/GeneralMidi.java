@@ -0,0 +1,141 @@
+package cz.koca2000.nbs4j.midi;
+
+import cz.koca2000.nbs4j.Instrument;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Mapping between General MIDI programs and percussion keys and Minecraft instruments.
+ */
+final class GeneralMidi {
+    static final int PERCUSSION_CHANNEL = 9;
+    static final int CHANNELS_COUNT = 16;
+
+    // Instrument of every family of 8 programs
+    private static final Instrument[] FAMILIES = {
+            Instrument.HARP,            // Piano
+            Instrument.BELL,            // Chromatic percussion
+            Instrument.FLUTE,           // Organ
+            Instrument.GUITAR,          // Guitar
+            Instrument.BASS,            // Bass
+            Instrument.FLUTE,           // Strings
+            Instrument.FLUTE,           // Ensemble
+            Instrument.DIDGERIDOO,      // Brass
+            Instrument.FLUTE,           // Reed
+            Instrument.FLUTE,           // Pipe
+            Instrument.BIT,             // Synth lead
+            Instrument.PLING,           // Synth pad
+            Instrument.PLING,           // Synth effects
+            Instrument.BANJO,           // Ethnic
+            Instrument.BASS_DRUM,       // Percussive
+            Instrument.HARP             // Sound effects
+    };
+
+    private static final Instrument[] PROGRAMS = new Instrument[128];
+
+    static {
+        for (int program = 0; program < PROGRAMS.length; program++) {
+            PROGRAMS[program] = FAMILIES[program / 8];
+        }
+
+        // Programs whose sound is closer to another instrument than to the rest of their family
+        PROGRAMS[11] = Instrument.IRON_XYLOPHONE;  // Vibraphone
+        PROGRAMS[12] = Instrument.XYLOPHONE;       // Marimba
+        PROGRAMS[13] = Instrument.XYLOPHONE;       // Xylophone
+        PROGRAMS[14] = Instrument.CHIME;           // Tubular bells
+        PROGRAMS[45] = Instrument.HARP;            // Pizzicato strings
+        PROGRAMS[46] = Instrument.HARP;            // Orchestral harp
+        PROGRAMS[47] = Instrument.BASS_DRUM;       // Timpani
+        PROGRAMS[108] = Instrument.BELL;           // Kalimba
+        PROGRAMS[109] = Instrument.FLUTE;          // Bagpipe
+        PROGRAMS[110] = Instrument.FLUTE;          // Fiddle
+        PROGRAMS[111] = Instrument.FLUTE;          // Shanai
+        PROGRAMS[112] = Instrument.BELL;           // Tinkle bell
+        PROGRAMS[113] = Instrument.COW_BELL;       // Agogo
+        PROGRAMS[114] = Instrument.IRON_XYLOPHONE; // Steel drums
+        PROGRAMS[115] = Instrument.CLICK;          // Woodblock
+        PROGRAMS[119] = Instrument.SNARE_DRUM;     // Reverse cymbal
+    }
+
+    private GeneralMidi() {
+    }
+
+    /**
+     * Returns the instrument of the program.
+     * @param program General MIDI program in range [0; 127]
+     */
+    @NotNull
+    static Instrument getInstrument(int program) {
+        return PROGRAMS[program & 0x7F];
+    }
+
+    /**
+     * Returns the instrument of the key played on the percussion channel.
+     * @param key MIDI key in range [0; 127]
+     */
+    @NotNull
+    static Instrument getPercussionInstrument(int key) {
+        switch (key) {
+            case 35: // Acoustic bass drum
+            case 36: // Bass drum
+            case 41: // Low floor tom
+            case 43: // High floor tom
+            case 45: // Low tom
+            case 47: // Low-mid tom
+            case 48: // Hi-mid tom
+            case 50: // High tom
+            case 64: // Low conga
+            case 66: // Low timbale
+                return Instrument.BASS_DRUM;
+            case 37: // Side stick
+            case 42: // Closed hi-hat
+            case 44: // Pedal hi-hat
+            case 75: // Claves
+            case 76: // Hi wood block
+            case 77: // Low wood block
+                return Instrument.CLICK;
+            case 56: // Cowbell
+                return Instrument.COW_BELL;
+            case 53: // Ride bell
+            case 80: // Mute triangle
+            case 81: // Open triangle
+                return Instrument.BELL;
+            default: // Snares, cymbals, open hi-hat and other noisy sounds
+                return Instrument.SNARE_DRUM;
+        }
+    }
+
+    /**
+     * Returns the program that sounds the most like the instrument.
+     * @param instrument id of a non-custom instrument
+     */
+    static int getProgram(int instrument) {
+        switch (instrument) {
+            case 1: return 32;   // Bass: Acoustic bass
+            case 5: return 24;   // Guitar: Nylon guitar
+            case 6: return 73;   // Flute
+            case 7: return 9;    // Bell: Glockenspiel
+            case 8: return 14;   // Chime: Tubular bells
+            case 9: return 13;   // Xylophone
+            case 10: return 11;  // Iron xylophone: Vibraphone
+            case 11: return 113; // Cow bell: Agogo
+            case 12: return 58;  // Didgeridoo: Tuba
+            case 13: return 80;  // Bit: Square lead
+            case 14: return 105; // Banjo
+            case 15: return 4;   // Pling: Electric piano
+            default: return 0;   // Harp and unknown instruments: Acoustic grand piano
+        }
+    }
+
+    /**
+     * Returns the key of the percussion channel that plays the instrument or -1 if the instrument is melodic.
+     * @param instrument id of a non-custom instrument
+     */
+    static int getPercussionKey(int instrument) {
+        switch (instrument) {
+            case 2: return 36; // Bass drum
+            case 3: return 38; // Snare drum: Acoustic snare
+            case 4: return 42; // Click: Closed hi-hat
+            default: return -1;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package cz.koca2000.nbs4j.midi;
+
+import cz.koca2000.nbs4j.Note;
+import cz.koca2000.nbs4j.NotePitchTable;
+import org.jetbrains.annotations.NotNull;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Converts events of a MIDI {@link Sequence} to notes tick by tick. Tracks are merged in the order of their events,
+ * so only the state of the MIDI channels and the notes of the current tick are kept in memory.
+ * Notes of a tick are placed onto consecutive layers starting from the first one.
+ */
+final class MidiConversion {
+    // MIDI key of the NBS key 0 (A0)
+    private static final int KEY_OFFSET = 21;
+    private static final int DEFAULT_MICROSECONDS_PER_QUARTER_NOTE = 500_000;
+    private static final int TEMPO_META_TYPE = 0x51;
+    private static final int VOLUME_CONTROLLER = 7;
+    private static final int PAN_CONTROLLER = 10;
+    private static final int MAX_VELOCITY = 127;
+    private static final int CENTER_PAN = 64;
+    private static final int CENTER_PITCH_BEND = 8192;
+    // Default range of the pitch bend in cents
+    private static final int PITCH_BEND_RANGE = 200;
+
+    private final Sequence sequence;
+    private final int ticksPerQuarterNote;
+    private final boolean hasTempo;
+    private final double ticksPerMidiTick;
+
+    private final int[] programs = new int[GeneralMidi.CHANNELS_COUNT];
+    private final int[] volumes = new int[GeneralMidi.CHANNELS_COUNT];
+    private final int[] pans = new int[GeneralMidi.CHANNELS_COUNT];
+    private final int[] pitchBends = new int[GeneralMidi.CHANNELS_COUNT];
+    private final List<Note> tickNotes = new ArrayList<>();
+
+    private float initialTempo;
+    private final TreeMap<Long, Float> tempoChanges = new TreeMap<>();
+    private long lastTick;
+    private int layersCount;
+
+    MidiConversion(@NotNull Sequence sequence, int ticksPerQuarterNote) {
+        this.sequence = sequence;
+        this.ticksPerQuarterNote = ticksPerQuarterNote;
+        hasTempo = sequence.getDivisionType() == Sequence.PPQ;
+        if (hasTempo) {
+            ticksPerMidiTick = (double) ticksPerQuarterNote / sequence.getResolution();
+        } else {
+            // Sequences with SMPTE timing have fixed speed, so they are converted with the default MIDI tempo
+            ticksPerMidiTick = toTempo(DEFAULT_MICROSECONDS_PER_QUARTER_NOTE) / (sequence.getDivisionType() * sequence.getResolution());
+        }
+    }
+
+    /**
+     * Converts the sequence and passes the notes of every non-empty tick to the consumer.
+     * Tempo, last tick and number of layers are available after the conversion.
+     */
+    void run(@NotNull TickConsumer consumer) {
+        for (int channel = 0; channel < GeneralMidi.CHANNELS_COUNT; channel++) {
+            programs[channel] = 0;
+            volumes[channel] = MAX_VELOCITY;
+            pans[channel] = CENTER_PAN;
+            pitchBends[channel] = CENTER_PITCH_BEND;
+        }
+        initialTempo = toTempo(DEFAULT_MICROSECONDS_PER_QUARTER_NOTE);
+        tempoChanges.clear();
+        lastTick = -1;
+        layersCount = 0;
+
+        Track[] tracks = sequence.getTracks();
+        int[] positions = new int[tracks.length];
+        long currentTick = -1;
+        while (true) {
+            int nextTrack = -1;
+            long nextMidiTick = Long.MAX_VALUE;
+            for (int track = 0; track < tracks.length; track++) {
+                if (positions[track] < tracks[track].size()) {
+                    long midiTick = tracks[track].get(positions[track]).getTick();
+                    if (midiTick < nextMidiTick) {
+                        nextMidiTick = midiTick;
+                        nextTrack = track;
+                    }
+                }
+            }
+            if (nextTrack == -1) {
+                break;
+            }
+
+            MidiEvent event = tracks[nextTrack].get(positions[nextTrack]++);
+            long tick = Math.round(event.getTick() * ticksPerMidiTick);
+            if (tick != currentTick) {
+                flush(currentTick, consumer);
+                currentTick = tick;
+            }
+            handleMessage(event.getMessage(), tick);
+        }
+        flush(currentTick, consumer);
+        removeRedundantTempoChanges();
+    }
+
+    float getInitialTempo() {
+        return initialTempo;
+    }
+
+    @NotNull
+    Map<Long, Float> getTempoChanges() {
+        return tempoChanges;
+    }
+
+    /**
+     * Returns the last tick with a note or a change of tempo or -1 if there is none.
+     */
+    long getLastTick() {
+        return tempoChanges.isEmpty() ? lastTick : Math.max(lastTick, tempoChanges.lastKey());
+    }
+
+    /**
+     * Returns the highest number of notes played on a single tick.
+     */
+    int getLayersCount() {
+        return layersCount;
+    }
+
+    private void handleMessage(@NotNull MidiMessage message, long tick) {
+        if (message instanceof MetaMessage) {
+            MetaMessage metaMessage = (MetaMessage) message;
+            byte[] data = metaMessage.getData();
+            if (hasTempo && metaMessage.getType() == TEMPO_META_TYPE && data.length >= 3) {
+                int microsecondsPerQuarterNote = ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8) | (data[2] & 0xFF);
+                if (microsecondsPerQuarterNote > 0) {
+                    if (tick == 0) {
+                        initialTempo = toTempo(microsecondsPerQuarterNote);
+                    } else {
+                        tempoChanges.put(tick, toTempo(microsecondsPerQuarterNote));
+                    }
+                }
+            }
+            return;
+        }
+        if (!(message instanceof ShortMessage)) {
+            return;
+        }
+
+        ShortMessage shortMessage = (ShortMessage) message;
+        int channel = shortMessage.getChannel();
+        switch (shortMessage.getCommand()) {
+            case ShortMessage.NOTE_ON:
+                if (shortMessage.getData2() > 0) {
+                    addNote(channel, shortMessage.getData1(), shortMessage.getData2());
+                }
+                break;
+            case ShortMessage.PROGRAM_CHANGE:
+                programs[channel] = shortMessage.getData1();
+                break;
+            case ShortMessage.CONTROL_CHANGE:
+                if (shortMessage.getData1() == VOLUME_CONTROLLER) {
+                    volumes[channel] = shortMessage.getData2();
+                } else if (shortMessage.getData1() == PAN_CONTROLLER) {
+                    pans[channel] = shortMessage.getData2();
+                }
+                break;
+            case ShortMessage.PITCH_BEND:
+                pitchBends[channel] = shortMessage.getData1() | (shortMessage.getData2() << 7);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void addNote(int channel, int key, int velocity) {
+        Note.Builder builder = Note.builder()
+                .volume((int) Math.round(velocity * volumes[channel] * 100.0 / (MAX_VELOCITY * MAX_VELOCITY)))
+                .panning((int) Math.round((pans[channel] - CENTER_PAN) * 100.0 / (MAX_VELOCITY - CENTER_PAN)));
+        if (channel == GeneralMidi.PERCUSSION_CHANNEL) {
+            builder.instrument(GeneralMidi.getPercussionInstrument(key))
+                    .key(NotePitchTable.DEFAULT_BASE_KEY);
+        } else {
+            builder.instrument(GeneralMidi.getInstrument(programs[channel]))
+                    .key(key - KEY_OFFSET)
+                    .pitch((int) Math.round((pitchBends[channel] - CENTER_PITCH_BEND) * (double) PITCH_BEND_RANGE / CENTER_PITCH_BEND));
+        }
+        Note note = builder.build();
+
+        // Notes that would sound the same are played once with the highest volume
+        for (int i = 0; i < tickNotes.size(); i++) {
+            Note other = tickNotes.get(i);
+            if (other.getInstrument() == note.getInstrument() && other.getKey() == note.getKey() && other.getPitch() == note.getPitch()
+                    && other.getPanning() == note.getPanning()) {
+                if (other.getVolume() < note.getVolume()) {
+                    tickNotes.set(i, note);
+                }
+                return;
+            }
+        }
+        tickNotes.add(note);
+    }
+
+    private void flush(long tick, @NotNull TickConsumer consumer) {
+        if (tickNotes.isEmpty()) {
+            return;
+        }
+        consumer.accept(tick, tickNotes);
+        lastTick = tick;
+        layersCount = Math.max(layersCount, tickNotes.size());
+        tickNotes.clear();
+    }
+
+    private void removeRedundantTempoChanges() {
+        float tempo = initialTempo;
+        Iterator<Float> iterator = tempoChanges.values().iterator();
+        while (iterator.hasNext()) {
+            float tempoChange = iterator.next();
+            if (tempoChange == tempo) {
+                iterator.remove();
+            }
+            tempo = tempoChange;
+        }
+    }
+
+    private float toTempo(int microsecondsPerQuarterNote) {
+        return (float) (ticksPerQuarterNote * 1_000_000.0 / microsecondsPerQuarterNote);
+    }
+
+    @FunctionalInterface
+    interface TickConsumer {
+        /**
+         * Receives the notes of the tick. The list is reused after the method returns.
+         */
+        void accept(long tick, @NotNull List<Note> notes);
+    }
+}
@@ -0,0 +1,271 @@
+package cz.koca2000.nbs4j.midi;
+
+import cz.koca2000.nbs4j.PlaybackPlan;
+import cz.koca2000.nbs4j.Song;
+import org.jetbrains.annotations.NotNull;
+
+import javax.sound.midi.ShortMessage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exports songs as Standard MIDI Files. Instruments are mapped to General MIDI programs and every instrument
+ * gets its own channel while there are free channels. Drums are played on the percussion channel.
+ * Key and fine pitch are converted to the nearest MIDI note and a pitch bend of at most a quarter tone,
+ * volume and panning of the notes including the properties of their layers are converted to velocity and pan.
+ * <p>Events are encoded directly into the file without building a {@link javax.sound.midi.Sequence}.
+ * Instances are immutable, so a single exporter can export several songs in parallel.
+ */
+public final class MidiExporter {
+    public static final int DEFAULT_TICKS_PER_QUARTER_NOTE = MidiImporter.DEFAULT_TICKS_PER_QUARTER_NOTE;
+
+    private static final byte[] HEADER_CHUNK_TYPE = { 'M', 'T', 'h', 'd' };
+    private static final int TRACK_NAME_META_TYPE = 0x03;
+    private static final int TEMPO_META_TYPE = 0x51;
+    private static final int TIME_SIGNATURE_META_TYPE = 0x58;
+    private static final int MAX_MICROSECONDS_PER_QUARTER_NOTE = 0xFFFFFF;
+    // MIDI key of the NBS key 0 (A0)
+    private static final int KEY_OFFSET = 21;
+    private static final int PAN_CONTROLLER = 10;
+    private static final int CENTER_PAN = 64;
+    private static final int CENTER_PITCH_BEND = 8192;
+    // Default range of the pitch bend in cents
+    private static final int PITCH_BEND_RANGE = 200;
+    private static final int[] MELODIC_CHANNELS = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 10, 11, 12, 13, 14, 15 };
+
+    private final int ticksPerQuarterNote;
+
+    /**
+     * Creates exporter that converts {@link #DEFAULT_TICKS_PER_QUARTER_NOTE} ticks to a quarter note.
+     */
+    public MidiExporter() {
+        this(DEFAULT_TICKS_PER_QUARTER_NOTE);
+    }
+
+    /**
+     * Creates exporter with the given length of a quarter note. The tempo of the exported song is adjusted accordingly,
+     * so the resolution only affects how the song is displayed in notation.
+     * @param ticksPerQuarterNote number of ticks of a quarter note
+     * @throws IllegalArgumentException if the number of ticks is not positive or greater than {@link Short#MAX_VALUE}
+     */
+    public MidiExporter(int ticksPerQuarterNote) {
+        if (ticksPerQuarterNote <= 0 || ticksPerQuarterNote > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Number of ticks per quarter note must be in range [1; " + Short.MAX_VALUE + "] inclusive.");
+        }
+        this.ticksPerQuarterNote = ticksPerQuarterNote;
+    }
+
+    /**
+     * Exports the song into the file. The partially written file is deleted if the export fails.
+     * @param song {@link Song} to be exported
+     * @param file file the MIDI file is written to
+     * @throws IllegalArgumentException if the song has a gap between notes longer than MIDI files allow
+     * @throws UncheckedIOException if the file could not be written
+     */
+    public void export(@NotNull Song song, @NotNull File file) {
+        boolean isWritten = false;
+        try {
+            FileOutputStream fileStream = new FileOutputStream(file);
+            try (OutputStream stream = fileStream) {
+                export(song, stream);
+                isWritten = true;
+            } finally {
+                if (!isWritten) {
+                    file.delete();
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Exports the song into the stream. A tick of the song is a tick of the MIDI file and notes last for a single tick.
+     * @param song {@link Song} to be exported
+     * @param stream stream the MIDI file is written to; it is closed after the file is written
+     * @throws IllegalArgumentException if the song has a gap between notes longer than MIDI files allow
+     * @throws UncheckedIOException if the file could not be written
+     */
+    public void export(@NotNull Song song, @NotNull OutputStream stream) {
+        MidiTrackEncoder tempoTrack = createTempoTrack(song);
+        MidiTrackEncoder[] channelTracks = new MidiTrackEncoder[GeneralMidi.CHANNELS_COUNT];
+        new ChannelEncoder(channelTracks).encode(song.compile());
+
+        int tracksCount = 1;
+        for (MidiTrackEncoder track : channelTracks) {
+            if (track != null) {
+                tracksCount++;
+            }
+        }
+
+        try (OutputStream output = new BufferedOutputStream(stream)) {
+            output.write(HEADER_CHUNK_TYPE);
+            output.write(new byte[]{ 0, 0, 0, 6, 0, 1 }); // header length, format with simultaneous tracks
+            output.write(tracksCount >>> 8);
+            output.write(tracksCount);
+            output.write(ticksPerQuarterNote >>> 8);
+            output.write(ticksPerQuarterNote);
+
+            tempoTrack.writeTo(output, song.getSongLength());
+            for (MidiTrackEncoder track : channelTracks) {
+                if (track != null) {
+                    track.writeTo(output, song.getSongLength());
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @NotNull
+    private MidiTrackEncoder createTempoTrack(@NotNull Song song) {
+        MidiTrackEncoder track = new MidiTrackEncoder();
+        String title = song.getMetadata().getTitle();
+        if (!title.isEmpty()) {
+            track.metaMessage(0, TRACK_NAME_META_TYPE, title.getBytes(StandardCharsets.UTF_8));
+        }
+        // x/4 with a metronome click every quarter note and 8 thirty-second notes per quarter note
+        track.metaMessage(0, TIME_SIGNATURE_META_TYPE, new byte[]{ song.getMetadata().getTimeSignature(), 2, 24, 8 });
+
+        track.metaMessage(0, TEMPO_META_TYPE, encodeTempo(song.getTempo(Song.INITIAL_TEMPO_TICK)));
+        for (Map.Entry<Long, Float> tempoChange : song.getTempoChanges().entrySet()) {
+            if (tempoChange.getKey() > Song.INITIAL_TEMPO_TICK) {
+                track.metaMessage(tempoChange.getKey(), TEMPO_META_TYPE, encodeTempo(tempoChange.getValue()));
+            }
+        }
+        return track;
+    }
+
+    private byte @NotNull [] encodeTempo(float tempo) {
+        long microsecondsPerQuarterNote = Math.min(Math.round(ticksPerQuarterNote * 1_000_000.0 / tempo), MAX_MICROSECONDS_PER_QUARTER_NOTE);
+        return new byte[]{ (byte) (microsecondsPerQuarterNote >>> 16), (byte) (microsecondsPerQuarterNote >>> 8), (byte) microsecondsPerQuarterNote };
+    }
+
+    /**
+     * Distributes the notes to channels and keeps the state of the channels, so program, pan and pitch bend
+     * are changed only when they differ from the previous note on the channel.
+     */
+    private static final class ChannelEncoder {
+        private final MidiTrackEncoder[] tracks;
+        private final Map<Integer, Integer> instrumentChannels = new HashMap<>();
+        private final int[] programs = new int[GeneralMidi.CHANNELS_COUNT];
+        private final int[] pans = new int[GeneralMidi.CHANNELS_COUNT];
+        private final int[] pitchBends = new int[GeneralMidi.CHANNELS_COUNT];
+
+        // Notes played on the last tick of every channel that are released on the following tick
+        private final int[][] playingKeys = new int[GeneralMidi.CHANNELS_COUNT][8];
+        private final int[] playingKeysCount = new int[GeneralMidi.CHANNELS_COUNT];
+        private final long[] playingTicks = new long[GeneralMidi.CHANNELS_COUNT];
+
+        private ChannelEncoder(@NotNull MidiTrackEncoder @NotNull [] tracks) {
+            this.tracks = tracks;
+            Arrays.fill(programs, -1);
+            Arrays.fill(pans, CENTER_PAN);
+            Arrays.fill(pitchBends, CENTER_PITCH_BEND);
+        }
+
+        private void encode(@NotNull PlaybackPlan plan) {
+            for (int event = 0; event < plan.size(); event++) {
+                int volume = plan.getVolume(event);
+                if (volume <= 0) {
+                    continue;
+                }
+                long tick = plan.getTick(event);
+                int instrument = plan.getInstrument(event);
+                boolean isCustom = plan.isCustomInstrument(event);
+
+                int percussionKey = isCustom ? -1 : GeneralMidi.getPercussionKey(instrument);
+                int channel;
+                int key;
+                int pitchBend = CENTER_PITCH_BEND;
+                if (percussionKey != -1) {
+                    channel = GeneralMidi.PERCUSSION_CHANNEL;
+                    key = percussionKey;
+                } else {
+                    channel = getChannel(isCustom ? -instrument - 1 : instrument);
+                    int cents = (plan.getKey(event) + KEY_OFFSET) * 100 + plan.getPitch(event);
+                    key = Math.floorDiv(cents + 49, 100);
+                    pitchBend += (int) Math.round((cents - key * 100) * (double) CENTER_PITCH_BEND / PITCH_BEND_RANGE);
+                }
+
+                MidiTrackEncoder track = tracks[channel];
+                if (track == null) {
+                    track = new MidiTrackEncoder();
+                    tracks[channel] = track;
+                }
+                releaseKeys(channel, tick);
+
+                if (percussionKey == -1) {
+                    int program = isCustom ? 0 : GeneralMidi.getProgram(instrument);
+                    if (programs[channel] != program) {
+                        track.programChange(tick, channel, program);
+                        programs[channel] = program;
+                    }
+                    if (pitchBends[channel] != pitchBend) {
+                        track.channelMessage(tick, ShortMessage.PITCH_BEND, channel, pitchBend & 0x7F, pitchBend >>> 7);
+                        pitchBends[channel] = pitchBend;
+                    }
+                }
+                int pan = Math.min(Math.max(CENTER_PAN + (int) Math.round(plan.getPanning(event) * 63 / 100.0), 0), 127);
+                if (pans[channel] != pan) {
+                    track.channelMessage(tick, ShortMessage.CONTROL_CHANGE, channel, PAN_CONTROLLER, pan);
+                    pans[channel] = pan;
+                }
+
+                key = Math.min(Math.max(key, 0), 127);
+                int velocity = Math.min(Math.max((int) Math.round(volume * 127 / 100.0), 1), 127);
+                track.channelMessage(tick, ShortMessage.NOTE_ON, channel, key, velocity);
+                addPlayingKey(channel, key, tick);
+            }
+
+            for (int channel = 0; channel < tracks.length; channel++) {
+                releaseKeys(channel, Long.MAX_VALUE);
+            }
+        }
+
+        /**
+         * Returns the channel of the instrument. If all channels are used, instruments share them and programs are changed as needed.
+         */
+        private int getChannel(int instrument) {
+            Integer channel = instrumentChannels.get(instrument);
+            if (channel == null) {
+                channel = MELODIC_CHANNELS[instrumentChannels.size() % MELODIC_CHANNELS.length];
+                instrumentChannels.put(instrument, channel);
+            }
+            return channel;
+        }
+
+        private void addPlayingKey(int channel, int key, long tick) {
+            int count = playingKeysCount[channel];
+            if (count == playingKeys[channel].length) {
+                playingKeys[channel] = Arrays.copyOf(playingKeys[channel], count * 2);
+            }
+            playingKeys[channel][count] = key;
+            playingKeysCount[channel] = count + 1;
+            playingTicks[channel] = tick;
+        }
+
+        /**
+         * Releases notes of the channel played before the given tick. Notes last a single tick.
+         */
+        private void releaseKeys(int channel, long tick) {
+            if (playingKeysCount[channel] == 0 || playingTicks[channel] >= tick) {
+                return;
+            }
+            long releaseTick = playingTicks[channel] + 1;
+            for (int i = 0; i < playingKeysCount[channel]; i++) {
+                // Note on with zero velocity shares the running status with the following notes
+                tracks[channel].channelMessage(releaseTick, ShortMessage.NOTE_ON, channel, playingKeys[channel][i], 0);
+            }
+            playingKeysCount[channel] = 0;
+        }
+    }
+}
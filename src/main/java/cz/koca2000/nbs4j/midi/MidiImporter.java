@@ -0,0 +1,168 @@
+package cz.koca2000.nbs4j.midi;
+
+import cz.koca2000.nbs4j.Layer;
+import cz.koca2000.nbs4j.NBSStreamWriter;
+import cz.koca2000.nbs4j.NBSVersion;
+import cz.koca2000.nbs4j.Song;
+import cz.koca2000.nbs4j.SongCorruptedException;
+import cz.koca2000.nbs4j.SongMetadata;
+import org.jetbrains.annotations.NotNull;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts MIDI sequences to songs. General MIDI programs and percussion are mapped to Minecraft instruments,
+ * velocity and channel volume to the volume of notes, pan to their panning and pitch bend to their fine pitch.
+ * Tempo meta events become tempo changes of the song.
+ * <p>Instances are immutable, so a single importer can convert several files in parallel.
+ */
+public final class MidiImporter {
+    public static final int DEFAULT_TICKS_PER_QUARTER_NOTE = 4;
+
+    private final int ticksPerQuarterNote;
+
+    /**
+     * Creates importer that converts a quarter note to {@link #DEFAULT_TICKS_PER_QUARTER_NOTE} ticks.
+     */
+    public MidiImporter() {
+        this(DEFAULT_TICKS_PER_QUARTER_NOTE);
+    }
+
+    /**
+     * Creates importer with the given resolution of the songs.
+     * @param ticksPerQuarterNote number of ticks of a quarter note; notes are moved to the nearest tick
+     * @throws IllegalArgumentException if the number of ticks is not positive
+     */
+    public MidiImporter(int ticksPerQuarterNote) {
+        if (ticksPerQuarterNote <= 0) {
+            throw new IllegalArgumentException("Number of ticks per quarter note must be positive.");
+        }
+        this.ticksPerQuarterNote = ticksPerQuarterNote;
+    }
+
+    /**
+     * Loads the MIDI file and converts it to a song.
+     * @param file MIDI file
+     * @return converted {@link Song}
+     * @throws IOException if the file does not exist or can not be read
+     * @throws SongCorruptedException if the file is not a valid MIDI file
+     */
+    @NotNull
+    public Song importSong(@NotNull File file) throws IOException {
+        return importSong(readSequence(file), file.getName());
+    }
+
+    /**
+     * Converts the sequence to a song.
+     * @param sequence MIDI sequence
+     * @param originalMidiFileName name of the MIDI file stored in the metadata of the song
+     * @return converted {@link Song}
+     */
+    @NotNull
+    public Song importSong(@NotNull Sequence sequence, @NotNull String originalMidiFileName) {
+        List<Layer.Builder> layers = new ArrayList<>();
+        MidiConversion conversion = new MidiConversion(sequence, ticksPerQuarterNote);
+        conversion.run((tick, notes) -> {
+            for (int layer = 0; layer < notes.size(); layer++) {
+                if (layer == layers.size()) {
+                    layers.add(Layer.builder());
+                }
+                layers.get(layer).note(tick, notes.get(layer));
+            }
+        });
+
+        List<Layer> builtLayers = new ArrayList<>(layers.size());
+        for (Layer.Builder layer : layers) {
+            builtLayers.add(layer.build());
+        }
+        return createSong(conversion, originalMidiFileName)
+                .layers(builtLayers)
+                .build();
+    }
+
+    /**
+     * Loads the MIDI file and writes it as a song in the NBS format. Notes are written tick by tick as they are converted,
+     * so the converted song is never held in memory.
+     * @param midiFile MIDI file
+     * @param nbsFile file the song is written to
+     * @param nbsVersion version of the NBS format
+     * @throws IOException if the MIDI file can not be read or the song can not be written; the partially written file is deleted
+     * @throws SongCorruptedException if the file is not a valid MIDI file
+     */
+    public void convert(@NotNull File midiFile, @NotNull File nbsFile, @NotNull NBSVersion nbsVersion) throws IOException {
+        Sequence sequence = readSequence(midiFile);
+        FileOutputStream fileStream = new FileOutputStream(nbsFile);
+        boolean isWritten = false;
+        try (OutputStream stream = fileStream) {
+            convert(sequence, midiFile.getName(), nbsVersion, stream);
+            isWritten = true;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            if (!isWritten) {
+                // Truncated song would look like a valid file
+                nbsFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes the sequence as a song in the NBS format. Notes are written tick by tick as they are converted,
+     * so the converted song is never held in memory. The sequence is traversed twice, first to find the tempo and the number of layers.
+     * @param sequence MIDI sequence
+     * @param originalMidiFileName name of the MIDI file stored in the metadata of the song
+     * @param nbsVersion version of the NBS format
+     * @param stream stream the song is written to; it is closed after the song is written
+     * @throws UncheckedIOException if the song can not be written
+     */
+    public void convert(@NotNull Sequence sequence, @NotNull String originalMidiFileName, @NotNull NBSVersion nbsVersion, @NotNull OutputStream stream) {
+        MidiConversion conversion = new MidiConversion(sequence, ticksPerQuarterNote);
+        conversion.run((tick, notes) -> {});
+
+        Song.Builder header = createSong(conversion, originalMidiFileName);
+        for (int layer = 0; layer < conversion.getLayersCount(); layer++) {
+            header.layer(Layer.builder().build());
+        }
+
+        try (NBSStreamWriter writer = new NBSStreamWriter(stream, nbsVersion, header.build())) {
+            conversion.run((tick, notes) -> {
+                for (int layer = 0; layer < notes.size(); layer++) {
+                    writer.note(tick, layer, notes.get(layer));
+                }
+            });
+        }
+    }
+
+    @NotNull
+    private static Song.Builder createSong(@NotNull MidiConversion conversion, @NotNull String originalMidiFileName) {
+        Song.Builder song = Song.builder()
+                .metadata(new SongMetadata().setOriginalMidiFileName(originalMidiFileName))
+                .initialTempo(conversion.getInitialTempo());
+        for (Map.Entry<Long, Float> tempoChange : conversion.getTempoChanges().entrySet()) {
+            song.tempoChange(tempoChange.getKey(), tempoChange.getValue());
+        }
+        if (conversion.getLastTick() >= 0) {
+            song.length(conversion.getLastTick() + 1);
+        }
+        return song;
+    }
+
+    @NotNull
+    private static Sequence readSequence(@NotNull File file) throws IOException {
+        try {
+            return MidiSystem.getSequence(file);
+        } catch (InvalidMidiDataException ex) {
+            throw new SongCorruptedException(ex);
+        }
+    }
+}
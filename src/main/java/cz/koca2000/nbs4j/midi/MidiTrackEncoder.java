@@ -0,0 +1,99 @@
+package cz.koca2000.nbs4j.midi;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Encodes events of a single track of a Standard MIDI File into a growing byte array.
+ * Consecutive channel messages with the same status byte use running status.
+ */
+final class MidiTrackEncoder {
+    private static final byte[] TRACK_CHUNK_TYPE = { 'M', 'T', 'r', 'k' };
+    private static final int META_STATUS = 0xFF;
+    private static final int END_OF_TRACK_META_TYPE = 0x2F;
+    // Variable length quantities of Standard MIDI Files have at most 4 bytes
+    private static final long MAX_VARIABLE_LENGTH = 0x0FFFFFFF;
+
+    private byte[] data = new byte[256];
+    private int size = 0;
+    private long lastTick = 0;
+    private int runningStatus = -1;
+
+    void channelMessage(long tick, int command, int channel, int data1, int data2) {
+        int status = command | channel;
+        writeDeltaTime(tick);
+        if (status != runningStatus) {
+            writeByte(status);
+            runningStatus = status;
+        }
+        writeByte(data1);
+        writeByte(data2);
+    }
+
+    void programChange(long tick, int channel, int program) {
+        int status = 0xC0 | channel;
+        writeDeltaTime(tick);
+        if (status != runningStatus) {
+            writeByte(status);
+            runningStatus = status;
+        }
+        writeByte(program);
+    }
+
+    void metaMessage(long tick, int type, byte @NotNull [] message) {
+        writeDeltaTime(tick);
+        writeByte(META_STATUS);
+        writeByte(type);
+        writeVariableLength(message.length);
+        ensureCapacity(message.length);
+        System.arraycopy(message, 0, data, size, message.length);
+        size += message.length;
+        runningStatus = -1;
+    }
+
+    /**
+     * Ends the track and writes it as a track chunk.
+     */
+    void writeTo(@NotNull OutputStream stream, long endTick) throws IOException {
+        metaMessage(Math.max(endTick, lastTick), END_OF_TRACK_META_TYPE, new byte[0]);
+        stream.write(TRACK_CHUNK_TYPE);
+        stream.write(size >>> 24);
+        stream.write(size >>> 16);
+        stream.write(size >>> 8);
+        stream.write(size);
+        stream.write(data, 0, size);
+    }
+
+    private void writeDeltaTime(long tick) {
+        writeVariableLength(tick - lastTick);
+        lastTick = tick;
+    }
+
+    private void writeVariableLength(long value) {
+        if (value < 0 || value > MAX_VARIABLE_LENGTH) {
+            throw new IllegalArgumentException("Delta time " + value + " can not be stored in a MIDI file.");
+        }
+        int shift = 7;
+        while (shift < 28 && (value >>> shift) != 0) {
+            shift += 7;
+        }
+        for (shift -= 7; shift > 0; shift -= 7) {
+            writeByte((int) ((value >>> shift) & 0x7F) | 0x80);
+        }
+        writeByte((int) (value & 0x7F));
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        data[size++] = (byte) value;
+    }
+
+    private void ensureCapacity(int count) {
+        if (size + count > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + count));
+        }
+    }
+}
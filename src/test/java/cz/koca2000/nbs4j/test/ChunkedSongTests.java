@@ -0,0 +1,120 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedSongTests {
+
+    static Song song;
+
+    @BeforeAll
+    static void prepareSong(){
+        Layer.Builder melody = Layer.builder().name("Melody").volume(80);
+        for (int i = 0; i < 100; i++) {
+            melody.note(i * 3L, Note.builder().instrument(Instrument.PIANO).key(30 + i % 12).pitch(i).build());
+        }
+
+        song = Song.builder()
+                .layer(melody.build())
+                .layer(Layer.builder()
+                        .panning(50)
+                        .note(5, Note.builder().instrument(0, true).build())
+                        .note(250, Note.builder().instrument(Instrument.BASS_DRUM).build())
+                        .build())
+                .customInstrument(CustomInstrument.builder().setName("Custom").setFileName("custom.ogg").build())
+                .metadata(new SongMetadata().setTitle("Chunked"))
+                .initialTempo(8)
+                .tempoChange(100, 16.5f)
+                .length(320)
+                .build();
+    }
+
+    @Test
+    void chunksDecodeToSong(){
+        List<byte[]> chunks = ChunkedSongWriter.encode(song, 64);
+        assertEquals(6, chunks.size());
+
+        ChunkedSongReader reader = new ChunkedSongReader(chunks.get(0));
+        assertEquals(5, reader.getChunksCount());
+        assertEquals(64, reader.getTicksPerChunk());
+        assertEquals(song.getTempoChanges(), reader.getHeader().getTempoChanges());
+        assertEquals(song.getSongLength(), reader.getHeader().getSongLength());
+        assertEquals("Melody", reader.getHeader().getLayer(0).getName());
+        assertTrue(reader.getHeader().getLayer(0).isEmpty());
+        assertEquals("Chunked", reader.getHeader().getMetadata().getTitle());
+        assertFalse(reader.isComplete());
+
+        // Chunks can arrive in any order
+        for (int i = chunks.size() - 1; i > 0; i--) {
+            reader.decodeChunk(chunks.get(i));
+        }
+
+        assertTrue(reader.isComplete());
+        assertEquals(song.contentHash(true), reader.getSong().contentHash(true));
+    }
+
+    @Test
+    void chunkContainsOnlyItsNotes(){
+        List<byte[]> chunks = ChunkedSongWriter.encode(song, 64);
+        ChunkedSongReader reader = new ChunkedSongReader(chunks.get(0));
+
+        int index = reader.getChunkIndex(250);
+        SongChunk chunk = reader.decodeChunk(chunks.get(index + 1));
+
+        assertEquals(3, chunk.getIndex());
+        assertEquals(192, chunk.getFirstTick());
+        assertEquals(256, chunk.getEndTick());
+        Song chunkSong = chunk.getSong();
+        assertEquals(song.getLayersCount(), chunkSong.getLayersCount());
+        assertEquals(50, chunkSong.getLayer(1).getPanning());
+        assertNotNull(chunkSong.getLayer(1).getNote(250));
+        assertNull(chunkSong.getLayer(1).getNote(5));
+        for (long tick : chunkSong.getLayer(0).getNotes().keySet()) {
+            assertTrue(tick >= 192 && tick < 256);
+        }
+        assertEquals(song.getTimeInSecondsAtTick(250), chunkSong.getTimeInSecondsAtTick(250));
+    }
+
+    @Test
+    void streamedChunks(){
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ChunkedSongWriter.write(song, 100, output);
+        byte[] data = output.toByteArray();
+
+        InputStream stream = new ByteArrayInputStream(data);
+        ChunkedSongReader reader = ChunkedSongReader.readHeader(stream);
+        for (int i = 0; i < reader.getChunksCount(); i++) {
+            reader.readChunk(stream, i);
+        }
+        assertEquals(song.contentHash(true), reader.getSong().contentHash(true));
+
+        // Seek to the last chunk by its offset
+        ChunkedSongReader seekingReader = new ChunkedSongReader(Arrays.copyOf(data, (int) reader.getChunkOffset(0)));
+        int last = seekingReader.getChunksCount() - 1;
+        int offset = (int) seekingReader.getChunkOffset(last);
+        SongChunk chunk = seekingReader.decodeChunk(Arrays.copyOfRange(data, offset, offset + seekingReader.getChunkLength(last)));
+        assertEquals(last, chunk.getIndex());
+        assertEquals(data.length, offset + seekingReader.getChunkLength(last));
+    }
+
+    @Test
+    void invalidInput(){
+        List<byte[]> chunks = ChunkedSongWriter.encode(song, 64);
+        ChunkedSongReader reader = new ChunkedSongReader(chunks.get(0));
+
+        assertThrows(IllegalArgumentException.class, () -> ChunkedSongWriter.encode(song, 0));
+        assertThrows(SongCorruptedException.class, () -> new ChunkedSongReader(chunks.get(1)));
+        assertThrows(SongCorruptedException.class, () -> reader.decodeChunk(Arrays.copyOf(chunks.get(1), chunks.get(1).length - 1)));
+        assertThrows(IndexOutOfBoundsException.class, () -> reader.getChunkIndex(song.getSongLength() + 64));
+        assertEquals(Song.builder().build().getSongLength(), new ChunkedSongReader(ChunkedSongWriter.encode(Song.builder().build(), 64).get(0)).getHeader().getSongLength());
+    }
+}
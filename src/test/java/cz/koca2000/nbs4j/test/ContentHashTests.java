@@ -0,0 +1,168 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentHashTests {
+
+    static Song song;
+
+    @BeforeAll
+    static void prepareSong(){
+        Layer.Builder layer = Layer.builder()
+                .name("Melody")
+                .volume(80)
+                .panning(-20);
+        for (int tick = 0; tick < 200; tick += 2) {
+            layer.note(tick, Note.builder().instrument(tick % 16).key(30 + tick % 40).volume(50 + tick % 50).pitch(tick - 100).build());
+        }
+
+        song = Song.builder()
+                .layer(layer.build())
+                .layer(Layer.builder().name("Empty").build())
+                .layer(Layer.builder()
+                        .note(7, Note.builder().instrument(0, true).key(45).build())
+                        .build())
+                .customInstrument(CustomInstrument.builder()
+                        .setName("Custom")
+                        .setFileName("custom.ogg")
+                        .setKey(50)
+                        .build())
+                .initialTempo(8)
+                .tempoChange(40, 20)
+                .tempoChange(80, 20)
+                .metadata(new SongMetadata().setTitle("Title").setAuthor("Author"))
+                .build();
+    }
+
+    private static byte[] save(Song song, NBSVersion version) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        song.save(version, stream);
+        return stream.toByteArray();
+    }
+
+    @Test
+    void equalAfterSaveAndLoad(){
+        byte[] data = save(song, NBSVersion.V5);
+        Song loadedSong = Song.fromStream(new ByteArrayInputStream(data));
+
+        assertEquals(song.contentHash(), loadedSong.contentHash());
+        assertEquals(song.contentHash(true), loadedSong.contentHash(true));
+    }
+
+    @Test
+    void equalForDifferentVersions(){
+        Song simpleSong = Song.builder()
+                .layer(Layer.builder()
+                        .note(0, Note.builder().instrument(3).key(40).build())
+                        .note(4, Note.builder().instrument(5).key(50).build())
+                        .build())
+                .initialTempo(12.5f)
+                .build();
+
+        ContentHash hash = simpleSong.contentHash();
+        for (NBSVersion version : NBSVersion.values()) {
+            assertEquals(hash, ContentHash.fromBytes(save(simpleSong, version), false), version.name());
+        }
+    }
+
+    @Test
+    void bytesHashEqualsSongHash(){
+        byte[] data = save(song, NBSVersion.V5);
+        Song loadedSong = Song.fromStream(new ByteArrayInputStream(data));
+
+        assertEquals(loadedSong.contentHash(), ContentHash.fromBytes(data, false));
+        assertEquals(loadedSong.contentHash(true), ContentHash.fromBytes(data, true));
+    }
+
+    @Test
+    void emptyTempoChangerLayerIsIgnored(){
+        Song withTempoChanger = Song.builder(song)
+                .layer(Layer.builder().name(CustomInstrument.TEMPO_CHANGER_INSTRUMENT_NAME).build())
+                .build();
+        byte[] data = save(withTempoChanger, NBSVersion.V5);
+        Song loadedSong = Song.fromStream(new ByteArrayInputStream(data));
+
+        assertEquals(withTempoChanger.getLayersCount() - 1, loadedSong.getLayersCount());
+        assertEquals(song.contentHash(true), withTempoChanger.contentHash(true));
+        assertEquals(withTempoChanger.contentHash(), loadedSong.contentHash());
+        assertEquals(withTempoChanger.contentHash(true), loadedSong.contentHash(true));
+        assertEquals(withTempoChanger.contentHash(true), ContentHash.fromBytes(data, true));
+    }
+
+    @Test
+    void redundantTempoChangeIsIgnored(){
+        Song withoutRedundantChange = Song.builder(song)
+                .tempoChange(80, 0)
+                .build();
+
+        assertEquals(song.contentHash(), withoutRedundantChange.contentHash());
+    }
+
+    @Test
+    void changedNoteChangesHash(){
+        Song changedSong = Song.builder(song)
+                .layer(2, Layer.builder(song.getLayer(2))
+                        .note(7, Note.builder().instrument(0, true).key(46).build())
+                        .build())
+                .build();
+
+        assertNotEquals(song.contentHash(), changedSong.contentHash());
+    }
+
+    @Test
+    void changedTempoChangesHash(){
+        Song changedSong = Song.builder(song)
+                .tempoChange(40, 21)
+                .build();
+
+        assertNotEquals(song.contentHash(), changedSong.contentHash());
+    }
+
+    @Test
+    void metadataIsOptional(){
+        Song renamedSong = Song.builder(song, new SongMetadata().setTitle("Other title"))
+                .build();
+
+        assertEquals(song.contentHash(), renamedSong.contentHash());
+        assertNotEquals(song.contentHash(true), renamedSong.contentHash(true));
+    }
+
+    @Test
+    void changedMetadataChangesHash(){
+        Song changedSong = Song.builder(song).build();
+        ContentHash hash = changedSong.contentHash(true);
+
+        changedSong.getMetadata().setAuthor("Other author");
+
+        assertNotEquals(hash, changedSong.contentHash(true));
+        assertEquals(Song.builder(changedSong).build().contentHash(true), changedSong.contentHash(true));
+        assertEquals(song.contentHash(), changedSong.contentHash());
+    }
+
+    @Test
+    void hashIsCached(){
+        assertSame(song.contentHash(), song.contentHash());
+        assertSame(song.contentHash(true), song.contentHash(true));
+        assertNotEquals(song.contentHash(), song.contentHash(true));
+    }
+
+    @Test
+    void hexString(){
+        ContentHash hash = song.contentHash();
+
+        assertEquals(32, hash.toHexString().length());
+        assertEquals(hash.toHexString(), String.format("%016x%016x", hash.getHigh(), hash.getLow()));
+    }
+
+    @Test
+    void corruptedData(){
+        assertThrows(SongCorruptedException.class, () -> ContentHash.fromBytes(new byte[]{0, 0, 5}, false));
+    }
+}
@@ -0,0 +1,114 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncodedSongTests {
+
+    @TempDir
+    File directory;
+
+    private static Song createSong() {
+        return Song.builder()
+                .layer(Layer.builder()
+                        .name("Layer")
+                        .note(0, Note.builder().instrument(2).key(40).build())
+                        .note(3, Note.builder().instrument(4).key(44).volume(60).build())
+                        .build())
+                .tempoChange(2, 15)
+                .build();
+    }
+
+    private static byte[] readAll(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+
+    @Test
+    void bufferMatchesSave(){
+        Song song = createSong();
+        for (NBSVersion version : NBSVersion.values()) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            song.save(version, stream);
+
+            assertArrayEquals(stream.toByteArray(), readAll(song.encodedBuffer(version)), version.name());
+            assertArrayEquals(stream.toByteArray(), song.toBytes(version), version.name());
+        }
+    }
+
+    @Test
+    void bufferCanBeLoaded(){
+        Song song = createSong();
+        byte[] data = readAll(song.encodedBuffer(NBSVersion.V5));
+        Song loadedSong = Song.fromStream(new ByteArrayInputStream(data));
+
+        assertEquals(song.contentHash(), loadedSong.contentHash());
+    }
+
+    @Test
+    void buffersAreIndependent(){
+        Song song = createSong();
+        ByteBuffer first = song.encodedBuffer(NBSVersion.V4);
+        readAll(first);
+        ByteBuffer second = song.encodedBuffer(NBSVersion.V4);
+
+        assertEquals(0, first.remaining());
+        assertEquals(0, second.position());
+        assertTrue(second.isReadOnly());
+        assertThrows(ReadOnlyBufferException.class, () -> second.put(0, (byte) 1));
+    }
+
+    @Test
+    void toBytesReturnsCopy(){
+        Song song = createSong();
+        byte[] data = song.toBytes(NBSVersion.V5);
+        byte[] original = data.clone();
+        Arrays.fill(data, (byte) 0);
+
+        assertArrayEquals(original, song.toBytes(NBSVersion.V5));
+    }
+
+    @Test
+    void fileBytesAreReused() throws IOException {
+        byte[] data = createSong().toBytes(NBSVersion.V4);
+        // Data after the end of the song are ignored by the reader, so they show the file was not encoded again
+        byte[] fileData = Arrays.copyOf(data, data.length + 1);
+        File file = new File(directory, "song.nbs");
+        Files.write(file.toPath(), fileData);
+
+        Song song = Song.fromFile(file);
+
+        assertArrayEquals(fileData, song.toBytes(NBSVersion.V4));
+        assertEquals(fileData[2], NBSVersion.V4.ordinal() + 1);
+        assertFalse(Arrays.equals(fileData, song.toBytes(NBSVersion.V5)));
+        assertEquals(song.contentHash(), Song.fromStream(new ByteArrayInputStream(song.toBytes(NBSVersion.V5))).contentHash());
+    }
+
+    @Test
+    void changedMetadataAreSaved() throws IOException {
+        File file = new File(directory, "song.nbs");
+        createSong().save(NBSVersion.LATEST, file);
+        Song song = Song.fromFile(file);
+        song.encodedBuffer(NBSVersion.V4);
+
+        song.getMetadata().setTitle("Changed");
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        song.save(NBSVersion.LATEST, stream);
+
+        assertEquals("Changed", Song.fromStream(new ByteArrayInputStream(stream.toByteArray())).getMetadata().getTitle());
+        assertEquals("Changed", Song.fromStream(new ByteArrayInputStream(song.toBytes(NBSVersion.V4))).getMetadata().getTitle());
+    }
+}
@@ -0,0 +1,74 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameTickScheduleTests {
+
+    @Test
+    void evenSpread(){
+        Layer.Builder layer = Layer.builder();
+        for (int tick = 0; tick < 8; tick++) {
+            layer.note(tick, Note.builder().build());
+        }
+        // 8 ticks per second on 20 game ticks per second; game ticks 0, 2.5, 5, 7.5, ...
+        GameTickSchedule schedule = Song.builder().initialTempo(8).layer(layer.build()).build().quantize(20);
+
+        assertEquals(20, schedule.getGameTickCount());
+        assertEquals(8, schedule.size());
+        int[] expected = { 0, 3, 5, 8, 10, 13, 15, 18 };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], schedule.getGameTick(i));
+            assertEquals(i, schedule.getTick(schedule.getStartIndex(expected[i])));
+        }
+        assertEquals(schedule.getStartIndex(1), schedule.getEndIndex(1));
+    }
+
+    @Test
+    void multipleTicksInGameTick(){
+        GameTickSchedule schedule = Song.builder()
+                .initialTempo(40)
+                .layer(Layer.builder()
+                        .note(0, Note.builder().build())
+                        .note(1, Note.builder().build())
+                        .note(4, Note.builder().build())
+                        .build())
+                .build()
+                .quantize(20);
+
+        // Ticks 0 and 1 are 25 ms apart, the tick 1 rounds up to the game tick 1
+        assertEquals(0, schedule.getGameTick(0));
+        assertEquals(1, schedule.getGameTick(1));
+        assertEquals(2, schedule.getGameTick(2));
+        assertEquals(2, schedule.getEndIndex(1));
+        assertEquals(3, schedule.getGameTickCount());
+    }
+
+    @Test
+    void tempoChanges(){
+        GameTickSchedule schedule = Song.builder()
+                .initialTempo(10)
+                .tempoChange(10, 5)
+                .layer(Layer.builder()
+                        .note(10, Note.builder().build())
+                        .note(11, Note.builder().build())
+                        .build())
+                .build()
+                .quantize(20);
+
+        assertEquals(20, schedule.getGameTick(10));
+        assertEquals(24, schedule.getGameTick(11));
+        assertEquals(28, schedule.getGameTickCount());
+    }
+
+    @Test
+    void scheduleIsShared(){
+        Song song = Song.builder().layer(Layer.builder().note(3, Note.builder().build()).build()).build();
+
+        assertSame(song.quantize(20), song.quantize(20));
+        assertEquals(40, song.quantize(40).getTicksPerSecond());
+        assertThrows(IllegalArgumentException.class, () -> song.quantize(0));
+    }
+}
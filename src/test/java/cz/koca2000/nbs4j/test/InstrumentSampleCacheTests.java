@@ -0,0 +1,111 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import cz.koca2000.nbs4j.audio.InstrumentSampleCache;
+import cz.koca2000.nbs4j.audio.Sample;
+import cz.koca2000.nbs4j.audio.SampleBank;
+import cz.koca2000.nbs4j.audio.SongRenderer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstrumentSampleCacheTests {
+
+    static SampleBank sampleBank;
+
+    @BeforeAll
+    static void prepareSamples(){
+        float[] data = new float[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (float) Math.sin(i * 0.1);
+        }
+        sampleBank = SampleBank.builder()
+                .sample(Instrument.PIANO, Sample.of(data, 1000))
+                .customSample("custom.wav", Sample.of(data, 1000))
+                .build();
+    }
+
+    @Test
+    void variantsAreReused(){
+        InstrumentSampleCache cache = new InstrumentSampleCache();
+
+        float[] first = cache.getPitchedSample(sampleBank, Instrument.PIANO, 57, 0, 1000);
+        float[] second = cache.getPitchedSample(sampleBank, Instrument.PIANO, 57, 0, 1000);
+
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(500, first.length);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(500 * Float.BYTES, cache.getByteSize());
+    }
+
+    @Test
+    void customInstrumentBaseKey(){
+        InstrumentSampleCache cache = new InstrumentSampleCache();
+        CustomInstrument customInstrument = CustomInstrument.builder().setFileName("custom.wav").setKey(50).build();
+
+        float[] data = cache.getPitchedSample(sampleBank, customInstrument, 50, 0, 1000);
+
+        assertNotNull(data);
+        assertEquals(1000, data.length);
+        assertNull(cache.getPitchedSample(sampleBank, CustomInstrument.builder().setFileName("missing.wav").build(), 45, 0, 1000));
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted(){
+        InstrumentSampleCache cache = new InstrumentSampleCache(1600 * Float.BYTES, 1);
+
+        float[] original = cache.getPitchedSample(sampleBank, 0, 45, 0, 1000);
+        cache.getPitchedSample(sampleBank, 0, 57, 0, 1000);
+        cache.getPitchedSample(sampleBank, 0, 45, 0, 1000);
+        cache.getPitchedSample(sampleBank, 0, 69, 0, 1000);
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.getByteSize() <= cache.getByteBudget());
+        assertSame(original, cache.getPitchedSample(sampleBank, 0, 45, 0, 1000));
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    void variantOverBudgetIsNotCached(){
+        InstrumentSampleCache cache = new InstrumentSampleCache(1600 * Float.BYTES, 1);
+
+        float[] first = cache.getPitchedSample(sampleBank, 0, 57, 0, 1000);
+        float[] second = cache.getPitchedSample(sampleBank, 0, 69, 0, 1000);
+        float[] large = cache.getPitchedSample(sampleBank, 0, 33, 0, 1000);
+
+        assertNotNull(large);
+        assertEquals(2000, large.length);
+        assertEquals(2, cache.size());
+        assertEquals(750 * Float.BYTES, cache.getByteSize());
+        assertSame(first, cache.getPitchedSample(sampleBank, 0, 57, 0, 1000));
+        assertSame(second, cache.getPitchedSample(sampleBank, 0, 69, 0, 1000));
+    }
+
+    @Test
+    void pitchBuckets(){
+        InstrumentSampleCache cache = new InstrumentSampleCache(InstrumentSampleCache.DEFAULT_BYTE_BUDGET, 10);
+
+        assertSame(cache.getPitchedSample(sampleBank, 0, 45, 3, 1000), cache.getPitchedSample(sampleBank, 0, 45, -2, 1000));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void rendererUsesCache(){
+        Layer.Builder layer = Layer.builder();
+        for (int tick = 0; tick < 50; tick++) {
+            layer.note(tick, Note.builder().key(45 + tick % 3 * 12).build());
+        }
+        Song song = Song.builder().layer(layer.build()).build();
+        InstrumentSampleCache cache = new InstrumentSampleCache();
+
+        short[] direct = SongRenderer.builder(sampleBank).sampleRate(1000).build().render(song);
+        short[] cached = SongRenderer.builder(sampleBank).sampleRate(1000).sampleCache(cache).build().render(song);
+
+        assertArrayEquals(direct, cached);
+        assertEquals(3, cache.size());
+        assertEquals(47, cache.getHitCount());
+    }
+}
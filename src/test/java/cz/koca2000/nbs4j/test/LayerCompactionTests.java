@@ -0,0 +1,120 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LayerCompactionTests {
+
+    private static Layer createLayer(String name, int volume, int panning, long... ticks) {
+        Layer.Builder layer = Layer.builder().name(name).volume(volume).panning(panning);
+        for (long tick : ticks) {
+            layer.note(tick, Note.builder().instrument((int) tick % 16).key((int) tick % 88).volume(80).panning(10).build());
+        }
+        return layer.build();
+    }
+
+    private static List<String> getEvents(Song song) {
+        PlaybackPlan plan = song.compile();
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < plan.size(); i++) {
+            events.add(plan.getTick(i) + ":" + plan.getInstrument(i) + ":" + plan.getKey(i) + ":" + plan.getVolume(i) + ":" + plan.getPanning(i));
+        }
+        Collections.sort(events);
+        return events;
+    }
+
+    @Test
+    void wholeLayersAreMergedByRanges(){
+        Song song = Song.builder()
+                .layer(createLayer("First", 100, 0, 0, 5, 10))
+                .layer(createLayer("Second", 50, -20, 20, 25, 30))
+                .layer(createLayer("Overlapping", 100, 0, 5, 15, 25))
+                .layer(Layer.builder().name("Empty").build())
+                .tempoChange(12, 20)
+                .length(100)
+                .build();
+
+        CompactionResult result = song.compactLayers(CompactionPolicy.WHOLE_LAYERS);
+        Song compacted = result.getSong();
+
+        assertEquals(4, result.getOriginalLayersCount());
+        assertEquals(2, result.getLayersCount());
+        assertEquals(2, result.getSavedLayersCount());
+        assertEquals("First", compacted.getLayer(0).getName());
+        assertSame(song.getLayer(2).getLayerData(), compacted.getLayer(1).getLayerData());
+        assertEquals(getEvents(song), getEvents(compacted));
+        assertEquals(song.getTempoChanges(), compacted.getTempoChanges());
+        assertEquals(100, compacted.getSongLength());
+    }
+
+    @Test
+    void layersWithSamePropertiesAreNotFolded(){
+        Song song = Song.builder()
+                .layer(createLayer("First", 60, 30, 0, 1))
+                .layer(createLayer("Second", 60, 30, 5, 6))
+                .build();
+
+        Song compacted = song.compactLayers(CompactionPolicy.WHOLE_LAYERS).getSong();
+
+        assertEquals(1, compacted.getLayersCount());
+        assertEquals(60, compacted.getLayer(0).getVolume());
+        assertEquals(30, compacted.getLayer(0).getPanning());
+        assertEquals(80, compacted.getLayer(0).getNote(5).getVolume());
+        assertEquals(getEvents(song), getEvents(compacted));
+    }
+
+    @Test
+    void individualNotesArePacked(){
+        Song.Builder builder = Song.builder();
+        for (int layer = 0; layer < 8; layer++) {
+            builder.layer(createLayer("Layer " + layer, 100 - layer * 10, layer * 5 - 20, layer, layer + 8, layer + 16, 40));
+        }
+        Song song = builder.build();
+
+        CompactionResult result = song.compactLayers(CompactionPolicy.INDIVIDUAL_NOTES);
+
+        // Every layer has a note on tick 40
+        assertEquals(8, result.getLayersCount());
+        assertSame(song, result.getSong());
+
+        Song sparseSong = Song.builder(song).layer(0, createLayer("Layer 0", 100, -20, 0, 8, 16)).build();
+        Song compacted = sparseSong.compactLayers(CompactionPolicy.INDIVIDUAL_NOTES).getSong();
+
+        assertEquals(7, compacted.getLayersCount());
+        assertEquals(getEvents(sparseSong), getEvents(compacted));
+    }
+
+    @Test
+    void interleavedLayersArePackedIntoOne(){
+        Song.Builder builder = Song.builder();
+        for (int layer = 0; layer < 4; layer++) {
+            builder.layer(createLayer("Layer " + layer, 100, 0, layer, layer + 4, layer + 8));
+        }
+        Song song = builder.build();
+
+        assertEquals(0, song.compactLayers(CompactionPolicy.WHOLE_LAYERS).getSavedLayersCount());
+        CompactionResult result = song.compactLayers(CompactionPolicy.INDIVIDUAL_NOTES);
+        assertEquals(3, result.getSavedLayersCount());
+        assertEquals(getEvents(song), getEvents(result.getSong()));
+    }
+
+    @Test
+    void compactSongIsReturned(){
+        Song song = Song.builder()
+                .layer(createLayer("First", 100, 0, 0, 10))
+                .layer(createLayer("Second", 100, 0, 0, 10))
+                .build();
+
+        for (CompactionPolicy policy : CompactionPolicy.values()) {
+            CompactionResult result = song.compactLayers(policy);
+            assertSame(song, result.getSong());
+            assertEquals(0, result.getSavedLayersCount());
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import cz.koca2000.nbs4j.midi.MidiExporter;
+import cz.koca2000.nbs4j.midi.MidiImporter;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MidiExporterTests {
+
+    static Song song;
+
+    @TempDir
+    File directory;
+
+    @BeforeAll
+    static void prepareSong(){
+        song = Song.builder()
+                .layer(Layer.builder()
+                        .note(0, Note.builder().instrument(Instrument.HARP).key(39).build())
+                        .note(1, Note.builder().instrument(Instrument.GUITAR).key(40).panning(-100).build())
+                        .note(2, Note.builder().instrument(Instrument.FLUTE).key(41).pitch(50).build())
+                        .note(9, Note.builder().instrument(Instrument.HARP).key(39).volume(50).build())
+                        .build())
+                .layer(Layer.builder()
+                        .panning(100)
+                        .note(0, Note.builder().instrument(Instrument.BASS_DRUM).build())
+                        .note(1, Note.builder().instrument(Instrument.HARP).key(43).build())
+                        .note(8, Note.builder().instrument(Instrument.BELL).key(50).build())
+                        .build())
+                .metadata(new SongMetadata().setTitle("Exported"))
+                .initialTempo(10)
+                .tempoChange(5, 20)
+                .build();
+    }
+
+    private static Sequence export(Song song) throws IOException, InvalidMidiDataException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new MidiExporter().export(song, stream);
+        return MidiSystem.getSequence(new ByteArrayInputStream(stream.toByteArray()));
+    }
+
+    private static List<String> describeNotes(Song song) {
+        List<String> notes = new ArrayList<>();
+        PlaybackPlan plan = song.compile();
+        for (int event = 0; event < plan.size(); event++) {
+            notes.add(plan.getTick(event) + " " + plan.getInstrument(event) + " " + plan.getKey(event) + " "
+                    + plan.getPitch(event) + " " + plan.getVolume(event) + " " + plan.getPanning(event));
+        }
+        Collections.sort(notes);
+        return notes;
+    }
+
+    @Test
+    void tempoAndTracksAreWritten() throws IOException, InvalidMidiDataException {
+        Sequence sequence = export(song);
+
+        assertEquals(Sequence.PPQ, sequence.getDivisionType());
+        assertEquals(MidiExporter.DEFAULT_TICKS_PER_QUARTER_NOTE, sequence.getResolution());
+
+        List<Integer> tempos = new ArrayList<>();
+        Track tempoTrack = sequence.getTracks()[0];
+        for (int i = 0; i < tempoTrack.size(); i++) {
+            if (tempoTrack.get(i).getMessage() instanceof MetaMessage) {
+                MetaMessage message = (MetaMessage) tempoTrack.get(i).getMessage();
+                if (message.getType() == 0x51) {
+                    byte[] data = message.getData();
+                    tempos.add(((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8) | (data[2] & 0xFF));
+                }
+                if (message.getType() == 0x03) {
+                    assertEquals("Exported", new String(message.getData()));
+                }
+            }
+        }
+        assertEquals(400_000, tempos.get(0));
+        assertEquals(200_000, tempos.get(1));
+
+        int noteOnCount = 0;
+        boolean hasPercussion = false;
+        for (Track track : sequence.getTracks()) {
+            for (int i = 0; i < track.size(); i++) {
+                MidiEvent event = track.get(i);
+                if (event.getMessage() instanceof ShortMessage) {
+                    ShortMessage message = (ShortMessage) event.getMessage();
+                    if (message.getCommand() == ShortMessage.NOTE_ON && message.getData2() > 0) {
+                        noteOnCount++;
+                        hasPercussion |= message.getChannel() == 9 && message.getData1() == 36;
+                    }
+                }
+            }
+        }
+        assertEquals(7, noteOnCount);
+        assertTrue(hasPercussion);
+    }
+
+    @Test
+    void importedSongHasSameNotes() throws IOException, InvalidMidiDataException {
+        Song imported = new MidiImporter().importSong(export(song), "exported.mid");
+
+        assertEquals(describeNotes(song), describeNotes(imported));
+        assertEquals(song.getTempoChanges(), imported.getTempoChanges());
+    }
+
+    @Test
+    void silentNotesAreSkipped() throws IOException, InvalidMidiDataException {
+        Song silent = Song.builder()
+                .layer(Layer.builder().volume(0).note(3, Note.builder().build()).build())
+                .build();
+
+        Sequence sequence = export(silent);
+
+        assertEquals(1, sequence.getTracks().length);
+    }
+
+    @Test
+    void invalidResolution(){
+        assertThrows(IllegalArgumentException.class, () -> new MidiExporter(0));
+        assertThrows(IllegalArgumentException.class, () -> new MidiExporter(Short.MAX_VALUE + 1));
+    }
+
+    @Test
+    void tooLongDeltaTime(){
+        Song longSong = Song.builder()
+                .layer(Layer.builder()
+                        .note(0, Note.builder().build())
+                        .note(1L << 28, Note.builder().build())
+                        .build())
+                .build();
+        File file = new File(directory, "long.mid");
+
+        assertThrows(IllegalArgumentException.class, () -> new MidiExporter().export(longSong, new ByteArrayOutputStream()));
+        assertThrows(IllegalArgumentException.class, () -> new MidiExporter().export(longSong, file));
+        assertFalse(file.exists());
+    }
+}
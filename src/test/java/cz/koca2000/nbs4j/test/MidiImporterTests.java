@@ -0,0 +1,130 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import cz.koca2000.nbs4j.midi.MidiImporter;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MidiImporterTests {
+
+    static Sequence sequence;
+
+    @TempDir
+    File directory;
+
+    @BeforeAll
+    static void prepareSequence() throws InvalidMidiDataException {
+        sequence = new Sequence(Sequence.PPQ, 480);
+
+        Track tempoTrack = sequence.createTrack();
+        tempoTrack.add(tempo(0, 500_000));      // 8 ticks per second
+        tempoTrack.add(tempo(1920, 250_000));   // 16 ticks per second from the 5th quarter note
+
+        Track track = sequence.createTrack();
+        track.add(message(ShortMessage.PROGRAM_CHANGE, 0, 24, 0, 0));   // Nylon guitar
+        track.add(message(ShortMessage.CONTROL_CHANGE, 0, 10, 127, 0)); // Pan right
+        track.add(message(ShortMessage.NOTE_ON, 0, 60, 127, 0));
+        track.add(message(ShortMessage.NOTE_ON, 9, 36, 127, 0));        // Bass drum
+        track.add(message(ShortMessage.NOTE_OFF, 0, 60, 0, 100));
+        track.add(message(ShortMessage.NOTE_ON, 0, 64, 127, 115));      // Rounded to the second tick
+        track.add(message(ShortMessage.NOTE_ON, 0, 64, 0, 200));
+        track.add(message(ShortMessage.CONTROL_CHANGE, 0, 7, 127, 200));
+        track.add(message(ShortMessage.PITCH_BEND, 0, 0, 96, 2400));    // Half of the range up
+        track.add(message(ShortMessage.NOTE_ON, 0, 67, 64, 2400));
+    }
+
+    private static MidiEvent tempo(long tick, int microsecondsPerQuarterNote) throws InvalidMidiDataException {
+        byte[] data = { (byte) (microsecondsPerQuarterNote >> 16), (byte) (microsecondsPerQuarterNote >> 8), (byte) microsecondsPerQuarterNote };
+        return new MidiEvent(new MetaMessage(0x51, data, data.length), tick);
+    }
+
+    private static MidiEvent message(int command, int channel, int data1, int data2, long tick) throws InvalidMidiDataException {
+        return new MidiEvent(new ShortMessage(command, channel, data1, data2), tick);
+    }
+
+    @Test
+    void notesAndTempoAreConverted(){
+        Song song = new MidiImporter().importSong(sequence, "test.mid");
+
+        assertEquals(8, song.getTempo(0));
+        assertEquals(16, song.getTempo(16));
+        assertEquals(21, song.getSongLength());
+        assertEquals(2, song.getLayersCount());
+        assertEquals("test.mid", song.getMetadata().getOriginalMidiFileName());
+
+        Note guitar = song.getLayer(0).getNote(0);
+        assertEquals(Instrument.GUITAR.getId(), guitar.getInstrument());
+        assertEquals(39, guitar.getKey());
+        assertEquals(100, guitar.getPanning());
+        assertEquals(100, guitar.getVolume());
+
+        Note drum = song.getLayer(1).getNote(0);
+        assertEquals(Instrument.BASS_DRUM.getId(), drum.getInstrument());
+        assertEquals(0, drum.getPanning());
+
+        assertEquals(43, song.getLayer(0).getNote(1).getKey());
+
+        Note bentNote = song.getLayer(0).getNote(20);
+        assertEquals(46, bentNote.getKey());
+        assertEquals(50, bentNote.getVolume());
+        assertEquals(100, bentNote.getPitch());
+    }
+
+    @Test
+    void streamedSongEqualsImportedSong(){
+        MidiImporter importer = new MidiImporter();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        importer.convert(sequence, "test.mid", NBSVersion.V5, stream);
+
+        Song streamed = Song.fromStream(new ByteArrayInputStream(stream.toByteArray()));
+        Song imported = importer.importSong(sequence, "test.mid");
+        assertEquals(imported.contentHash(true), streamed.contentHash(true));
+        assertEquals(imported.getTempoChanges(), streamed.getTempoChanges());
+    }
+
+    @Test
+    void higherResolution(){
+        Song song = new MidiImporter(16).importSong(sequence, "test.mid");
+
+        assertEquals(32, song.getTempo(0));
+        assertNotNull(song.getLayer(0).getNote(4));
+    }
+
+    @Test
+    void convertFile() throws IOException {
+        File midiFile = new File(directory, "song.mid");
+        File nbsFile = new File(directory, "song.nbs");
+        MidiSystem.write(sequence, 1, midiFile);
+
+        new MidiImporter().convert(midiFile, nbsFile, NBSVersion.LATEST);
+
+        Song song = Song.fromFile(nbsFile);
+        assertEquals("song.mid", song.getMetadata().getOriginalMidiFileName());
+        assertEquals(new MidiImporter().importSong(midiFile).contentHash(true), song.contentHash(true));
+    }
+
+    @Test
+    void invalidFile() throws IOException {
+        File file = new File(directory, "invalid.mid");
+        Files.write(file.toPath(), new byte[] { 1, 2, 3, 4 });
+
+        assertThrows(SongCorruptedException.class, () -> new MidiImporter().importSong(file));
+        assertThrows(IllegalArgumentException.class, () -> new MidiImporter(0));
+    }
+}
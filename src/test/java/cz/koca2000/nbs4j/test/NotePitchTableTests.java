@@ -0,0 +1,55 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotePitchTableTests {
+
+    static final double DELTA = 1e-9;
+
+    @Test
+    void matchesExactComputation(){
+        for (int key = Note.MINIMUM_KEY; key <= Note.MAXIMUM_KEY; key++) {
+            for (int pitch = -100; pitch <= 100; pitch += 7) {
+                double cents = (key - 45) * 100 + pitch;
+                assertEquals(Math.pow(2, cents / 1200), NotePitchTable.getPitchMultiplier(key, pitch), DELTA);
+                assertEquals(27.5 * Math.pow(2, (key * 100 + pitch) / 1200d), NotePitchTable.getFrequency(key, pitch), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    void octaves(){
+        assertEquals(1, NotePitchTable.getPitchMultiplier(45, 0));
+        assertEquals(0.5, NotePitchTable.getPitchMultiplier(33, 0));
+        assertEquals(2, NotePitchTable.getPitchMultiplier(57, 0));
+        assertEquals(2, NotePitchTable.getPitchMultiplier(45, 1200));
+        assertEquals(440, NotePitchTable.getFrequency(48, 0), DELTA);
+    }
+
+    @Test
+    void notePlaybackPitch(){
+        Note note = Note.builder().key(46).pitch(-100).build();
+
+        assertEquals(1, note.getPlaybackPitch(), DELTA);
+        assertEquals(440, Note.builder().key(48).build().getFrequency(), DELTA);
+    }
+
+    @Test
+    void customInstrumentBaseKey(){
+        Song song = Song.builder()
+                .customInstrument(CustomInstrument.builder().setKey(57).build())
+                .layer(Layer.builder()
+                        .note(0, Note.builder().instrument(0, true).key(57).build())
+                        .note(1, Note.builder().instrument(0).key(57).build())
+                        .build())
+                .build();
+
+        assertEquals(1, song.getLayer(0).getNote(0).getPlaybackPitch(), DELTA);
+        assertEquals(2, song.getLayer(0).getNote(1).getPlaybackPitch(), DELTA);
+        assertEquals(1, song.compile().getPlaybackPitch(0), DELTA);
+        assertEquals(2, song.compile().getPlaybackPitch(1), DELTA);
+    }
+}
@@ -0,0 +1,97 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NoteTransformerTests {
+
+    static Song song;
+
+    @BeforeAll
+    static void prepareSong(){
+        Layer.Builder largeLayer = Layer.builder().name("Large");
+        for (int tick = 0; tick < 10_000; tick++) {
+            largeLayer.note(tick, Note.builder().instrument(tick % 5).key(tick % 80).build());
+        }
+
+        song = Song.builder()
+                .layer(largeLayer.build())
+                .layer(Layer.builder()
+                        .name("Drums")
+                        .note(3, Note.builder().instrument(Instrument.BASS_DRUM).key(40).build())
+                        .note(20_000, Note.builder().instrument(Instrument.SNARE_DRUM).key(40).build())
+                        .build())
+                .build();
+    }
+
+    @Test
+    void transposeAllNotes(){
+        Song transposed = song.transform((tick, layer, note) -> Note.builder(note).key(note.getKey() + 1).build());
+
+        assertEquals(song.getLayersCount(), transposed.getLayersCount());
+        for (int i = 0; i < song.getLayersCount(); i++) {
+            assertEquals(song.getLayer(i).getName(), transposed.getLayer(i).getName());
+            for (long tick : song.getLayer(i).getNotes().keySet()) {
+                assertEquals(song.getLayer(i).getNote(tick).getKey() + 1, transposed.getLayer(i).getNote(tick).getKey());
+            }
+        }
+    }
+
+    @Test
+    void unchangedSongIsReturned(){
+        assertSame(song, song.transform((tick, layer, note) -> note));
+    }
+
+    @Test
+    void unchangedLayersAreShared(){
+        Song transformed = song.transform((tick, layer, note) -> layer == 1 ? Note.builder(note).volume(50).build() : note);
+
+        assertSame(song.getLayer(0).getLayerData(), transformed.getLayer(0).getLayerData());
+        assertNotSame(song.getLayer(1).getLayerData(), transformed.getLayer(1).getLayerData());
+        assertEquals(50, transformed.getLayer(1).getNote(3).getVolume());
+    }
+
+    @Test
+    void removeNotes(){
+        Song transformed = song.transform((tick, layer, note) -> tick >= 10 ? null : note);
+
+        assertEquals(10, transformed.getLayer(0).getNotes().size());
+        assertEquals(1, transformed.getLayer(1).getNotes().size());
+        assertEquals(10, transformed.getSongLength());
+        assertEquals(-1, transformed.getNextNonEmptyTick(9));
+    }
+
+    @Test
+    void transformSingleLayer(){
+        Song transformed = song.transformLayer(1, (tick, layer, note) -> {
+            assertEquals(1, layer);
+            return Note.builder(note).instrument(Instrument.HARP).build();
+        });
+
+        assertSame(song.getLayer(0).getLayerData(), transformed.getLayer(0).getLayerData());
+        assertEquals(Instrument.HARP.getId(), transformed.getLayer(1).getNote(3).getInstrument());
+    }
+
+    @Test
+    void transformLayer(){
+        Layer layer = song.getLayer(0);
+        Layer mirrored = layer.transform(7, (tick, layerIndex, note) -> {
+            assertEquals(7, layerIndex);
+            return Note.builder(note).panning(-note.getPanning() + 10).build();
+        });
+
+        assertEquals(layer.getNotes().size(), mirrored.getNotes().size());
+        assertEquals(10, mirrored.getNote(500).getPanning());
+        assertSame(layer, layer.transform(0, (tick, layerIndex, note) -> note));
+    }
+
+    @Test
+    void exceptionIsPropagated(){
+        assertThrows(IllegalStateException.class, () -> song.transform((tick, layer, note) -> {
+            throw new IllegalStateException();
+        }));
+    }
+}
@@ -0,0 +1,86 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaybackPlanTests {
+
+    static Song song;
+
+    @BeforeAll
+    static void prepareSong(){
+        song = Song.builder()
+                .layer(Layer.builder()
+                        .volume(50)
+                        .panning(-20)
+                        .note(4, Note.builder().instrument(3).key(40).volume(80).panning(-90).build())
+                        .note(0, Note.builder().key(30).build())
+                        .build())
+                .layer(Layer.builder()
+                        .note(4, Note.builder().instrument(1, true).pitch(-25).build())
+                        .note(2, Note.builder().build())
+                        .build())
+                .initialTempo(10)
+                .tempoChange(3, 20)
+                .build();
+    }
+
+    @Test
+    void eventsAreOrderedByTimeAndLayer(){
+        PlaybackPlan plan = song.compile();
+
+        assertEquals(4, plan.size());
+        assertEquals(0, plan.getTick(0));
+        assertEquals(2, plan.getTick(1));
+        assertEquals(4, plan.getTick(2));
+        assertEquals(0, plan.getLayer(2));
+        assertEquals(4, plan.getTick(3));
+        assertEquals(1, plan.getLayer(3));
+    }
+
+    @Test
+    void tempoChangesAreApplied(){
+        PlaybackPlan plan = song.compile();
+
+        assertEquals(0, plan.getTimeNanos(0));
+        assertEquals(200_000_000, plan.getTimeNanos(1));
+        assertEquals(350_000_000, plan.getTimeNanos(2));
+        assertEquals(400_000_000, plan.getDurationNanos());
+    }
+
+    @Test
+    void layerPropertiesAreApplied(){
+        PlaybackPlan plan = song.compile();
+
+        assertEquals(3, plan.getInstrument(2));
+        assertFalse(plan.isCustomInstrument(2));
+        assertEquals(40, plan.getKey(2));
+        assertEquals(40, plan.getVolume(2));
+        assertEquals(-100, plan.getPanning(2));
+        assertTrue(plan.isCustomInstrument(3));
+        assertEquals(-25, plan.getPitch(3));
+    }
+
+    @Test
+    void planIsShared(){
+        assertSame(song.compile(), song.compile());
+    }
+
+    @Test
+    void cursor(){
+        PlaybackPlan.Cursor cursor = song.compile().cursor();
+
+        assertEquals(1, cursor.advanceTo(100_000_000));
+        assertEquals(2, cursor.advanceTo(300_000_000));
+        assertEquals(4, cursor.advanceTo(350_000_000));
+        assertFalse(cursor.hasNext());
+
+        cursor.seekTick(1);
+        assertEquals(1, cursor.getPosition());
+        cursor.seekTime(0);
+        assertEquals(0, cursor.getPosition());
+    }
+}
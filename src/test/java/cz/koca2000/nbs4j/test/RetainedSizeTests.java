@@ -0,0 +1,70 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetainedSizeTests {
+
+    private static Song createSong(int notes) {
+        Layer.Builder layer = Layer.builder().name("Layer");
+        for (int tick = 0; tick < notes; tick++) {
+            layer.note(tick, Note.builder().key(tick % 88).build());
+        }
+        return Song.builder().layer(layer.build()).tempoChange(5, 20).build();
+    }
+
+    @Test
+    void sizeGrowsWithNotes(){
+        long small = createSong(10).estimateRetainedSize();
+        long large = createSong(10_000).estimateRetainedSize();
+
+        assertTrue(small > 0);
+        // Every note takes at least the object header and a reference in the index
+        assertTrue(large - small > 9_990 * 16);
+        assertTrue(large - small < 9_990 * 200);
+    }
+
+    @Test
+    void breakdownSumsToTotal(){
+        Song song = createSong(100);
+        RetainedSizeBreakdown breakdown = song.getRetainedSizeBreakdown();
+
+        assertEquals(song.estimateRetainedSize(), breakdown.getTotal());
+        assertEquals(breakdown.getSong() + breakdown.getLayers() + breakdown.getNotes() + breakdown.getTickIndex()
+                + breakdown.getTempoChanges() + breakdown.getCustomInstruments() + breakdown.getMetadata()
+                + breakdown.getDerivedData(), breakdown.getTotal());
+        assertTrue(breakdown.getNotes() > 0);
+        assertTrue(breakdown.getTickIndex() > 0);
+        assertTrue(breakdown.getTempoChanges() > 0);
+        assertEquals(0, breakdown.getDerivedData());
+    }
+
+    @Test
+    void derivedDataIsIncluded(){
+        Song song = createSong(100);
+        song.compile();
+
+        assertTrue(song.getRetainedSizeBreakdown().getDerivedData() > 100 * 20);
+    }
+
+    @Test
+    void layerSize(){
+        Song song = createSong(100);
+        Layer layer = song.getLayer(0);
+
+        assertTrue(layer.estimateRetainedSize() > song.getRetainedSizeBreakdown().getNotes());
+        assertTrue(Layer.builder().build().estimateRetainedSize() > 0);
+    }
+
+    @Test
+    void metadataSize(){
+        SongMetadata metadata = new SongMetadata();
+        long empty = metadata.estimateRetainedSize();
+
+        metadata.setTitle("A very long title of the song");
+
+        assertTrue(metadata.estimateRetainedSize() >= empty + 2 * 29);
+    }
+}
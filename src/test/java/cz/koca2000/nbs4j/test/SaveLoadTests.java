@@ -220,6 +220,20 @@ class SaveLoadTests {
         assertEquals(comparingSong.getSongLength(), savedSong.getSongLength());
     }
 
+    @ParameterizedTest
+    @EnumSource
+    void contentHashOfBytes(NBSVersion nbsVersion) {
+        for (Song song : new Song[]{originalSong, originalSongWithoutTempoChanger}) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            song.save(nbsVersion, outputStream);
+            byte[] data = outputStream.toByteArray();
+            Song savedSong = Song.fromStream(new ByteArrayInputStream(data));
+
+            assertEquals(savedSong.contentHash(), ContentHash.fromBytes(data, false));
+            assertEquals(savedSong.contentHash(true), ContentHash.fromBytes(data, true));
+        }
+    }
+
     private static Song saveAndLoad(Song song, NBSVersion nbsVersion){
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         song.save(nbsVersion, outputStream);
@@ -0,0 +1,177 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SongCacheTests {
+
+    @TempDir
+    Path directory;
+
+    private Path saveSong(String name, int notes) {
+        Layer.Builder layer = Layer.builder();
+        for (int tick = 0; tick < notes; tick++) {
+            layer.note(tick, Note.builder().build());
+        }
+        Path path = directory.resolve(name);
+        Song.builder().layer(layer.build()).build().save(NBSVersion.V5, path.toFile());
+        return path;
+    }
+
+    @Test
+    void songIsLoadedOnce() throws IOException {
+        Path path = saveSong("song.nbs", 10);
+        SongCache cache = new SongCache(1 << 20);
+
+        Song first = cache.get(path);
+        Song second = cache.get(directory.resolve(".").resolve("song.nbs"));
+
+        assertSame(first, second);
+        assertEquals(1, cache.getStatistics().getHitCount());
+        assertEquals(1, cache.getStatistics().getMissCount());
+        assertEquals(0.5, cache.getStatistics().getHitRate());
+    }
+
+    @Test
+    void modifiedFileIsReloaded() throws IOException {
+        Path path = saveSong("song.nbs", 10);
+        SongCache cache = new SongCache(1 << 20);
+        Song first = cache.get(path);
+
+        saveSong("song.nbs", 20);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 5000));
+        Song second = cache.get(path);
+
+        assertNotSame(first, second);
+        assertEquals(20, second.getSongLength());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void budgetIsKept() throws IOException {
+        SongCache cache = new SongCache(250, song -> 100);
+        Path first = saveSong("1.nbs", 1);
+        Path second = saveSong("2.nbs", 1);
+        Path third = saveSong("3.nbs", 1);
+
+        Song firstSong = cache.get(first);
+        cache.get(second);
+        cache.get(first);
+        cache.get(third);
+
+        assertEquals(2, cache.size());
+        assertEquals(200, cache.getByteSize());
+        assertEquals(1, cache.getStatistics().getEvictionCount());
+        assertSame(firstSong, cache.get(first));
+    }
+
+    @Test
+    void songOverBudgetIsNotCached() throws IOException {
+        SongCache cache = new SongCache(50, song -> 100);
+        Path path = saveSong("song.nbs", 1);
+
+        assertNotNull(cache.get(path));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getByteSize());
+    }
+
+    @Test
+    void songOverBudgetDoesNotEvictOthers() throws IOException {
+        SongCache cache = new SongCache(100, song -> song.getSongLength() > 5 ? 1000 : 10);
+        Path first = saveSong("1.nbs", 1);
+        Path second = saveSong("2.nbs", 2);
+        Path large = saveSong("large.nbs", 10);
+
+        Song firstSong = cache.get(first);
+        Song secondSong = cache.get(second);
+        assertNotNull(cache.get(large));
+
+        assertEquals(2, cache.size());
+        assertEquals(20, cache.getByteSize());
+        assertSame(firstSong, cache.get(first));
+        assertSame(secondSong, cache.get(second));
+    }
+
+    @Test
+    void derivedDataAreNotWeighed() throws IOException {
+        Path path = saveSong("song.nbs", 100);
+        Song loaded = Song.fromFile(path.toFile());
+        RetainedSizeBreakdown breakdown = loaded.getRetainedSizeBreakdown();
+        long weight = breakdown.getTotal() - breakdown.getDerivedData();
+        SongCache cache = new SongCache(weight);
+
+        Song song = cache.get(path);
+        song.compile();
+        song.contentHash(true);
+        cache.get(path);
+
+        assertEquals(weight, SongCache.DEFAULT_WEIGHER.applyAsLong(song));
+        assertEquals(weight, cache.getByteSize());
+        assertTrue(cache.getByteSize() <= cache.getByteBudget());
+        assertSame(song, cache.get(path));
+    }
+
+    @Test
+    void concurrentLoadsCollapse() throws Exception {
+        Path path = saveSong("song.nbs", 1000);
+        CountDownLatch start = new CountDownLatch(1);
+        SongCache cache = new SongCache(1 << 24, song -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            return 1;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Song>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get(path);
+                }));
+            }
+            start.countDown();
+            Song song = futures.get(0).get();
+            for (Future<Song> future : futures) {
+                assertSame(song, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, cache.getStatistics().getMissCount());
+        assertEquals(7, cache.getStatistics().getHitCount());
+    }
+
+    @Test
+    void missingFile() {
+        SongCache cache = new SongCache(1 << 20);
+
+        assertThrows(IOException.class, () -> cache.get(directory.resolve("missing.nbs")));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void corruptedFile() throws IOException {
+        Path path = directory.resolve("corrupted.nbs");
+        Files.write(path, new byte[]{ 1, 2, 3 });
+        SongCache cache = new SongCache(1 << 20);
+
+        assertThrows(SongCorruptedException.class, () -> cache.get(path));
+        assertEquals(1, cache.getStatistics().getLoadFailureCount());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,127 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SongHistoryTests {
+
+    Song song;
+
+    @BeforeEach
+    void prepareSong(){
+        Layer.Builder first = Layer.builder().name("First");
+        Layer.Builder second = Layer.builder().name("Second");
+        for (int tick = 0; tick < 5000; tick += 2) {
+            first.note(tick, Note.builder().key(tick % 80).build());
+            second.note(tick + 1, Note.builder().instrument(2).build());
+        }
+        song = Song.builder()
+                .layer(first.build())
+                .layer(second.build())
+                .build();
+    }
+
+    @Test
+    void unchangedLayersAreShared(){
+        Song edited = Song.builder(song)
+                .replace().layer(1, (builder, layer) -> builder.note(7, null).build())
+                .build();
+
+        assertSame(song.getLayer(0).getLayerData(), edited.getLayer(0).getLayerData());
+        assertNotSame(song.getLayer(1).getLayerData(), edited.getLayer(1).getLayerData());
+        assertNotNull(song.getLayer(1).getNote(7));
+        assertNull(edited.getLayer(1).getNote(7));
+    }
+
+    @Test
+    void nextTickAfterNoteRemoval(){
+        Song edited = Song.builder(song)
+                .replace().layer(1, (builder, layer) -> builder.note(4999, null).build())
+                .build();
+
+        assertEquals(4999, song.getNextNonEmptyTick(4998));
+        assertEquals(-1, edited.getNextNonEmptyTick(4998));
+        assertEquals(4999, edited.getSongLength());
+    }
+
+    @Test
+    void notesAreOrderedByTick(){
+        Layer layer = Layer.builder()
+                .note(1_000_000, Note.builder().build())
+                .note(5, Note.builder().build())
+                .note(40, Note.builder().build())
+                .build();
+
+        List<Long> ticks = new ArrayList<>();
+        for (Map.Entry<Long, Note> entry : layer.getNotes().entrySet()) {
+            ticks.add(entry.getKey());
+        }
+
+        assertEquals(3, layer.getNotes().size());
+        assertEquals(5L, ticks.get(0));
+        assertEquals(40L, ticks.get(1));
+        assertEquals(1_000_000L, ticks.get(2));
+    }
+
+    @Test
+    void nextTickOverLargeGap(){
+        Song song = Song.builder()
+                .layer(Layer.builder()
+                        .note(3, Note.builder().build())
+                        .note(1_000_000, Note.builder().build())
+                        .build())
+                .build();
+
+        assertEquals(1_000_000, song.getNextNonEmptyTick(3));
+        assertEquals(1_000_001, song.getSongLength());
+    }
+
+    @Test
+    void undoRedo(){
+        SongHistory history = new SongHistory(song);
+        Song edited = history.edit(builder -> builder.layer(Layer.builder().name("Third").build()));
+
+        assertEquals(3, history.getCurrent().getLayersCount());
+        assertSame(edited, history.getCurrent());
+        assertTrue(history.canUndo());
+
+        assertSame(song, history.undo());
+        assertTrue(history.canRedo());
+        assertFalse(history.canUndo());
+
+        assertSame(edited, history.redo());
+        assertFalse(history.canRedo());
+    }
+
+    @Test
+    void recordDiscardsRedo(){
+        SongHistory history = new SongHistory(song);
+        history.edit(builder -> builder.length(10000));
+        history.undo();
+        history.edit(builder -> builder.length(20000));
+
+        assertFalse(history.canRedo());
+        assertEquals(20000, history.getCurrent().getSongLength());
+    }
+
+    @Test
+    void capacityLimitsUndo(){
+        SongHistory history = new SongHistory(song, 2);
+        for (int i = 1; i <= 5; i++) {
+            int length = 10000 * i;
+            history.edit(builder -> builder.length(length));
+        }
+
+        assertEquals(2, history.getUndoCount());
+        history.undo();
+        assertEquals(30000, history.undo().getSongLength());
+        assertThrows(IllegalStateException.class, history::undo);
+    }
+}
@@ -4,6 +4,10 @@ import cz.koca2000.nbs4j.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class SongIntegrityTests {
@@ -221,4 +225,66 @@ class SongIntegrityTests {
         assertEquals(70, note.getKey());
         assertEquals(layer, note.getLayer());
     }
+
+    @Test
+    void bulkNotes() {
+        Layer layer = Layer.builder()
+                .notes(new long[]{ 3, 7, 7 }, new Note[]{ emptyNote, emptyNote, null })
+                .build();
+
+        assertEquals(1, layer.getNotes().size());
+        assertNotNull(layer.getNote(3));
+        assertNull(layer.getNote(7));
+    }
+
+    @Test
+    void bulkNotesDifferentLength() {
+        assertThrows(IllegalArgumentException.class, () -> Layer.builder().notes(new long[]{ 1, 2 }, new Note[]{ emptyNote }));
+    }
+
+    @Test
+    void bulkNotesNegativeTickStrict() {
+        assertThrows(IllegalArgumentException.class, () -> Layer.builder(true).notes(new long[]{ -1 }, new Note[]{ emptyNote }));
+    }
+
+    @Test
+    void bulkNotesFromMap() {
+        Map<Long, Note> notes = new HashMap<>();
+        notes.put(4L, emptyNote);
+        notes.put(8L, emptyNote);
+
+        Layer layer = Layer.builder().notes(notes).build();
+
+        assertEquals(2, layer.getNotes().size());
+        assertNotNull(layer.getNote(8));
+    }
+
+    @Test
+    void bulkLayersStatistics() {
+        Song song = songBuilder
+                .layers(Arrays.asList(
+                        Layer.builder().note(10, Note.builder().instrument(5).build()).build(),
+                        Layer.builder().note(20, emptyNote).panning(10).build()
+                ))
+                .build();
+
+        assertEquals(2, song.getLayersCount());
+        assertEquals(21, song.getSongLength());
+        assertEquals(6, song.getNonCustomInstrumentsCount());
+        assertTrue(song.isStereo());
+        assertEquals(20, song.getNextNonEmptyTick(10));
+    }
+
+    @Test
+    void bulkLayersAfterTempoChange() {
+        Song song = Song.builder()
+                .tempoChange(50, 20)
+                .layers(Arrays.asList(
+                        Layer.builder().note(10, emptyNote).build(),
+                        Layer.builder().note(30, emptyNote).build()
+                ))
+                .build();
+
+        assertEquals(51, song.getSongLength());
+    }
 }
@@ -0,0 +1,163 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SongJoiningTests {
+
+    private static final CustomInstrument PIANO = CustomInstrument.builder().setName("Piano").setFileName("piano.ogg").build();
+    private static final CustomInstrument GUITAR = CustomInstrument.builder().setName("Guitar").setFileName("guitar.ogg").build();
+
+    private static Song createSong(float tempo, int layerVolume, CustomInstrument... customInstruments) {
+        Song.Builder song = Song.builder()
+                .layer(Layer.builder()
+                        .name("Melody")
+                        .volume(layerVolume)
+                        .note(0, Note.builder().key(40).build())
+                        .note(9, Note.builder().instrument(0, true).key(50).build())
+                        .build())
+                .initialTempo(tempo)
+                .length(20);
+        for (CustomInstrument customInstrument : customInstruments) {
+            song.customInstrument(customInstrument);
+        }
+        return song.build();
+    }
+
+    @Test
+    void concatOffsetsNotes(){
+        Song first = createSong(10, 100, PIANO);
+        Song second = Song.builder(createSong(20, 100, GUITAR, PIANO))
+                .layer(Layer.builder().note(3, Note.builder().key(60).build()).build())
+                .build();
+
+        Song song = Song.concat(Arrays.asList(first, second));
+
+        assertEquals(40, song.getSongLength());
+        assertEquals(2, song.getLayersCount());
+        assertEquals(4, song.getLayer(0).getNotes().size());
+        assertEquals(40, song.getLayer(0).getNote(20).getKey());
+        assertEquals(60, song.getLayer(1).getNote(23).getKey());
+        assertEquals("Melody", song.getLayer(0).getName());
+    }
+
+    @Test
+    void concatMergesTempo(){
+        Song song = Song.concat(Arrays.asList(createSong(10, 100), createSong(20, 100), createSong(20, 100)));
+
+        assertEquals(10, song.getTempo(19));
+        assertEquals(20, song.getTempo(20));
+        assertEquals(20, song.getTempo(59));
+        assertEquals(2, song.getTempoChanges().size());
+        assertEquals(1 + 2 + 1, song.getSongLengthInSeconds(), 0.001);
+    }
+
+    @Test
+    void concatRemapsCustomInstruments(){
+        Song song = Song.concat(Arrays.asList(createSong(10, 100, PIANO), createSong(10, 100, GUITAR, PIANO), createSong(10, 100, PIANO)));
+
+        assertEquals(2, song.getCustomInstrumentsCount());
+        assertEquals("Piano", song.getCustomInstrument(0).getName());
+        assertEquals("Guitar", song.getCustomInstrument(1).getName());
+        assertEquals(0, song.getLayer(0).getNote(9).getInstrument());
+        assertEquals(1, song.getLayer(0).getNote(29).getInstrument());
+        assertEquals(0, song.getLayer(0).getNote(49).getInstrument());
+        assertTrue(song.getLayer(0).getNote(49).isCustomInstrument());
+    }
+
+    @Test
+    void concatFoldsDifferentLayerVolumes(){
+        Song song = Song.concat(Arrays.asList(createSong(10, 100), createSong(10, 50)));
+
+        assertEquals(100, song.getLayer(0).getVolume());
+        assertEquals(100, song.getLayer(0).getNote(0).getVolume());
+        assertEquals(50, song.getLayer(0).getNote(20).getVolume());
+
+        Song sameVolume = Song.concat(Arrays.asList(createSong(10, 50), createSong(10, 50)));
+        assertEquals(50, sameVolume.getLayer(0).getVolume());
+        assertEquals(100, sameVolume.getLayer(0).getNote(20).getVolume());
+    }
+
+    @Test
+    void concatEmpty(){
+        Song song = Song.concat(Collections.emptyList());
+
+        assertEquals(0, song.getLayersCount());
+        assertEquals(0, song.getSongLength());
+    }
+
+    @Test
+    void mixStacksLayers(){
+        Song song = Song.mix(createSong(10, 100, PIANO), createSong(10, 70, GUITAR));
+
+        assertEquals(2, song.getLayersCount());
+        assertEquals(20, song.getSongLength());
+        assertEquals(70, song.getLayer(1).getVolume());
+        assertEquals(0, song.getLayer(0).getNote(9).getInstrument());
+        assertEquals(1, song.getLayer(1).getNote(9).getInstrument());
+    }
+
+    @Test
+    void mixRetimesSongsWithDifferentTempo(){
+        Song song = Song.mix(createSong(10, 100), createSong(30, 100));
+
+        assertEquals(10, song.getTempo(0));
+        // Tick 9 at 30 ticks per second is played at 0.3 s, which is tick 3 at 10 ticks per second
+        assertNotNull(song.getLayer(1).getNote(3));
+        assertEquals(2, song.getLayer(1).getNotes().size());
+        assertEquals(20, song.getSongLength());
+    }
+
+    @Test
+    void mixKeepsRetimedNotesOnSameTick(){
+        Song slow = Song.builder()
+                .layer(Layer.builder().note(0, Note.builder().build()).build())
+                .initialTempo(10)
+                .build();
+        Layer.Builder fastLayer = Layer.builder().volume(60);
+        for (int tick = 0; tick < 4; tick++) {
+            fastLayer.note(tick, Note.builder().key(40 + tick).build());
+        }
+        Song fast = Song.builder().layer(fastLayer.build()).initialTempo(40).build();
+
+        Song song = Song.mix(slow, fast);
+
+        int notesCount = 0;
+        for (int i = 1; i < song.getLayersCount(); i++) {
+            assertEquals(60, song.getLayer(i).getVolume());
+            notesCount += song.getLayer(i).getNotes().size();
+        }
+        assertEquals(4, notesCount);
+        assertEquals(4, song.getLayersCount());
+        assertEquals(2, song.getSongLength());
+    }
+
+    @Test
+    void mixRetimesNonIntegerTempoRatio(){
+        Layer.Builder layer = Layer.builder();
+        for (int tick = 0; tick < 10; tick++) {
+            layer.note(tick, Note.builder().key(40 + tick).build());
+        }
+        Song second = Song.builder().layer(layer.build()).initialTempo(25).build();
+
+        Song song = Song.mix(Song.builder().initialTempo(10).build(), second);
+
+        int notesCount = 0;
+        long lastTick = 0;
+        for (int i = 0; i < song.getLayersCount(); i++) {
+            notesCount += song.getLayer(i).getNotes().size();
+            for (long tick : song.getLayer(i).getNotes().keySet()) {
+                lastTick = Math.max(lastTick, tick);
+            }
+        }
+        assertEquals(10, notesCount);
+        // Tick 9 at 25 ticks per second is played at 0.36 s, which is nearest to tick 4 at 10 ticks per second
+        assertEquals(4, lastTick);
+        assertTrue(song.getSongLength() > lastTick);
+    }
+}
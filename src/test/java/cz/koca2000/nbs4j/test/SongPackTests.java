@@ -0,0 +1,142 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SongPackTests {
+
+    @TempDir
+    File directory;
+
+    private static Song createSong(String title, int notesCount) {
+        Layer.Builder layer = Layer.builder();
+        for (int i = 0; i < notesCount; i++) {
+            layer.note(i * 2L, Note.builder().instrument(Instrument.PIANO).key(i % 88).build());
+        }
+        return Song.builder()
+                .layer(layer.build())
+                .metadata(new SongMetadata().setTitle(title).setAuthor("Author " + title))
+                .build();
+    }
+
+    private static List<String> getIds(List<SongPackEntry> entries) {
+        List<String> ids = new ArrayList<>();
+        for (SongPackEntry entry : entries) {
+            ids.add(entry.getId());
+        }
+        return ids;
+    }
+
+    private File writePack(boolean compressed, String... ids) {
+        File file = new File(directory, "songs.pack");
+        try (SongPackWriter writer = new SongPackWriter(file, compressed)) {
+            for (int i = 0; i < ids.length; i++) {
+                writer.add(ids[i], createSong(ids[i], i + 1));
+            }
+        } catch (IOException ex) {
+            fail(ex);
+        }
+        return file;
+    }
+
+    @Test
+    void songsAreFoundById() throws IOException {
+        SongPack pack = SongPack.open(writePack(false, "zelda", "mario", "tetris", "čardáš"));
+
+        assertEquals(4, pack.size());
+        assertTrue(pack.contains("tetris"));
+        assertFalse(pack.contains("tetri"));
+        assertNull(pack.getSong("doom"));
+        assertNull(pack.getEntry("doom"));
+
+        Song song = pack.getSong("tetris");
+        assertNotNull(song);
+        assertEquals(createSong("tetris", 3).contentHash(true), song.contentHash(true));
+        assertEquals(createSong("čardáš", 4).contentHash(true), pack.getSong("čardáš").contentHash(true));
+    }
+
+    @Test
+    void entriesAreSortedSummaries() throws IOException {
+        SongPack pack = SongPack.open(writePack(true, "b", "c", "a"));
+
+        assertEquals(Arrays.asList("a", "b", "c"), getIds(pack.getEntries()));
+
+        SongPackEntry entry = pack.getEntry("c");
+        Song song = createSong("c", 2);
+        assertNotNull(entry);
+        assertEquals("c", entry.getTitle());
+        assertEquals("Author c", entry.getAuthor());
+        assertEquals(song.getSongLength(), entry.getSongLength());
+        assertEquals(song.getSongLengthInSeconds(), entry.getSongLengthInSeconds());
+        assertEquals(1, entry.getLayersCount());
+        assertEquals(song.contentHash(true), pack.getSong("c").contentHash(true));
+    }
+
+    @Test
+    void entriesWithPrefix() throws IOException {
+        SongPack pack = SongPack.open(writePack(false, "album/one", "album/two", "albums", "single", "alb"));
+
+        assertEquals(Arrays.asList("album/one", "album/two"), getIds(pack.getEntriesWithPrefix("album/")));
+        assertEquals(Arrays.asList("album/one", "album/two", "albums"), getIds(pack.getEntriesWithPrefix("album")));
+        assertEquals(5, pack.getEntriesWithPrefix("").size());
+        assertTrue(pack.getEntriesWithPrefix("z").isEmpty());
+    }
+
+    @Test
+    void nbsFilesArePacked() throws IOException {
+        File nbsFile = new File(directory, "song.nbs");
+        Song song = createSong("File", 10);
+        song.save(NBSVersion.V5, nbsFile);
+
+        File packFile = new File(directory, "files.pack");
+        try (SongPackWriter writer = new SongPackWriter(packFile, false)) {
+            writer.add(nbsFile);
+            assertThrows(IllegalArgumentException.class, () -> writer.add("song", song));
+        }
+
+        assertEquals(song.contentHash(true), SongPack.open(packFile).getSong("song").contentHash(true));
+    }
+
+    @Test
+    void emptyPack() throws IOException {
+        SongPack pack = SongPack.open(writePack(false));
+
+        assertEquals(0, pack.size());
+        assertTrue(pack.getEntries().isEmpty());
+        assertFalse(pack.contains(""));
+    }
+
+    @Test
+    void corruptedPack() throws IOException {
+        File file = new File(directory, "corrupted.pack");
+        Files.write(file.toPath(), new byte[] { 1, 2, 3 });
+
+        assertThrows(SongCorruptedException.class, () -> SongPack.open(file));
+    }
+
+    @Test
+    void corruptedIdLength() throws IOException {
+        File file = writePack(false, "a", "b");
+        byte[] data = Files.readAllBytes(file.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        // Length of the id of the first entry in the index
+        buffer.putInt((int) buffer.getLong(12) + 36, -1);
+        Files.write(file.toPath(), data);
+
+        SongPack pack = SongPack.open(file);
+        assertThrows(SongCorruptedException.class, () -> pack.getEntries().get(0));
+        assertThrows(SongCorruptedException.class, () -> pack.getEntry("a"));
+    }
+}
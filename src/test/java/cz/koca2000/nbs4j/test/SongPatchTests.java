@@ -0,0 +1,123 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SongPatchTests {
+
+    static Song song;
+
+    @BeforeAll
+    static void prepareSong(){
+        Layer.Builder largeLayer = Layer.builder().name("Large");
+        for (int tick = 0; tick < 10_000; tick++) {
+            largeLayer.note(tick, Note.builder().instrument(tick % 5).key(tick % 80).build());
+        }
+
+        song = Song.builder()
+                .layer(largeLayer.build())
+                .layer(Layer.builder()
+                        .name("Drums")
+                        .note(3, Note.builder().instrument(Instrument.BASS_DRUM).key(40).build())
+                        .note(20, Note.builder().instrument(0, true).key(40).build())
+                        .build())
+                .layer(Layer.builder().name("Removed").note(7, Note.builder().build()).build())
+                .customInstrument(CustomInstrument.builder().setName("Piano").setFileName("piano.ogg").build())
+                .initialTempo(10)
+                .tempoChange(100, 20)
+                .build();
+    }
+
+    @Test
+    void patchCreatesModifiedSong(){
+        Song modified = Song.builder(song, new SongMetadata().setTitle("Edited").setLoop(true))
+                .replace().layer(0, (builder, layer) -> builder
+                        .note(5, null)
+                        .note(6, Note.builder().key(10).build())
+                        .note(20_000, Note.builder().key(20).build())
+                        .build())
+                .replace().layer(1, (builder, layer) -> builder.volume(50).build())
+                .layer(2, null)
+                .layer(Layer.builder().name("Added").note(1, Note.builder().panning(-50).build()).build())
+                .customInstrument(0, CustomInstrument.builder().setName("Guitar").setFileName("guitar.ogg").build())
+                .customInstrument(CustomInstrument.builder().setName("Bass").setFileName("bass.ogg").setKey(30).build())
+                .tempoChange(100, 0)
+                .tempoChange(500, 15)
+                .build();
+
+        SongPatch patch = SongDiff.compute(song, modified);
+        Song patched = patch.apply(song);
+
+        assertEquals(modified.contentHash(true), patched.contentHash(true));
+        assertEquals(modified.getSongLength(), patched.getSongLength());
+        assertEquals("Added", patched.getLayer(2).getName());
+        assertEquals(5, patch.getNoteChangesCount());
+    }
+
+    @Test
+    void identicalSongsProduceEmptyPatch(){
+        SongPatch patch = SongDiff.compute(song, Song.builder(song).build());
+
+        assertTrue(patch.isEmpty());
+        assertSame(song, patch.apply(song));
+    }
+
+    @Test
+    void smallEditProducesSmallPatch(){
+        Song modified = song.transformLayer(0, (tick, layer, note) -> tick == 500 ? Note.builder(note).key(1).build() : note);
+
+        SongPatch patch = SongDiff.compute(song, modified);
+
+        assertEquals(1, patch.getNoteChangesCount());
+        assertEquals(1, patch.getLayerChangesCount());
+        assertTrue(patch.toBytes().length < 32);
+        assertEquals(modified.contentHash(true), patch.apply(song).contentHash(true));
+    }
+
+    @Test
+    void unrelatedSongs(){
+        Song other = Song.builder()
+                .layer(Layer.builder().name("Other").volume(20).note(2, Note.builder().key(5).build()).build())
+                .build();
+
+        assertEquals(other.contentHash(true), SongDiff.compute(song, other).apply(song).contentHash(true));
+        assertEquals(song.contentHash(true), SongDiff.compute(other, song).apply(other).contentHash(true));
+    }
+
+    @Test
+    void encodedPatch(){
+        Song modified = Song.builder(song)
+                .replace().layer(1, (builder, layer) -> builder.name("Renamed").note(3, null).build())
+                .layer(Layer.builder().note(30_000, Note.builder().pitch(-50).volume(20).build()).build())
+                .tempoChange(Song.INITIAL_TEMPO_TICK, 12.5f)
+                .metadata(new SongMetadata().setDescription("Příliš žluťoučký kůň").setMinutesSpent(90_000).setLoopStartTick((short) 30_000))
+                .build();
+
+        SongPatch patch = SongPatch.fromBytes(SongDiff.compute(song, modified).toBytes());
+
+        assertEquals(modified.contentHash(true), patch.apply(song).contentHash(true));
+        assertEquals("Příliš žluťoučký kůň", patch.apply(song).getMetadata().getDescription());
+        assertEquals(90_000, patch.apply(song).getMetadata().getMinutesSpent());
+        assertEquals(30_000, patch.apply(song).getMetadata().getLoopStartTick());
+    }
+
+    @Test
+    void patchOfDifferentSong(){
+        SongPatch patch = SongDiff.compute(song, Song.builder(song).layer(Layer.builder().build()).build());
+
+        assertThrows(IllegalArgumentException.class, () -> patch.apply(Song.builder().build()));
+    }
+
+    @Test
+    void corruptedPatch(){
+        byte[] data = SongDiff.compute(song, Song.builder(song).layer(2, null).build()).toBytes();
+
+        assertThrows(IllegalArgumentException.class, () -> SongPatch.fromBytes(new byte[] {1, 2, 3}));
+        assertThrows(IllegalArgumentException.class, () -> SongPatch.fromBytes(Arrays.copyOf(data, data.length - 1)));
+    }
+}
@@ -0,0 +1,124 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SongPlaybackEngineTests {
+
+    static final long MILLISECOND = 1_000_000;
+
+    long time;
+    SongPlaybackEngine engine;
+    Song song;
+
+    @BeforeEach
+    void prepareEngine(){
+        time = 0;
+        engine = new SongPlaybackEngine(() -> time, 0, MILLISECOND, 64);
+        song = Song.builder()
+                .layer(Layer.builder()
+                        .note(0, Note.builder().build())
+                        .note(5, Note.builder().build())
+                        .note(100, Note.builder().build())
+                        .build())
+                .initialTempo(20)
+                .build();
+    }
+
+    void advanceTo(long millis) {
+        for (; time <= millis * MILLISECOND; time += MILLISECOND) {
+            engine.update();
+        }
+        time -= MILLISECOND;
+    }
+
+    @Test
+    void playsManySessions(){
+        List<List<Long>> played = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            List<Long> ticks = new ArrayList<>();
+            played.add(ticks);
+            engine.play(song, (tick, notes) -> ticks.add(tick));
+        }
+
+        advanceTo(300);
+        for (List<Long> ticks : played) {
+            assertEquals(2, ticks.size());
+            assertEquals(5, ticks.get(1));
+        }
+        assertEquals(1000, engine.getActiveSessionCount());
+
+        // Tick 100 is due after 5 seconds, more than one rotation of the wheel
+        advanceTo(5000);
+        for (List<Long> ticks : played) {
+            assertEquals(3, ticks.size());
+        }
+        advanceTo(5050);
+        assertEquals(0, engine.getActiveSessionCount());
+    }
+
+    @Test
+    void stopCancelsSession(){
+        List<Long> ticks = new ArrayList<>();
+        SongPlaybackEngine.Session session = engine.play(song, (tick, notes) -> ticks.add(tick));
+        advanceTo(10);
+        session.stop();
+        advanceTo(1000);
+
+        assertEquals(1, ticks.size());
+        assertEquals(SongPlayer.State.STOPPED, session.getState());
+        assertEquals(0, engine.getActiveSessionCount());
+    }
+
+    @Test
+    void pauseResumeAndSeek(){
+        List<Long> ticks = new ArrayList<>();
+        SongPlaybackEngine.Session session = engine.play(song, (tick, notes) -> ticks.add(tick));
+        advanceTo(100);
+        session.pause();
+        advanceTo(1000);
+        assertEquals(1, ticks.size());
+
+        session.resume();
+        advanceTo(1150);
+        assertEquals(2, ticks.size());
+
+        session.seek(100);
+        advanceTo(1151);
+        assertEquals(3, ticks.size());
+        assertEquals(100, session.getTick());
+    }
+
+    @Test
+    void closeStopsPausedSessions(){
+        SongPlaybackEngine.Session playing = engine.play(song, (tick, notes) -> {});
+        SongPlaybackEngine.Session paused = engine.play(song, (tick, notes) -> {});
+        advanceTo(10);
+        paused.pause();
+
+        engine.close();
+
+        assertEquals(SongPlayer.State.STOPPED, playing.getState());
+        assertEquals(SongPlayer.State.STOPPED, paused.getState());
+        assertEquals(0, engine.getActiveSessionCount());
+        paused.resume();
+        assertEquals(SongPlayer.State.STOPPED, paused.getState());
+        assertThrows(IllegalStateException.class, () -> engine.play(song, (tick, notes) -> {}));
+    }
+
+    @Test
+    void latenessIsReported(){
+        SongPlaybackEngine.Session session = engine.play(song, (tick, notes) -> {});
+        time = 400 * MILLISECOND;
+        engine.update();
+
+        assertEquals(150 * MILLISECOND, session.getLastLatenessNanos());
+        assertEquals(400 * MILLISECOND, session.getMaxLatenessNanos());
+    }
+}
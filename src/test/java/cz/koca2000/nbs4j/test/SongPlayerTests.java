@@ -0,0 +1,188 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SongPlayerTests {
+
+    static final long MILLISECOND = 1_000_000;
+
+    ManualClock clock;
+    RecordingListener listener;
+    Song song;
+
+    @BeforeEach
+    void prepareSong(){
+        clock = new ManualClock();
+        listener = new RecordingListener();
+        song = Song.builder()
+                .layer(Layer.builder()
+                        .note(0, Note.builder().build())
+                        .note(2, Note.builder().build())
+                        .note(6, Note.builder().build())
+                        .build())
+                .layer(Layer.builder()
+                        .note(2, Note.builder().key(50).build())
+                        .build())
+                .initialTempo(10)
+                .tempoChange(4, 20)
+                .build();
+    }
+
+    @Test
+    void playsTicksOnDeadlines(){
+        SongPlayer player = new SongPlayer(song, listener, clock);
+        player.play();
+
+        player.update();
+        assertEquals(1, listener.ticks.size());
+
+        clock.time = 199 * MILLISECOND;
+        player.update();
+        assertEquals(1, listener.ticks.size());
+
+        clock.time = 200 * MILLISECOND;
+        player.update();
+        assertEquals(2, listener.ticks.size());
+        assertEquals(2, listener.noteCounts.get(1));
+
+        // tempo change on tick 4 is the next event
+        assertEquals(400 * MILLISECOND, player.getNextDeadline());
+    }
+
+    @Test
+    void lateUpdateCatchesUpWithoutDrift(){
+        SongPlayer player = new SongPlayer(song, listener, clock);
+        player.play();
+
+        clock.time = 450 * MILLISECOND;
+        player.update();
+
+        assertEquals(2, listener.ticks.size());
+        assertEquals(500 * MILLISECOND, player.getNextDeadline());
+    }
+
+    @Test
+    void finishesAtSongEnd(){
+        SongPlayer player = new SongPlayer(song, listener, clock);
+        player.play();
+
+        clock.time = 500 * MILLISECOND;
+        assertTrue(player.update());
+        clock.time = 550 * MILLISECOND;
+        assertFalse(player.update());
+
+        assertEquals(3, listener.ticks.size());
+        assertEquals(SongPlayer.State.FINISHED, player.getState());
+        assertTrue(listener.ended);
+    }
+
+    @Test
+    void pauseAndResume(){
+        SongPlayer player = new SongPlayer(song, listener, clock);
+        player.play();
+        player.update();
+
+        clock.time = 100 * MILLISECOND;
+        player.pause();
+        clock.time = 1000 * MILLISECOND;
+        player.update();
+        assertEquals(1, listener.ticks.size());
+
+        player.resume();
+        clock.time = 1099 * MILLISECOND;
+        player.update();
+        assertEquals(1, listener.ticks.size());
+        clock.time = 1100 * MILLISECOND;
+        player.update();
+        assertEquals(2, listener.ticks.size());
+    }
+
+    @Test
+    void seek(){
+        SongPlayer player = new SongPlayer(song, listener, clock);
+        player.play();
+        player.seek(5);
+        player.update();
+
+        assertEquals(0, listener.ticks.size());
+        clock.time = 50 * MILLISECOND;
+        player.update();
+        assertEquals(1, listener.ticks.size());
+        assertEquals(6, listener.ticks.get(0));
+    }
+
+    @Test
+    void loops(){
+        SongMetadata metadata = new SongMetadata()
+                .setLoop(true)
+                .setLoopMaxCount((byte) 2)
+                .setLoopStartTick((short) 2);
+        Song loopingSong = Song.builder(song, metadata).build();
+
+        SongPlayer player = new SongPlayer(loopingSong, listener, clock);
+        player.play();
+        for (long time = 0; time < 2000 * MILLISECOND; time += 10 * MILLISECOND) {
+            clock.time = time;
+            player.update();
+        }
+
+        // tick 0 once, then ticks 2 and 6 for the first pass and two loops
+        assertEquals(7, listener.ticks.size());
+        assertEquals(2, listener.loops);
+        assertEquals(SongPlayer.State.FINISHED, player.getState());
+    }
+
+    @Test
+    void stopRestartsFromBeginning(){
+        SongPlayer player = new SongPlayer(song, listener, clock);
+        player.play();
+        clock.time = 300 * MILLISECOND;
+        player.update();
+        player.stop();
+        assertFalse(player.update());
+
+        player.play();
+        player.update();
+        assertEquals(0, listener.ticks.get(listener.ticks.size() - 1));
+    }
+
+    static class ManualClock implements PlaybackClock {
+        long time = 0;
+
+        @Override
+        public long nanoTime() {
+            return time;
+        }
+    }
+
+    static class RecordingListener implements NoteListener {
+        final List<Long> ticks = new ArrayList<>();
+        final List<Integer> noteCounts = new ArrayList<>();
+        int loops = 0;
+        boolean ended = false;
+
+        @Override
+        public void onTick(long tick, @NotNull List<NoteInSong> notes) {
+            ticks.add(tick);
+            noteCounts.add(notes.size());
+        }
+
+        @Override
+        public void onLoop(int loopCount) {
+            loops = loopCount;
+        }
+
+        @Override
+        public void onSongEnd() {
+            ended = true;
+        }
+    }
+}
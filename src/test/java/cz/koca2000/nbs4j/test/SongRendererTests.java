@@ -0,0 +1,137 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import cz.koca2000.nbs4j.audio.Sample;
+import cz.koca2000.nbs4j.audio.SampleBank;
+import cz.koca2000.nbs4j.audio.SongRenderer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SongRendererTests {
+
+    static SampleBank sampleBank;
+
+    @BeforeAll
+    static void prepareSamples(){
+        float[] constant = new float[100];
+        Arrays.fill(constant, 0.5f);
+        float[] ramp = new float[1000];
+        for (int i = 0; i < ramp.length; i++) {
+            ramp[i] = (float) Math.sin(i * 0.05);
+        }
+        sampleBank = SampleBank.builder()
+                .sample(Instrument.PIANO, Sample.of(constant, 1000))
+                .sample(Instrument.BASS, Sample.of(ramp, 1000))
+                .customSample("custom.wav", Sample.of(constant, 1000))
+                .build();
+    }
+
+    @Test
+    void volumeAndPanning(){
+        Song song = Song.builder()
+                .layer(Layer.builder()
+                        .volume(50)
+                        .note(1, Note.builder().panning(-100).build())
+                        .build())
+                .build();
+
+        short[] pcm = SongRenderer.builder(sampleBank).sampleRate(1000).build().render(song);
+
+        // Tick 1 starts at 100 ms, the sample takes 100 ms
+        assertEquals(200 * 2, pcm.length);
+        assertEquals(0, pcm[99 * 2]);
+        assertEquals(Math.round(0.25f * Short.MAX_VALUE), pcm[100 * 2]);
+        assertEquals(0, pcm[100 * 2 + 1]);
+        assertEquals(Math.round(0.25f * Short.MAX_VALUE), pcm[199 * 2]);
+    }
+
+    @Test
+    void pitchChangesLength(){
+        Song song = Song.builder()
+                .layer(Layer.builder().note(0, Note.builder().key(57).build()).build())
+                .build();
+
+        short[] pcm = SongRenderer.builder(sampleBank).sampleRate(1000).build().render(song);
+
+        assertEquals(100 * 2, pcm.length);
+        assertNotEquals(0, pcm[49 * 2]);
+        assertEquals(0, pcm[50 * 2]);
+    }
+
+    @Test
+    void customInstrument(){
+        Song song = Song.builder()
+                .customInstrument(CustomInstrument.builder().setFileName("custom.wav").setKey(50).build())
+                .customInstrument(CustomInstrument.builder().setFileName("missing.wav").build())
+                .layer(Layer.builder()
+                        .note(0, Note.builder().instrument(0, true).key(50).build())
+                        .note(5, Note.builder().instrument(1, true).build())
+                        .build())
+                .build();
+
+        short[] pcm = SongRenderer.builder(sampleBank).sampleRate(1000).build().render(song);
+
+        assertEquals(600 * 2, pcm.length);
+        assertEquals(Math.round(0.5f * Short.MAX_VALUE), pcm[99 * 2]);
+        assertEquals(0, pcm[100 * 2]);
+    }
+
+    @Test
+    void threadsDoNotChangeResult(){
+        Layer.Builder layer = Layer.builder();
+        for (int tick = 0; tick < 200; tick++) {
+            layer.note(tick, Note.builder().instrument(tick % 2).key(30 + tick % 30).pitch(tick % 17).panning(tick % 50 - 25).build());
+        }
+        Song song = Song.builder().initialTempo(20).layer(layer.build()).build();
+
+        short[] single = SongRenderer.builder(sampleBank).threadCount(1).blockFrames(1000).build().render(song);
+        short[] parallel = SongRenderer.builder(sampleBank).threadCount(4).blockFrames(1000).build().render(song);
+
+        assertArrayEquals(single, parallel);
+    }
+
+    @Test
+    void wav() throws IOException {
+        Song song = Song.builder().layer(Layer.builder().note(0, Note.builder().build()).build()).build();
+        SongRenderer renderer = SongRenderer.builder(sampleBank).sampleRate(1000).build();
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        renderer.renderWav(song, stream);
+        Sample loaded = Sample.fromStream(new ByteArrayInputStream(stream.toByteArray()));
+
+        assertEquals(1000, loaded.getSampleRate());
+        assertEquals(100, loaded.getLength());
+        assertEquals(0.5f, loaded.get(0), 1e-3);
+    }
+
+    @Test
+    void customSoundsOutsideOfDirectoryAreRejected(@TempDir File directory) throws IOException {
+        File sounds = new File(directory, "sounds");
+        assertTrue(sounds.mkdir());
+        Song song = Song.builder().layer(Layer.builder().note(0, Note.builder().build()).build()).build();
+        SongRenderer renderer = SongRenderer.builder(sampleBank).sampleRate(1000).build();
+        for (File file : new File[]{new File(sounds, "inside.wav"), new File(directory, "outside.wav")}) {
+            try (FileOutputStream stream = new FileOutputStream(file)) {
+                renderer.renderWav(song, stream);
+            }
+        }
+
+        SampleBank bank = SampleBank.builder().customSoundsDirectory(sounds).build();
+        assertNotNull(bank.getSample(CustomInstrument.builder().setFileName("inside.wav").build()));
+        assertNull(bank.getSample(CustomInstrument.builder().setFileName("../outside.wav").build()));
+        assertNull(bank.getSample(CustomInstrument.builder().setFileName(new File(directory, "outside.wav").getAbsolutePath()).build()));
+
+        SampleBank strictBank = SampleBank.builder(true).customSoundsDirectory(sounds).build();
+        assertThrows(IllegalArgumentException.class, () -> strictBank.getSample(CustomInstrument.builder().setFileName("../outside.wav").build()));
+    }
+}
@@ -0,0 +1,108 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SongSliceTests {
+
+    static Song song;
+
+    @BeforeAll
+    static void prepareSong(){
+        Layer.Builder denseLayer = Layer.builder().name("Dense").volume(70);
+        for (int tick = 0; tick < 1000; tick++) {
+            denseLayer.note(tick, Note.builder().key(tick % 88).build());
+        }
+
+        song = Song.builder()
+                .layer(denseLayer.build())
+                .layer(Layer.builder()
+                        .name("Sparse")
+                        .note(5, Note.builder().instrument(1).build())
+                        .note(1000, Note.builder().instrument(2).build())
+                        .note(40_000, Note.builder().instrument(3).build())
+                        .note(1_000_000, Note.builder().instrument(4).build())
+                        .build())
+                .customInstrument(CustomInstrument.builder().setName("Custom").setFileName("custom.ogg").build())
+                .initialTempo(10)
+                .tempoChange(100, 20)
+                .tempoChange(500, 5)
+                .metadata(new SongMetadata().setTitle("Title"))
+                .build();
+    }
+
+    @Test
+    void sliceRebasesNotes(){
+        Song slice = song.slice(200, 600);
+
+        assertEquals(2, slice.getLayersCount());
+        assertEquals("Dense", slice.getLayer(0).getName());
+        assertEquals(70, slice.getLayer(0).getVolume());
+        assertEquals(400, slice.getLayer(0).getNotes().size());
+        assertEquals(200 % 88, slice.getLayer(0).getNote(0).getKey());
+        assertEquals(599 % 88, slice.getLayer(0).getNote(399).getKey());
+        assertTrue(slice.getLayer(1).isEmpty());
+        assertEquals(400, slice.getSongLength());
+        assertEquals(1, slice.getCustomInstrumentsCount());
+        assertEquals("Title", slice.getMetadata().getTitle());
+    }
+
+    @Test
+    void sliceCarriesTempo(){
+        Song slice = song.slice(200, 600);
+
+        assertEquals(20, slice.getTempo(0));
+        assertEquals(20, slice.getTempo(299));
+        assertEquals(5, slice.getTempo(300));
+        assertEquals(2, slice.getTempoChanges().size());
+    }
+
+    @Test
+    void sliceSparseTicks(){
+        Song slice = song.slice(999, 40_001);
+
+        assertEquals(2, slice.getLayer(1).getNotes().size());
+        assertEquals(2, slice.getLayer(1).getNote(1).getInstrument());
+        assertEquals(3, slice.getLayer(1).getNote(39_001).getInstrument());
+        assertEquals(1, slice.getLayer(0).getNotes().size());
+    }
+
+    @Test
+    void sliceAfterEnd(){
+        Song slice = song.slice(1_000_001, 2_000_000);
+
+        assertTrue(slice.getLayer(0).isEmpty());
+        assertTrue(slice.getLayer(1).isEmpty());
+        assertEquals(0, slice.getSongLength());
+        assertEquals(5, slice.getTempo(0));
+    }
+
+    @Test
+    void emptyRange(){
+        Song slice = song.slice(10, 10);
+
+        assertEquals(2, slice.getLayersCount());
+        assertTrue(slice.getLayer(0).isEmpty());
+    }
+
+    @Test
+    void sliceByTime(){
+        // Ticks 0-99 are played at 10 ticks per second
+        Song slice = song.sliceByTime(5, 10);
+
+        assertEquals(50, slice.getLayer(0).getNotes().size());
+        assertEquals(50 % 88, slice.getLayer(0).getNote(0).getKey());
+        assertEquals(5.0, slice.getSongLengthInSeconds(), 0.001);
+    }
+
+    @Test
+    void invalidRange(){
+        assertThrows(IllegalArgumentException.class, () -> song.slice(-1, 10));
+        assertThrows(IllegalArgumentException.class, () -> song.slice(10, 5));
+        assertThrows(IllegalArgumentException.class, () -> song.sliceByTime(2, 1));
+        assertThrows(IllegalArgumentException.class, () -> song.sliceByTime(Double.NaN, 1));
+    }
+}
@@ -0,0 +1,152 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SongSnapshotTests {
+
+    static Song song;
+
+    @TempDir
+    File directory;
+
+    @BeforeAll
+    static void prepareSong(){
+        Layer.Builder longLayer = Layer.builder().name("Long");
+        for (int i = 0; i < 1000; i++) {
+            longLayer.note(i * 3L, Note.builder().instrument(Instrument.HARP).key(30 + i % 20).build());
+        }
+
+        song = Song.builder()
+                .customInstrument(CustomInstrument.builder().setName("Custom").setFileName("custom.ogg").setKey(50).setShouldPressKey(true).build())
+                .layer(Layer.builder()
+                        .name("Melody")
+                        .locked(true)
+                        .volume(60)
+                        .panning(-30)
+                        .note(0, Note.builder().instrument(Instrument.BASS).key(10).volume(40).panning(-100).pitch(-1200).build())
+                        .note(7, Note.builder().instrument(0, true).key(87).pitch(70_000).build())
+                        .note(1L << 40, Note.builder().instrument(300).build())
+                        .build())
+                .layer(Layer.builder().build())
+                .layer(longLayer.build())
+                .metadata(new SongMetadata()
+                        .setTitle("Snapshot")
+                        .setAuthor("Ž author")
+                        .setDescription("Description")
+                        .setTimeSignature((byte) 3)
+                        .setMinutesSpent(5)
+                        .setLoop(true)
+                        .setLoopStartTick((short) 400))
+                .initialTempo(12.345f)
+                .tempoChange(5, 20.0625f)
+                .length((1L << 40) + 100)
+                .build();
+    }
+
+    private static void assertSameSong(Song expected, Song actual) {
+        assertEquals(expected.contentHash(true), actual.contentHash(true));
+        assertEquals(expected.getSongLength(), actual.getSongLength());
+        assertEquals(expected.getTempoChanges(), actual.getTempoChanges());
+        assertEquals(expected.getLayersCount(), actual.getLayersCount());
+        for (int i = 0; i < expected.getLayersCount(); i++) {
+            Layer expectedLayer = expected.getLayer(i);
+            Layer actualLayer = actual.getLayer(i);
+            assertEquals(expectedLayer.getName(), actualLayer.getName());
+            assertEquals(expectedLayer.isLocked(), actualLayer.isLocked());
+            assertEquals(expectedLayer.getNotes().keySet(), actualLayer.getNotes().keySet());
+            for (long tick : expectedLayer.getNotes().keySet()) {
+                Note expectedNote = expectedLayer.getNote(tick);
+                Note actualNote = actualLayer.getNote(tick);
+                assertEquals(expectedNote.getInstrument(), actualNote.getInstrument());
+                assertEquals(expectedNote.isCustomInstrument(), actualNote.isCustomInstrument());
+                assertEquals(expectedNote.getPitch(), actualNote.getPitch());
+            }
+        }
+
+        SongMetadata expectedMetadata = expected.getMetadata();
+        SongMetadata actualMetadata = actual.getMetadata();
+        assertEquals(expectedMetadata.getAuthor(), actualMetadata.getAuthor());
+        assertEquals(expectedMetadata.getMinutesSpent(), actualMetadata.getMinutesSpent());
+        assertEquals(expectedMetadata.isLoop(), actualMetadata.isLoop());
+        assertEquals(expectedMetadata.getLoopStartTick(), actualMetadata.getLoopStartTick());
+        assertEquals(expectedMetadata.getTimeSignature(), actualMetadata.getTimeSignature());
+        assertEquals(expected.getCustomInstrument(0).getFileName(), actual.getCustomInstrument(0).getFileName());
+        assertEquals(expected.getCustomInstrument(0).shouldPressKey(), actual.getCustomInstrument(0).shouldPressKey());
+    }
+
+    @Test
+    void roundTrip(){
+        assertSameSong(song, SongSnapshot.read(SongSnapshot.toBytes(song, false)));
+    }
+
+    @Test
+    void compressedRoundTrip(){
+        byte[] compressed = SongSnapshot.toBytes(song, true);
+
+        assertTrue(compressed.length < SongSnapshot.toBytes(song, false).length);
+        assertSameSong(song, SongSnapshot.read(compressed));
+    }
+
+    @Test
+    void memoryMappedFile() throws IOException {
+        File file = new File(directory, "song.snapshot");
+        File compressedFile = new File(directory, "compressed.snapshot");
+        SongSnapshot.write(song, file, false);
+        SongSnapshot.write(song, compressedFile, true);
+
+        Song loaded = SongSnapshot.read(file);
+        assertSameSong(song, loaded);
+        assertEquals(file, loaded.getMetadata().getSourceFile());
+        assertSameSong(song, SongSnapshot.read(compressedFile));
+    }
+
+    @Test
+    void bufferPositionIsRespected(){
+        byte[] snapshot = SongSnapshot.toBytes(song, false);
+        byte[] data = new byte[snapshot.length + 10];
+        System.arraycopy(snapshot, 0, data, 10, snapshot.length);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.position(10);
+
+        assertSameSong(song, SongSnapshot.read(buffer));
+        assertEquals(10, buffer.position());
+    }
+
+    @Test
+    void emptySong(){
+        Song empty = Song.builder().build();
+
+        Song loaded = SongSnapshot.read(SongSnapshot.toBytes(empty, true));
+
+        assertEquals(0, loaded.getLayersCount());
+        assertEquals(empty.getSongLength(), loaded.getSongLength());
+        assertEquals(empty.getTempo(0), loaded.getTempo(0));
+    }
+
+    @Test
+    void corruptedSnapshot(){
+        byte[] snapshot = SongSnapshot.toBytes(song, false);
+        byte[] compressed = SongSnapshot.toBytes(song, true);
+
+        assertThrows(SongCorruptedException.class, () -> SongSnapshot.read(new byte[] { 1, 2, 3 }));
+        assertThrows(SongCorruptedException.class, () -> SongSnapshot.read(song.toBytes(NBSVersion.LATEST)));
+        assertThrows(SongCorruptedException.class, () -> SongSnapshot.read(Arrays.copyOf(snapshot, snapshot.length - 10)));
+        assertThrows(SongCorruptedException.class, () -> SongSnapshot.read(Arrays.copyOf(compressed, compressed.length - 10)));
+
+        // Raw length of the metadata section that could not be produced by its compressed data
+        byte[] inflated = compressed.clone();
+        ByteBuffer.wrap(inflated).order(ByteOrder.LITTLE_ENDIAN).putInt(20 + 12, Integer.MAX_VALUE);
+        assertThrows(SongCorruptedException.class, () -> SongSnapshot.read(inflated));
+    }
+}
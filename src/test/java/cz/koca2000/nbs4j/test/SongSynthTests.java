@@ -0,0 +1,105 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import cz.koca2000.nbs4j.audio.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SongSynthTests {
+
+    static SampleBank sampleBank;
+    static Song song;
+
+    @BeforeAll
+    static void prepare(){
+        float[] constant = new float[150];
+        Arrays.fill(constant, 0.25f);
+        sampleBank = SampleBank.builder().sample(Instrument.PIANO, Sample.of(constant, 1000)).build();
+
+        Layer.Builder layer = Layer.builder();
+        for (int tick = 0; tick < 20; tick++) {
+            layer.note(tick, Note.builder().panning(tick * 5 - 50).build());
+        }
+        song = Song.builder().layer(layer.build()).build();
+    }
+
+    @Test
+    void matchesOfflineRenderer(){
+        short[] expected = SongRenderer.builder(sampleBank).sampleRate(1000).build().render(song);
+        SongSynth synth = SongSynth.builder(sampleBank).sampleRate(1000).build();
+        synth.load(song);
+
+        short[] produced = new short[expected.length];
+        // Uneven chunks to cross note boundaries inside a single call
+        int frames = expected.length / 2;
+        int position = 0;
+        while (position < frames) {
+            int count = Math.min(37, frames - position);
+            synth.render(produced, position * 2, count);
+            position += count;
+        }
+
+        assertArrayEquals(expected, produced);
+        assertTrue(synth.isFinished());
+    }
+
+    @Test
+    void voiceStealing(){
+        Song chord = Song.builder()
+                .layer(Layer.builder().note(0, Note.builder().build()).build())
+                .layer(Layer.builder().note(0, Note.builder().build()).build())
+                .layer(Layer.builder().note(1, Note.builder().build()).build())
+                .build();
+        SongSynth synth = SongSynth.builder(sampleBank).sampleRate(1000).polyphony(2).build();
+        synth.load(chord);
+
+        short[] buffer = new short[2 * 2];
+        synth.render(buffer, 0, 2);
+        assertEquals(2, synth.getActiveVoiceCount());
+        assertEquals(Math.round(0.5f * Short.MAX_VALUE), buffer[0]);
+
+        synth.render(new short[300 * 2], 0, 300);
+        assertEquals(0, synth.getActiveVoiceCount());
+    }
+
+    @Test
+    void ringBuffer(){
+        SongSynth synth = SongSynth.builder(sampleBank).sampleRate(1000).build();
+        synth.load(song);
+        PcmRingBuffer ringBuffer = new PcmRingBuffer(101);
+
+        assertEquals(50, synth.fill(ringBuffer));
+        assertEquals(100, ringBuffer.getAvailable());
+        assertEquals(0, synth.fill(ringBuffer));
+
+        short[] read = new short[70];
+        assertEquals(70, ringBuffer.read(read, 0, 70));
+        assertEquals(35, synth.fill(ringBuffer));
+        assertEquals(100, ringBuffer.getAvailable());
+        assertEquals(85, synth.getFrame());
+    }
+
+    @Test
+    void seek(){
+        SongSynth synth = SongSynth.builder(sampleBank).sampleRate(1000).build();
+        synth.load(song);
+        synth.seek(19);
+
+        assertEquals(1900, synth.getFrame());
+        short[] buffer = new short[2];
+        synth.render(buffer, 0, 1);
+        assertEquals(1, synth.getActiveVoiceCount());
+    }
+
+    @Test
+    void notLoaded(){
+        SongSynth synth = SongSynth.builder(sampleBank).build();
+
+        assertTrue(synth.isFinished());
+        assertThrows(IllegalStateException.class, () -> synth.render(new short[2], 0, 1));
+    }
+}
@@ -0,0 +1,79 @@
+package cz.koca2000.nbs4j.test;
+
+import cz.koca2000.nbs4j.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TempoNormalizationTests {
+
+    static Song song;
+
+    @BeforeAll
+    static void prepareSong(){
+        Layer.Builder layer = Layer.builder().name("Melody").volume(60);
+        for (int tick = 0; tick < 200; tick++) {
+            layer.note(tick, Note.builder().key(tick % 88).build());
+        }
+
+        song = Song.builder()
+                .layer(layer.build())
+                .layer(Layer.builder().name("Empty").build())
+                .initialTempo(10)
+                .tempoChange(100, 20)
+                .build();
+    }
+
+    @Test
+    void exactNormalization(){
+        TempoNormalizationResult result = song.normalizeTempo(20);
+        Song normalized = result.getSong();
+
+        assertEquals(1, normalized.getTempoChanges().size());
+        assertEquals(20, normalized.getTempo(0));
+        assertEquals(0, result.getMaxErrorNanos());
+        assertEquals(0, result.getAddedLayersCount());
+        assertEquals(50 % 88, normalized.getLayer(0).getNote(100).getKey());
+        assertEquals(110 % 88, normalized.getLayer(0).getNote(210).getKey());
+        assertNull(normalized.getLayer(0).getNote(101));
+        assertEquals(song.getSongLengthInSeconds(), normalized.getSongLengthInSeconds(), 0.001);
+        assertEquals("Melody", normalized.getLayer(0).getName());
+        assertEquals(60, normalized.getLayer(0).getVolume());
+    }
+
+    @Test
+    void collidingNotesAreMovedToNewLayer(){
+        TempoNormalizationResult result = song.normalizeTempo(10);
+        Song normalized = result.getSong();
+
+        assertEquals(1, result.getAddedLayersCount());
+        assertEquals(3, normalized.getLayersCount());
+        assertEquals("Melody", normalized.getLayer(1).getName());
+        assertEquals("Empty", normalized.getLayer(2).getName());
+        assertEquals(200, normalized.getLayer(0).getNotes().size() + normalized.getLayer(1).getNotes().size());
+        assertTrue(result.getMaxErrorTicks() <= 0.5);
+        assertEquals(50_000_000, result.getMaxErrorNanos());
+    }
+
+    @Test
+    void timingErrorIsWithinHalfTick(){
+        TempoNormalizationResult result = song.normalizeTempo(7.3f);
+        PlaybackPlan original = song.compile();
+        PlaybackPlan normalized = result.getSong().compile();
+
+        assertEquals(original.size(), normalized.size());
+        assertTrue(result.getMaxErrorTicks() <= 0.5);
+        long halfTickNanos = (long) Math.ceil(1_000_000_000 / 7.3 / 2);
+        assertTrue(result.getMaxErrorNanos() <= halfTickNanos);
+        for (int i = 0; i < original.size(); i++) {
+            assertEquals(original.getTimeNanos(i), normalized.getTimeNanos(i), halfTickNanos + 1);
+        }
+    }
+
+    @Test
+    void invalidTempo(){
+        assertThrows(IllegalArgumentException.class, () -> song.normalizeTempo(0));
+        assertThrows(IllegalArgumentException.class, () -> song.normalizeTempo(Float.NaN));
+    }
+}